@@ -0,0 +1,149 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+import static gitlet.Utils.*;
+
+/** A benchmarking class whose main program may be invoked as follows:
+ *      java gitlet.Benchmark NAME [N]
+ *  from an EMPTY scratch directory, since most benchmarks build a
+ *  repository in the current working directory first. e.g.
+ *
+ *      mkdir /tmp/bench && cd /tmp/bench && java gitlet.Benchmark ancestors 3000
+ *
+ *  Every benchmark prints what it measured, one line per measurement. The
+ *  benchmarks themselves are in HistoryBenchmarks, MergeBenchmarks,
+ *  DiffBenchmarks, StoreBenchmarks and WorkTreeBenchmarks, this class only
+ *  has what they share. The checks that used to run here (locking and
+ *  recovery) are in StressTest, which make check runs.
+ *
+ *  @author Linde
+ */
+public class Benchmark {
+
+    /** How many times every measurement is repeated, we print the best run. */
+    static final int ROUNDS = 5;
+
+    /** The current working directory, where the benchmarks build their repository. */
+    static final File CWD = new File(System.getProperty("user.dir"));
+
+    /** A benchmark and the N it runs with if none is given. */
+    private static class Entry {
+        final IntConsumer benchmark;
+        final int defaultN;
+
+        Entry(IntConsumer benchmark, int defaultN) {
+            this.benchmark = benchmark;
+            this.defaultN = defaultN;
+        }
+    }
+
+    /** name -> benchmark, in the order of the usage message */
+    private static final Map<String, Entry> BENCHMARKS = new LinkedHashMap<>();
+
+    static {
+        BENCHMARKS.put("ancestors", new Entry(HistoryBenchmarks::benchmarkAncestors, 2000));
+        BENCHMARKS.put("walk", new Entry(HistoryBenchmarks::benchmarkWalk, 1000000));
+        BENCHMARKS.put("merge", new Entry(MergeBenchmarks::benchmarkMerge, 10000));
+        BENCHMARKS.put("mergecheck", new Entry(MergeBenchmarks::benchmarkMergeCheck, 10000));
+        BENCHMARKS.put("conflict", new Entry(MergeBenchmarks::benchmarkConflict, 64));
+        BENCHMARKS.put("diff3", new Entry(MergeBenchmarks::benchmarkDiff3, 1000000));
+        BENCHMARKS.put("diff", new Entry(DiffBenchmarks::benchmarkDiff, 1000000));
+        BENCHMARKS.put("renames", new Entry(DiffBenchmarks::benchmarkRenames, 5000));
+        BENCHMARKS.put("objectid", new Entry(StoreBenchmarks::benchmarkObjectId, 1000000));
+        BENCHMARKS.put("store", new Entry(StoreBenchmarks::benchmarkStore, 20000));
+        BENCHMARKS.put("filetable", new Entry(StoreBenchmarks::benchmarkFileTable, 100000));
+        BENCHMARKS.put("ingest", new Entry(StoreBenchmarks::benchmarkIngest, 8));
+        BENCHMARKS.put("durability", new Entry(StoreBenchmarks::benchmarkDurability, 8));
+        BENCHMARKS.put("add", new Entry(WorkTreeBenchmarks::benchmarkAdd, 20000));
+        BENCHMARKS.put("trees", new Entry(WorkTreeBenchmarks::benchmarkTrees, 20000));
+        BENCHMARKS.put("untracked", new Entry(WorkTreeBenchmarks::benchmarkUntracked, 20000));
+        BENCHMARKS.put("sparse", new Entry(WorkTreeBenchmarks::benchmarkSparse, 20000));
+        BENCHMARKS.put("ignore", new Entry(WorkTreeBenchmarks::benchmarkIgnore, 10000));
+    }
+
+    public static void main(String... args) {
+        if (args.length == 0) {
+            System.out.println("Usage: java gitlet.Benchmark NAME [N]");
+            System.out.println("NAME is one of " + String.join(", ", BENCHMARKS.keySet()));
+            System.exit(0);
+        }
+        Entry entry = BENCHMARKS.get(args[0]);
+        if (entry == null) {
+            System.out.println("No benchmark with that name exists.");
+            System.exit(1);
+        }
+        entry.benchmark.accept(args.length > 1 ? Integer.parseInt(args[1]) : entry.defaultN);
+    }
+
+    /** the heap in use after a few garbage collections, in bytes */
+    static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i += 1) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    static ObjectId fakeSha1(int i) {
+        return ObjectId.fromHex(String.format("%040x", i));
+    }
+
+    /** the repository in CWD, once a benchmark has built it */
+    static GitletRepository repository() {
+        return GitletRepository.open(CWD);
+    }
+
+    /**
+     * init a repository in CWD and make n commits on master.
+     *
+     * @return the sha1 of every commit, the initial commit first
+     */
+    static List<ObjectId> buildLinearHistory(int n) {
+        if (join(CWD, ".gitlet").exists()) {
+            System.out.println("Please run the benchmark in an empty directory.");
+            System.exit(0);
+        }
+        GitletRepository.init(CWD);
+        List<ObjectId> commits = new ArrayList<>();
+        commits.add(repository().getHeadCommitSha1());
+        for (int i = 1; i < n; i += 1) {
+            writeContents(join(CWD, "bench.txt"), "version " + i + "\n");
+            repository().add("bench.txt");
+            repository().commit("commit " + i);
+            commits.add(repository().getHeadCommitSha1());
+        }
+        return commits;
+    }
+
+    /**
+     * @return the best time of ROUNDS runs in nanoseconds, or -1 if the
+     * code overflowed the stack
+     */
+    static long best(Runnable code) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i += 1) {
+            long start = System.nanoTime();
+            try {
+                code.run();
+            } catch (StackOverflowError excp) {
+                return -1;
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    static void report(String name, long nanos) {
+        if (nanos < 0) {
+            System.out.printf("%-40s StackOverflowError%n", name);
+        } else {
+            System.out.printf("%-40s %12.3f ms%n", name, nanos / 1e6);
+        }
+    }
+}
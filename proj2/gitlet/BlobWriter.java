@@ -0,0 +1,100 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Writes a new blob as a stream: the bytes go through a fixed buffer into a
+ * temporary file in .gitlet and into the sha1 at the same time, so a
+ * big file never has to be in memory, and is never read back to be hashed.
+ * finish() hands the temporary file to the ObjectStore, under the sha1: the
+ * loose layout just renames it.
+ * <pre>
+ *     try (BlobWriter writer = new BlobWriter(repository)) {
+ *         writer.write(...);
+ *         writer.copy(in);
+ *         blobSha1 = writer.finish();
+ *     }
+ * </pre>
+ * A writer that is closed without finish() removes its temporary file.
+ *
+ * @author Linde
+ */
+public class BlobWriter extends OutputStream {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final ObjectStore objects;
+
+    private final File tempFile;
+
+    private final OutputStream out;
+
+    private final MessageDigest digest;
+
+    private boolean finished;
+
+    public BlobWriter(GitletRepository repository) throws IOException {
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+        // in .gitlet, so that it can be renamed into the loose layout
+        objects = repository.getObjectStore();
+        tempFile = File.createTempFile("blob", ".tmp", repository.getGitletDir());
+        out = new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        digest.update((byte) b);
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        digest.update(b, off, len);
+        out.write(b, off, len);
+    }
+
+    /**
+     * write the contents of a stream, a buffer at a time. the stream is closed.
+     */
+    public void copy(InputStream contents) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = contents) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                write(buffer, 0, n);
+            }
+        }
+    }
+
+    /**
+     * store what was written as a blob, unless there is such a blob already
+     *
+     * @return the sha1 of the blob
+     */
+    public ObjectId finish() throws IOException {
+        out.close();
+        finished = true;
+        ObjectId blobSha1 = ObjectId.fromRaw(digest.digest(), 0);
+        objects.writeFrom(ObjectStore.Kind.BLOB, blobSha1, tempFile);
+        return blobSha1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!finished) {
+            out.close();
+            tempFile.delete();
+        }
+    }
+}
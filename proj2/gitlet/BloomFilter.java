@@ -0,0 +1,98 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A tiny Bloom filter over Strings.
+ * <p>
+ * mightContain() never says "no" for something we have put() before,
+ * but it may say "yes" for something we have never seen (a false positive).
+ * So it is only used where a false "yes" is harmless, e.g. in gc() a
+ * false "yes" just means we keep a garbage blob a little longer.
+ *
+ * @author Linde
+ */
+public class BloomFilter implements Serializable {
+
+    private static final long serialVersionUID = 1873766540254904962L;
+
+    /**
+     * the bits of the filter, 64 bits per long
+     */
+    private final long[] bits;
+
+    /**
+     * how many bits we set for every element
+     */
+    private final int numHashes;
+
+    /**
+     * create a filter that can hold about expectedSize elements,
+     * and says "yes" wrongly with probability about falsePositiveRate.
+     */
+    public BloomFilter(int expectedSize, double falsePositiveRate) {
+        int n = Math.max(expectedSize, 1);
+        // the standard formulas: m = -n * ln(p) / (ln2)^2, k = m / n * ln2
+        long numBits = (long) Math.ceil(-n * Math.log(falsePositiveRate)
+                / (Math.log(2) * Math.log(2)));
+        numBits = Math.max(64, Math.min(numBits, (long) Integer.MAX_VALUE));
+        this.bits = new long[(int) ((numBits + 63) / 64)];
+        this.numHashes = Math.max(1, (int) Math.round((double) numBits / n * Math.log(2)));
+    }
+
+    public void put(String value) {
+        put(hash64(value));
+    }
+
+    public void put(ObjectId id) {
+        put(id.longHash());
+    }
+
+    public boolean mightContain(String value) {
+        return mightContain(hash64(value));
+    }
+
+    public boolean mightContain(ObjectId id) {
+        return mightContain(id.longHash());
+    }
+
+    private void put(long hash) {
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        long numBits = (long) bits.length * 64;
+        for (int i = 0; i < numHashes; i += 1) {
+            long bit = Integer.toUnsignedLong(hash1 + i * hash2) % numBits;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    private boolean mightContain(long hash) {
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        long numBits = (long) bits.length * 64;
+        for (int i = 0; i < numHashes; i += 1) {
+            long bit = Integer.toUnsignedLong(hash1 + i * hash2) % numBits;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * FNV-1a over the UTF-8 bytes, followed by a final mix so that
+     * both halves of the result are usable as independent hashes.
+     */
+    private static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -1,21 +1,23 @@
 package gitlet;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
 import java.util.*;
 
-import static gitlet.Utils.*;
-
 /**
  * Represents a gitlet commit object.
  *
  * @author Linde
  */
 public class Commit implements Serializable {
+    /**
+     * the one the first version of gitlet got from the JVM, whose commits
+     * kept their files in a TreeMap of filename -> hex blob sha1 and their
+     * parents as hex Strings. pinning it lets readObject() read those commits.
+     */
+    private static final long serialVersionUID = 4944327343843691329L;
+
     /**
      * The message of this Commit.
      */
@@ -35,20 +37,110 @@ public class Commit implements Serializable {
     }
 
     /**
-     * where store the mapping of filename and its blob
+     * the sha1 of the root tree, i.e. the serialized mapping of filename and
+     * its blob, a tree object per directory in the object store, see
+     * DirectoryTrees. null for a commit of the first version of gitlet,
+     * whose files are in the commit itself, see readObject().
+     */
+    private ObjectId treeSha1;
+
+    /**
+     * where store the mapping of filename and its blob, see FileTable.
+     * <p>
+     * it is transient, i.e. it is not serialized with the commit, so reading
+     * a commit only reads the message, timestamp and parents (that is all
+     * log, find and global-log need), and the table is read from the tree
+     * file the first time someone calls getFiles().
+     */
+    private transient FileTable files;
+
+    /**
+     * the object store of the repository the commit belongs to, where the
+     * tree is read from and the blobs and the tree are written to. it is
+     * set by the repository when it reads or creates the commit.
+     */
+    private transient ObjectStore objects;
+
+    void setObjectStore(ObjectStore objects) {
+        this.objects = objects;
+    }
+
+    /**
+     * until writeTree() is called, what is different from the tree of
+     * treeSha1, i.e. the commit this one was made from: path -> the new
+     * blob, or null if the file is gone. writeTree() only writes the trees
+     * of their directories. null if we do not know, then every tree is
+     * written.
+     */
+    private transient SortedMap<String, ObjectId> changes;
+
+    public FileTable getFiles() {
+        if (files == null) {
+            files = DirectoryTrees.read(objects, treeSha1);
+            if (changes != null && !changes.isEmpty()) {
+                FileTable.Builder builder = files.toBuilder();
+                for (Map.Entry<String, ObjectId> change : changes.entrySet()) {
+                    builder.put(change.getKey(), change.getValue());
+                }
+                files = builder.build();
+            }
+        }
+        return files;
+    }
+
+    /**
+     * the files of the commit that are in a sparse checkout. unless the
+     * files are read already, it only reads the trees of the directories
+     * the sparse checkout can have files in.
+     */
+    public FileTable getFiles(SparseCheckout sparse) {
+        if (sparse.isFull() || files != null || (changes != null && !changes.isEmpty())) {
+            return sparse.filter(getFiles());
+        }
+        return DirectoryTrees.read(objects, treeSha1, sparse);
+    }
+
+    /**
+     * the blob of one file, or null if the commit does not have it. unless
+     * the files are read already, it only reads the trees of the
+     * directories the file is in.
+     */
+    public ObjectId getFile(String path) {
+        if (files != null || (changes != null && !changes.isEmpty())) {
+            return getFiles().get(path);
+        }
+        return DirectoryTrees.lookup(objects, treeSha1, path);
+    }
+
+    /**
+     * @return the sha1 of the root tree, or null if the commit was made by
+     * the first version of gitlet and has no tree, then getFiles() has its files
      */
-    private TreeMap<String, String> map;
+    public ObjectId getTreeSha1() {
+        return treeSha1;
+    }
 
-    public TreeMap<String, String> getMap() {
-        return map;
+    /**
+     * write the trees of the table to the object store, see DirectoryTrees,
+     * and remember the sha1 of the root tree. it must be called before the
+     * commit is serialized, since the commit only stores the sha1 of its tree.
+     * until then treeSha1 is the tree of the commit this one was made from.
+     */
+    public void writeTree() {
+        if (treeSha1 == null || changes == null) {
+            treeSha1 = DirectoryTrees.write(objects, getFiles());
+        } else if (!changes.isEmpty()) {
+            treeSha1 = DirectoryTrees.write(objects, treeSha1, changes);
+        }
+        changes = Collections.emptySortedMap();
     }
 
     /**
      * where store the sha1 values of parents of this commit
      */
-    private List<String> parentSha1List;
+    private List<ObjectId> parentSha1List;
 
-    public List<String> getParentSha1List() {
+    public List<ObjectId> getParentSha1List() {
         return parentSha1List;
     }
 
@@ -64,95 +156,81 @@ public class Commit implements Serializable {
     public Commit(String message) {
         this.timeStamp = new Date(0);
         this.message = message;
-        this.map = new TreeMap<>();
+        this.files = FileTable.EMPTY;
         this.parentSha1List = new ArrayList<>();
     }
 
     /**
-     * when we create a new commit, we will clone a parent commit
-     * and modify it, its message, parent, filename->fileSha1 mapping
-     * should be modified, and it should add new blobs to blobsDir.
-     * It may remove some filename->fileSha1 mapping,
-     * since in the new commit some files in parent commit will be untracked
+     * when we create a new commit, we will clone a parent commit and modify
+     * it: its message, its parents and its filename->fileSha1 mapping, e.g.
+     * the parent's files as the staging area changes them, or the result of
+     * a merge. every blob in files is already in the object store, add()
+     * writes the blob of a file when it is staged.
+     *
+     * @param changedPaths the paths whose blob differs from the commit we
+     *                     cloned
      */
-    public void modifyCommit(String message, List<String> parentSha1List,
-                             File stagedForAddDir, File blobsDir, File stagedForRemoveDir) {
+    public void modifyCommit(String message, List<ObjectId> parentSha1List, FileTable files,
+                             Collection<String> changedPaths) {
         this.message = message;
         this.timeStamp = new Date();
-        // this.parentSha1List is copied from its parent,
-        // it needs to be flushed
         this.parentSha1List = parentSha1List;
-        try {
-            addBlobsToCommit(stagedForAddDir, blobsDir);
-            removeBlobsFromCommit(stagedForRemoveDir);
-        } catch (IOException excp) {
-            throw new GitletException(excp.getMessage());
+        this.files = files;
+        this.changes = new TreeMap<>(FileTable.PATH_ORDER);
+        for (String path : changedPaths) {
+            changes.put(path, files.get(path));
         }
-
     }
 
     /**
-     * Add files into commit.
-     * <p>
-     * Recall that Repository.add() have make sure that the
-     * files in stagedForAdd is "tracked but be modified" or "untracked".
-     * <p>
-     * this function will put the filename->fileSha1 mapping into this commit.
-     * and copy files from the stagedForAdd directory
-     * to the .gitlet/blobs directory,
-     * <p>
-     * e.g.
-     * hello.txt's sha1 is 7afbac, we call it hello.txt version 1,
-     * when this function is executed, we will create a mapping hello.txt->7afbac
-     * and the content of hello.txt will be stored at .gitlet/blobs/7afbac,
-     * <p>
-     * now we modify the content of hello.txt, its sha1 is a127db,
-     * we call it hello.txt version 2, when this function is executed,
-     * we will update the mapping hello.txt->a127db,
-     * and the content of hello.txt will be stored at .gitlet/blobs/a127db
-     */
-    public void addBlobsToCommit(File stagedForAddDir, File blobsDir) throws IOException {
-        for (File stagedFile : Objects.requireNonNull(stagedForAddDir.listFiles())) {
-            String stagedFileSha1 = sha1((Object) readContents(stagedFile));
-            String stagedFileName = stagedFile.getName();
-            // Recall that Repository.add() have make sure that the
-            // files in stagedForAdd are "tracked but be modified" or "untracked".
-
-            // if it is tracked, it must be modified
-            if (map.containsKey(stagedFileName)) {
-                String oldSha1Value = map.get(stagedFileName);
-                // we can only replace the reference, we can not replace the blob
-                // because other commit may refer the blob
-                map.replace(stagedFileName, oldSha1Value, stagedFileSha1);
-            } else {
-                map.put(stagedFileName, stagedFileSha1);
-            }
-
-            Path src = stagedFile.toPath();
-            Path dest = join(blobsDir, stagedFileSha1).toPath();
-            try {
-                Files.copy(src, dest, StandardCopyOption.REPLACE_EXISTING);
-            } catch (IOException excp) {
-                throw new GitletException(excp.getMessage());
+     * like modifyCommit() above, but the files of the new commit are only
+     * the changes to the commit we cloned, so it is never read as a whole.
+     * that is what the staging area gives us.
+     *
+     * @param changes path -> the new blob, or null if the file is gone
+     */
+    public void modifyCommit(String message, List<ObjectId> parentSha1List,
+                             SortedMap<String, ObjectId> changes) {
+        this.message = message;
+        this.timeStamp = new Date();
+        this.parentSha1List = parentSha1List;
+        if (treeSha1 == null) {
+            // there is no tree to apply the changes to, writeTree() writes them all
+            FileTable.Builder builder = getFiles().toBuilder();
+            for (Map.Entry<String, ObjectId> change : changes.entrySet()) {
+                builder.put(change.getKey(), change.getValue());
             }
-
+            this.files = builder.build();
+        } else {
+            this.files = null;
         }
+        this.changes = changes;
     }
 
-
     /**
-     * if there are files in stageForRemoveDir,
-     * remove their reference from the current Commit,
-     * we can not remove the blobs, because other commit may refer it.
-     * <p>
-     * recall that Repository.remove() have make sure that the
-     * files in stagedForRemoveDir exist in the current commit.
-     * <p>
+     * a commit written by the first version of gitlet has no treeSha1 but
+     * a map of filename -> hex blob sha1, and its parents are hex Strings.
+     * the map becomes the files of the commit, and its tree is written when
+     * a new commit is made from it, so its sha1 (the one of its file) stays
+     * the same.
      */
-    public void removeBlobsFromCommit(File stagedForRemoveDir) {
-        for (File fileInStagedDir : Objects.requireNonNull(stagedForRemoveDir.listFiles())) {
-            this.map.remove(fileInStagedDir.getName());
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        message = (String) fields.get("message", null);
+        timeStamp = (Date) fields.get("timeStamp", null);
+        treeSha1 = (ObjectId) fields.get("treeSha1", null);
+        parentSha1List = new ArrayList<>();
+        for (Object parentSha1 : (List<?>) fields.get("parentSha1List", null)) {
+            parentSha1List.add(parentSha1 instanceof String
+                    ? ObjectId.fromHex((String) parentSha1) : (ObjectId) parentSha1);
+        }
+        if (treeSha1 == null) {
+            Map<?, ?> map = (Map<?, ?>) fields.get("map", null);
+            FileTable.Builder builder = FileTable.EMPTY.toBuilder();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                builder.put((String) entry.getKey(), ObjectId.fromHex((String) entry.getValue()));
+            }
+            files = builder.build();
         }
     }
-
 }
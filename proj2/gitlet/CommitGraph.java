@@ -0,0 +1,587 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+import static gitlet.Utils.*;
+
+/**
+ * The commit graph, stored at .gitlet/commit-graph.
+ * <p>
+ * Every commit gets a position, parents always have a smaller position than
+ * their children (we only ever append a commit after its parents). For every
+ * position we keep the sha1, the positions of the parents and the timestamp,
+ * so walking the history does not need to deserialize a single Commit.
+ * <p>
+ * For some commits (the branch heads, and every CHECKPOINT_INTERVAL-th commit)
+ * we also keep a reachability bitmap: bit i is set if the commit at
+ * position i is an ancestor of (or is) this commit. Then
+ * <p>
+ * "is A an ancestor of B"       -> bitmap(B).get(A)
+ * merge base of A and B         -> the highest bit of bitmap(A) AND bitmap(B)
+ * number of commits in A..B     -> cardinality of bitmap(B) AND NOT bitmap(A)
+ * <p>
+ * The bitmap of a commit without a stored bitmap is computed by walking
+ * down the graph until we hit commits that have one.
+ * <p>
+ * Every commit also has a BloomFilter of the paths it changed compared with
+ * its first parent, so "log -- A.txt" can skip most commits without
+ * deserializing them: if the filter says no, the commit did not touch A.txt.
+ * <p>
+ * A new commit is not written into the graph file, that would read and
+ * write the whole history for every commit. It is appended to
+ * .gitlet/commit-graph-log instead, one record per commit:
+ * <pre>
+ *     [length of the payload: int] [CRC32 of the payload: int]
+ *     [sha1] [timestamp: long] [number of parents: int] [parent sha1s]
+ *     [number of changed paths: int, -1 if too many] [changed paths: UTF]
+ * </pre>
+ * load() adds the commits of the log to the graph it has read, and writes
+ * the whole graph again once the log has MAX_LOG_RECORDS commits. A record
+ * only repeats what is in the commit, so losing one (e.g. to a concurrent
+ * save()) costs nothing but reading the commit again in ensure().
+ *
+ * @author Linde
+ */
+public class CommitGraph implements Serializable {
+
+    private static final long serialVersionUID = -5981556687996484821L;
+
+    /**
+     * The name of the file in .gitlet
+     */
+    public static final String FILENAME = "commit-graph";
+
+    /**
+     * The name of the file in .gitlet the new commits are appended to
+     */
+    public static final String LOG_FILENAME = "commit-graph-log";
+
+    /**
+     * load() writes the whole graph once the log has more commits than this
+     */
+    private static final int MAX_LOG_RECORDS = 256;
+
+    private static final int LOG_RECORD_HEADER_LENGTH = 8;
+
+    /**
+     * the threads of this process append to the log one at a time, a FileLock
+     * only keeps other processes out
+     */
+    private static final Object LOG_LOCK = new Object();
+
+    /**
+     * every CHECKPOINT_INTERVAL-th commit keeps its bitmap even when it is not a branch head
+     */
+    private static final int CHECKPOINT_INTERVAL = 64;
+
+    private static final int[] NO_PARENTS = new int[0];
+
+    /**
+     * a commit that changed more paths than this gets no changed-path filter,
+     * i.e. it has to be checked by comparing the file maps
+     */
+    private static final int MAX_CHANGED_PATHS = 512;
+
+    private static final double CHANGED_PATHS_FALSE_POSITIVE_RATE = 0.01;
+
+    /**
+     * position -> sha1 of the commit
+     */
+    private final ArrayList<ObjectId> sha1s = new ArrayList<>();
+
+    /**
+     * sha1 of the commit -> position
+     */
+    private final HashMap<ObjectId, Integer> positions = new HashMap<>();
+
+    /**
+     * position -> positions of the parents
+     */
+    private final ArrayList<int[]> parents = new ArrayList<>();
+
+    /**
+     * position -> timestamp of the commit in millis
+     */
+    private final ArrayList<Long> timestamps = new ArrayList<>();
+
+    /**
+     * position -> compressed reachability bitmap, only for selected commits
+     */
+    private final TreeMap<Integer, long[]> bitmaps = new TreeMap<>();
+
+    /**
+     * position -> filter of the paths changed since the first parent,
+     * null if the commit changed too many paths
+     */
+    private final ArrayList<BloomFilter> changedPaths = new ArrayList<>();
+
+    /**
+     * where the commits are read from when ensure() meets one that is not in
+     * the graph yet, null for a graph that only lives in memory
+     */
+    private transient GitletRepository repository;
+
+    /**
+     * how much of the log this graph has, save() empties the log only
+     * if nobody has appended to it since
+     */
+    private transient long logSize;
+
+    /**
+     * a graph that only lives in memory, every commit must be added with its parents
+     */
+    public CommitGraph() {
+    }
+
+    public CommitGraph(GitletRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * read .gitlet/commit-graph and add the commits of its log, if it does not
+     * exist (e.g. the repo was created by an older gitlet, or gc has just
+     * deleted it), build it.
+     */
+    public static CommitGraph load(GitletRepository repository) {
+        File graphFile = join(repository.getGitletDir(), FILENAME);
+        if (graphFile.exists()) {
+            CommitGraph graph = readObject(graphFile, CommitGraph.class);
+            graph.repository = repository;
+            if (graph.readLog()) {
+                graph.save();
+            }
+            return graph;
+        }
+        CommitGraph graph = rebuild(repository);
+        graph.save();
+        return graph;
+    }
+
+    /**
+     * build the graph from scratch from every commit in the object store
+     */
+    public static CommitGraph rebuild(GitletRepository repository) {
+        CommitGraph graph = new CommitGraph(repository);
+        // a commit is written before its record, so the commits of the
+        // log so far are all in the object store
+        graph.logSize = join(repository.getGitletDir(), LOG_FILENAME).length();
+        for (ObjectId commitSha1 : repository.listAllCommitSha1s()) {
+            graph.ensure(commitSha1);
+        }
+        return graph;
+    }
+
+    /**
+     * append a freshly created commit to .gitlet/commit-graph-log, without
+     * reading the graph. its parents must be in the object store.
+     *
+     * @param changedPathsOfCommit the paths whose blob differs from the first parent
+     */
+    public static void append(GitletRepository repository, ObjectId commitSha1, Commit commit,
+                              Collection<String> changedPathsOfCommit) {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(payload)) {
+            out.write(commitSha1.toRaw());
+            out.writeLong(commit.getTimeStamp().getTime());
+            List<ObjectId> parentSha1List = commit.getParentSha1List();
+            out.writeInt(parentSha1List.size());
+            for (ObjectId parentSha1 : parentSha1List) {
+                out.write(parentSha1.toRaw());
+            }
+            if (changedPathsOfCommit.size() > MAX_CHANGED_PATHS) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(changedPathsOfCommit.size());
+                for (String path : changedPathsOfCommit) {
+                    out.writeUTF(path);
+                }
+            }
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(payload.toByteArray());
+        ByteBuffer record = ByteBuffer.allocate(LOG_RECORD_HEADER_LENGTH + payload.size());
+        record.putInt(payload.size()).putInt((int) checksum.getValue()).put(payload.toByteArray()).flip();
+
+        File logFile = join(repository.getGitletDir(), LOG_FILENAME);
+        synchronized (LOG_LOCK) {
+            try (FileChannel channel = FileChannel.open(logFile.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock = channel.lock();
+                try {
+                    long position = channel.size();
+                    while (record.hasRemaining()) {
+                        position += channel.write(record, position);
+                    }
+                } finally {
+                    lock.release();
+                }
+            } catch (IOException excp) {
+                throw new GitletException(excp.getMessage());
+            }
+        }
+    }
+
+    /**
+     * add the commits of the log to the graph. a record that is cut off ends
+     * the log, it is still being written or its writer has died.
+     *
+     * @return true if the graph should be written again, because the log
+     * is long or has a broken record
+     */
+    private boolean readLog() {
+        File logFile = join(repository.getGitletDir(), LOG_FILENAME);
+        if (!logFile.exists()) {
+            return false;
+        }
+        byte[] log = readContents(logFile);
+        logSize = log.length;
+        ByteBuffer buffer = ByteBuffer.wrap(log);
+        int records = 0;
+        while (buffer.remaining() >= LOG_RECORD_HEADER_LENGTH) {
+            int payloadLength = buffer.getInt();
+            int expectedChecksum = buffer.getInt();
+            if (payloadLength < 0 || payloadLength > buffer.remaining()) {
+                return records > MAX_LOG_RECORDS;
+            }
+            CRC32 checksum = new CRC32();
+            checksum.update(log, buffer.position(), payloadLength);
+            if ((int) checksum.getValue() != expectedChecksum) {
+                return true;
+            }
+            try {
+                addLogRecord(new DataInputStream(
+                        new ByteArrayInputStream(log, buffer.position(), payloadLength)));
+            } catch (IOException excp) {
+                return true;
+            }
+            buffer.position(buffer.position() + payloadLength);
+            records += 1;
+        }
+        return records > MAX_LOG_RECORDS;
+    }
+
+    private void addLogRecord(DataInputStream in) throws IOException {
+        byte[] raw = new byte[ObjectId.RAW_LENGTH];
+        in.readFully(raw);
+        ObjectId commitSha1 = ObjectId.fromRaw(raw, 0);
+        long timestamp = in.readLong();
+        List<ObjectId> parentSha1List = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i -= 1) {
+            in.readFully(raw);
+            ObjectId parentSha1 = ObjectId.fromRaw(raw, 0);
+            if (ensure(parentSha1) < 0) {
+                // gc has removed it since
+                return;
+            }
+            parentSha1List.add(parentSha1);
+        }
+        int numChangedPaths = in.readInt();
+        List<String> changedPathsOfCommit = null;
+        if (numChangedPaths >= 0) {
+            changedPathsOfCommit = new ArrayList<>(numChangedPaths);
+            for (int i = 0; i < numChangedPaths; i += 1) {
+                changedPathsOfCommit.add(in.readUTF());
+            }
+        }
+        add(commitSha1, parentSha1List, timestamp, changedPathsOfCommit);
+    }
+
+    /**
+     * refresh the bitmaps of the branch heads, write the graph to disk, and
+     * empty the log if it has nothing the graph does not have.
+     * the graph is written to a temporary file first and then renamed, since
+     * two readers that both find no graph both build and save one.
+     */
+    public void save() {
+        selectBitmaps(repository.getAllBranchHeads());
+        File gitletDir = repository.getGitletDir();
+        try {
+            File tempFile = File.createTempFile(FILENAME, ".tmp", gitletDir);
+            writeObject(tempFile, this);
+            Files.move(tempFile.toPath(), join(gitletDir, FILENAME).toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+        File logFile = join(gitletDir, LOG_FILENAME);
+        if (!logFile.exists()) {
+            return;
+        }
+        synchronized (LOG_LOCK) {
+            try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE)) {
+                FileLock lock = channel.lock();
+                try {
+                    if (channel.size() == logSize) {
+                        channel.truncate(0);
+                        logSize = 0;
+                    }
+                } finally {
+                    lock.release();
+                }
+            } catch (IOException excp) {
+                throw new GitletException(excp.getMessage());
+            }
+        }
+    }
+
+    public int size() {
+        return sha1s.size();
+    }
+
+    public ObjectId sha1At(int position) {
+        return sha1s.get(position);
+    }
+
+    public int[] parentsAt(int position) {
+        return parents.get(position);
+    }
+
+    public long timestampAt(int position) {
+        return timestamps.get(position);
+    }
+
+    /**
+     * @return false if the commit at position certainly did not change the path
+     * compared with its first parent, true if it may have changed it
+     */
+    public boolean mayHaveChangedPath(int position, String path) {
+        BloomFilter filter = changedPaths.get(position);
+        return filter == null || filter.mightContain(path);
+    }
+
+    /**
+     * @return the position of the commit, or -1 if it is not in the graph
+     */
+    public int positionOf(ObjectId commitSha1) {
+        Integer position = positions.get(commitSha1);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * append a commit that we know nothing more about, the changed paths
+     * are found by comparing it with its first parent.
+     *
+     * @return the position of the commit
+     */
+    public int add(ObjectId commitSha1, Commit commit) {
+        return add(commitSha1, commit, getChangedPaths(commit));
+    }
+
+    /**
+     * append a freshly created commit, its parents must already be in the graph.
+     * setUpCommit() knows what it has changed (the staged files),
+     * so it does not need to compare the file maps.
+     *
+     * @return the position of the commit
+     */
+    public int add(ObjectId commitSha1, Commit commit, Collection<String> changedPathsOfCommit) {
+        return add(commitSha1, commit.getParentSha1List(),
+                commit.getTimeStamp().getTime(), changedPathsOfCommit);
+    }
+
+    /**
+     * append a commit given only what the graph keeps about it,
+     * its parents must already be in the graph (or on disk).
+     *
+     * @param changedPathsOfCommit null if the commit changed too many paths to keep
+     *
+     * @return the position of the commit
+     */
+    public int add(ObjectId commitSha1, List<ObjectId> parentSha1List, long timestamp,
+                   Collection<String> changedPathsOfCommit) {
+        Integer existing = positions.get(commitSha1);
+        if (existing != null) {
+            return existing;
+        }
+        int[] parentPositions = parentSha1List.isEmpty() ? NO_PARENTS : new int[parentSha1List.size()];
+        for (int i = 0; i < parentPositions.length; i += 1) {
+            parentPositions[i] = ensure(parentSha1List.get(i));
+        }
+
+        int position = sha1s.size();
+        sha1s.add(commitSha1);
+        positions.put(commitSha1, position);
+        parents.add(parentPositions);
+        timestamps.add(timestamp);
+        changedPaths.add(buildChangedPathFilter(changedPathsOfCommit));
+        if (position % CHECKPOINT_INTERVAL == 0) {
+            bitmaps.put(position, CompressedBitmap.compress(reachableFrom(position)));
+        }
+        return position;
+    }
+
+    /**
+     * make sure the commit and all its ancestors are in the graph.
+     * we can not simply recurse, the history may be very deep,
+     * so we keep an explicit stack of commits waiting for their parents.
+     *
+     * @return the position of the commit, or -1 if there is no such commit
+     */
+    public int ensure(ObjectId commitSha1) {
+        if (positions.containsKey(commitSha1)) {
+            return positions.get(commitSha1);
+        }
+        if (repository == null
+                || !repository.getObjectStore().contains(ObjectStore.Kind.COMMIT, commitSha1)) {
+            return -1;
+        }
+
+        Deque<ObjectId> stack = new ArrayDeque<>();
+        Map<ObjectId, Commit> pending = new HashMap<>();
+        stack.push(commitSha1);
+        while (!stack.isEmpty()) {
+            ObjectId sha1 = stack.peek();
+            if (positions.containsKey(sha1)) {
+                stack.pop();
+                continue;
+            }
+            Commit commit = pending.get(sha1);
+            if (commit == null) {
+                commit = repository.readCommit(sha1);
+                pending.put(sha1, commit);
+            }
+            boolean allParentsAdded = true;
+            for (ObjectId parentSha1 : commit.getParentSha1List()) {
+                if (!positions.containsKey(parentSha1)) {
+                    allParentsAdded = false;
+                    stack.push(parentSha1);
+                }
+            }
+            if (allParentsAdded) {
+                stack.pop();
+                pending.remove(sha1);
+                add(sha1, commit);
+            }
+        }
+        return positions.get(commitSha1);
+    }
+
+    /**
+     * @return bit i is set if the commit at position i is reachable from
+     * the commit at the given position (the commit itself included)
+     */
+    public BitSet reachableFrom(int position) {
+        BitSet result = new BitSet(size());
+        Deque<Integer> stack = new ArrayDeque<>();
+        result.set(position);
+        stack.push(position);
+        while (!stack.isEmpty()) {
+            int current = stack.pop();
+            long[] bitmap = bitmaps.get(current);
+            if (bitmap != null) {
+                // everything below this commit is already known
+                result.or(CompressedBitmap.decompress(bitmap));
+                continue;
+            }
+            for (int parent : parents.get(current)) {
+                if (!result.get(parent)) {
+                    result.set(parent);
+                    stack.push(parent);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return true if ancestorSha1 is reachable from descendantSha1,
+     * a commit counts as its own ancestor
+     */
+    public boolean isAncestor(ObjectId ancestorSha1, ObjectId descendantSha1) {
+        int ancestor = ensure(ancestorSha1);
+        int descendant = ensure(descendantSha1);
+        if (ancestor < 0 || descendant < 0 || ancestor > descendant) {
+            // a parent always has a smaller position than its children
+            return false;
+        }
+        return reachableFrom(descendant).get(ancestor);
+    }
+
+    /**
+     * the latest common ancestor of two commits.
+     * every common ancestor is in bitmap(A) AND bitmap(B), since an ancestor
+     * always has a smaller position than its descendants, the common ancestor
+     * with the highest position can not be an ancestor of another common
+     * ancestor, so it is one of the latest common ancestors.
+     *
+     * @return the sha1 of the split point, or null if there is none
+     */
+    public ObjectId mergeBase(ObjectId commitSha1, ObjectId otherCommitSha1) {
+        BitSet common = reachableFrom(ensure(commitSha1));
+        common.and(reachableFrom(ensure(otherCommitSha1)));
+        int latest = common.length() - 1;
+        return latest < 0 ? null : sha1s.get(latest);
+    }
+
+    /**
+     * @return the number of commits reachable from toSha1 but not from fromSha1,
+     * i.e. what "git rev-list --count from..to" prints
+     */
+    public int countCommitsBetween(ObjectId fromSha1, ObjectId toSha1) {
+        BitSet between = reachableFrom(ensure(toSha1));
+        between.andNot(reachableFrom(ensure(fromSha1)));
+        return between.cardinality();
+    }
+
+    /**
+     * keep the bitmaps of the checkpoints and of the given heads, drop the others
+     * (e.g. the bitmap of the previous head of a branch).
+     */
+    private void selectBitmaps(Collection<ObjectId> headSha1s) {
+        Set<Integer> headPositions = new HashSet<>();
+        for (ObjectId headSha1 : headSha1s) {
+            int position = ensure(headSha1);
+            if (position >= 0) {
+                headPositions.add(position);
+            }
+        }
+        bitmaps.keySet().removeIf(position -> position % CHECKPOINT_INTERVAL != 0
+                && !headPositions.contains(position));
+        for (int position : headPositions) {
+            if (!bitmaps.containsKey(position)) {
+                bitmaps.put(position, CompressedBitmap.compress(reachableFrom(position)));
+            }
+        }
+    }
+
+    private static BloomFilter buildChangedPathFilter(Collection<String> paths) {
+        if (paths == null || paths.size() > MAX_CHANGED_PATHS) {
+            return null;
+        }
+        BloomFilter filter = new BloomFilter(paths.size(), CHANGED_PATHS_FALSE_POSITIVE_RATE);
+        for (String path : paths) {
+            filter.put(path);
+        }
+        return filter;
+    }
+
+    /**
+     * the paths whose blob differs between the commit and its first parent,
+     * a path that only exists on one side counts as changed too
+     */
+    private Collection<String> getChangedPaths(Commit commit) {
+        List<ObjectId> parentSha1List = commit.getParentSha1List();
+        if (parentSha1List.isEmpty()) {
+            return commit.getFiles().paths();
+        }
+        Commit parent = repository.readCommit(parentSha1List.get(0));
+        if (commit.getTreeSha1() == null || parent.getTreeSha1() == null) {
+            // a commit of the first version of gitlet has its files but no tree
+            return DirectoryTrees.changedPaths(commit.getFiles(), parent.getFiles());
+        }
+        // the directories whose tree did not change are not read
+        return DirectoryTrees.changedPaths(repository.getObjectStore(), commit.getTreeSha1(),
+                parent.getTreeSha1());
+    }
+
+}
@@ -0,0 +1,95 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * An EWAH-style (Enhanced Word-Aligned Hybrid) run-length encoding of a BitSet.
+ * <p>
+ * The bits are cut into 64-bit words. A word that is all 0s or all 1s is
+ * "clean", anything else is a "literal". The encoded form is a list of
+ * marker words, each one followed by its literal words:
+ * <p>
+ * marker = [1 bit: the bit of the clean run]
+ * [31 bits: how many clean words]
+ * [32 bits: how many literal words follow the marker]
+ * <p>
+ * e.g. the reachability bitmap of a commit in a long linear history is
+ * all 1s, so it is encoded in a single marker word however long it is.
+ * We only compress for storage, set operations are done on decoded BitSets.
+ *
+ * @author Linde
+ */
+public class CompressedBitmap {
+
+    private static final long MAX_RUN_LENGTH = (1L << 31) - 1;
+
+    private static final long MAX_LITERAL_COUNT = (1L << 32) - 1;
+
+    public static long[] compress(BitSet bitSet) {
+        long[] words = bitSet.toLongArray();
+        List<Long> encoded = new ArrayList<>();
+        int i = 0;
+        while (i < words.length) {
+            long runBit = words[i] == -1L ? 1 : 0;
+            long runLength = 0;
+            while (i < words.length && runLength < MAX_RUN_LENGTH
+                    && isClean(words[i]) && (words[i] == -1L) == (runBit == 1)) {
+                runLength += 1;
+                i += 1;
+            }
+            int literalStart = i;
+            while (i < words.length && i - literalStart < MAX_LITERAL_COUNT
+                    && !isClean(words[i])) {
+                i += 1;
+            }
+            long literalCount = i - literalStart;
+            encoded.add((runBit << 63) | (runLength << 32) | literalCount);
+            for (int j = literalStart; j < i; j += 1) {
+                encoded.add(words[j]);
+            }
+        }
+
+        long[] result = new long[encoded.size()];
+        for (int j = 0; j < result.length; j += 1) {
+            result[j] = encoded.get(j);
+        }
+        return result;
+    }
+
+    public static BitSet decompress(long[] encoded) {
+        // first pass: how many words do we need?
+        int numWords = 0;
+        for (int i = 0; i < encoded.length; ) {
+            long marker = encoded[i];
+            int literalCount = (int) (marker & MAX_LITERAL_COUNT);
+            numWords += runLengthOf(marker) + literalCount;
+            i += 1 + literalCount;
+        }
+
+        long[] words = new long[numWords];
+        int w = 0;
+        for (int i = 0; i < encoded.length; ) {
+            long marker = encoded[i];
+            long runWord = (marker >>> 63) == 1 ? -1L : 0L;
+            int runLength = runLengthOf(marker);
+            int literalCount = (int) (marker & MAX_LITERAL_COUNT);
+            for (int j = 0; j < runLength; j += 1) {
+                words[w++] = runWord;
+            }
+            System.arraycopy(encoded, i + 1, words, w, literalCount);
+            w += literalCount;
+            i += 1 + literalCount;
+        }
+        return BitSet.valueOf(words);
+    }
+
+    private static int runLengthOf(long marker) {
+        return (int) ((marker >>> 32) & MAX_RUN_LENGTH);
+    }
+
+    private static boolean isClean(long word) {
+        return word == 0L || word == -1L;
+    }
+}
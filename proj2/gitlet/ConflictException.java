@@ -0,0 +1,17 @@
+package gitlet;
+
+/**
+ * A command would overwrite or lose something that is already there: an
+ * untracked file, uncommitted changes, an existing branch or repository.
+ * The message is the one the command line prints.
+ *
+ * @author Linde
+ */
+public class ConflictException extends GitletException {
+
+    private static final long serialVersionUID = 1L;
+
+    ConflictException(String msg) {
+        super(msg);
+    }
+}
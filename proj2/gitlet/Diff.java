@@ -0,0 +1,275 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A line diff of two RawTexts, Myers' O(ND) algorithm in its linear space
+ * version ("An O(ND) Difference Algorithm and Its Variations", section 4b).
+ * <p>
+ * Instead of remembering every path, we look for the middle snake of the
+ * shortest edit script, i.e. the diagonal the forward and the backward search
+ * meet on, then diff the part before it and the part after it. The parts are
+ * kept on an explicit stack, there is no recursion. Common lines at the start
+ * and the end of every part are skipped first, that is usually most of a file.
+ * <p>
+ * Myers is O((N + M) * D), which is too slow for a big file with edits all
+ * over it. So a big part is first split at a line that occurs exactly once
+ * on both sides, close to its middle (the idea of the patience diff), and
+ * Myers only runs on parts of at most ANCHOR_THRESHOLD lines. The result
+ * is still a correct diff, it is just not always the shortest one.
+ *
+ * @author Linde
+ */
+public class Diff {
+
+    /**
+     * A region that differs: lines [beginA, endA) of a were replaced with
+     * lines [beginB, endB) of b. beginA == endA is an insertion,
+     * beginB == endB a deletion.
+     */
+    public static class Edit {
+
+        public final int beginA;
+
+        public final int endA;
+
+        public final int beginB;
+
+        public final int endB;
+
+        public Edit(int beginA, int endA, int beginB, int endB) {
+            this.beginA = beginA;
+            this.endA = endA;
+            this.beginB = beginB;
+            this.endB = endB;
+        }
+
+        @Override
+        public String toString() {
+            return "Edit[" + beginA + "-" + endA + "," + beginB + "-" + endB + "]";
+        }
+    }
+
+    /**
+     * parts with more lines than this (both sides together) are split at a unique line first
+     */
+    static final int ANCHOR_THRESHOLD = 4096;
+
+    /**
+     * @return the edits that turn a into b, sorted, and no two of them touch each other
+     */
+    public static List<Edit> diff(RawText a, RawText b) {
+        List<Edit> edits = new ArrayList<>();
+        // every part is {beginA, endA, beginB, endB}, the part on top of the stack
+        // is the leftmost one, so the edits are found in order
+        Deque<int[]> parts = new ArrayDeque<>();
+        parts.push(new int[]{0, a.size(), 0, b.size()});
+        while (!parts.isEmpty()) {
+            int[] part = parts.pop();
+            int beginA = part[0];
+            int endA = part[1];
+            int beginB = part[2];
+            int endB = part[3];
+            while (beginA < endA && beginB < endB && a.lineEquals(beginA, b, beginB)) {
+                beginA += 1;
+                beginB += 1;
+            }
+            while (beginA < endA && beginB < endB && a.lineEquals(endA - 1, b, endB - 1)) {
+                endA -= 1;
+                endB -= 1;
+            }
+            if (beginA == endA || beginB == endB) {
+                if (beginA < endA || beginB < endB) {
+                    addEdit(edits, beginA, endA, beginB, endB);
+                }
+                continue;
+            }
+            int[] split = null;
+            if ((endA - beginA) + (endB - beginB) > ANCHOR_THRESHOLD) {
+                split = findUniqueLine(a, beginA, endA, b, beginB, endB);
+            }
+            if (split != null) {
+                // line split[0] of a is line split[1] of b, they are not part of any edit
+                parts.push(new int[]{split[0] + 1, endA, split[1] + 1, endB});
+                parts.push(new int[]{beginA, split[0], beginB, split[1]});
+            } else {
+                int[] snake = middleSnake(a, beginA, endA, b, beginB, endB);
+                parts.push(new int[]{snake[2], endA, snake[3], endB});
+                parts.push(new int[]{beginA, snake[0], beginB, snake[1]});
+            }
+        }
+        return edits;
+    }
+
+    private static void addEdit(List<Edit> edits, int beginA, int endA, int beginB, int endB) {
+        if (!edits.isEmpty()) {
+            Edit last = edits.get(edits.size() - 1);
+            if (last.endA == beginA && last.endB == beginB) {
+                edits.set(edits.size() - 1, new Edit(last.beginA, endA, last.beginB, endB));
+                return;
+            }
+        }
+        edits.add(new Edit(beginA, endA, beginB, endB));
+    }
+
+    /**
+     * find the middle snake of a[beginA, endA) and b[beginB, endB),
+     * whose first and last lines differ.
+     *
+     * @return {x0, y0, x1, y1}: the snake goes from line x0 of a and y0 of b
+     * to line x1 of a and y1 of b, and there is at least one edit before
+     * (x0, y0) or after (x1, y1)
+     */
+    private static int[] middleSnake(RawText a, int beginA, int endA,
+                                     RawText b, int beginB, int endB) {
+        int n = endA - beginA;
+        int m = endB - beginB;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2;
+        int offset = max + 1;
+        // forward[offset + k] is the furthest x on diagonal k = x - y from (0, 0),
+        // backward[offset + k] the furthest x on diagonal k from (n, m), measured
+        // backwards, i.e. in the coordinates of a and b read from the end
+        int[] forward = new int[2 * max + 3];
+        int[] backward = new int[2 * max + 3];
+        for (int d = 0; d <= max; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])) {
+                    x = forward[offset + k + 1];
+                } else {
+                    x = forward[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                int x0 = x;
+                int y0 = y;
+                while (x < n && y < m && a.lineEquals(beginA + x, b, beginB + y)) {
+                    x += 1;
+                    y += 1;
+                }
+                forward[offset + k] = x;
+                int c = delta - k;
+                if (odd && c >= -(d - 1) && c <= d - 1 && x + backward[offset + c] >= n) {
+                    return new int[]{beginA + x0, beginB + y0, beginA + x, beginB + y};
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && backward[offset + k - 1] < backward[offset + k + 1])) {
+                    x = backward[offset + k + 1];
+                } else {
+                    x = backward[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                int x0 = x;
+                int y0 = y;
+                while (x < n && y < m && a.lineEquals(endA - 1 - x, b, endB - 1 - y)) {
+                    x += 1;
+                    y += 1;
+                }
+                backward[offset + k] = x;
+                int c = delta - k;
+                if (!odd && c >= -d && c <= d && x + forward[offset + c] >= n) {
+                    return new int[]{endA - x, endB - y, endA - x0, endB - y0};
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /**
+     * find a line that occurs exactly once in a[beginA, endA) and exactly once
+     * in b[beginB, endB), as close to the middle of a[beginA, endA) as possible.
+     *
+     * @return {its line in a, its line in b}, or null if there is no such line
+     */
+    private static int[] findUniqueLine(RawText a, int beginA, int endA,
+                                        RawText b, int beginB, int endB) {
+        LineCounter counter = new LineCounter((endA - beginA) + (endB - beginB));
+        for (int i = beginA; i < endA; i += 1) {
+            counter.add(a.hashAt(i), true, i);
+        }
+        for (int j = beginB; j < endB; j += 1) {
+            counter.add(b.hashAt(j), false, j);
+        }
+        int middle = (beginA + endA) >>> 1;
+        for (int distance = 0; middle - distance >= beginA || middle + distance < endA; distance += 1) {
+            for (int i : new int[]{middle - distance, middle + distance}) {
+                if (i < beginA || i >= endA) {
+                    continue;
+                }
+                int j = counter.uniqueMatch(a.hashAt(i));
+                // equal hashes do not mean equal lines
+                if (j >= 0 && a.lineEquals(i, b, j)) {
+                    return new int[]{i, j};
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * line hash -> how often it occurs in a and in b, and where it occurs in b.
+     * an open addressing table over int arrays, since a HashMap of a million
+     * lines would box a million Integers.
+     */
+    private static class LineCounter {
+
+        private final int[] keys;
+
+        private final int[] countsA;
+
+        private final int[] countsB;
+
+        private final int[] linesB;
+
+        private final boolean[] used;
+
+        private final int mask;
+
+        LineCounter(int expectedSize) {
+            int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+            keys = new int[capacity];
+            countsA = new int[capacity];
+            countsB = new int[capacity];
+            linesB = new int[capacity];
+            used = new boolean[capacity];
+            mask = capacity - 1;
+        }
+
+        private int slot(int hash) {
+            int slot = (hash * 0x9e3779b9) & mask;
+            while (used[slot] && keys[slot] != hash) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        void add(int hash, boolean inA, int line) {
+            int slot = slot(hash);
+            used[slot] = true;
+            keys[slot] = hash;
+            if (inA) {
+                countsA[slot] += 1;
+            } else {
+                countsB[slot] += 1;
+                linesB[slot] = line;
+            }
+        }
+
+        /**
+         * @return the line in b of a hash that occurs once in a and once in b, or -1
+         */
+        int uniqueMatch(int hash) {
+            int slot = slot(hash);
+            if (used[slot] && countsA[slot] == 1 && countsB[slot] == 1) {
+                return linesB[slot];
+            }
+            return -1;
+        }
+    }
+}
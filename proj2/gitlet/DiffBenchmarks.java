@@ -0,0 +1,137 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static gitlet.Benchmark.*;
+import static gitlet.Utils.*;
+
+/**
+ * Benchmarks of diff and of finding renames, see Benchmark.
+ *
+ * @author Linde
+ */
+class DiffBenchmarks {
+
+    private DiffBenchmarks() {
+    }
+
+    /**
+     * two trees of n files where every 100th file differs, and a file of n lines
+     * where every 1000th line differs. time finding the changed files by
+     * comparing ids, then the unified diff and the --stat counts of the file.
+     * nothing touches the disk, the diff is written to a null stream.
+     */
+    static void benchmarkDiff(int n) {
+        FileTable.Builder oldBuilder = FileTable.EMPTY.toBuilder();
+        FileTable.Builder newBuilder = FileTable.EMPTY.toBuilder();
+        for (int i = 0; i < n; i += 1) {
+            String path = "file" + i + ".txt";
+            oldBuilder.put(path, fakeSha1(i));
+            newBuilder.put(path, i % 100 == 0 ? fakeSha1(n + i) : fakeSha1(i));
+        }
+        FileTable oldFiles = oldBuilder.build();
+        FileTable newFiles = newBuilder.build();
+        report("changed files of " + n, best(() -> {
+            int changed = 0;
+            FileTable.Join join = new FileTable.Join(oldFiles, newFiles);
+            while (join.next()) {
+                if (!join.sameId(0, 1)) {
+                    changed += 1;
+                }
+            }
+            if (changed != (n + 99) / 100) {
+                throw new IllegalStateException("wrong number of changed files");
+            }
+        }));
+
+        StringBuilder oldContents = new StringBuilder();
+        StringBuilder newContents = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            String line = "line " + i + "\n";
+            oldContents.append(line);
+            newContents.append(i % 1000 == 500 ? "changed " + i + "\n" : line);
+        }
+        byte[] oldBytes = oldContents.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] newBytes = newContents.toString().getBytes(StandardCharsets.UTF_8);
+        for (boolean stat : new boolean[]{false, true}) {
+            report((stat ? "diff --stat " : "diff ") + n + " lines", best(() -> {
+                try {
+                    DiffFormatter formatter = new DiffFormatter(OutputStream.nullOutputStream(), stat);
+                    formatter.format("f.txt", oldBytes, newBytes);
+                    formatter.finish();
+                } catch (IOException excp) {
+                    throw new GitletException(excp.getMessage());
+                }
+            }));
+        }
+    }
+
+    /**
+     * n files of 30 lines are removed, and n files are added, every one of
+     * them a removed file under another name with one line changed. time the
+     * rename detection, and the all pairs comparison it avoids (only the
+     * similarity of every pair, the lines of every file are hashed once).
+     */
+    static void benchmarkRenames(int n) {
+        File dir = join(CWD, "renames");
+        if (dir.exists()) {
+            System.out.println("Please run the benchmark in an empty directory.");
+            System.exit(0);
+        }
+        dir.mkdir();
+        List<File> oldFiles = new ArrayList<>();
+        List<File> newFiles = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            StringBuilder oldContents = new StringBuilder();
+            StringBuilder newContents = new StringBuilder();
+            for (int k = 0; k < 30; k += 1) {
+                String line = "file " + i + " line " + k + " of the benchmark\n";
+                oldContents.append(line);
+                newContents.append(k == 7 ? "a changed line " + i + "\n" : line);
+            }
+            File oldFile = join(dir, "a" + i + ".txt");
+            File newFile = join(dir, "b" + (int) ((long) i * 7919 % n) + "-" + i + ".txt");
+            writeContents(oldFile, oldContents.toString());
+            writeContents(newFile, newContents.toString());
+            oldFiles.add(oldFile);
+            newFiles.add(newFile);
+        }
+
+        report("detect renames of " + n, best(() -> {
+            RenameDetector detector = new RenameDetector((path, blobSha1) -> readContents(join(dir, path)),
+                    (path, blobSha1) -> readContents(join(dir, path)), RenameDetector.DEFAULT_THRESHOLD);
+            for (int i = 0; i < n; i += 1) {
+                detector.addRemoved(oldFiles.get(i).getName(), fakeSha1(i));
+                detector.addAdded(newFiles.get(i).getName(), fakeSha1(n + i));
+            }
+            if (detector.compute(false).size() != n) {
+                throw new IllegalStateException("a rename was missed");
+            }
+        }));
+        report("compare all " + n + " * " + n + " pairs", best(() -> {
+            int[][] oldFeatures = new int[n][];
+            int[][] newFeatures = new int[n][];
+            for (int i = 0; i < n; i += 1) {
+                oldFeatures[i] = RenameDetector.features(readContents(oldFiles.get(i)));
+                newFeatures[i] = RenameDetector.features(readContents(newFiles.get(i)));
+            }
+            int similar = 0;
+            for (int i = 0; i < n; i += 1) {
+                for (int j = 0; j < n; j += 1) {
+                    if (RenameDetector.similarity(oldFeatures[i], newFeatures[j])
+                            >= RenameDetector.DEFAULT_THRESHOLD) {
+                        similar += 1;
+                    }
+                }
+            }
+            if (similar != n) {
+                throw new IllegalStateException("wrong number of similar pairs");
+            }
+        }));
+    }
+}
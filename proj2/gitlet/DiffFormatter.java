@@ -0,0 +1,261 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the changes of files, either as a unified diff:
+ * <pre>
+ *     diff --git a/f.txt b/f.txt
+ *     --- a/f.txt
+ *     +++ b/f.txt
+ *     @@ -1,3 +1,3 @@
+ *      an unchanged line
+ *     -an old line
+ *     +a new line
+ *      an unchanged line
+ * </pre>
+ * or, in stat mode, as one line per file plus a summary:
+ * <pre>
+ *      f.txt | 2 +-
+ *      1 file changed, 1 insertion(+), 1 deletion(-)
+ * </pre>
+ * The lines come from Diff, and the contents are written to the stream as
+ * they are, the lines are never turned into Strings. In stat mode a file
+ * that is only on one side is not diffed at all, we just count its lines.
+ *
+ * @author Linde
+ */
+public class DiffFormatter {
+
+    /**
+     * how many unchanged lines we show around a change
+     */
+    private static final int CONTEXT = 3;
+
+    /**
+     * the longest +/- bar of the stat mode
+     */
+    private static final int STAT_BAR_WIDTH = 50;
+
+    private final OutputStream out;
+
+    private final boolean stat;
+
+    /**
+     * the lines of the stat mode, written by finish() since
+     * the columns depend on the longest filename
+     */
+    private final List<String> statNames = new ArrayList<>();
+    private final List<int[]> statCounts = new ArrayList<>();
+
+    public DiffFormatter(OutputStream out, boolean stat) {
+        this.out = out;
+        this.stat = stat;
+    }
+
+    /**
+     * write the changes of one file
+     *
+     * @param oldContents null if the file is new
+     * @param newContents null if the file is removed
+     */
+    public void format(String path, byte[] oldContents, byte[] newContents) throws IOException {
+        format(path, path, "", oldContents, newContents);
+    }
+
+    /**
+     * write the changes of a file that was renamed, or copied, from oldPath to newPath
+     *
+     * @param score how similar the two versions are, in percent
+     */
+    public void formatRename(String oldPath, String newPath, int score, boolean copy,
+                             byte[] oldContents, byte[] newContents) throws IOException {
+        String kind = copy ? "copy" : "rename";
+        format(oldPath, newPath, "similarity index " + score + "%\n"
+                + kind + " from " + oldPath + "\n" + kind + " to " + newPath + "\n",
+                oldContents, newContents);
+    }
+
+    private void format(String oldPath, String newPath, String header,
+                        byte[] oldContents, byte[] newContents) throws IOException {
+        boolean binary = (oldContents != null && RawText.isBinary(oldContents))
+                || (newContents != null && RawText.isBinary(newContents));
+        if (stat) {
+            statNames.add(oldPath.equals(newPath) ? newPath : oldPath + " => " + newPath);
+            if (binary) {
+                statCounts.add(null);
+            } else {
+                statCounts.add(countChangedLines(oldContents, newContents));
+            }
+            return;
+        }
+
+        write("diff --git a/" + oldPath + " b/" + newPath + "\n");
+        write(header);
+        if (binary) {
+            write("Binary files " + (oldContents == null ? "/dev/null" : "a/" + oldPath) + " and "
+                    + (newContents == null ? "/dev/null" : "b/" + newPath) + " differ\n");
+            return;
+        }
+        RawText a = oldContents == null ? RawText.EMPTY : new RawText(oldContents);
+        RawText b = newContents == null ? RawText.EMPTY : new RawText(newContents);
+        List<Diff.Edit> edits = Diff.diff(a, b);
+        if (edits.isEmpty() && !header.isEmpty()) {
+            // a file renamed as it is, the header says it all
+            return;
+        }
+        write("--- " + (oldContents == null ? "/dev/null" : "a/" + oldPath) + "\n");
+        write("+++ " + (newContents == null ? "/dev/null" : "b/" + newPath) + "\n");
+        writeHunks(a, b, edits);
+    }
+
+    /**
+     * write what only the stat mode has waited for, and flush
+     */
+    public void finish() throws IOException {
+        if (stat && !statNames.isEmpty()) {
+            writeStat();
+        }
+        out.flush();
+    }
+
+    /**
+     * @return {insertions, deletions}
+     */
+    private static int[] countChangedLines(byte[] oldContents, byte[] newContents) {
+        if (oldContents == null) {
+            return new int[]{new RawText(newContents).size(), 0};
+        }
+        if (newContents == null) {
+            return new int[]{0, new RawText(oldContents).size()};
+        }
+        int insertions = 0;
+        int deletions = 0;
+        for (Diff.Edit edit : Diff.diff(new RawText(oldContents), new RawText(newContents))) {
+            insertions += edit.endB - edit.beginB;
+            deletions += edit.endA - edit.beginA;
+        }
+        return new int[]{insertions, deletions};
+    }
+
+    /**
+     * the edits close to each other (at most 2 * CONTEXT unchanged lines
+     * between them) go into the same hunk
+     */
+    private void writeHunks(RawText a, RawText b, List<Diff.Edit> edits) throws IOException {
+        int i = 0;
+        while (i < edits.size()) {
+            int last = i;
+            while (last + 1 < edits.size()
+                    && edits.get(last + 1).beginA - edits.get(last).endA <= 2 * CONTEXT) {
+                last += 1;
+            }
+            Diff.Edit first = edits.get(i);
+            Diff.Edit end = edits.get(last);
+            int beginA = Math.max(0, first.beginA - CONTEXT);
+            int beginB = Math.max(0, first.beginB - CONTEXT);
+            int endA = Math.min(a.size(), end.endA + CONTEXT);
+            int endB = Math.min(b.size(), end.endB + CONTEXT);
+            write("@@ -" + range(beginA, endA) + " +" + range(beginB, endB) + " @@\n");
+
+            int lineA = beginA;
+            for (int k = i; k <= last; k += 1) {
+                Diff.Edit edit = edits.get(k);
+                writeLines(' ', a, lineA, edit.beginA);
+                writeLines('-', a, edit.beginA, edit.endA);
+                writeLines('+', b, edit.beginB, edit.endB);
+                lineA = edit.endA;
+            }
+            writeLines(' ', a, lineA, endA);
+            i = last + 1;
+        }
+    }
+
+    /**
+     * the line numbers of a hunk header start at 1, and an empty range
+     * starts at the line before it, e.g. "0,0" for an empty file
+     */
+    private static String range(int begin, int end) {
+        int count = end - begin;
+        if (count == 1) {
+            return String.valueOf(begin + 1);
+        }
+        return (count == 0 ? begin : begin + 1) + "," + count;
+    }
+
+    private void writeLines(char prefix, RawText text, int begin, int end) throws IOException {
+        for (int line = begin; line < end; line += 1) {
+            out.write(prefix);
+            text.writeLines(out, line, line + 1);
+            if (!text.endsWithNewline(line)) {
+                write("\n\\ No newline at end of file\n");
+            }
+        }
+    }
+
+    private void writeStat() throws IOException {
+        int nameWidth = 0;
+        int maxChanged = 0;
+        boolean hasBinary = false;
+        int insertions = 0;
+        int deletions = 0;
+        for (int i = 0; i < statNames.size(); i += 1) {
+            nameWidth = Math.max(nameWidth, statNames.get(i).length());
+            int[] counts = statCounts.get(i);
+            if (counts == null) {
+                hasBinary = true;
+            } else {
+                maxChanged = Math.max(maxChanged, counts[0] + counts[1]);
+                insertions += counts[0];
+                deletions += counts[1];
+            }
+        }
+        // the counts are right aligned, "Bin" needs three columns
+        int countWidth = Math.max(hasBinary ? 3 : 1, String.valueOf(maxChanged).length());
+        for (int i = 0; i < statNames.size(); i += 1) {
+            int[] counts = statCounts.get(i);
+            StringBuilder line = new StringBuilder(" ");
+            line.append(String.format("%-" + nameWidth + "s | ", statNames.get(i)));
+            if (counts == null) {
+                line.append(String.format("%" + countWidth + "s", "Bin"));
+            } else {
+                int plus = counts[0];
+                int minus = counts[1];
+                if (maxChanged > STAT_BAR_WIDTH) {
+                    // scale the bar, but a changed file always gets at least one mark
+                    plus = scale(plus, maxChanged);
+                    minus = scale(minus, maxChanged);
+                }
+                line.append(String.format("%" + countWidth + "d", counts[0] + counts[1]));
+                line.append(' ').append("+".repeat(plus)).append("-".repeat(minus));
+            }
+            write(line.toString().stripTrailing() + "\n");
+        }
+        int files = statNames.size();
+        StringBuilder summary = new StringBuilder(" " + files + (files == 1 ? " file" : " files") + " changed");
+        if (insertions > 0 || deletions == 0) {
+            summary.append(", ").append(insertions)
+                    .append(insertions == 1 ? " insertion(+)" : " insertions(+)");
+        }
+        if (deletions > 0) {
+            summary.append(", ").append(deletions)
+                    .append(deletions == 1 ? " deletion(-)" : " deletions(-)");
+        }
+        write(summary + "\n");
+    }
+
+    private static int scale(int count, int maxChanged) {
+        if (count == 0) {
+            return 0;
+        }
+        return Math.max(1, (int) ((long) count * STAT_BAR_WIDTH / maxChanged));
+    }
+
+    private void write(String s) throws IOException {
+        out.write(s.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,397 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * The tree of a commit is one tree object per directory, like in git. A
+ * tree is a FileTable (same file, same order) whose entries are the files
+ * of the directory, by name, and its subdirectories, by name and a '/',
+ * whose id is the tree of the subdirectory. e.g. a commit with a.txt,
+ * src/Main.java and src/util/Utils.java has three trees:
+ * <pre>
+ *     root:       a.txt -> blob, src/ -> tree 1
+ *     tree 1:     Main.java -> blob, util/ -> tree 2
+ *     tree 2:     Utils.java -> blob
+ * </pre>
+ * Since '/' comes after '.' and '-', "src/" is sorted where "src/Main.java"
+ * is among the full paths, so reading the trees depth first gives the paths
+ * of the commit in FileTable order. The rest of gitlet only sees that flat
+ * table, read() flattens the trees and write() splits the table up again.
+ * <p>
+ * A tree that did not change is not written again: a commit only writes the
+ * trees of the directories on the path of a changed file, the other
+ * directories keep the tree of the parent commit. A root tree without
+ * subdirectories is exactly the tree of a commit made before there were
+ * directories, so old commits read just as well.
+ *
+ * @author Linde
+ */
+class DirectoryTrees {
+
+    private static final char SEPARATOR = '/';
+
+    private DirectoryTrees() {
+    }
+
+    /**
+     * the files of a commit, every path relative to the work tree
+     */
+    static FileTable read(ObjectStore objects, ObjectId rootSha1) {
+        return read(objects, rootSha1, SparseCheckout.FULL);
+    }
+
+    /**
+     * the files of a commit that are in a sparse checkout. the tree of a
+     * directory none of whose files can be in it is not read at all.
+     */
+    static FileTable read(ObjectStore objects, ObjectId rootSha1, SparseCheckout sparse) {
+        FileTable root = FileTable.read(objects, rootSha1);
+        if (!hasDirectories(root)) {
+            return sparse.filter(root);
+        }
+        if (FileTable.offHeapTrees()) {
+            return new OffHeapFlattener(objects, sparse).flatten(root);
+        }
+        List<String> paths = new ArrayList<>();
+        List<ObjectId> ids = new ArrayList<>();
+        flatten(objects, root, "", sparse, sparse.root(), paths, ids);
+        return FileTable.ofSorted(paths.toArray(new String[0]), ids.toArray(new ObjectId[0]));
+    }
+
+    private static boolean hasDirectories(FileTable tree) {
+        for (int i = 0; i < tree.size(); i += 1) {
+            if (tree.isDirectoryAt(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param directory where the tree is in sparse
+     */
+    private static void flatten(ObjectStore objects, FileTable tree, String prefix, SparseCheckout sparse,
+                                SparseCheckout.Directory directory, List<String> paths, List<ObjectId> ids) {
+        for (int i = 0; i < tree.size(); i += 1) {
+            String name = tree.pathAt(i);
+            if (tree.isDirectoryAt(i)) {
+                String subdirectoryName = name.substring(0, name.length() - 1);
+                SparseCheckout.Directory subdirectory = sparse.enter(directory, subdirectoryName);
+                if (subdirectory != null) {
+                    flatten(objects, FileTable.read(objects, tree.idAt(i)), prefix + name, sparse, subdirectory,
+                            paths, ids);
+                }
+            } else if (sparse.includes(directory, name)) {
+                paths.add(FileTable.intern(prefix + name));
+                ids.add(tree.idAt(i));
+            }
+        }
+    }
+
+    /**
+     * Flattens the trees of a commit off the heap: the path bytes of the
+     * files, after the bytes of the names of their directories, and their
+     * raw ids are copied from the mapped trees straight into one direct
+     * buffer, see OffHeapFileTable.Writer, so no path becomes a String. The
+     * trees are walked twice, once to count the files and the path bytes and
+     * once to copy them. The tree of a directory is read in the first walk
+     * and kept for the second, which costs a table per directory, not per file.
+     */
+    private static final class OffHeapFlattener {
+
+        private final ObjectStore objects;
+
+        private final SparseCheckout sparse;
+
+        /**
+         * the trees of the subdirectories, in the order they are entered
+         */
+        private final List<FileTable> subtrees = new ArrayList<>();
+
+        private int nextSubtree;
+
+        private int size;
+
+        private int pathBytes;
+
+        private OffHeapFileTable.Writer writer;
+
+        OffHeapFlattener(ObjectStore objects, SparseCheckout sparse) {
+            this.objects = objects;
+            this.sparse = sparse;
+        }
+
+        FileTable flatten(FileTable root) {
+            count(root, 0, sparse.root());
+            writer = new OffHeapFileTable.Writer(size, pathBytes);
+            copy(root, new byte[0], sparse.root());
+            return writer.build();
+        }
+
+        private void count(FileTable tree, int prefixLength, SparseCheckout.Directory directory) {
+            for (int i = 0; i < tree.size(); i += 1) {
+                if (tree.isDirectoryAt(i)) {
+                    SparseCheckout.Directory subdirectory = enter(tree, i, directory);
+                    if (subdirectory != null) {
+                        FileTable subtree = FileTable.read(objects, tree.idAt(i));
+                        subtrees.add(subtree);
+                        count(subtree, prefixLength + tree.pathLengthAt(i), subdirectory);
+                    }
+                } else if (includes(tree, i, directory)) {
+                    size += 1;
+                    pathBytes += prefixLength + tree.pathLengthAt(i);
+                }
+            }
+        }
+
+        private void copy(FileTable tree, byte[] prefix, SparseCheckout.Directory directory) {
+            for (int i = 0; i < tree.size(); i += 1) {
+                if (tree.isDirectoryAt(i)) {
+                    SparseCheckout.Directory subdirectory = enter(tree, i, directory);
+                    if (subdirectory != null) {
+                        ByteBuffer subprefix = ByteBuffer.allocate(prefix.length + tree.pathLengthAt(i));
+                        subprefix.put(prefix);
+                        tree.putPathAt(i, subprefix);
+                        copy(subtrees.get(nextSubtree++), subprefix.array(), subdirectory);
+                    }
+                } else if (includes(tree, i, directory)) {
+                    writer.add(prefix, tree, i);
+                }
+            }
+        }
+
+        /**
+         * the sparse checkout only needs the names of the directories and
+         * files when it has patterns
+         */
+        private SparseCheckout.Directory enter(FileTable tree, int index, SparseCheckout.Directory directory) {
+            if (sparse.isFull()) {
+                return directory;
+            }
+            String name = tree.pathAt(index);
+            return sparse.enter(directory, name.substring(0, name.length() - 1));
+        }
+
+        private boolean includes(FileTable tree, int index, SparseCheckout.Directory directory) {
+            return sparse.isFull() || sparse.includes(directory, tree.pathAt(index));
+        }
+    }
+
+    /**
+     * the blob of one file of a commit, reading only the trees of the
+     * directories it is in
+     *
+     * @return the sha1, or null if the commit does not have the file
+     */
+    static ObjectId lookup(ObjectStore objects, ObjectId rootSha1, String path) {
+        FileTable tree = FileTable.read(objects, rootSha1);
+        // a commit made when commits were still one tree
+        ObjectId flat = tree.get(path);
+        if (flat != null) {
+            return flat;
+        }
+        int start = 0;
+        for (int separator = path.indexOf(SEPARATOR); separator >= 0;
+             separator = path.indexOf(SEPARATOR, start)) {
+            ObjectId subtreeSha1 = tree.get(path.substring(start, separator + 1));
+            if (subtreeSha1 == null) {
+                return null;
+            }
+            tree = FileTable.read(objects, subtreeSha1);
+            start = separator + 1;
+        }
+        return tree.get(path.substring(start));
+    }
+
+    /**
+     * the paths whose blob differs between two commits, or that only one of
+     * them has. a directory whose tree is the same in both is skipped as a
+     * whole, so two commits that differ in one file cost the trees of its
+     * directories.
+     */
+    static List<String> changedPaths(ObjectStore objects, ObjectId rootSha1, ObjectId otherRootSha1) {
+        List<String> changed = new ArrayList<>();
+        FileTable root = FileTable.read(objects, rootSha1);
+        FileTable otherRoot = FileTable.read(objects, otherRootSha1);
+        if (hasFlatPaths(root) || hasFlatPaths(otherRoot)) {
+            compare(objects, read(objects, rootSha1), read(objects, otherRootSha1), "", changed);
+        } else {
+            compare(objects, root, otherRoot, "", changed);
+        }
+        return changed;
+    }
+
+    /**
+     * like changedPaths() above, but of two tables of all the files, e.g.
+     * the files of commits that have no tree
+     */
+    static List<String> changedPaths(FileTable files, FileTable otherFiles) {
+        List<String> changed = new ArrayList<>();
+        compare(null, files, otherFiles, "", changed);
+        return changed;
+    }
+
+    private static void compare(ObjectStore objects, FileTable tree, FileTable otherTree, String prefix,
+                                List<String> changed) {
+        FileTable.Join join = new FileTable.Join(tree, otherTree);
+        while (join.next()) {
+            if (join.sameId(0, 1)) {
+                continue;
+            }
+            String name = join.path();
+            if (!name.endsWith("/")) {
+                changed.add(prefix + name);
+                continue;
+            }
+            FileTable subtree = join.id(0) == null ? FileTable.EMPTY : FileTable.read(objects, join.id(0));
+            FileTable otherSubtree = join.id(1) == null ? FileTable.EMPTY : FileTable.read(objects, join.id(1));
+            compare(objects, subtree, otherSubtree, prefix + name, changed);
+        }
+    }
+
+    /**
+     * write every tree of a commit
+     *
+     * @return the root tree
+     */
+    static ObjectId write(ObjectStore objects, FileTable files) {
+        return writeDirectory(objects, files, new int[]{0}, "");
+    }
+
+    /**
+     * write the trees of a commit made from another one, only the trees of
+     * the directories the changes are in
+     *
+     * @param baseRootSha1 the root tree of the commit it was made from
+     * @param changes      path -> the new blob, or null if the file is gone
+     * @return the root tree
+     */
+    static ObjectId write(ObjectStore objects, ObjectId baseRootSha1, SortedMap<String, ObjectId> changes) {
+        FileTable baseRoot = FileTable.read(objects, baseRootSha1);
+        if (hasFlatPaths(baseRoot)) {
+            FileTable.Builder builder = read(objects, baseRootSha1).toBuilder();
+            for (Map.Entry<String, ObjectId> change : changes.entrySet()) {
+                builder.put(change.getKey(), change.getValue());
+            }
+            return write(objects, builder.build());
+        }
+        return update(objects, baseRoot, changes, true);
+    }
+
+    /**
+     * whether a root tree has paths with a '/' that are files, as the
+     * commits of gitlet had when add() took directories but commits were
+     * still one tree. such a tree is built again from scratch.
+     */
+    private static boolean hasFlatPaths(FileTable root) {
+        for (int i = 0; i < root.size(); i += 1) {
+            if (!root.isDirectoryAt(i) && root.pathAt(i).indexOf(SEPARATOR) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * write the tree of the directory prefix (with its '/', "" for the root)
+     * and the trees below it, from the files of the table at position[0] on
+     * whose path begins with prefix. they come one after the other, the
+     * table is sorted.
+     */
+    private static ObjectId writeDirectory(ObjectStore objects, FileTable files, int[] position, String prefix) {
+        FileTable.Builder builder = FileTable.EMPTY.toBuilder();
+        while (position[0] < files.size() && files.pathAt(position[0]).startsWith(prefix)) {
+            String path = files.pathAt(position[0]);
+            int separator = path.indexOf(SEPARATOR, prefix.length());
+            if (separator < 0) {
+                builder.put(path.substring(prefix.length()), files.idAt(position[0]));
+                position[0] += 1;
+            } else {
+                String subdirectory = path.substring(0, separator + 1);
+                builder.put(subdirectory.substring(prefix.length()),
+                        writeDirectory(objects, files, position, subdirectory));
+            }
+        }
+        return writeTree(objects, builder.build());
+    }
+
+    /**
+     * apply changes to a tree and to the trees of the subdirectories they
+     * are in, no other tree is read or written
+     *
+     * @param tree    the tree of the directory, empty if it is new
+     * @param changes path relative to the directory -> blob, or null if
+     *                the file is gone
+     * @return the new tree, or null if the directory is empty now (the root
+     * is written even then)
+     */
+    private static ObjectId update(ObjectStore objects, FileTable tree,
+                                   SortedMap<String, ObjectId> changes, boolean root) {
+        FileTable.Builder builder = tree.toBuilder();
+        // subdirectory (with its '/') -> its changes
+        Map<String, SortedMap<String, ObjectId>> subdirectoryChanges = new TreeMap<>(FileTable.PATH_ORDER);
+        for (Map.Entry<String, ObjectId> change : changes.entrySet()) {
+            String path = change.getKey();
+            int separator = path.indexOf(SEPARATOR);
+            if (separator < 0) {
+                if (change.getValue() == null) {
+                    builder.remove(path);
+                } else {
+                    builder.put(path, change.getValue());
+                }
+                continue;
+            }
+            subdirectoryChanges.computeIfAbsent(path.substring(0, separator + 1),
+                    name -> new TreeMap<>(FileTable.PATH_ORDER))
+                    .put(path.substring(separator + 1), change.getValue());
+        }
+        for (Map.Entry<String, SortedMap<String, ObjectId>> subdirectory : subdirectoryChanges.entrySet()) {
+            String name = subdirectory.getKey();
+            ObjectId oldSubtreeSha1 = tree.get(name);
+            FileTable subtree = oldSubtreeSha1 == null ? FileTable.EMPTY : FileTable.read(objects, oldSubtreeSha1);
+            ObjectId subtreeSha1 = update(objects, subtree, subdirectory.getValue(), false);
+            if (subtreeSha1 == null) {
+                builder.remove(name);
+            } else {
+                builder.put(name, subtreeSha1);
+            }
+        }
+        FileTable newTree = builder.build();
+        if (newTree.size() == 0 && !root) {
+            return null;
+        }
+        return writeTree(objects, newTree);
+    }
+
+    private static ObjectId writeTree(ObjectStore objects, FileTable tree) {
+        byte[] contents = tree.toBytes();
+        ObjectId treeSha1 = ObjectId.sha1Of(contents);
+        objects.write(ObjectStore.Kind.TREE, treeSha1, contents);
+        return treeSha1;
+    }
+
+    /**
+     * visit a root tree and everything below it, depth first
+     *
+     * @param visitTree gets every tree, what is below it is skipped if it
+     *                  returns false, e.g. when it was visited already
+     * @param visitBlob gets the blob of every file
+     */
+    static void walk(ObjectStore objects, ObjectId rootSha1, Predicate<ObjectId> visitTree,
+                     Consumer<ObjectId> visitBlob) {
+        if (!visitTree.test(rootSha1)) {
+            return;
+        }
+        FileTable tree = FileTable.read(objects, rootSha1);
+        for (int i = 0; i < tree.size(); i += 1) {
+            if (tree.isDirectoryAt(i)) {
+                walk(objects, tree.idAt(i), visitTree, visitBlob);
+            } else {
+                visitBlob.accept(tree.idAt(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package gitlet;
+
+/**
+ * How hard a store tries to keep what it has written when the machine
+ * crashes, chosen with -Dgitlet.durability=none|batch|full (or the
+ * GITLET_DURABILITY environment variable), batch if neither is set.
+ * <p>
+ * Whatever the level, a process that is killed loses nothing it has
+ * finished: what it has written is in the page cache of the operating
+ * system. The levels are about a crash of the machine, when what was not
+ * forced to the disk may be gone.
+ *
+ * @author Linde
+ */
+public enum Durability {
+
+    /**
+     * nothing is forced, what gitlet has always done. the last commits
+     * may be lost, and a ref may be left pointing at an object that is gone
+     */
+    NONE,
+
+    /**
+     * one fsync per transaction, and one for many transactions that end at
+     * the same time: the last commits may be lost, but the refs and the
+     * objects they point at are never out of step
+     */
+    BATCH,
+
+    /**
+     * every file is forced to the disk before it is renamed into place, and
+     * its directory after. nothing a command has finished is ever lost, and
+     * every commit pays a few fsyncs for it
+     */
+    FULL;
+
+    /**
+     * the level of this process, read every time a repository is opened
+     */
+    static Durability configured() {
+        String option = System.getProperty("gitlet.durability", System.getenv("GITLET_DURABILITY"));
+        if (option == null) {
+            return BATCH;
+        }
+        try {
+            return valueOf(option.toUpperCase());
+        } catch (IllegalArgumentException excp) {
+            throw new GitletException("Unknown durability " + option + ", it is none, batch or full.");
+        }
+    }
+}
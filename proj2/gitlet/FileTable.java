@@ -0,0 +1,418 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * The filename->blob mapping of a commit, sorted by path, i.e. what a
+ * TreeMap<String, ObjectId> used to do.
+ * <p>
+ * There are two kinds of tables:
+ * HeapFileTable keeps two sorted arrays (paths[i] is stored as blob ids[i])
+ * with interned paths, so that commits loaded together share one String per
+ * path. OffHeapFileTable maps the tree file into memory and reads the path
+ * bytes and ids right out of it, so a tree of millions of paths costs the
+ * garbage collector nothing. Trees are read on the heap unless
+ * -Dgitlet.offHeapTrees=true (or GITLET_OFF_HEAP_TREES=true) is set.
+ * <p>
+ * Tables are immutable, a new commit gets a new table from a Builder.
+ * Since every table is sorted, several tables can be walked side by side
+ * in one pass, see Join. That is how we compare commits.
+ * <p>
+ * Paths are sorted by code point, which is the same order as comparing their
+ * UTF-8 bytes, so an off-heap table can compare paths without decoding them.
+ * <p>
+ * A tree file, all numbers big-endian:
+ * <pre>
+ *     [number of files n]
+ *     [blob id 0] ... [blob id n-1]                      20 raw bytes each
+ *     [path offset 0] ... [path offset n]                4 bytes each
+ *     [path 0] ... [path n-1]                            UTF-8, path i is the bytes
+ *                                                        from offset i to offset i+1
+ * </pre>
+ *
+ * @author Linde
+ */
+public abstract class FileTable {
+
+    public static final FileTable EMPTY = new HeapFileTable(new String[0], new ObjectId[0]);
+
+    /**
+     * paths sorted by code point, see comparePaths()
+     */
+    public static final Comparator<String> PATH_ORDER = FileTable::comparePaths;
+
+    private static final boolean OFF_HEAP_TREES = Boolean.parseBoolean(
+            System.getProperty("gitlet.offHeapTrees", System.getenv("GITLET_OFF_HEAP_TREES")));
+
+    /**
+     * the one String instance all heap tables use for a path. we leave it to
+     * String.intern(), whose table lets go of a path once no table has it,
+     * a map of our own would keep every path ever read for as long as the
+     * process lives.
+     */
+    static String intern(String path) {
+        return path.intern();
+    }
+
+    /**
+     * read a tree from the object store, on the heap or off the heap
+     * depending on the option. off the heap, the store maps the tree if it can.
+     */
+    public static FileTable read(ObjectStore objects, ObjectId treeSha1) {
+        if (OFF_HEAP_TREES) {
+            return new OffHeapFileTable(objects.map(ObjectStore.Kind.TREE, treeSha1));
+        }
+        byte[] contents = objects.read(ObjectStore.Kind.TREE, treeSha1);
+        if (contents == null) {
+            throw new GitletException("No tree " + treeSha1 + " in the object store.");
+        }
+        return HeapFileTable.parse(ByteBuffer.wrap(contents));
+    }
+
+    /**
+     * whether trees are read off the heap, then a table made of other
+     * tables is too, see OffHeapFileTable.Writer
+     */
+    static boolean offHeapTrees() {
+        return OFF_HEAP_TREES;
+    }
+
+    /**
+     * a table of sorted paths that were not read from one tree file, on the heap
+     */
+    static FileTable ofSorted(String[] paths, ObjectId[] ids) {
+        return new HeapFileTable(paths, ids);
+    }
+
+    /**
+     * read a tree file, on the heap or off the heap depending on the option
+     */
+    public static FileTable read(File treeFile) {
+        return read(treeFile, OFF_HEAP_TREES);
+    }
+
+    static FileTable read(File treeFile, boolean offHeap) {
+        if (offHeap) {
+            return OffHeapFileTable.map(treeFile);
+        }
+        return HeapFileTable.parse(ByteBuffer.wrap(Utils.readContents(treeFile)));
+    }
+
+    public abstract int size();
+
+    /**
+     * the path of the index-th file. for an off-heap table this decodes
+     * the path, use comparePathAt() when you only need to compare it.
+     */
+    public abstract String pathAt(int index);
+
+    public abstract ObjectId idAt(int index);
+
+    /**
+     * @return the index of the path, or -(insertion point) - 1 if it is not in
+     * the table, as with Arrays.binarySearch()
+     */
+    public abstract int indexOf(String path);
+
+    /**
+     * the number of UTF-8 bytes of the index-th path
+     */
+    int pathLengthAt(int index) {
+        return pathAt(index).getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /**
+     * put the UTF-8 bytes of the index-th path into dest
+     */
+    void putPathAt(int index, ByteBuffer dest) {
+        dest.put(pathAt(index).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * put the raw bytes of the index-th id into dest
+     */
+    void putIdAt(int index, ByteBuffer dest) {
+        dest.put(idAt(index).toRaw());
+    }
+
+    /**
+     * whether the index-th path ends with a '/', i.e. it is a subdirectory
+     * of a directory tree, see DirectoryTrees
+     */
+    boolean isDirectoryAt(int index) {
+        return pathAt(index).endsWith("/");
+    }
+
+    public boolean contains(String path) {
+        return indexOf(path) >= 0;
+    }
+
+    /**
+     * @return the blob of the path, or null if the path is not in the table
+     */
+    public ObjectId get(String path) {
+        int index = indexOf(path);
+        return index < 0 ? null : idAt(index);
+    }
+
+    /**
+     * compare the index-th path of this table with the otherIndex-th path of other
+     */
+    int comparePathAt(int index, FileTable other, int otherIndex) {
+        return comparePaths(pathAt(index), other.pathAt(otherIndex));
+    }
+
+    /**
+     * @return true if the index-th blob of this table is the otherIndex-th blob of other
+     */
+    boolean idEquals(int index, FileTable other, int otherIndex) {
+        return idAt(index).equals(other.idAt(otherIndex));
+    }
+
+    /**
+     * the sorted paths, as a read-only list that reads from the table
+     */
+    public List<String> paths() {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return pathAt(index);
+            }
+
+            @Override
+            public int size() {
+                return FileTable.this.size();
+            }
+        };
+    }
+
+    /**
+     * the blob ids, in the order of their paths
+     */
+    public List<ObjectId> ids() {
+        return new AbstractList<ObjectId>() {
+            @Override
+            public ObjectId get(int index) {
+                return idAt(index);
+            }
+
+            @Override
+            public int size() {
+                return FileTable.this.size();
+            }
+        };
+    }
+
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    /**
+     * the contents of the tree file of this table, see the comment of the class
+     */
+    public byte[] toBytes() {
+        int n = size();
+        byte[][] encodedPaths = new byte[n][];
+        int pathBytes = 0;
+        for (int i = 0; i < n; i += 1) {
+            encodedPaths[i] = pathAt(i).getBytes(StandardCharsets.UTF_8);
+            pathBytes += encodedPaths[i].length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(
+                4 + n * ObjectId.RAW_LENGTH + (n + 1) * 4 + pathBytes);
+        buffer.putInt(n);
+        byte[] raw = new byte[ObjectId.RAW_LENGTH];
+        for (int i = 0; i < n; i += 1) {
+            idAt(i).copyRawTo(raw, 0);
+            buffer.put(raw);
+        }
+        int offset = 0;
+        buffer.putInt(offset);
+        for (int i = 0; i < n; i += 1) {
+            offset += encodedPaths[i].length;
+            buffer.putInt(offset);
+        }
+        for (int i = 0; i < n; i += 1) {
+            buffer.put(encodedPaths[i]);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * compare two paths by code point, which for valid UTF-8 is the same as
+     * comparing their bytes. it only differs from String.compareTo() for
+     * characters outside the BMP.
+     */
+    static int comparePaths(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int ca = a.codePointAt(i);
+            int cb = b.codePointAt(j);
+            if (ca != cb) {
+                return Integer.compare(ca, cb);
+            }
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+    /**
+     * Collects the changes of a new commit (e.g. the staged files) on top of
+     * the table of its parent, then builds the new table in one merge pass.
+     * The new table is always on the heap, it is written to a tree file
+     * right after.
+     */
+    public static class Builder {
+
+        private final FileTable base;
+
+        /**
+         * path -> new blob id, or null if the path is removed
+         */
+        private final TreeMap<String, ObjectId> changes = new TreeMap<>(PATH_ORDER);
+
+        private Builder(FileTable base) {
+            this.base = base;
+        }
+
+        public Builder put(String path, ObjectId id) {
+            changes.put(path, id);
+            return this;
+        }
+
+        public Builder remove(String path) {
+            changes.put(path, null);
+            return this;
+        }
+
+        public FileTable build() {
+            List<String> newPaths = new ArrayList<>(base.size() + changes.size());
+            List<ObjectId> newIds = new ArrayList<>(base.size() + changes.size());
+            Iterator<Map.Entry<String, ObjectId>> changeIterator = changes.entrySet().iterator();
+            Map.Entry<String, ObjectId> change = changeIterator.hasNext() ? changeIterator.next() : null;
+            int i = 0;
+            while (i < base.size() || change != null) {
+                String basePath = i < base.size() ? base.pathAt(i) : null;
+                int cmp = change == null ? -1
+                        : basePath == null ? 1 : comparePaths(basePath, change.getKey());
+                if (cmp < 0) {
+                    newPaths.add(intern(basePath));
+                    newIds.add(base.idAt(i));
+                    i += 1;
+                } else {
+                    if (change.getValue() != null) {
+                        newPaths.add(intern(change.getKey()));
+                        newIds.add(change.getValue());
+                    }
+                    if (cmp == 0) {
+                        // the change replaces (or removes) the old entry
+                        i += 1;
+                    }
+                    change = changeIterator.hasNext() ? changeIterator.next() : null;
+                }
+            }
+            return new HeapFileTable(newPaths.toArray(new String[0]),
+                    newIds.toArray(new ObjectId[0]));
+        }
+    }
+
+    /**
+     * Walks several tables side by side in path order, every path that is in
+     * at least one of the tables is visited once, e.g.
+     * <pre>
+     *     FileTable.Join join = new FileTable.Join(splitFiles, currentFiles, targetFiles);
+     *     while (join.next()) {
+     *         join.sameId(0, 1)  // is the file the same in splitFiles and currentFiles?
+     *         join.path()        // the path
+     *         join.id(1)         // its blob in currentFiles, or null if it is not there
+     *     }
+     * </pre>
+     * Since every table is sorted this costs one pass over all of them,
+     * without building a union of the paths. next() and sameId() only
+     * compare, so for off-heap tables no String or ObjectId is created
+     * unless path() or id() is called.
+     */
+    public static class Join {
+
+        private final FileTable[] tables;
+
+        /**
+         * cursors[k] is the index of the next unvisited path in tables[k]
+         */
+        private final int[] cursors;
+
+        /**
+         * current[k] is the index of the current path in tables[k], or -1 if it is not there
+         */
+        private final int[] current;
+
+        public Join(FileTable... tables) {
+            this.tables = tables;
+            this.cursors = new int[tables.length];
+            this.current = new int[tables.length];
+        }
+
+        /**
+         * move to the next path
+         *
+         * @return false if every table has been used up
+         */
+        public boolean next() {
+            int smallest = -1;
+            for (int k = 0; k < tables.length; k += 1) {
+                if (cursors[k] < tables[k].size() && (smallest < 0
+                        || tables[k].comparePathAt(cursors[k],
+                        tables[smallest], cursors[smallest]) < 0)) {
+                    smallest = k;
+                }
+            }
+            if (smallest < 0) {
+                return false;
+            }
+            FileTable smallestTable = tables[smallest];
+            int smallestIndex = cursors[smallest];
+            for (int k = 0; k < tables.length; k += 1) {
+                if (cursors[k] < tables[k].size() && tables[k].comparePathAt(cursors[k],
+                        smallestTable, smallestIndex) == 0) {
+                    current[k] = cursors[k];
+                    cursors[k] += 1;
+                } else {
+                    current[k] = -1;
+                }
+            }
+            return true;
+        }
+
+        public String path() {
+            for (int k = 0; k < tables.length; k += 1) {
+                if (current[k] >= 0) {
+                    return tables[k].pathAt(current[k]);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return the blob of the current path in the k-th table, or null if it is not there
+         */
+        public ObjectId id(int k) {
+            return current[k] < 0 ? null : tables[k].idAt(current[k]);
+        }
+
+        /**
+         * @return true if the current path has the same blob in the a-th and
+         * the b-th table, or is in neither of them
+         */
+        public boolean sameId(int a, int b) {
+            if (current[a] < 0 || current[b] < 0) {
+                return current[a] < 0 && current[b] < 0;
+            }
+            return tables[a].idEquals(current[a], tables[b], current[b]);
+        }
+    }
+}
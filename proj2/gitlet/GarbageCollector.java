@@ -0,0 +1,311 @@
+package gitlet;
+
+import java.util.*;
+
+/**
+ * gc: delete the commits and blobs that nobody can reach anymore.
+ * <p>
+ * Nothing in gitlet ever deletes an object: rm only drops the file from
+ * the next commit, reset() abandons commits and rm-branch() abandons
+ * a whole branch. gc() is a classic mark-and-sweep:
+ * <p>
+ * mark:  start from every branch (and every reflog entry that has not
+ * expired yet), walk the commits and remember every commit we meet.
+ * <p>
+ * sweep: go over the commits of the ObjectStore, delete what was not marked
+ * and is older than the grace period. then mark the trees and blobs of every
+ * commit that is left, an unreachable commit the grace period keeps needs its
+ * files as much as a reachable one, and sweep the trees and the blobs the
+ * same way. at last let the store compact() itself.
+ * <p>
+ * Commits are marked by one RevWalk over the CommitGraph from all the roots,
+ * its visited BitSet is exact and no Commit is deserialized for it.
+ * Trees and blobs are marked in a BloomFilter, so we never hold a set of the
+ * blob ids in memory, a false positive only keeps a garbage object alive until
+ * the next gc. The trees we have walked are kept in a set too: with a tree per
+ * directory a commit shares most of its trees with its parent, and we walk
+ * each only once, which a false positive must never make us skip. There are
+ * far fewer trees than blobs.
+ * <p>
+ * The blobs of the staging area are marked too, add() writes the blob of a
+ * file when it stages it. gc runs under the exclusive lock of the repository
+ * (see RepositoryLock), so no commit, add or merge writes anything between
+ * the mark and the sweep: they are done before gc starts or wait until it is
+ * done. The grace period is not what makes gc safe, it keeps what was
+ * abandoned a moment ago, e.g. the blob of a file that was staged and then
+ * unstaged, for a while, as git does. (--prune=now turns it off.)
+ *
+ * @author Linde
+ */
+public class GarbageCollector {
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * objects younger than this are never deleted, the same default as git
+     */
+    public static final long DEFAULT_PRUNE_GRACE_MILLIS = 14 * MILLIS_PER_DAY;
+
+    /**
+     * reflog entries older than this are dropped, and do not keep commits alive anymore
+     */
+    public static final long DEFAULT_REFLOG_EXPIRE_MILLIS = 90 * MILLIS_PER_DAY;
+
+    /**
+     * the false positive rate of the tree and blob filter, i.e. at most
+     * about 1% of the garbage trees and blobs survive one gc
+     */
+    private static final double OBJECT_FILTER_FALSE_POSITIVE_RATE = 0.01;
+
+    /**
+     * what one gc has deleted
+     */
+    public static class Result {
+
+        private final int removedCommits;
+
+        private final int removedTrees;
+
+        private final int removedBlobs;
+
+        private Result(int removedCommits, int removedTrees, int removedBlobs) {
+            this.removedCommits = removedCommits;
+            this.removedTrees = removedTrees;
+            this.removedBlobs = removedBlobs;
+        }
+
+        public int getRemovedCommits() {
+            return removedCommits;
+        }
+
+        public int getRemovedTrees() {
+            return removedTrees;
+        }
+
+        public int getRemovedBlobs() {
+            return removedBlobs;
+        }
+    }
+
+    /**
+     * what "gc [--prune=<days>|now] [--expire=<days>|now]" asks for
+     */
+    public static class Options {
+
+        private static final String PRUNE_OPTION = "--prune=";
+
+        private static final String EXPIRE_OPTION = "--expire=";
+
+        private long pruneGraceMillis = DEFAULT_PRUNE_GRACE_MILLIS;
+
+        private long reflogExpireMillis = DEFAULT_REFLOG_EXPIRE_MILLIS;
+
+        /**
+         * @return the options, or null if one is unknown or has a malformed value
+         */
+        public static Options parse(List<String> args) {
+            Options options = new Options();
+            for (String arg : args) {
+                long age;
+                if (arg.startsWith(PRUNE_OPTION)) {
+                    age = parseAge(arg.substring(PRUNE_OPTION.length()));
+                    options.pruneGraceMillis = age;
+                } else if (arg.startsWith(EXPIRE_OPTION)) {
+                    age = parseAge(arg.substring(EXPIRE_OPTION.length()));
+                    options.reflogExpireMillis = age;
+                } else {
+                    return null;
+                }
+                if (age < 0) {
+                    return null;
+                }
+            }
+            return options;
+        }
+
+        /**
+         * unreachable objects younger than this are kept
+         */
+        public long getPruneGraceMillis() {
+            return pruneGraceMillis;
+        }
+
+        /**
+         * reflog entries older than this are expired
+         */
+        public long getReflogExpireMillis() {
+            return reflogExpireMillis;
+        }
+    }
+
+    /**
+     * parse the value of --prune=... or --expire=..., "now" means 0,
+     * otherwise it is a number of days.
+     *
+     * @return the value in milliseconds, or -1 if the value is malformed
+     * or too many days to count in milliseconds
+     */
+    public static long parseAge(String value) {
+        if (value.equals("now")) {
+            return 0;
+        }
+        try {
+            long days = Long.parseLong(value);
+            return days < 0 ? -1 : Math.multiplyExact(days, MILLIS_PER_DAY);
+        } catch (NumberFormatException | ArithmeticException excp) {
+            return -1;
+        }
+    }
+
+    /**
+     * @param pruneGraceMillis   unreachable objects younger than this are kept
+     * @param reflogExpireMillis reflog entries older than this are expired
+     */
+    public static Result gc(GitletRepository repository, long pruneGraceMillis, long reflogExpireMillis) {
+        long now = System.currentTimeMillis();
+
+        CommitGraph graph = CommitGraph.load(repository);
+        Set<ObjectId> roots = new HashSet<>(repository.getAllBranchHeads());
+        roots.addAll(expireReflogs(repository.getRefStore(), now - reflogExpireMillis));
+        BitSet markedCommits = markCommits(graph, roots);
+        ObjectStore objects = repository.getObjectStore();
+
+        long pruneBefore = now - pruneGraceMillis;
+        List<ObjectId> keptCommits = new ArrayList<>();
+        int removedCommits = sweepCommits(repository, graph, markedCommits, pruneBefore, keptCommits);
+        BloomFilter markedObjects = markTreesAndBlobs(repository, keptCommits);
+        int removedTrees = sweepObjects(objects, ObjectStore.Kind.TREE, markedObjects, pruneBefore);
+        int removedBlobs = sweepObjects(objects, ObjectStore.Kind.BLOB, markedObjects, pruneBefore);
+        if (removedCommits > 0) {
+            // the positions of the remaining commits have changed
+            CommitGraph.rebuild(repository).save();
+        }
+        if (removedCommits + removedTrees + removedBlobs > 0) {
+            objects.compact();
+        }
+        return new Result(removedCommits, removedTrees, removedBlobs);
+    }
+
+    /**
+     * drop the reflog entries older than expireBefore, and return the commits
+     * mentioned by the remaining entries, they are roots of the mark phase.
+     * <p>
+     * the reflog of a removed branch is kept until it expires,
+     * so that rm-branch can be undone for a while.
+     */
+    private static Set<ObjectId> expireReflogs(RefStore refs, long expireBefore) {
+        Set<ObjectId> reflogCommits = new HashSet<>();
+        for (String logName : refs.listLogs()) {
+            List<String> kept = new ArrayList<>();
+            for (String line : refs.readLog(logName)) {
+                // [old sha1] [new sha1] [time in millis] [message]
+                String[] fields = line.split(" ", 4);
+                if (fields.length < 3) {
+                    continue;
+                }
+                long time;
+                try {
+                    time = Long.parseLong(fields[2]);
+                } catch (NumberFormatException excp) {
+                    continue;
+                }
+                if (time < expireBefore
+                        || !ObjectId.isHex(fields[0]) || !ObjectId.isHex(fields[1])) {
+                    continue;
+                }
+                kept.add(line);
+                reflogCommits.add(ObjectId.fromHex(fields[0]));
+                reflogCommits.add(ObjectId.fromHex(fields[1]));
+            }
+            refs.writeLog(logName, kept);
+        }
+        reflogCommits.remove(ObjectId.ZERO);
+        return reflogCommits;
+    }
+
+    private static BitSet markCommits(CommitGraph graph, Set<ObjectId> roots) {
+        RevWalk walk = new RevWalk(graph, RevWalk.Order.TOPO);
+        for (ObjectId root : roots) {
+            // a reflog may mention a commit that an older gc has already deleted,
+            // then ensure() returns -1 and markStart() ignores it
+            walk.markStart(graph.ensure(root));
+        }
+        return walk.visitAll();
+    }
+
+    /**
+     * @param commits every commit the sweep has kept, reachable or not
+     */
+    private static BloomFilter markTreesAndBlobs(GitletRepository repository, List<ObjectId> commits) {
+        ObjectStore objects = repository.getObjectStore();
+        int expectedSize = objects.count(ObjectStore.Kind.TREE) + objects.count(ObjectStore.Kind.BLOB);
+        BloomFilter markedObjects = new BloomFilter(expectedSize, OBJECT_FILTER_FALSE_POSITIVE_RATE);
+        for (ObjectId blobSha1 : repository.readStagingArea().blobs()) {
+            markedObjects.put(blobSha1);
+        }
+        // many commits share a tree, every commit shares the trees of the
+        // directories it did not change with its parent, and each is walked
+        // once. the set is exact, a false positive must not skip a tree.
+        Set<ObjectId> markedTrees = new HashSet<>();
+        for (ObjectId commitSha1 : commits) {
+            Commit commit = repository.readCommit(commitSha1);
+            if (commit.getTreeSha1() == null) {
+                // a commit of the first version of gitlet, it has no tree
+                FileTable files = commit.getFiles();
+                for (int j = 0; j < files.size(); j += 1) {
+                    markedObjects.put(files.idAt(j));
+                }
+                continue;
+            }
+            DirectoryTrees.walk(objects, commit.getTreeSha1(), treeSha1 -> {
+                if (!markedTrees.add(treeSha1)) {
+                    return false;
+                }
+                markedObjects.put(treeSha1);
+                return true;
+            }, markedObjects::put);
+        }
+        return markedObjects;
+    }
+
+    /**
+     * a commit that is not in the graph at all can not be reachable,
+     * since ensure() has put every root and its ancestors into the graph
+     *
+     * @param kept gets every commit that is not deleted
+     */
+    private static int sweepCommits(GitletRepository repository, CommitGraph graph,
+                                    BitSet markedCommits, long pruneBefore, List<ObjectId> kept) {
+        ObjectStore objects = repository.getObjectStore();
+        int removed = 0;
+        for (ObjectId commitSha1 : repository.listAllCommitSha1s()) {
+            int position = graph.positionOf(commitSha1);
+            if (position >= 0 && markedCommits.get(position)) {
+                kept.add(commitSha1);
+                continue;
+            }
+            if (objects.lastModified(ObjectStore.Kind.COMMIT, commitSha1) < pruneBefore
+                    && objects.delete(ObjectStore.Kind.COMMIT, commitSha1)) {
+                removed += 1;
+            } else {
+                kept.add(commitSha1);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * delete the unmarked trees or blobs
+     */
+    private static int sweepObjects(ObjectStore objects, ObjectStore.Kind kind,
+                                    BloomFilter markedObjects, long pruneBefore) {
+        int[] removed = new int[1];
+        objects.forEach(kind, id -> {
+            if (!markedObjects.mightContain(id) && objects.lastModified(kind, id) < pruneBefore
+                    && objects.delete(kind, id)) {
+                removed[0] += 1;
+            }
+        });
+        return removed[0];
+    }
+}
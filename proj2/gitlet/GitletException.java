@@ -4,8 +4,9 @@ package gitlet;
  *  result of .getMessage() is the error message to be printed.
  *  @author P. N. Hilfinger
  */
-class GitletException extends RuntimeException {
+public class GitletException extends RuntimeException {
 
+    private static final long serialVersionUID = 1L;
 
     /** A GitletException with no message. */
     GitletException() {
@@ -0,0 +1,1577 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.stream.IntStream;
+
+import static gitlet.Utils.*;
+
+/**
+ * Represents a gitlet repository, rooted at any directory: its working tree.
+ * <p>
+ * The commands are methods that return what they found (e.g. log() returns
+ * the commits, status() a Status) and never print anything or exit. When a
+ * command can not be done, it throws a NotFoundException, a ConflictException
+ * or an InvalidOperationException, whose message is what the command line
+ * prints, and nothing has been changed. Main is only an adapter that parses
+ * the arguments, calls a command and prints the result or the message.
+ * <p>
+ * Concurrency: there is one GitletRepository per directory in a JVM, open()
+ * and init() hand out the same instance for the same directory. It can be
+ * used by any number of threads: the commands that only read (log,
+ * global-log, find, status, diff, merge-check) run concurrently, the ones
+ * that change the repository or the working tree (add, commit, rm, branch,
+ * rm-branch, checkout, reset, merge, gc) run one at a time, and never while
+ * a reader runs. This holds for other gitlet processes on the same
+ * repository too, see RepositoryLock. Every repository has its own lock, so
+ * many repositories can be served from one JVM without waiting for each other.
+ *
+ * @author Linde
+ */
+// a command holds its lock with try (RepositoryLock.Held ignored = ...),
+// the lock is never used in the body, only released at its end
+@SuppressWarnings("try")
+public class GitletRepository {
+
+    /**
+     * the directory in the working tree where the repository is
+     */
+    static final String GITLET_DIRNAME = ".gitlet";
+
+    /**
+     * the store a new repository gets: "loose" (the default), "log" or "memory",
+     * from -Dgitlet.store=... or the GITLET_STORE environment variable.
+     * an existing repository keeps the store it was created with.
+     */
+    private static final String STORE_OPTION =
+            System.getProperty("gitlet.store", System.getenv("GITLET_STORE"));
+
+    /**
+     * the file in .gitlet where a LogStructuredStore keeps all the objects and refs
+     */
+    private static final String STORE_LOG_FILENAME = "store.log";
+
+    /**
+     * the working tree (canonical) -> the repository, see open()
+     */
+    private static final Map<File, GitletRepository> OPEN_REPOSITORIES = new ConcurrentHashMap<>();
+
+    /**
+     * how many times commit(branch, ...) builds its commit before it gives up
+     */
+    private static final int MAX_COMMIT_ATTEMPTS = 1000;
+
+    /**
+     * how many files add() hashes on one thread before it syncs their blobs
+     */
+    private static final int ADD_CHUNK = 256;
+
+    /**
+     * A commit of log(), global-log() or find().
+     */
+    public static class LogEntry {
+
+        private final ObjectId commitSha1;
+
+        private final Commit commit;
+
+        private LogEntry(ObjectId commitSha1, Commit commit) {
+            this.commitSha1 = commitSha1;
+            this.commit = commit;
+        }
+
+        public ObjectId getCommitSha1() {
+            return commitSha1;
+        }
+
+        public Commit getCommit() {
+            return commit;
+        }
+    }
+
+    /**
+     * What status() found, every list is sorted.
+     */
+    public static class Status {
+
+        private final String activeBranch;
+
+        private final List<String> branches;
+
+        private final List<String> stagedFiles;
+
+        /**
+         * the renamed files among the staged files: new name -> old name
+         */
+        private final Map<String, String> renames;
+
+        private final List<String> removedFiles;
+
+        private final SortedMap<String, String> modifiedFiles;
+
+        private final List<String> untrackedFiles;
+
+        private Status(String activeBranch, List<String> branches, List<String> stagedFiles,
+                       Map<String, String> renames, List<String> removedFiles,
+                       SortedMap<String, String> modifiedFiles, List<String> untrackedFiles) {
+            this.activeBranch = activeBranch;
+            this.branches = Collections.unmodifiableList(branches);
+            this.stagedFiles = Collections.unmodifiableList(stagedFiles);
+            this.renames = Collections.unmodifiableMap(renames);
+            this.removedFiles = Collections.unmodifiableList(removedFiles);
+            this.modifiedFiles = Collections.unmodifiableSortedMap(modifiedFiles);
+            this.untrackedFiles = Collections.unmodifiableList(untrackedFiles);
+        }
+
+        public String getActiveBranch() {
+            return activeBranch;
+        }
+
+        /**
+         * all the branches, the active one included
+         */
+        public List<String> getBranches() {
+            return branches;
+        }
+
+        public List<String> getStagedFiles() {
+            return stagedFiles;
+        }
+
+        /**
+         * @return the old name of a staged file that is a renamed file, or null
+         */
+        public String getRenameSource(String stagedFile) {
+            return renames.get(stagedFile);
+        }
+
+        /**
+         * the files staged for removal, but not the old names of renamed files
+         */
+        public List<String> getRemovedFiles() {
+            return removedFiles;
+        }
+
+        /**
+         * the files that are modified but not staged: filename -> "modified" or "deleted"
+         */
+        public SortedMap<String, String> getModifiedFiles() {
+            return modifiedFiles;
+        }
+
+        public List<String> getUntrackedFiles() {
+            return untrackedFiles;
+        }
+    }
+
+    private final File workTree;
+
+    private final File gitletDir;
+
+    /**
+     * where the objects and the refs are
+     */
+    private final ObjectStore objects;
+
+    private final RefStore refs;
+
+    /**
+     * what a command holds while it runs
+     */
+    private final RepositoryLock lock;
+
+    /**
+     * a repository made with the loose layout has a branches directory,
+     * one made with the log-structured store has a store.log file
+     */
+    private GitletRepository(File workTree) {
+        this.workTree = workTree;
+        gitletDir = join(workTree, GITLET_DIRNAME);
+        File storeLogFile = join(gitletDir, STORE_LOG_FILENAME);
+        Durability durability = Durability.configured();
+        if ("memory".equals(STORE_OPTION)) {
+            InMemoryStore store = new InMemoryStore();
+            objects = store;
+            refs = store;
+        } else if (storeLogFile.exists()
+                || ("log".equals(STORE_OPTION) && !join(gitletDir, "branches").exists())) {
+            LogStructuredStore store = new LogStructuredStore(storeLogFile, durability);
+            objects = store;
+            refs = store;
+        } else {
+            LooseFileStore store = new LooseFileStore(gitletDir, durability);
+            objects = store;
+            refs = store;
+        }
+        // another process may have changed the store before we got the lock
+        lock = new RepositoryLock(gitletDir, objects::refresh);
+    }
+
+    /**
+     * notice that we won't call add() then call commit(),
+     * we will call setUpFirstCommit() instead.
+     *
+     * @param workTree the directory the repository is made in
+     * @throws ConflictException if there is a repository in workTree already
+     */
+    public static GitletRepository init(File workTree) {
+        File canonicalWorkTree = canonical(workTree);
+        File gitletDir = join(canonicalWorkTree, GITLET_DIRNAME);
+        if (!gitletDir.mkdir()) {
+            throw new ConflictException(
+                    "A Gitlet version-control system already exists in the current directory.");
+        }
+        GitletRepository repository = new GitletRepository(canonicalWorkTree);
+        try (RepositoryLock.Held ignored = repository.lockExclusive()) {
+            repository.refs.setActiveBranch("master");
+            repository.setUpFirstCommit();
+        }
+        OPEN_REPOSITORIES.put(canonicalWorkTree, repository);
+        return repository;
+    }
+
+    /**
+     * @param workTree the directory the repository was made in
+     * @return the repository of workTree, the same instance every time
+     * @throws NotFoundException if there is no repository in workTree
+     */
+    public static GitletRepository open(File workTree) {
+        File canonicalWorkTree = canonical(workTree);
+        if (!join(canonicalWorkTree, GITLET_DIRNAME).isDirectory()) {
+            throw new NotFoundException("Not in an initialized Gitlet directory.");
+        }
+        return OPEN_REPOSITORIES.computeIfAbsent(canonicalWorkTree, GitletRepository::new);
+    }
+
+    private static File canonical(File dir) {
+        try {
+            return dir.getCanonicalFile();
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+    }
+
+    private RepositoryLock.Held lockShared() {
+        return lock.lockShared();
+    }
+
+    /**
+     * nobody else writes while we hold it, which is when the store can
+     * finish what a writer that died has left half done
+     */
+    private RepositoryLock.Held lockExclusive() {
+        RepositoryLock.Held held = lock.lockExclusive();
+        try {
+            objects.recover();
+        } catch (RuntimeException excp) {
+            held.close();
+            throw excp;
+        }
+        return held;
+    }
+
+    /**
+     * lockExclusive() if nobody holds the lock right now, or null
+     */
+    private RepositoryLock.Held tryLockExclusive() {
+        RepositoryLock.Held held = lock.tryLockExclusive();
+        if (held != null) {
+            try {
+                objects.recover();
+            } catch (RuntimeException excp) {
+                held.close();
+                throw excp;
+            }
+        }
+        return held;
+    }
+
+    public File getWorkTree() {
+        return workTree;
+    }
+
+    File getGitletDir() {
+        return gitletDir;
+    }
+
+    ObjectStore getObjectStore() {
+        return objects;
+    }
+
+    RefStore getRefStore() {
+        return refs;
+    }
+
+    /**
+     * the staging area as it is on disk now, write() it after changing it
+     */
+    StagingArea readStagingArea() {
+        return StagingArea.read(gitletDir, objects);
+    }
+
+    SparseCheckout readSparseCheckout() {
+        return SparseCheckout.read(gitletDir);
+    }
+
+    private void setUpFirstCommit() {
+        String message = "initial commit";
+        Commit commit = new Commit(message);
+        commit.setObjectStore(objects);
+        ObjectId commitSha1 = writeCommit(commit);
+        CommitGraph graph = new CommitGraph(this);
+        graph.add(commitSha1, commit, Collections.emptyList());
+        setupBranch(commitSha1, "commit (initial): " + message);
+        graph.save();
+    }
+
+    /**
+     * stage a file for addition, see StagingArea
+     *
+     * @param filename the file we want to add
+     */
+    public void add(String filename) {
+        add(Collections.singletonList(filename));
+    }
+
+    /**
+     * stage the files that any of the pathspecs names, see Pathspec. HEAD
+     * and the index are read once, the files are hashed in parallel (or not
+     * at all if the index has cached their stat), and the index is written
+     * once, so either every file is staged or none is. the blobs are synced
+     * before the index refers to them, see ObjectStore.sync(), by the thread
+     * that wrote them, a chunk of files at a time.
+     *
+     * @throws NotFoundException if a pathspec names no file
+     */
+    public void add(List<String> pathspecs) {
+        try (RepositoryLock.Held ignored = lockExclusive()) {
+            List<Pathspec> parsed = new ArrayList<>();
+            for (String pathspec : pathspecs) {
+                parsed.add(Pathspec.parse(pathspec));
+            }
+            List<String> paths = Pathspec.match(workTree, parsed, IgnoreRules.read(workTree));
+            Commit currentCommit = readCommit(getHeadCommitSha1());
+            ObjectId[] blobsInCommit = new ObjectId[paths.size()];
+            if (paths.size() == 1) {
+                // only the trees of the directories the file is in
+                blobsInCommit[0] = currentCommit.getFile(paths.get(0));
+            } else {
+                FileTable filesInCommit = currentCommit.getFiles();
+                for (int i = 0; i < paths.size(); i += 1) {
+                    blobsInCommit[i] = filesInCommit.get(paths.get(i));
+                }
+            }
+            StagingArea stagingArea = readStagingArea();
+            long hashedAt = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+            StagingArea.Stat[] hashed = new StagingArea.Stat[paths.size()];
+            int chunks = (paths.size() + ADD_CHUNK - 1) / ADD_CHUNK;
+            IntStream.range(0, chunks).parallel().forEach(chunk -> {
+                int end = Math.min(paths.size(), (chunk + 1) * ADD_CHUNK);
+                for (int i = chunk * ADD_CHUNK; i < end; i += 1) {
+                    hashed[i] = hashAndWriteBlob(paths.get(i), blobsInCommit[i],
+                            stagingArea.getStat(paths.get(i)));
+                }
+                objects.sync();
+            });
+
+            for (int i = 0; i < paths.size(); i += 1) {
+                String filename = paths.get(i);
+                stagingArea.putStat(filename, hashed[i], hashedAt);
+                // If the current working version of the file is identical to the
+                // version in the current commit, do not stage it to be added,
+                if (hashed[i].blobSha1.equals(blobsInCommit[i])) {
+                    // and remove it from the staging area if it is already
+                    // there (as can happen when a file is changed, added,
+                    // and then changed back to it’s original version).
+                    // The file will no longer be staged for removal (see gitlet rm),
+                    // if it was at the time of the command.
+                    stagingArea.unstage(filename);
+                } else {
+                    // if a file haven't been tracked
+                    // or a file is tracked, but it has been modified
+                    // we need to add it to staging area
+                    stagingArea.add(filename, hashed[i].blobSha1);
+                }
+            }
+            // the files the pathspecs named that are gone are not cached anymore
+            Set<String> matched = new HashSet<>(paths);
+            for (String filename : new ArrayList<>(stagingArea.statPaths())) {
+                if (!matched.contains(filename) && coveredByAny(parsed, filename)) {
+                    stagingArea.forgetStat(filename);
+                }
+            }
+            stagingArea.write();
+        }
+    }
+
+    private static boolean coveredByAny(List<Pathspec> pathspecs, String filename) {
+        for (Pathspec pathspec : pathspecs) {
+            if (pathspec.covers(filename)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * find the blob of a file of the work tree, from its cached stat if the
+     * file has not changed since, and write the blob unless it is the one
+     * in HEAD or the store has it already (identical files share a blob)
+     *
+     * @return the stat of the file, with its blob
+     */
+    private StagingArea.Stat hashAndWriteBlob(String filename, ObjectId blobInCommit, StagingArea.Stat cached) {
+        File file = join(workTree, filename);
+        // the stat before the contents: if the file changes while we read
+        // it, it is not the file of the stat anymore
+        StagingArea.Stat stat = StagingArea.Stat.of(file);
+        if (stat == null) {
+            throw new NotFoundException("File does not exist.");
+        }
+        if (stat.isSameFile(cached)) {
+            stat = stat.withBlob(cached.blobSha1);
+            if (stat.blobSha1.equals(blobInCommit) || objects.contains(ObjectStore.Kind.BLOB, stat.blobSha1)) {
+                return stat;
+            }
+        }
+        byte[] contents = readContents(file);
+        stat = stat.withBlob(ObjectId.sha1Of(contents));
+        if (!stat.blobSha1.equals(blobInCommit) && !objects.contains(ObjectStore.Kind.BLOB, stat.blobSha1)) {
+            objects.write(ObjectStore.Kind.BLOB, stat.blobSha1, contents);
+        }
+        return stat;
+    }
+
+    /**
+     * commit the staged files on top of HEAD
+     *
+     * @return the sha1 of the new commit
+     */
+    public ObjectId commit(String message) {
+        try (RepositoryLock.Held ignored = lockExclusive()) {
+            if (message == null || message.equals("")) {
+                throw new InvalidOperationException("Please enter a commit message.");
+            }
+            StagingArea stagingArea = readStagingArea();
+            if (stagingArea.isEmpty()) {
+                throw new InvalidOperationException("No changes added to the commit.");
+            }
+            List<ObjectId> parentSha1List = new ArrayList<>();
+            parentSha1List.add(getHeadCommitSha1());
+            return setUpCommit(message, parentSha1List, stagingArea);
+        }
+    }
+
+    /**
+     * commit to a branch without the working tree and the staging area, e.g.
+     * for a server that takes commits from several pipelines at once.
+     * <p>
+     * it does not wait for other writers: any number of these commits run at
+     * the same time, on the same branch or on different ones. the blobs, the
+     * tree and the commit are written under their sha1, which needs no lock,
+     * and the branch is only moved with RefStore.compareAndSet() from the
+     * commit we built on. when another commit has moved the branch in the
+     * meantime, we build our commit again on top of that one and try again.
+     * only the commands that change the working tree (checkout, reset, merge,
+     * ...) and gc wait for these commits to be done, and the other way around.
+     * <p>
+     * the commit graph picks up these commits the next time it meets them.
+     * committing to the active branch does not touch the working tree, its
+     * files then look changed to status, like after a push in git.
+     *
+     * @param files        the files to add or change: filename -> contents
+     * @param removedFiles the files to remove
+     * @return the sha1 of the new commit
+     */
+    public ObjectId commit(String branchName, Map<String, byte[]> files,
+                           Collection<String> removedFiles, String message) {
+        try (RepositoryLock.Held ignored = lockShared()) {
+            if (message == null || message.equals("")) {
+                throw new InvalidOperationException("Please enter a commit message.");
+            }
+            // the blobs are the same whatever commit we build on
+            Map<String, ObjectId> blobs = new HashMap<>();
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                ObjectId blobSha1 = ObjectId.sha1Of(file.getValue());
+                objects.write(ObjectStore.Kind.BLOB, blobSha1, file.getValue());
+                blobs.put(file.getKey(), blobSha1);
+            }
+
+            for (int attempt = 0; attempt < MAX_COMMIT_ATTEMPTS; attempt += 1) {
+                ObjectId parentSha1 = readBranch(branchName);
+                if (parentSha1 == null) {
+                    throw new NotFoundException("No such branch exists.");
+                }
+                Commit commit = readCommit(parentSha1);
+                FileTable parentFiles = commit.getFiles();
+                FileTable.Builder builder = parentFiles.toBuilder();
+                boolean changed = false;
+                for (Map.Entry<String, ObjectId> blob : blobs.entrySet()) {
+                    changed |= !blob.getValue().equals(parentFiles.get(blob.getKey()));
+                    builder.put(blob.getKey(), blob.getValue());
+                }
+                for (String filename : removedFiles) {
+                    changed |= parentFiles.contains(filename);
+                    builder.remove(filename);
+                }
+                if (!changed) {
+                    throw new InvalidOperationException("No changes added to the commit.");
+                }
+                Set<String> changedPaths = new HashSet<>(blobs.keySet());
+                changedPaths.addAll(removedFiles);
+                commit.modifyCommit(message, Collections.singletonList(parentSha1), builder.build(), changedPaths);
+                ObjectId commitSha1 = writeCommit(commit);
+                if (refs.compareAndSet(branchName, parentSha1, commitSha1,
+                        reflogLine(parentSha1, commitSha1, "commit: " + message))) {
+                    return commitSha1;
+                }
+                backOff(attempt);
+            }
+            throw new ConflictException("The branch keeps moving, try to commit again.");
+        }
+    }
+
+    /**
+     * wait a little before we try a compareAndSet() again, longer after
+     * every failure and a random time, so that the losers do not all come
+     * back at the same moment
+     */
+    private static void backOff(int attempt) {
+        long maxMillis = 1L << Math.min(attempt, 6);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(maxMillis + 1));
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new GitletException(excp.getMessage());
+        }
+    }
+
+    /**
+     * we will copy a commit then modify it.
+     * Then clear the staging area.
+     * After that, we will serialize it and put it in the object store,
+     * and set HEAD point to active branch.
+     * <p>
+     * For example:
+     * We initialize a Commit, whose sha1 value is a154ccd,
+     * then we will serialize this commit, this serialized file
+     * will be named after a154ccd, then we put it in the object store
+     */
+    private ObjectId setUpCommit(String message, List<ObjectId> parentSha1List,
+                                 StagingArea stagingArea) {
+        // clone a commit then modify it, the staged blobs are in the object store already
+        Commit commit = readCommit(getHeadCommitSha1());
+        // the staged files are exactly the paths this commit changes
+        List<String> changedPaths = new ArrayList<>(stagingArea.paths());
+        // the files of HEAD are not read, only the trees of the directories
+        // the staged files are in
+        commit.modifyCommit(message, parentSha1List, stagingArea.changes());
+        ObjectId commitSha1 = recordCommit(commit, changedPaths);
+        stagingArea.clear();
+        stagingArea.write();
+        return commitSha1;
+    }
+
+    /**
+     * serialize a new commit, append it to the commit graph and move the active branch to it
+     *
+     * @param changedPaths the paths whose blob differs from the first parent
+     */
+    private ObjectId recordCommit(Commit commit, Collection<String> changedPaths) {
+        ObjectId commitSha1 = writeCommit(commit);
+        // the graph is not read, the commit goes into its log
+        CommitGraph.append(this, commitSha1, commit, changedPaths);
+        setupBranch(commitSha1, "commit: " + commit.getMessage());
+        return commitSha1;
+    }
+
+    /**
+     * serialize a Commit class into the object store and return its sha1 value.
+     * Its file map is written as a tree first, the commit itself only stores
+     * the sha1 of the tree.
+     * <p>
+     * for example:
+     * We serialize a Commit class, and get its sha1: a1fb321c,
+     * with the loose layout it is stored in .gitlet/commits/a1/a1fb321c
+     *
+     * @param commit the commit we want to serialize
+     * @return the sha1 of the commit
+     */
+    ObjectId writeCommit(Commit commit) {
+        commit.writeTree();
+        byte[] contents = serialize(commit);
+        ObjectId commitSha1 = ObjectId.sha1Of(contents);
+        objects.write(ObjectStore.Kind.COMMIT, commitSha1, contents);
+        return commitSha1;
+    }
+
+    /**
+     * set the active branch point to the newest commit, HEAD is where the active branch is.
+     */
+    private void setupBranch(ObjectId theNewestCommitSha1, String reflogMessage) {
+        String theNameOfTheActiveBranch = refs.getActiveBranch();
+        ObjectId oldSha1 = refs.read(theNameOfTheActiveBranch);
+        refs.write(theNameOfTheActiveBranch, theNewestCommitSha1);
+        appendReflog(theNameOfTheActiveBranch, oldSha1, theNewestCommitSha1, reflogMessage);
+    }
+
+    /**
+     * append one line to the reflog of branchName, the format is
+     * [old sha1] [new sha1] [time in millis] [message]
+     * <p>
+     * the reflog is what gc() uses to keep recently abandoned commits
+     * (e.g. after reset) alive for a while, so that they can still be found.
+     */
+    private void appendReflog(String branchName, ObjectId oldSha1,
+                              ObjectId newSha1, String message) {
+        refs.appendLog(branchName, reflogLine(oldSha1, newSha1, message));
+    }
+
+    private static String reflogLine(ObjectId oldSha1, ObjectId newSha1, String message) {
+        if (oldSha1 == null) {
+            oldSha1 = ObjectId.ZERO;
+        }
+        return oldSha1 + " " + newSha1 + " " + System.currentTimeMillis()
+                + " " + message.replace('\n', ' ');
+    }
+
+    /**
+     * If the file is staged for addition, we unstage it.
+     * If the file is tracked in the current commit, stage it for removal
+     * and remove the file from working directory if the user has not already done so
+     * (do not remove it unless it is tracked in the current commit).
+     *
+     * @param targetFilename the name of the file that we want to remove
+     */
+    public void remove(String targetFilename) {
+        try (RepositoryLock.Held ignored = lockExclusive()) {
+            StagingArea stagingArea = readStagingArea();
+            boolean findFileInStagedForAdd = stagingArea.isAdded(targetFilename);
+            if (findFileInStagedForAdd) {
+                stagingArea.unstage(targetFilename);
+            }
+
+            boolean findFileInCurrentCommit = false;
+            Commit currentCommit = readCommit(getHeadCommitSha1());
+            if (currentCommit.getFile(targetFilename) != null) {
+                findFileInCurrentCommit = true;
+                // only a tombstone, the blob stays where it is
+                stagingArea.remove(targetFilename);
+
+                deleteWorkFile(targetFilename);
+            }
+
+            if (!findFileInStagedForAdd && !findFileInCurrentCommit) {
+                throw new InvalidOperationException("No reason to remove the file.");
+            }
+            stagingArea.write();
+        }
+    }
+
+    /**
+     * the history of HEAD, newest first.
+     * if a commit have multiple parents, we only follow the first parent
+     */
+    public List<LogEntry> log() {
+        try (RepositoryLock.Held ignored = lockShared()) {
+            CommitGraph graph = CommitGraph.load(this);
+            List<LogEntry> entries = new ArrayList<>();
+            RevWalk walk = new RevWalk(graph, RevWalk.Order.FIRST_PARENT);
+            walk.markStart(graph.ensure(getHeadCommitSha1()));
+            for (int position = walk.next(); position >= 0; position = walk.next()) {
+                ObjectId commitSha1 = graph.sha1At(position);
+                entries.add(new LogEntry(commitSha1, readCommit(commitSha1)));
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * like log(), but only the commits that changed the file,
+     * i.e. the file in the commit differs from the file in its first parent.
+     * <p>
+     * the changed-path filters in the commit graph let us skip most commits
+     * without deserializing them, only when the filter says "maybe" do we
+     * load the commit and its parent to compare.
+     */
+    public List<LogEntry> log(String filename) {
+        try (RepositoryLock.Held ignored = lockShared()) {
+            CommitGraph graph = CommitGraph.load(this);
+            List<LogEntry> entries = new ArrayList<>();
+            RevWalk walk = new RevWalk(graph, RevWalk.Order.FIRST_PARENT);
+            walk.markStart(graph.ensure(getHeadCommitSha1()));
+            for (int position = walk.next(); position >= 0; position = walk.next()) {
+                int[] parents = graph.parentsAt(position);
+                int firstParent = parents.length == 0 ? -1 : parents[0];
+                if (graph.mayHaveChangedPath(position, filename)) {
+                    ObjectId commitSha1 = graph.sha1At(position);
+                    Commit commit = readCommit(commitSha1);
+                    ObjectId blobSha1 = commit.getFile(filename);
+                    ObjectId parentBlobSha1 = firstParent < 0 ? null
+                            : readCommit(graph.sha1At(firstParent)).getFile(filename);
+                    if (!Objects.equals(blobSha1, parentBlobSha1)) {
+                        entries.add(new LogEntry(commitSha1, commit));
+                    }
+                }
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * every commit ever made, in the order of their ids
+     */
+    public List<LogEntry> globalLog() {
+        try (RepositoryLock.Held ignored = lockShared()) {
+            List<LogEntry> entries = new ArrayList<>();
+            for (ObjectId commitSha1 : listAllCommitSha1s()) {
+                entries.add(new LogEntry(commitSha1, readCommit(commitSha1)));
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * @return the ids of the commits with exactly this message, empty if there is none
+     */
+    public List<ObjectId> find(String targetMessage) {
+        try (RepositoryLock.Held ignored = lockShared()) {
+            List<ObjectId> found = new ArrayList<>();
+            for (ObjectId commitSha1 : listAllCommitSha1s()) {
+                if (readCommit(commitSha1).getMessage().equals(targetMessage)) {
+                    found.add(commitSha1);
+                }
+            }
+            return found;
+        }
+    }
+
+    public void branch(String branchName) {
+        try (RepositoryLock.Held ignored = lockExclusive()) {
+            // the names a store keeps for itself, like HEAD, are taken as well
+            if (!refs.isBranchName(branchName) || refs.read(branchName) != null) {
+                throw new ConflictException("A branch with that name already exists.");
+            }
+
+            ObjectId currentCommitSha1 = getHeadCommitSha1();
+            refs.write(branchName, currentCommitSha1);
+            appendReflog(branchName, ObjectId.ZERO, currentCommitSha1, "branch: Created from HEAD");
+        }
+    }
+
+    public void removeBranch(String branchName) {
+        try (RepositoryLock.Held ignored = lockExclusive()) {
+            if (refs.getActiveBranch().equals(branchName)) {
+                throw new InvalidOperationException("Cannot remove the current branch.");
+            }
+
+            if (!refs.isBranchName(branchName) || !refs.delete(branchName)) {
+                throw new NotFoundException("A branch with that name does not exist.");
+            }
+        }
+    }
+
+    /**
+     * Copied from gitlet spec:
+     * Takes the version of the file as it exists in the commit with the given id,
+     * and puts it in the working directory, overwriting the version of the file
+     * that’s already there if there is one. The new version of the file is not staged.
+     *
+     * @param targetCommitId the commit id, it can be abbreviated
+     */
+    public void checkoutFile(String targetCommitId, String targetFilename) {
+        try (RepositoryLock.Held ignored = lockExclusive()) {
+            checkoutFile(readCommit(getCompletedSha1(targetCommitId)), targetFilename);
+        }
+    }
+
+    /**
+     * Copied from gitlet spec:
+     * Takes the version of the file as it exists in the head commit and
+     * puts it in the working directory, overwriting the version of the file
+     * that’s already there if there is one.
+     * The new version of the file is not staged.
+     */
+    public void checkoutFile(String filename) {
+        try (RepositoryLock.Held ignored = lockExclusive()) {
+            checkoutFile(readCommit(getHeadCommitSha1()), filename);
+        }
+    }
+
+    private void checkoutFile(Commit targetCommit, String targetFilename) {
+        ObjectId blobSha1 = targetCommit.getFile(targetFilename);
+        if (blobSha1 == null) {
+            throw new NotFoundException("File does not exist in that commit.");
+        }
+        copyBlob(blobSha1, join(workTree, targetFilename));
+    }
+
+    /**
+     * Copied from gitlet spec:
+     * Takes all files in the commit at the head of the given branch,
+     * and puts them in the working directory, overwriting the versions
+     * of the files that are already there if they exist.
+     * Also, at the end of this command, the given branch will now be
+     * considered the current branch (HEAD). Any files that are tracked
+     * in the current branch but are not present in the checked-out branch
+     * are deleted. The staging area is cleared, unless the checked-out
+     * branch is the current branch
+     */
+    public void checkoutBranch(String targetBranchName) {
+        try (RepositoryLock.Held ignored = lockExclusive()) {
+            ObjectId targetCommitSha1 = readBranch(targetBranchName);
+            if (targetCommitSha1 == null) {
+                throw new NotFoundException("No such branch exists.");
+            }
+
+            String theNameOfTheActiveBranch = refs.getActiveBranch();
+            if (targetBranchName.equals(theNameOfTheActiveBranch)) {
+                throw new InvalidOperationException("No need to checkout the current branch.");
+            }
+
+            Commit targetCommit = readCommit(targetCommitSha1);
+
+            checkoutAllFilesInCommit(targetCommit);
+
+            refs.setActiveBranch(targetBranchName);
+            clearStagingArea();
+        }
+    }
+
+    /**
+     * only the files in the sparse checkout are written, and deleted
+     */
+    private void checkoutAllFilesInCommit(Commit targetCommit) {
+        checkIfUntrackedFileWillBeOverwrittenByCommit(targetCommit);
+
+        SparseCheckout sparse = readSparseCheckout();
+        FileTable filesInTargetCommit = targetCommit.getFiles(sparse);
+        // nothing is deleted or written if a blob is missing, e.g. gc has
+        // deleted it, the work tree would be half switched
+        for (int i = 0; i < filesInTargetCommit.size(); i += 1) {
+            checkBlobExists(filesInTargetCommit.idAt(i), filesInTargetCommit.pathAt(i));
+        }
+
+        // Any files that are tracked in the current branch
+        // but are not present in the checked-out branch are deleted.
+        // They go first, a directory of the checked-out branch may be where
+        // one of them is now, or the other way around.
+        FileTable filesInCurrCommit = readCommit(getHeadCommitSha1()).getFiles(sparse);
+        FileTable.Join join = new FileTable.Join(filesInCurrCommit, filesInTargetCommit);
+        while (join.next()) {
+            if (join.id(1) == null) {
+                deleteWorkFile(join.path());
+            }
+        }
+        join = new FileTable.Join(filesInCurrCommit, filesInTargetCommit);
+        while (join.next()) {
+            if (join.id(1) != null) {
+                copyBlob(join.id(1), join(workTree, join.path()));
+            }
+        }
+    }
+
+    /**
+     * @param findRenames if true, a file staged for removal and a new file staged
+     *                    for addition with similar contents are one renamed file,
+     *                    see Status.getRenameSource()
+     */
+    public Status status(boolean findRenames) {
+        Status status;
+        StagingArea stagingArea;
+        UntrackedCache untrackedCache;
+        try (RepositoryLock.Held ignored = lockShared()) {
+            Commit currentCommit = readCommit(getHeadCommitSha1());
+            // the files outside a sparse checkout are not in the work tree, they
+            // are neither deleted nor looked at, see SparseCheckout
+            SparseCheckout sparse = readSparseCheckout();
+            FileTable filesInCommit = currentCommit.getFiles(sparse);
+            stagingArea = readStagingArea();
+            // the renames by their new name
+            Map<String, String> renames = new HashMap<>();
+            if (findRenames) {
+                for (RenameDetector.Rename rename : RenameDetector.detect(
+                        filesInCommit, stagingArea.applyTo(filesInCommit),
+                        (path, blobSha1) -> readBlob(blobSha1),
+                        (path, blobSha1) -> readBlob(blobSha1), false)) {
+                    renames.put(rename.newPath, rename.oldPath);
+                }
+            }
+
+            List<String> removedFiles = new ArrayList<>();
+            Set<String> renamedFilenames = new HashSet<>(renames.values());
+            for (String filename : stagingArea.getRemovedFiles()) {
+                if (!renamedFilenames.contains(filename)) {
+                    removedFiles.add(filename);
+                }
+            }
+
+            // The final category ("Untracked Files") is for files present in the
+            // working directory but neither staged for addition nor tracked.
+            // This includes files that have been staged for removal,
+            // but then re-created without Gitlet’s knowledge.
+            // Files that .gitletignore ignores are not listed. The directories
+            // that have not changed since the last status are not listed either,
+            // see UntrackedCache, and since the walk and the commit are both
+            // sorted, we merge them instead of looking up every file.
+            List<String> untrackedFiles = new ArrayList<>();
+            untrackedCache = UntrackedCache.read(gitletDir, workTree);
+            int tracked = 0;
+            for (String filename : WorkTreeWalker.walk(workTree, "", IgnoreRules.read(workTree), untrackedCache)) {
+                while (tracked < filesInCommit.size()
+                        && FileTable.PATH_ORDER.compare(filesInCommit.pathAt(tracked), filename) < 0) {
+                    tracked += 1;
+                }
+                boolean isTracked = (tracked < filesInCommit.size()
+                        && filesInCommit.pathAt(tracked).equals(filename))
+                        || (!sparse.includes(filename) && currentCommit.getFile(filename) != null);
+                // if a file is present in the working tree but neither staged for addition nor tracked
+                boolean condition1 = !isTracked && !stagingArea.isAdded(filename);
+                // if there is a file both exist in working tree and staged for removal
+                boolean condition2 = stagingArea.isRemoved(filename);
+                if (condition1 || condition2) {
+                    untrackedFiles.add(filename);
+                }
+            }
+
+            status = new Status(refs.getActiveBranch(), refs.list(),
+                    stagingArea.getAddedFiles(), renames, removedFiles,
+                    getModifiedButNotStagedFiles(filesInCommit, stagingArea), untrackedFiles);
+        }
+        // the stats of the files we had to read and the directories we had
+        // to list, so that the next status does not read them again. a reader
+        // only reads, so they are written back under the exclusive lock if
+        // nobody else holds it right now, and only if no other command has
+        // replaced the files since we read them. otherwise they are dropped.
+        try (RepositoryLock.Held held = tryLockExclusive()) {
+            if (held != null) {
+                stagingArea.writeIfUnchanged();
+                untrackedCache.writeIfUnchanged();
+            }
+        }
+        return status;
+    }
+
+    /**
+     * Copied from gitlet spec:
+     * Checks out all the files tracked by the given commit.
+     * Removes tracked files that are not present in that commit.
+     * Also moves the current branch’s head to that commit node.
+     *
+     * @param commitId commitId can be abbreviated as for checkout
+     */
+    public void reset(String commitId) {
+        try (RepositoryLock.Held ignored = lockExclusive()) {
+            ObjectId targetCommitId = getCompletedSha1(commitId);
+            Commit targetCommit = readCommit(targetCommitId);
+
+            checkoutAllFilesInCommit(targetCommit);
+
+            clearStagingArea();
+
+            // Also moves the current branch’s head to that commit node,
+            // which moves HEAD too, since HEAD is where the active branch is.
+            // the active branch itself stays the same, we do not switch to another branch
+            String theNameOfActiveBranch = refs.getActiveBranch();
+            ObjectId oldSha1 = refs.read(theNameOfActiveBranch);
+            refs.write(theNameOfActiveBranch, targetCommitId);
+            appendReflog(theNameOfActiveBranch, oldSha1, targetCommitId,
+                    "reset: moving to " + targetCommitId);
+        }
+    }
+
+    /**
+     * the patterns of the sparse checkout, see SparseCheckout, none if the
+     * work tree has every file
+     */
+    public List<String> getSparseCheckoutPatterns() {
+        try (RepositoryLock.Held ignored = lockShared()) {
+            return readSparseCheckout().getPatterns();
+        }
+    }
+
+    /**
+     * make the work tree a sparse checkout of HEAD, see SparseCheckout: the
+     * files the new patterns take in are written, and the ones they leave
+     * out are deleted, unless they have been modified.
+     *
+     * @param patterns none to make the work tree have every file again
+     * @throws ConflictException if something is staged, or if there is an
+     *                           untracked file where a file would be written
+     */
+    public void setSparseCheckout(List<String> patterns) {
+        try (RepositoryLock.Held ignored = lockExclusive()) {
+            StagingArea stagingArea = readStagingArea();
+            if (!stagingArea.isEmpty()) {
+                throw new ConflictException("You have uncommitted changes.");
+            }
+            SparseCheckout newSparse = patterns.isEmpty() ? SparseCheckout.FULL : SparseCheckout.of(patterns);
+            Commit currentCommit = readCommit(getHeadCommitSha1());
+            FileTable oldFiles = currentCommit.getFiles(readSparseCheckout());
+            FileTable newFiles = currentCommit.getFiles(newSparse);
+            long hashedAt = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+
+            // nothing is changed if a file that is not in the checkout yet is in the way
+            FileTable.Join join = new FileTable.Join(oldFiles, newFiles);
+            while (join.next()) {
+                if (join.id(0) == null) {
+                    ObjectId fileSha1 = hashWorkFile(join.path(), stagingArea, hashedAt);
+                    if (fileSha1 != null && !fileSha1.equals(join.id(1))) {
+                        throw new ConflictException(
+                                "There is an untracked file in the way; delete it, or add and commit it first.");
+                    }
+                }
+            }
+            join = new FileTable.Join(oldFiles, newFiles);
+            while (join.next()) {
+                if (join.id(1) == null && join.id(0).equals(hashWorkFile(join.path(), stagingArea, hashedAt))) {
+                    deleteWorkFile(join.path());
+                }
+            }
+            join = new FileTable.Join(oldFiles, newFiles);
+            while (join.next()) {
+                if (join.id(0) == null) {
+                    copyBlob(join.id(1), join(workTree, join.path()));
+                }
+            }
+            newSparse.write(gitletDir);
+            stagingArea.write();
+        }
+    }
+
+    /**
+     * Usage: diff [--stat] [-M | -C] [commit [commit]] [-- file name]
+     * <p>
+     * with no commit, show the changes in the working directory that are not
+     * staged, i.e. the staging area against the working directory. with one
+     * commit, that commit against the working directory. with two commits,
+     * the first one against the second one. a commit is a branch name or a
+     * (possibly abbreviated) commit id.
+     * <p>
+     * a file of the working directory is only looked at if it is tracked,
+     * i.e. it is in the commit or in the staging area.
+     * <p>
+     * with -M, a removed file and an added file with similar contents are shown
+     * as one renamed file (see RenameDetector), with -C an added file can also
+     * be a copy of a changed file.
+     *
+     * @param filename    only show this file, or null for every file
+     * @param stat        only show the number of changed lines of every file
+     * @param findRenames whether to look for renames
+     * @param findCopies  whether to look for copies too
+     * @param out         where the diff is written, it is flushed but not closed
+     */
+    public void diff(List<String> commits, String filename, boolean stat,
+                     boolean findRenames, boolean findCopies, OutputStream out) {
+        try (RepositoryLock.Held ignored = lockShared()) {
+            FileTable stagedFiles = getStagedFiles();
+            FileTable oldFiles;
+            BiFunction<String, ObjectId, byte[]> oldSource = (path, blobSha1) -> readBlob(blobSha1);
+            if (commits.isEmpty()) {
+                oldFiles = stagedFiles;
+            } else {
+                oldFiles = resolveCommit(commits.get(0)).getFiles();
+            }
+            if (filename != null) {
+                oldFiles = onlyFile(oldFiles, filename);
+                stagedFiles = onlyFile(stagedFiles, filename);
+            }
+
+            FileTable newFiles;
+            BiFunction<String, ObjectId, byte[]> newSource;
+            if (commits.size() == 2) {
+                newFiles = resolveCommit(commits.get(1)).getFiles();
+                if (filename != null) {
+                    newFiles = onlyFile(newFiles, filename);
+                }
+                newSource = (path, blobSha1) -> readBlob(blobSha1);
+            } else {
+                newFiles = getWorkingTreeFiles(oldFiles, stagedFiles);
+                newSource = (path, blobSha1) -> readContents(join(workTree, path));
+            }
+
+            // the renames by their new name, and the old names that are gone
+            Map<String, RenameDetector.Rename> renames = new HashMap<>();
+            Set<String> renamedPaths = new HashSet<>();
+            if (findRenames || findCopies) {
+                for (RenameDetector.Rename rename : RenameDetector.detect(oldFiles, newFiles,
+                        oldSource, newSource, findCopies)) {
+                    renames.put(rename.newPath, rename);
+                    if (!rename.copy) {
+                        renamedPaths.add(rename.oldPath);
+                    }
+                }
+            }
+
+            // the files with the same blob on both sides are skipped by comparing
+            // ids, their contents are never read
+            DiffFormatter formatter = new DiffFormatter(out, stat);
+            try {
+                FileTable.Join join = new FileTable.Join(oldFiles, newFiles);
+                while (join.next()) {
+                    if (join.sameId(0, 1)) {
+                        continue;
+                    }
+                    String path = join.path();
+                    ObjectId oldSha1 = join.id(0);
+                    ObjectId newSha1 = join.id(1);
+                    if (oldSha1 != null && newSha1 == null && renamedPaths.contains(path)) {
+                        continue;
+                    }
+                    RenameDetector.Rename rename = oldSha1 == null ? renames.get(path) : null;
+                    if (rename != null) {
+                        formatter.formatRename(rename.oldPath, path, rename.score, rename.copy,
+                                oldSource.apply(rename.oldPath, rename.oldSha1),
+                                newSource.apply(path, newSha1));
+                        continue;
+                    }
+                    formatter.format(path,
+                            oldSha1 == null ? null : oldSource.apply(path, oldSha1),
+                            newSha1 == null ? null : newSource.apply(path, newSha1));
+                }
+                formatter.finish();
+            } catch (IOException excp) {
+                throw new GitletException(excp.getMessage());
+            }
+        }
+    }
+
+    /**
+     * the files of the head commit as the staging area changes them,
+     * i.e. what the next commit will have
+     */
+    private FileTable getStagedFiles() {
+        return readStagingArea().applyTo(readCommit(getHeadCommitSha1()).getFiles());
+    }
+
+    private void clearStagingArea() {
+        StagingArea stagingArea = readStagingArea();
+        stagingArea.clear();
+        stagingArea.write();
+    }
+
+    /**
+     * the tracked files (the files in either table) that exist in
+     * the working directory, and the sha1 of their contents
+     */
+    private FileTable getWorkingTreeFiles(FileTable files, FileTable stagedFiles) {
+        FileTable.Builder builder = FileTable.EMPTY.toBuilder();
+        FileTable.Join join = new FileTable.Join(files, stagedFiles);
+        while (join.next()) {
+            File file = join(workTree, join.path());
+            if (file.isFile()) {
+                builder.put(join.path(), ObjectId.sha1Of(readContents(file)));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * a table with just the given file of files, or an empty table
+     */
+    private static FileTable onlyFile(FileTable files, String filename) {
+        ObjectId blobSha1 = files.get(filename);
+        if (blobSha1 == null) {
+            return FileTable.EMPTY;
+        }
+        return FileTable.EMPTY.toBuilder().put(filename, blobSha1).build();
+    }
+
+    /**
+     * a branch name, or a commit id that may be abbreviated
+     */
+    private Commit resolveCommit(String name) {
+        ObjectId branchSha1 = readBranch(name);
+        if (branchSha1 != null) {
+            return readCommit(branchSha1);
+        }
+        return readCommit(getCompletedSha1(name));
+    }
+
+    /**
+     * if we gonna switch to a certain commit, and that commit will overwrite
+     * a file which is untracked by current commit, nothing is changed. an
+     * ignored file is not overwritten either, we walk the whole work tree.
+     * only the files in the sparse checkout are written, so only those can
+     * be in the way.
+     */
+    private void checkIfUntrackedFileWillBeOverwrittenByCommit(Commit targetCommit) {
+        SparseCheckout sparse = readSparseCheckout();
+        FileTable filesInTargetCommit = targetCommit.getFiles(sparse);
+        Commit currentCommit = readCommit(getHeadCommitSha1());
+        FileTable filesInCurrCommit = currentCommit.getFiles(sparse);
+
+        for (String filename : WorkTreeWalker.walk(workTree, "", IgnoreRules.NONE)) {
+            boolean condition1 = !filesInCurrCommit.contains(filename);
+            boolean condition2 = needsPath(filesInTargetCommit, filename);
+            // if a file is untracked by current commit
+            // and the target commit will overwrite the file
+            if (condition1 && condition2) {
+                throw new ConflictException(
+                        "There is an untracked file in the way; delete it, or add and commit it first.");
+            }
+        }
+    }
+
+    /**
+     * merge the given branch into the current branch. a fast-forward checks
+     * out the branch, a real merge is committed (with conflict markers in
+     * the conflicted files), an ancestor changes nothing.
+     *
+     * @return what the Merger found, see Merger.Result.getKind()
+     */
+    public Merger.Result merge(String targetBranchName) {
+        try (RepositoryLock.Held ignored = lockExclusive()) {
+            checkMergeFailureCases(targetBranchName);
+            ObjectId targetCommitSha1 = readBranch(targetBranchName);
+            ObjectId currentCommitSha1 = getHeadCommitSha1();
+
+            // first compute the whole merge from the objects, then touch the working directory
+            CommitGraph graph = CommitGraph.load(this);
+            Merger merger = new Merger(this, graph);
+            Merger.Result result = merger.merge(currentCommitSha1, targetCommitSha1, targetBranchName, true);
+            if (result.getKind() == Merger.Kind.ALREADY_MERGED) {
+                return result;
+            }
+            if (result.getKind() == Merger.Kind.FAST_FORWARD) {
+                checkoutBranch(targetBranchName);
+                return result;
+            }
+            // the target versions of files that clash with a directory get a
+            // new name, which may be an untracked file
+            for (String clashCopy : result.getClashCopies().values()) {
+                if (join(workTree, clashCopy).exists()) {
+                    throw new ConflictException(
+                            "There is an untracked file in the way; delete it, or add and commit it first.");
+                }
+            }
+            applyToWorkingTree(result.getChanges(), result.getConflicts());
+
+            // Merge commits differ from other commits: they record as parents both the head
+            // of the current branch (called the first parent) and the head of the branch
+            // given on the command line to be merged in.
+            // the merged tree is committed as it is, the staging area is not used
+            // (checkMergeFailureCases() has made sure it is empty).
+            String theNameOfTheActiveBranch = refs.getActiveBranch();
+            String message = "Merged " + targetBranchName + " into " + theNameOfTheActiveBranch + ".";
+            ObjectId mergeCommitSha1 = merger.writeMergeCommit(result, message);
+            setupBranch(mergeCommitSha1, "commit: " + message);
+            return result;
+        }
+    }
+
+    /**
+     * tell whether merging the given branch into the current branch would
+     * conflict, without touching the working directory, the staging area or
+     * anything in .gitlet. unlike merge, uncommitted changes and untracked
+     * files do not matter, since nothing is written.
+     *
+     * @param followRenames if true, renames are followed like merge does, which
+     *                      reads the added and removed files of either side
+     */
+    public Merger.Result mergeCheck(String targetBranchName, boolean followRenames) {
+        try (RepositoryLock.Held ignored = lockShared()) {
+            ObjectId targetCommitSha1 = readBranch(targetBranchName);
+            if (targetCommitSha1 == null) {
+                throw new NotFoundException("A branch with that name does not exist.");
+            }
+            if (targetBranchName.equals(refs.getActiveBranch())) {
+                throw new InvalidOperationException("Cannot merge a branch with itself.");
+            }
+
+            Merger merger = new Merger(this, CommitGraph.load(this), followRenames);
+            return merger.merge(getHeadCommitSha1(), targetCommitSha1, targetBranchName, false);
+        }
+    }
+
+    /**
+     * make the working directory match the merged tree, in one pass
+     * over the changes computed by the Merger. the Merger has merged the
+     * whole trees, but only the files in the sparse checkout are written,
+     * and the conflicts wherever they are, so that they can be resolved.
+     */
+    private void applyToWorkingTree(Map<String, ObjectId> changes, List<String> conflicts) {
+        SparseCheckout sparse = readSparseCheckout();
+        Set<String> conflicted = new HashSet<>(conflicts);
+        // the deletions first, a file may become a directory or the other way around
+        for (Map.Entry<String, ObjectId> change : changes.entrySet()) {
+            if (change.getValue() == null && sparse.includes(change.getKey())) {
+                deleteWorkFile(change.getKey());
+            }
+        }
+        for (Map.Entry<String, ObjectId> change : changes.entrySet()) {
+            if (change.getValue() != null
+                    && (sparse.includes(change.getKey()) || conflicted.contains(change.getKey()))) {
+                copyBlob(change.getValue(), join(workTree, change.getKey()));
+            }
+        }
+    }
+
+    private void checkMergeFailureCases(String targetBranchName) {
+        if (!readStagingArea().isEmpty()) {
+            throw new ConflictException("You have uncommitted changes.");
+        }
+
+        ObjectId targetCommitSha1 = readBranch(targetBranchName);
+        if (targetCommitSha1 == null) {
+            throw new NotFoundException("A branch with that name does not exist.");
+        }
+
+        String theNameOfActiveBranch = refs.getActiveBranch();
+        if (targetBranchName.equals(theNameOfActiveBranch)) {
+            throw new InvalidOperationException("Cannot merge a branch with itself.");
+        }
+
+        checkIfUntrackedFileWillBeOverwrittenByCommit(readCommit(targetCommitSha1));
+    }
+
+    /**
+     * delete the objects nobody can reach anymore, see GarbageCollector
+     */
+    public GarbageCollector.Result gc(GarbageCollector.Options options) {
+        try (RepositoryLock.Held ignored = lockExclusive()) {
+            // the journal may not hold anything gc deletes
+            objects.checkpoint();
+            return GarbageCollector.gc(this, options.getPruneGraceMillis(), options.getReflogExpireMillis());
+        }
+    }
+
+    /**
+     * Copied from gitlet spec:
+     * A file in the working directory is "modified but not staged" if it is:
+     * Tracked in the current commit, changed in the working directory, but not staged; or
+     * Staged for addition, but with different contents than in the working directory; or
+     * Staged for addition, but deleted in the working directory; or
+     * Not staged for removal, but tracked in the current commit and deleted from the working directory.
+     *
+     * @return the names of the files and the states of the files
+     */
+    private TreeMap<String, String> getModifiedButNotStagedFiles(FileTable filesInCommit,
+                                                                 StagingArea stagingArea) {
+
+        // filename->"modified"     filename->"deleted"
+        TreeMap<String, String> fileStateMap = new TreeMap<>();
+        long hashedAt = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+
+        // Tracked in the current commit, changed in the working directory, but not staged
+        for (int i = 0; i < filesInCommit.size(); i += 1) {
+            String filename = filesInCommit.pathAt(i);
+            if (stagingArea.isAdded(filename)) {
+                continue;
+            }
+            ObjectId fileSha1 = hashWorkFile(filename, stagingArea, hashedAt);
+            if (fileSha1 != null && !fileSha1.equals(filesInCommit.idAt(i))) {
+                fileStateMap.put(filename, "modified");
+            }
+        }
+
+        for (String filename : stagingArea.getAddedFiles()) {
+            ObjectId fileSha1 = hashWorkFile(filename, stagingArea, hashedAt);
+            if (fileSha1 == null) {
+                // Staged for addition, but deleted in the working directory
+                fileStateMap.put(filename, "deleted");
+            } else if (!stagingArea.getAdded(filename).equals(fileSha1)) {
+                // if the file is staged for addition,
+                // but with different contents than in the working directory
+                fileStateMap.put(filename, "modified");
+            }
+        }
+
+        // there is a file tracked in current commit, but it disappears in the working tree,
+        // and it is not staged for removal
+        for (String filename : filesInCommit.paths()) {
+            if (!join(workTree, filename).exists()
+                    && !stagingArea.isRemoved(filename)) {
+                fileStateMap.put(filename, "deleted");
+            }
+        }
+
+        return fileStateMap;
+    }
+
+    /**
+     * the blob of a file of the work tree, without reading the file if its
+     * stat is cached and the file has not changed since, see StagingArea.
+     * the stat of a file we had to read is cached (unless it is racy).
+     *
+     * @return the sha1, or null if there is no such file
+     */
+    private ObjectId hashWorkFile(String filename, StagingArea stagingArea, long hashedAt) {
+        File file = join(workTree, filename);
+        StagingArea.Stat stat = StagingArea.Stat.of(file);
+        if (stat == null || !file.isFile()) {
+            return null;
+        }
+        StagingArea.Stat cached = stagingArea.getStat(filename);
+        if (stat.isSameFile(cached)) {
+            return cached.blobSha1;
+        }
+        ObjectId fileSha1 = ObjectId.sha1Of(readContents(file));
+        stagingArea.putStat(filename, stat.withBlob(fileSha1), hashedAt);
+        return fileSha1;
+    }
+
+    /**
+     * delete a file of the work tree, and the directories it was in if
+     * they are empty now
+     */
+    private void deleteWorkFile(String filename) {
+        File file = join(workTree, filename);
+        if (!file.delete()) {
+            return;
+        }
+        for (File directory = file.getParentFile(); !directory.equals(workTree);
+             directory = directory.getParentFile()) {
+            // only deletes a directory that is empty
+            if (!directory.delete()) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * whether writing the files of a commit would need a path of the work
+     * tree: for the file itself, as a directory of one of its files, or for
+     * a directory the file is in
+     */
+    private static boolean needsPath(FileTable files, String path) {
+        if (files.contains(path)) {
+            return true;
+        }
+        int position = files.indexOf(path + "/");
+        position = position < 0 ? -(position + 1) : position;
+        if (position < files.size() && files.pathAt(position).startsWith(path + "/")) {
+            return true;
+        }
+        for (int separator = path.indexOf('/'); separator >= 0; separator = path.indexOf('/', separator + 1)) {
+            if (files.contains(path.substring(0, separator))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * the commits the branches point to
+     */
+    List<ObjectId> getAllBranchHeads() {
+        List<ObjectId> heads = new ArrayList<>();
+        for (String branchName : refs.list()) {
+            ObjectId head = refs.read(branchName);
+            if (head != null) {
+                heads.add(head);
+            }
+        }
+        return heads;
+    }
+
+    /**
+     * the commit a branch points to, or null if there is no such branch.
+     * HEAD is not a branch.
+     */
+    ObjectId readBranch(String branchName) {
+        return refs.isBranchName(branchName) ? refs.read(branchName) : null;
+    }
+
+    /**
+     * all commit ids, sorted
+     */
+    List<ObjectId> listAllCommitSha1s() {
+        List<ObjectId> commitIds = new ArrayList<>();
+        objects.forEach(ObjectStore.Kind.COMMIT, commitIds::add);
+        Collections.sort(commitIds);
+        return commitIds;
+    }
+
+    /**
+     * HEAD, the commit the active branch points to
+     */
+    ObjectId getHeadCommitSha1() {
+        return refs.read(refs.getActiveBranch());
+    }
+
+    /**
+     * @throws NotFoundException if there is no such commit, e.g. commitSha1
+     *                           is what getCompletedSha1() did not find
+     */
+    Commit readCommit(ObjectId commitSha1) {
+        byte[] contents = commitSha1 == null ? null : objects.read(ObjectStore.Kind.COMMIT, commitSha1);
+        if (contents == null) {
+            throw new NotFoundException("No commit with that id exists.");
+        }
+        Commit commit;
+        try {
+            commit = deserialize(contents, Commit.class);
+        } catch (IllegalArgumentException excp) {
+            throw new GitletException("Commit " + commitSha1 + " can not be read: " + excp.getMessage());
+        }
+        commit.setObjectStore(objects);
+        return commit;
+    }
+
+    byte[] readBlob(ObjectId blobSha1) {
+        return objects.read(ObjectStore.Kind.BLOB, blobSha1);
+    }
+
+    /**
+     * the contents of a blob as a stream, for blobs too big to read at once
+     */
+    InputStream openBlob(ObjectId blobSha1) {
+        return objects.open(ObjectStore.Kind.BLOB, blobSha1);
+    }
+
+    /**
+     * @param path the file of the work tree the blob is the contents of, for the message
+     * @throws GitletException if the store does not have the blob, e.g. gc has deleted it
+     */
+    private void checkBlobExists(ObjectId blobSha1, String path) {
+        if (!objects.contains(ObjectStore.Kind.BLOB, blobSha1)) {
+            throw new GitletException("The contents of " + path + " (blob " + blobSha1
+                    + ") are missing from the repository.");
+        }
+    }
+
+    /**
+     * write the contents of a blob to a file, a stream at a time,
+     * overwriting the file if it is there and making its directory if not
+     */
+    private void copyBlob(ObjectId blobSha1, File dest) {
+        checkBlobExists(blobSha1, workTree.toPath().relativize(dest.toPath()).toString());
+        dest.getParentFile().mkdirs();
+        try (InputStream blob = openBlob(blobSha1)) {
+            Files.copy(blob, dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+    }
+
+    /**
+     * @param incompleteCommitId the abbreviated commit sha1
+     * @return the commit id, or null if no commit has it
+     */
+    private ObjectId getCompletedSha1(String incompleteCommitId) {
+        if (incompleteCommitId.length() < 2) {
+            throw new NotFoundException("No commit with that id exists.");
+        }
+        /*
+        let's say commitId is 3ac
+        and there are two commits: 3acb12 and 3ac891
+        3ac is not long enough to distinguish the two commits,
+        we don't know what commit should we pick.
+         */
+        List<ObjectId> found = objects.findByPrefix(ObjectStore.Kind.COMMIT, incompleteCommitId);
+        if (found.size() > 1) {
+            throw new NotFoundException("No commit with that id exists.");
+        }
+        return found.isEmpty() ? null : found.get(0);
+    }
+}
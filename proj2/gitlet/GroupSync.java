@@ -0,0 +1,97 @@
+package gitlet;
+
+import java.io.IOException;
+
+/**
+ * One fsync for many writers of a file, i.e. a group commit.
+ * <p>
+ * A writer that has appended something calls appended() and gets a ticket,
+ * and sync(ticket) returns once the append is on the disk. If a force is on
+ * the way, the writer waits for it, and if that force began after its
+ * append, the writer is done without forcing anything. Otherwise it forces
+ * the file itself, for every append so far, so the writers that come while
+ * one force is on the way are all covered by the next one. With n threads
+ * committing at once, n commits cost about one fsync instead of n.
+ * <p>
+ * The tickets count the appends of this JVM, not positions in the file,
+ * so a file that is truncated or replaced does not confuse them.
+ *
+ * @author Linde
+ */
+class GroupSync {
+
+    interface Force {
+        void force() throws IOException;
+    }
+
+    private final Force force;
+
+    /**
+     * the appends so far, guarded by this
+     */
+    private long appends;
+
+    /**
+     * the appends that are on the disk, guarded by this
+     */
+    private long synced;
+
+    /**
+     * whether a writer is forcing the file right now, guarded by this
+     */
+    private boolean syncing;
+
+    /**
+     * @param force forces the file to the disk
+     */
+    GroupSync(Force force) {
+        this.force = force;
+    }
+
+    /**
+     * call it once an append is written, i.e. a force that begins now covers it
+     *
+     * @return the ticket of the append, for sync()
+     */
+    synchronized long appended() {
+        appends += 1;
+        return appends;
+    }
+
+    /**
+     * return once the append of the ticket is on the disk
+     */
+    void sync(long ticket) {
+        long target;
+        synchronized (this) {
+            while (synced < ticket && syncing) {
+                try {
+                    wait();
+                } catch (InterruptedException excp) {
+                    Thread.currentThread().interrupt();
+                    throw new GitletException(excp.getMessage());
+                }
+            }
+            if (synced >= ticket) {
+                return;
+            }
+            syncing = true;
+            target = appends;
+        }
+        boolean forced = false;
+        try {
+            force.force();
+            forced = true;
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        } finally {
+            synchronized (this) {
+                syncing = false;
+                if (forced) {
+                    synced = Math.max(synced, target);
+                }
+                notifyAll();
+            }
+        }
+    }
+}
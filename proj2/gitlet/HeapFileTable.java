@@ -0,0 +1,76 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A FileTable kept as two sorted arrays: paths[i] is stored as blob ids[i].
+ * <p>
+ * A TreeMap costs an Entry node (about 40 bytes) per file on top of the keys
+ * and values, two arrays cost 8 bytes per file, and the paths are interned,
+ * so commits loaded together share one String per path.
+ *
+ * @author Linde
+ */
+final class HeapFileTable extends FileTable {
+
+    private final String[] paths;
+    private final ObjectId[] ids;
+
+    HeapFileTable(String[] paths, ObjectId[] ids) {
+        this.paths = paths;
+        this.ids = ids;
+    }
+
+    /**
+     * decode the contents of a tree file, see FileTable
+     */
+    static HeapFileTable parse(ByteBuffer buffer) {
+        int n = buffer.getInt(0);
+        int idsStart = 4;
+        int offsetsStart = idsStart + n * ObjectId.RAW_LENGTH;
+        int pathsStart = offsetsStart + (n + 1) * 4;
+        String[] paths = new String[n];
+        ObjectId[] ids = new ObjectId[n];
+        byte[] bytes = buffer.array();
+        for (int i = 0; i < n; i += 1) {
+            ids[i] = ObjectId.fromRaw(bytes, idsStart + i * ObjectId.RAW_LENGTH);
+            int start = buffer.getInt(offsetsStart + i * 4);
+            int end = buffer.getInt(offsetsStart + (i + 1) * 4);
+            paths[i] = intern(new String(bytes, pathsStart + start, end - start,
+                    StandardCharsets.UTF_8));
+        }
+        return new HeapFileTable(paths, ids);
+    }
+
+    @Override
+    public int size() {
+        return paths.length;
+    }
+
+    @Override
+    public String pathAt(int index) {
+        return paths[index];
+    }
+
+    @Override
+    public ObjectId idAt(int index) {
+        return ids[index];
+    }
+
+    @Override
+    public int indexOf(String path) {
+        return Arrays.binarySearch(paths, path, PATH_ORDER);
+    }
+
+    @Override
+    int comparePathAt(int index, FileTable other, int otherIndex) {
+        // interned paths are usually the same instance, so try == first
+        if (other instanceof HeapFileTable
+                && paths[index] == ((HeapFileTable) other).paths[otherIndex]) {
+            return 0;
+        }
+        return super.comparePathAt(index, other, otherIndex);
+    }
+}
@@ -0,0 +1,82 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static gitlet.Benchmark.*;
+import static gitlet.Utils.*;
+
+/**
+ * Benchmarks of the history: the commit graph and its walks, see Benchmark.
+ *
+ * @author Linde
+ */
+class HistoryBenchmarks {
+
+    private HistoryBenchmarks() {
+    }
+
+    /**
+     * build a linear history of n commits, then compare a full RevWalk over
+     * the ancestors (what the old recursive getAncestorsOfCommit() computed,
+     * minus the deserialization) with the bitmap queries of the CommitGraph.
+     */
+    static void benchmarkAncestors(int n) {
+        long start = System.nanoTime();
+        List<ObjectId> commits = buildLinearHistory(n);
+        report("add and commit (average of " + n + ")", (System.nanoTime() - start) / n);
+        ObjectId initialSha1 = commits.get(0);
+        ObjectId headSha1 = commits.get(commits.size() - 1);
+        ObjectId middleSha1 = commits.get(commits.size() / 2);
+
+        long load = best(() -> CommitGraph.load(repository()));
+        report("CommitGraph.load", load);
+        CommitGraph graph = CommitGraph.load(repository());
+        report("RevWalk all ancestors", best(() -> {
+            RevWalk walk = new RevWalk(graph, RevWalk.Order.TOPO);
+            walk.markStart(graph.positionOf(headSha1));
+            walk.visitAll();
+        }));
+        report("bitmap isAncestor", best(() -> graph.isAncestor(initialSha1, headSha1)));
+        report("bitmap mergeBase", best(() -> graph.mergeBase(middleSha1, headSha1)));
+        report("bitmap countCommitsBetween",
+                best(() -> graph.countCommitsBetween(middleSha1, headSha1)));
+    }
+
+    /**
+     * build an in-memory commit graph of n commits, every 100th commit merges
+     * a commit from 50 commits ago, then walk all of it in every order.
+     * nothing touches the disk, so this can be run anywhere.
+     */
+    static void benchmarkWalk(int n) {
+        CommitGraph graph = new CommitGraph();
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i += 1) {
+            List<ObjectId> parents = new ArrayList<>();
+            if (i > 0) {
+                parents.add(fakeSha1(i - 1));
+            }
+            if (i >= 100 && i % 100 == 0) {
+                parents.add(fakeSha1(i - 50));
+            }
+            graph.add(fakeSha1(i), parents, i * 1000L, Collections.emptyList());
+        }
+        report("build graph of " + n + " commits", System.nanoTime() - start);
+
+        int head = n - 1;
+        for (RevWalk.Order order : RevWalk.Order.values()) {
+            report("RevWalk " + order, best(() -> {
+                RevWalk walk = new RevWalk(graph, order);
+                walk.markStart(head);
+                walk.visitAll();
+            }));
+        }
+        report("RevWalk range (last 1000 commits)", best(() -> {
+            RevWalk walk = new RevWalk(graph, RevWalk.Order.DATE);
+            walk.markUninteresting(head - 1000);
+            walk.markStart(head);
+            walk.visitAll();
+        }));
+    }
+}
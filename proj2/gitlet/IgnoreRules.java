@@ -0,0 +1,550 @@
+package gitlet;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * The patterns of .gitletignore, compiled into one matcher for all of them.
+ * <p>
+ * The file is read from the root of the work tree, one pattern per line,
+ * like a .gitignore:
+ * <ul>
+ *     <li>blank lines and lines that begin with '#' are nothing,</li>
+ *     <li>"!pattern" takes a path back that an earlier pattern ignored, the
+ *     last pattern that matches a path decides,</li>
+ *     <li>"pattern/" only matches directories,</li>
+ *     <li>a pattern with a '/' (other than at the end) is matched against the
+ *     path from the root of the work tree, one without is matched against
+ *     the name of a file or a directory anywhere in it,</li>
+ *     <li>'*', '?' and [a-z] match within a name, "**" matches any number
+ *     of directories.</li>
+ * </ul>
+ * What is in an ignored directory is never looked at, so it can not be
+ * taken back by a "!" pattern either.
+ * <p>
+ * The patterns are split into their segments, the names between the '/'s,
+ * and put into one trie of segments, which is walked along with the work
+ * tree: a Position is the set of trie nodes that the path of a directory
+ * leads to, and a name in the directory moves on from those nodes only. A
+ * node finds its children for a name in a hash map by the name (literal
+ * segments), by the suffixes of the name of the lengths it has ("*.log"),
+ * by its prefixes ("tmp*"), and only tests the segments that are real
+ * globs if the name begins with the text before their first wildcard, or
+ * ends with the text after their last one. Every pattern without a '/'
+ * hangs below one "**" node right under the root, so 10000 names to ignore
+ * anywhere cost a few hash lookups per file, not 10000 glob matches.
+ *
+ * @author Linde
+ */
+class IgnoreRules {
+
+    static final String FILENAME = ".gitletignore";
+
+    /**
+     * no patterns at all
+     */
+    static final IgnoreRules NONE = new IgnoreRules(Collections.emptyList());
+
+    private static final String DOUBLE_STAR = "**";
+
+    private static final String GLOB_CHARACTERS = "*?[\\";
+
+    private final Node root = new Node(false);
+
+    /**
+     * negated[i] is true if the i-th pattern begins with a '!'
+     */
+    private final boolean[] negated;
+
+    /**
+     * where the work tree itself is
+     */
+    private final Position start;
+
+    /**
+     * the nodes the paths of some directories lead to. a walk of the work
+     * tree does not build a new set of nodes for every directory, only for
+     * every distinct set, see Position
+     */
+    private final Map<List<Node>, Position> positions = new HashMap<>();
+
+    IgnoreRules(List<String> patterns) {
+        negated = new boolean[patterns.size()];
+        for (int i = 0; i < patterns.size(); i += 1) {
+            add(patterns.get(i), i);
+        }
+        root.freeze();
+        List<Node> rootNodes = new ArrayList<>();
+        addWithClosure(root, rootNodes);
+        start = positionOf(rootNodes);
+    }
+
+    /**
+     * the rules of the work tree, NONE if it has no .gitletignore
+     */
+    static IgnoreRules read(File workTree) {
+        File ignoreFile = Utils.join(workTree, FILENAME);
+        if (!ignoreFile.isFile()) {
+            return NONE;
+        }
+        return new IgnoreRules(Arrays.asList(Utils.readContentsAsString(ignoreFile).split("\r?\n")));
+    }
+
+    private void add(String line, int index) {
+        String pattern = line.strip();
+        if (pattern.isEmpty() || pattern.startsWith("#")) {
+            return;
+        }
+        if (pattern.startsWith("!")) {
+            negated[index] = true;
+            pattern = pattern.substring(1);
+        } else if (pattern.startsWith("\\#") || pattern.startsWith("\\!")) {
+            pattern = pattern.substring(1);
+        }
+        boolean directoryOnly = pattern.endsWith("/");
+        while (pattern.endsWith("/")) {
+            pattern = pattern.substring(0, pattern.length() - 1);
+        }
+        if (pattern.isEmpty()) {
+            return;
+        }
+        boolean anchored = pattern.indexOf('/') >= 0;
+        while (pattern.startsWith("/")) {
+            pattern = pattern.substring(1);
+        }
+        Node node = anchored ? root : root.child(DOUBLE_STAR);
+        for (String segment : pattern.split("/+")) {
+            node = node.child(segment);
+        }
+        if (directoryOnly) {
+            node.directoryRule = Math.max(node.directoryRule, index);
+        } else {
+            node.rule = Math.max(node.rule, index);
+        }
+    }
+
+    /**
+     * where the work tree itself is
+     */
+    Position start() {
+        return start;
+    }
+
+    /**
+     * @param directory a position, e.g. start()
+     * @return where a subdirectory of it is, or null if it is ignored
+     */
+    Position enter(Position directory, String name) {
+        if (directory.nodes.length == 0) {
+            return directory;
+        }
+        List<Node> reached = new ArrayList<>();
+        if (isIgnored(step(directory, name, reached), true)) {
+            return null;
+        }
+        List<Node> nodes = new ArrayList<>();
+        for (Node node : reached) {
+            addWithClosure(node, nodes);
+        }
+        return positionOf(nodes);
+    }
+
+    /**
+     * whether a file in the directory of a position is ignored
+     */
+    boolean isIgnored(Position directory, String name) {
+        if (directory.nodes.length == 0) {
+            return false;
+        }
+        return isIgnored(step(directory, name, new ArrayList<>()), false);
+    }
+
+    /**
+     * whether no pattern can match a path in the directory of a position, or below it
+     */
+    boolean matchesNothingBelow(Position directory) {
+        return directory.nodes.length == 0;
+    }
+
+    /**
+     * where a directory of the work tree is, "" for the work tree itself
+     *
+     * @return the position, or null if the directory or one it is in is ignored
+     */
+    Position positionOf(String directory) {
+        Position position = start;
+        if (directory.isEmpty()) {
+            return position;
+        }
+        for (String name : directory.split("/")) {
+            position = enter(position, name);
+            if (position == null) {
+                return null;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * whether a file of the work tree is ignored, or one of the directories it is in
+     */
+    boolean isIgnored(String path) {
+        int separator = path.lastIndexOf('/');
+        Position directory = positionOf(separator < 0 ? "" : path.substring(0, separator));
+        return directory == null || isIgnored(directory, path.substring(separator + 1));
+    }
+
+    /**
+     * @param rule see step()
+     */
+    private boolean isIgnored(int[] rule, boolean directory) {
+        int last = directory ? rule[1] : rule[0];
+        return last >= 0 && !negated[last];
+    }
+
+    /**
+     * move on from the nodes of a directory by a name in it
+     *
+     * @param reached where the nodes that the name leads to go
+     * @return the last pattern that matches the name, -1 if none does, in
+     * [0], and the last one counting directory patterns too in [1]
+     */
+    private int[] step(Position directory, String name, List<Node> reached) {
+        for (Node node : directory.nodes) {
+            node.step(name, reached);
+        }
+        int[] rule = {-1, -1};
+        for (Node node : reached) {
+            rule[0] = Math.max(rule[0], node.rule);
+            rule[1] = Math.max(rule[1], Math.max(node.rule, node.directoryRule));
+        }
+        return rule;
+    }
+
+    private static void addWithClosure(Node node, List<Node> nodes) {
+        if (!containsNode(nodes, node)) {
+            nodes.add(node);
+        }
+        // "**" may match no directory at all
+        Node doubleStar = node.doubleStar;
+        if (doubleStar != null && !containsNode(nodes, doubleStar)) {
+            nodes.add(doubleStar);
+        }
+    }
+
+    private static boolean containsNode(List<Node> nodes, Node node) {
+        for (Node other : nodes) {
+            if (other == node) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized Position positionOf(List<Node> nodes) {
+        return positions.computeIfAbsent(nodes, key -> new Position(key.toArray(new Node[0])));
+    }
+
+    /**
+     * where the path of a directory leads in the trie, see the class comment
+     */
+    static final class Position {
+
+        private final Node[] nodes;
+
+        private Position(Node[] nodes) {
+            this.nodes = nodes;
+        }
+    }
+
+    /**
+     * a segment of some patterns, and the segments that come after it
+     */
+    private static final class Node {
+
+        /**
+         * a "**" node, it matches any name and stays where it is
+         */
+        private final boolean isDoubleStar;
+
+        /**
+         * the last pattern that ends here, and the last one that ends here
+         * with a '/', i.e. only matches a directory, -1 if none
+         */
+        private int rule = -1;
+
+        private int directoryRule = -1;
+
+        private final Map<String, Node> literals = new HashMap<>();
+
+        /**
+         * "*" and the rest of the segment -> its node, and the lengths of
+         * those rests, longest first
+         */
+        private final Map<String, Node> suffixes = new HashMap<>();
+
+        private int[] suffixLengths = new int[0];
+
+        /**
+         * the segment without its "*" at the end -> its node
+         */
+        private final Map<String, Node> prefixes = new HashMap<>();
+
+        private int[] prefixLengths = new int[0];
+
+        /**
+         * the segments that are globs -> their node
+         */
+        private final Map<String, Glob> globs = new HashMap<>();
+
+        /**
+         * the globs by the text before their first wildcard, the ones that
+         * begin with a wildcard by the text after their last one, and the
+         * ones that neither begin nor end with text
+         */
+        private final Map<String, List<Glob>> globsByPrefix = new HashMap<>();
+
+        private int[] globPrefixLengths = new int[0];
+
+        private final Map<String, List<Glob>> globsBySuffix = new HashMap<>();
+
+        private int[] globSuffixLengths = new int[0];
+
+        private final List<Glob> otherGlobs = new ArrayList<>();
+
+        private Node doubleStar;
+
+        Node(boolean isDoubleStar) {
+            this.isDoubleStar = isDoubleStar;
+        }
+
+        Node child(String segment) {
+            if (segment.equals(DOUBLE_STAR)) {
+                if (doubleStar == null) {
+                    doubleStar = isDoubleStar ? this : new Node(true);
+                }
+                return doubleStar;
+            }
+            int firstGlob = firstGlobCharacter(segment, 0);
+            if (firstGlob < 0) {
+                return literals.computeIfAbsent(segment, key -> new Node(false));
+            }
+            if (firstGlob == 0 && segment.charAt(0) == '*' && firstGlobCharacter(segment, 1) < 0) {
+                return suffixes.computeIfAbsent(segment.substring(1), key -> new Node(false));
+            }
+            if (firstGlob == segment.length() - 1 && segment.charAt(firstGlob) == '*') {
+                return prefixes.computeIfAbsent(segment.substring(0, firstGlob), key -> new Node(false));
+            }
+            Glob glob = globs.get(segment);
+            if (glob != null) {
+                return glob.node;
+            }
+            glob = new Glob(segment, new Node(false));
+            globs.put(segment, glob);
+            int lastGlob = segment.length() - 1;
+            while (GLOB_CHARACTERS.indexOf(segment.charAt(lastGlob)) < 0 && segment.charAt(lastGlob) != ']') {
+                lastGlob -= 1;
+            }
+            if (firstGlob > 0) {
+                globsByPrefix.computeIfAbsent(segment.substring(0, firstGlob), key -> new ArrayList<>()).add(glob);
+            } else if (lastGlob < segment.length() - 1) {
+                globsBySuffix.computeIfAbsent(segment.substring(lastGlob + 1), key -> new ArrayList<>()).add(glob);
+            } else {
+                otherGlobs.add(glob);
+            }
+            return glob.node;
+        }
+
+        private static int firstGlobCharacter(String segment, int from) {
+            for (int i = from; i < segment.length(); i += 1) {
+                if (GLOB_CHARACTERS.indexOf(segment.charAt(i)) >= 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * done adding patterns, find the lengths of the suffixes and prefixes
+         */
+        void freeze() {
+            suffixLengths = lengthsOf(suffixes.keySet());
+            prefixLengths = lengthsOf(prefixes.keySet());
+            globPrefixLengths = lengthsOf(globsByPrefix.keySet());
+            globSuffixLengths = lengthsOf(globsBySuffix.keySet());
+            for (Node child : children()) {
+                if (child != this) {
+                    child.freeze();
+                }
+            }
+        }
+
+        private static int[] lengthsOf(Set<String> strings) {
+            TreeSet<Integer> lengths = new TreeSet<>();
+            for (String string : strings) {
+                lengths.add(string.length());
+            }
+            int[] result = new int[lengths.size()];
+            int i = 0;
+            for (int length : lengths) {
+                result[i] = length;
+                i += 1;
+            }
+            return result;
+        }
+
+        private List<Node> children() {
+            List<Node> children = new ArrayList<>(literals.values());
+            children.addAll(suffixes.values());
+            children.addAll(prefixes.values());
+            for (Glob glob : globs.values()) {
+                children.add(glob.node);
+            }
+            if (doubleStar != null) {
+                children.add(doubleStar);
+            }
+            return children;
+        }
+
+        /**
+         * add the nodes a name leads to from here
+         */
+        void step(String name, List<Node> reached) {
+            if (isDoubleStar) {
+                addNode(this, reached);
+            }
+            addNode(literals.get(name), reached);
+            for (int length : suffixLengths) {
+                if (length > name.length()) {
+                    break;
+                }
+                addNode(suffixes.get(name.substring(name.length() - length)), reached);
+            }
+            for (int length : prefixLengths) {
+                if (length > name.length()) {
+                    break;
+                }
+                addNode(prefixes.get(name.substring(0, length)), reached);
+            }
+            for (int length : globPrefixLengths) {
+                if (length > name.length()) {
+                    break;
+                }
+                stepGlobs(globsByPrefix.get(name.substring(0, length)), name, reached);
+            }
+            for (int length : globSuffixLengths) {
+                if (length > name.length()) {
+                    break;
+                }
+                stepGlobs(globsBySuffix.get(name.substring(name.length() - length)), name, reached);
+            }
+            stepGlobs(otherGlobs, name, reached);
+        }
+
+        private static void stepGlobs(List<Glob> candidates, String name, List<Node> reached) {
+            if (candidates == null) {
+                return;
+            }
+            for (Glob glob : candidates) {
+                if (glob.matches(name)) {
+                    addNode(glob.node, reached);
+                }
+            }
+        }
+
+        private static void addNode(Node node, List<Node> reached) {
+            if (node != null && !containsNode(reached, node)) {
+                reached.add(node);
+            }
+        }
+    }
+
+    /**
+     * a segment with '?', '[...]' or more than one '*', i.e. one that is
+     * neither a name, nor "*" and a suffix, nor a prefix and "*"
+     */
+    private static final class Glob {
+
+        private final String pattern;
+
+        private final Node node;
+
+        Glob(String pattern, Node node) {
+            this.pattern = pattern;
+            this.node = node;
+        }
+
+        /**
+         * match a name, '*' backtracks to the last '*' only, which is
+         * enough for a pattern without '/'
+         */
+        boolean matches(String name) {
+            int p = 0;
+            int n = 0;
+            int starP = -1;
+            int starN = 0;
+            while (n < name.length()) {
+                if (p < pattern.length() && pattern.charAt(p) == '*') {
+                    starP = p;
+                    starN = n;
+                    p += 1;
+                    continue;
+                }
+                int next = p < pattern.length() ? matchOne(p, name.charAt(n)) : -1;
+                if (next >= 0) {
+                    p = next;
+                    n += 1;
+                } else if (starP >= 0) {
+                    p = starP + 1;
+                    starN += 1;
+                    n = starN;
+                } else {
+                    return false;
+                }
+            }
+            while (p < pattern.length() && pattern.charAt(p) == '*') {
+                p += 1;
+            }
+            return p == pattern.length();
+        }
+
+        /**
+         * @return where the pattern goes on if the element at p matches c, or -1
+         */
+        private int matchOne(int p, char c) {
+            char first = pattern.charAt(p);
+            if (first == '?') {
+                return p + 1;
+            }
+            if (first == '\\' && p + 1 < pattern.length()) {
+                return pattern.charAt(p + 1) == c ? p + 2 : -1;
+            }
+            if (first != '[') {
+                return first == c ? p + 1 : -1;
+            }
+            int i = p + 1;
+            boolean negate = i < pattern.length() && (pattern.charAt(i) == '!' || pattern.charAt(i) == '^');
+            if (negate) {
+                i += 1;
+            }
+            boolean matched = false;
+            boolean firstInClass = true;
+            while (i < pattern.length() && (pattern.charAt(i) != ']' || firstInClass)) {
+                char low = pattern.charAt(i);
+                char high = low;
+                if (i + 2 < pattern.length() && pattern.charAt(i + 1) == '-' && pattern.charAt(i + 2) != ']') {
+                    high = pattern.charAt(i + 2);
+                    i += 2;
+                }
+                matched |= low <= c && c <= high;
+                firstInClass = false;
+                i += 1;
+            }
+            if (i >= pattern.length()) {
+                // no ']', the '[' is just a '['
+                return c == '[' ? p + 1 : -1;
+            }
+            return matched != negate ? i + 1 : -1;
+        }
+    }
+}
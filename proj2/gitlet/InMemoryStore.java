@@ -0,0 +1,167 @@
+package gitlet;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Objects and refs that only live in memory, as long as the process does.
+ * <p>
+ * Every gitlet command is a new process, so this is not a store for the
+ * command line: it is for benchmarks and tests that run many commands in
+ * one process, e.g. java -Dgitlet.store=memory gitlet.Benchmark merge,
+ * and want to measure the commands without the file system.
+ *
+ * @author Linde
+ */
+public class InMemoryStore implements ObjectStore, RefStore {
+
+    private static class StoredObject {
+
+        final byte[] contents;
+
+        final long time;
+
+        StoredObject(byte[] contents, long time) {
+            this.contents = contents;
+            this.time = time;
+        }
+    }
+
+    private final Map<Kind, Map<ObjectId, StoredObject>> objects = new EnumMap<>(Kind.class);
+
+    private final Map<String, ObjectId> refs = new ConcurrentHashMap<>();
+
+    private final Map<String, List<String>> logs = new ConcurrentHashMap<>();
+
+    private volatile String activeBranch;
+
+    public InMemoryStore() {
+        for (Kind kind : Kind.values()) {
+            objects.put(kind, new ConcurrentHashMap<>());
+        }
+    }
+
+    @Override
+    public boolean contains(Kind kind, ObjectId id) {
+        return objects.get(kind).containsKey(id);
+    }
+
+    @Override
+    public byte[] read(Kind kind, ObjectId id) {
+        StoredObject object = objects.get(kind).get(id);
+        // the caller may change the array it gets
+        return object == null ? null : object.contents.clone();
+    }
+
+    @Override
+    public void write(Kind kind, ObjectId id, byte[] contents) {
+        objects.get(kind).putIfAbsent(id, new StoredObject(contents.clone(), System.currentTimeMillis()));
+    }
+
+    @Override
+    public void forEach(Kind kind, Consumer<ObjectId> action) {
+        // the iterator of a ConcurrentHashMap allows deleting while we go
+        for (ObjectId id : objects.get(kind).keySet()) {
+            action.accept(id);
+        }
+    }
+
+    @Override
+    public int count(Kind kind) {
+        return objects.get(kind).size();
+    }
+
+    @Override
+    public long lastModified(Kind kind, ObjectId id) {
+        StoredObject object = objects.get(kind).get(id);
+        return object == null ? 0 : object.time;
+    }
+
+    @Override
+    public boolean delete(Kind kind, ObjectId id) {
+        return objects.get(kind).remove(id) != null;
+    }
+
+    @Override
+    public ObjectId read(String name) {
+        return refs.get(name);
+    }
+
+    @Override
+    public void write(String name, ObjectId id) {
+        refs.put(name, id);
+    }
+
+    @Override
+    public boolean compareAndSet(String name, ObjectId expected, ObjectId update, String logLine) {
+        boolean[] moved = new boolean[1];
+        // the other writers of the ref wait until compute() returns
+        refs.compute(name, (key, current) -> {
+            if (!Objects.equals(current, expected)) {
+                return current;
+            }
+            if (logLine != null) {
+                appendLog(name, logLine);
+            }
+            moved[0] = true;
+            return update;
+        });
+        return moved[0];
+    }
+
+    @Override
+    public boolean delete(String name) {
+        return refs.remove(name) != null;
+    }
+
+    @Override
+    public List<String> list() {
+        List<String> names = new ArrayList<>(refs.keySet());
+        names.remove(HEAD);
+        Collections.sort(names);
+        return names;
+    }
+
+    @Override
+    public String getActiveBranch() {
+        return activeBranch;
+    }
+
+    @Override
+    public void setActiveBranch(String name) {
+        activeBranch = name;
+    }
+
+    @Override
+    public void appendLog(String name, String line) {
+        logs.computeIfAbsent(name, k -> Collections.synchronizedList(new ArrayList<>())).add(line);
+    }
+
+    @Override
+    public List<String> readLog(String name) {
+        List<String> lines = logs.get(name);
+        if (lines == null) {
+            return new ArrayList<>();
+        }
+        synchronized (lines) {
+            return new ArrayList<>(lines);
+        }
+    }
+
+    @Override
+    public void writeLog(String name, List<String> lines) {
+        if (lines.isEmpty()) {
+            logs.remove(name);
+        } else {
+            logs.put(name, Collections.synchronizedList(new ArrayList<>(lines)));
+        }
+    }
+
+    @Override
+    public List<String> listLogs() {
+        List<String> names = new ArrayList<>(logs.keySet());
+        Collections.sort(names);
+        return names;
+    }
+}
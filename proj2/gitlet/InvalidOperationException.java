@@ -0,0 +1,17 @@
+package gitlet;
+
+/**
+ * A command that makes no sense in the state the repository is in, e.g. a
+ * commit with nothing staged or merging a branch with itself. Nothing has
+ * been changed. The message is the one the command line prints.
+ *
+ * @author Linde
+ */
+public class InvalidOperationException extends GitletException {
+
+    private static final long serialVersionUID = 1L;
+
+    InvalidOperationException(String msg) {
+        super(msg);
+    }
+}
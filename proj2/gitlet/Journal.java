@@ -0,0 +1,215 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead journal: a file of records that only grows until it is
+ * reset, what a LooseFileStore writes a transaction to before it touches
+ * the refs. The journal does not know what is in a record.
+ * <pre>
+ *     [magic: int] [generation: long]                                 the header
+ *     [length of the payload: int] [CRC32 of the payload: int] [payload]  a record
+ * </pre>
+ * Any process may append, under the lock of the file. A record that was cut
+ * off by a crash ends the journal, readNew() cuts it off for good. Every
+ * reset() gives the journal a new generation, which is how we tell that the
+ * records we have read are gone, even if the journal has grown back past
+ * where we stopped reading.
+ *
+ * @author Linde
+ */
+class Journal {
+
+    private static final int MAGIC = 0x474c4a31;
+
+    private static final int HEADER_LENGTH = 12;
+
+    private static final int RECORD_HEADER_LENGTH = 8;
+
+    private final FileChannel channel;
+
+    private final GroupSync groupSync;
+
+    /**
+     * the generation of the journal readNew() has read last, and where it stopped
+     */
+    private long readGeneration;
+
+    private long readEnd;
+
+    Journal(File file) {
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+        groupSync = new GroupSync(() -> channel.force(false));
+    }
+
+    /**
+     * append a record, it is on the disk once sync() has returned
+     *
+     * @return the ticket of the record for sync()
+     */
+    synchronized long append(byte[] payload) {
+        CRC32 checksum = new CRC32();
+        checksum.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_LENGTH + payload.length);
+        record.putInt(payload.length).putInt((int) checksum.getValue()).put(payload).flip();
+        try {
+            FileLock lock = channel.lock();
+            try {
+                long position = channel.size();
+                if (position < HEADER_LENGTH) {
+                    writeHeader();
+                    position = HEADER_LENGTH;
+                }
+                while (record.hasRemaining()) {
+                    position += channel.write(record, position);
+                }
+            } finally {
+                lock.release();
+            }
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+        return groupSync.appended();
+    }
+
+    /**
+     * return once the record of the ticket is on the disk, with one fsync
+     * for all the records appended by then
+     */
+    void sync(long ticket) {
+        groupSync.sync(ticket);
+    }
+
+    synchronized long size() {
+        try {
+            return channel.size();
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+    }
+
+    /**
+     * the records appended since we last called it, all of them the first
+     * time or when the journal has been reset since. nobody may append while
+     * it runs, a record cut off at the end is cut off for good.
+     */
+    synchronized List<byte[]> readNew() {
+        try {
+            long generation = readGeneration();
+            long from = generation == readGeneration && readEnd >= HEADER_LENGTH ? readEnd : HEADER_LENGTH;
+            List<byte[]> records = new ArrayList<>();
+            readEnd = read(from, records);
+            readGeneration = generation;
+            return records;
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+    }
+
+    /**
+     * every record of the journal
+     */
+    synchronized List<byte[]> readAll() {
+        List<byte[]> records = new ArrayList<>();
+        try {
+            read(HEADER_LENGTH, records);
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+        return records;
+    }
+
+    /**
+     * forget every record, nobody may append while it runs
+     *
+     * @param force whether the empty journal is forced to the disk
+     */
+    synchronized void reset(boolean force) {
+        try {
+            channel.truncate(0);
+            writeHeader();
+            if (force) {
+                channel.force(false);
+            }
+            readGeneration = readGeneration();
+            readEnd = HEADER_LENGTH;
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC).putLong(ThreadLocalRandom.current().nextLong()).flip();
+        long position = 0;
+        while (header.hasRemaining()) {
+            position += channel.write(header, position);
+        }
+    }
+
+    /**
+     * @return the generation of the journal, 0 if it has no header yet
+     */
+    private long readGeneration() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        readFully(header, 0);
+        if (header.hasRemaining() || header.getInt(0) != MAGIC) {
+            return 0;
+        }
+        return header.getLong(4);
+    }
+
+    /**
+     * read the records from a position on, cutting off a record that is cut off
+     *
+     * @return where the last complete record ends
+     */
+    private long read(long position, List<byte[]> records) throws IOException {
+        long size = channel.size();
+        ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_LENGTH);
+        while (position + RECORD_HEADER_LENGTH <= size) {
+            recordHeader.clear();
+            readFully(recordHeader, position);
+            int payloadLength = recordHeader.getInt(0);
+            long end = position + RECORD_HEADER_LENGTH + payloadLength;
+            if (payloadLength < 0 || end > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+            readFully(payload, position + RECORD_HEADER_LENGTH);
+            CRC32 checksum = new CRC32();
+            checksum.update(payload.array());
+            if ((int) checksum.getValue() != recordHeader.getInt(4)) {
+                break;
+            }
+            records.add(payload.array());
+            position = end;
+        }
+        if (position < size && position >= HEADER_LENGTH) {
+            channel.truncate(position);
+        }
+        return Math.max(position, HEADER_LENGTH);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,785 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import static gitlet.Utils.*;
+
+/**
+ * All objects and refs in one file, .gitlet/store.log, that only grows:
+ * every write appends a record, and a later record wins over an earlier one
+ * (a ref that moves, a deleted object). A million blobs are one file instead
+ * of a million, which is what a file system likes, and writing an object is
+ * one append instead of creating, writing and renaming a file.
+ * <p>
+ * A record is
+ * <pre>
+ *     [tag: 1 byte] [length of the payload: int] [CRC32 of the payload: int] [payload]
+ * </pre>
+ * and the payload of an object is [sha1: 20 bytes] [time written: long] [contents].
+ * Opening the store reads the headers once and keeps an index of where every
+ * object is (its contents are skipped), the refs and the reflogs. A record
+ * that was cut off at the end of the file, e.g. by a crash while appending,
+ * is skipped and overwritten by the next append, and the CRC of an object is
+ * checked every time it is read.
+ * <p>
+ * Other processes may append to the same file. Every append locks the file
+ * for as long as it takes and first reads what the others have appended,
+ * which is also how compareAndSet() of a ref compares with the latest
+ * record. An object we do not know is looked for among the records appended
+ * since, and refresh() reads them all, or opens the file again if gc has
+ * replaced it.
+ * <p>
+ * The file is its own write-ahead log: a record that did not make it to the
+ * disk ends the file, and every record before it is there. With
+ * Durability.BATCH the file is forced when a ref moves, once for all the
+ * threads that move one at the same time (see GroupSync), which also puts
+ * the objects of the commit on the disk. With FULL every append is forced.
+ * <p>
+ * Deleted objects keep their space until compact() copies the live records
+ * into a new file, which gc does.
+ *
+ * @author Linde
+ */
+public class LogStructuredStore implements ObjectStore, RefStore {
+
+    private static final byte TAG_BLOB = 1;
+    private static final byte TAG_TREE = 2;
+    private static final byte TAG_COMMIT = 3;
+    /** payload: [kind ordinal: 1 byte] [sha1] */
+    private static final byte TAG_DELETE_OBJECT = 4;
+    /** payload: [sha1] [name] */
+    private static final byte TAG_REF = 5;
+    /** payload: [name] */
+    private static final byte TAG_DELETE_REF = 6;
+    /** payload: [name] */
+    private static final byte TAG_ACTIVE_BRANCH = 7;
+    /** payload: [length of the name: short] [name] [line] */
+    private static final byte TAG_LOG_LINE = 8;
+    /** payload: [name], the reflog is empty again */
+    private static final byte TAG_LOG_RESET = 9;
+
+    private static final int HEADER_LENGTH = 9;
+
+    /** the sha1 and the time in front of the contents of an object */
+    private static final int OBJECT_PREFIX_LENGTH = ObjectId.RAW_LENGTH + 8;
+
+    /** objects at least this big are mapped by map(), smaller ones are read */
+    private static final int MAP_THRESHOLD = 1 << 16;
+
+    private static final int COPY_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * where an object is in the file
+     */
+    private static class Location {
+
+        /** the position of the payload */
+        final long position;
+
+        final int payloadLength;
+
+        final int crc;
+
+        final long time;
+
+        Location(long position, int payloadLength, int crc, long time) {
+            this.position = position;
+            this.payloadLength = payloadLength;
+            this.crc = crc;
+            this.time = time;
+        }
+
+        int contentsLength() {
+            return payloadLength - OBJECT_PREFIX_LENGTH;
+        }
+    }
+
+    private final File file;
+
+    private final Durability durability;
+
+    private final GroupSync groupSync = new GroupSync(() -> currentChannel().force(false));
+
+    private FileChannel channel;
+
+    /**
+     * where the last complete record ends, the next record is appended here
+     */
+    private long end;
+
+    /**
+     * what identifies the file we opened, to tell when compact() of
+     * another process has put a new file in its place
+     */
+    private Object fileKey;
+
+    /**
+     * the lock on the file while we append, null if we do not hold it
+     */
+    private FileLock appendLock;
+
+    private final Map<Kind, Map<ObjectId, Location>> index = new EnumMap<>(Kind.class);
+
+    private final Map<String, ObjectId> refs = new HashMap<>();
+
+    private final Map<String, List<String>> logs = new HashMap<>();
+
+    private String activeBranch;
+
+    /**
+     * open the store in a file, which is created if it is not there.
+     * it forces nothing, what gitlet has always done
+     */
+    public LogStructuredStore(File file) {
+        this(file, Durability.NONE);
+    }
+
+    public LogStructuredStore(File file, Durability durability) {
+        this.file = file;
+        this.durability = durability;
+        open();
+    }
+
+    private synchronized FileChannel currentChannel() {
+        return channel;
+    }
+
+    private void open() {
+        for (Kind kind : Kind.values()) {
+            index.put(kind, new HashMap<>());
+        }
+        refs.clear();
+        logs.clear();
+        activeBranch = null;
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            fileKey = fileKeyOf(file);
+            // a record after end is one that never made it to the file, or one
+            // another process is appending right now, so it is left alone
+            end = scan(0);
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+    }
+
+    private static Object fileKeyOf(File file) throws IOException {
+        return Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+    }
+
+    /**
+     * read the records other processes have appended, or the whole file
+     * again if it is not the file we opened anymore
+     */
+    @Override
+    public synchronized void refresh() {
+        try {
+            Object currentFileKey = file.exists() ? fileKeyOf(file) : null;
+            long size = channel.size();
+            if (currentFileKey == null || !currentFileKey.equals(fileKey) || size < end) {
+                channel.close();
+                open();
+            } else {
+                catchUp();
+            }
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+    }
+
+    /**
+     * read the records other processes have appended since we last looked
+     */
+    private void catchUp() throws IOException {
+        if (channel.size() > end) {
+            end = scan(end);
+        }
+    }
+
+    /**
+     * where an object is, the records appended by others since we last looked included
+     */
+    private Location locate(Kind kind, ObjectId id) {
+        Location location = index.get(kind).get(id);
+        if (location != null) {
+            return location;
+        }
+        try {
+            catchUp();
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+        return index.get(kind).get(id);
+    }
+
+    /**
+     * lock the file for an append, unless we hold the lock already,
+     * and read what the others have appended
+     *
+     * @return whether we took the lock, i.e. have to give it back
+     */
+    private boolean lockForAppend() throws IOException {
+        if (appendLock != null) {
+            return false;
+        }
+        appendLock = channel.lock();
+        catchUp();
+        return true;
+    }
+
+    private void unlockAfterAppend(boolean locked) throws IOException {
+        if (locked) {
+            appendLock.release();
+            appendLock = null;
+        }
+    }
+
+    /**
+     * read every record header from a position on and add it to the index
+     *
+     * @return where the last complete record ends
+     */
+    private long scan(long from) throws IOException {
+        long size = channel.size();
+        long position = from;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(channel.position(from)), COPY_BUFFER_SIZE));
+        while (position + HEADER_LENGTH <= size) {
+            byte tag = in.readByte();
+            int payloadLength = in.readInt();
+            int crc = in.readInt();
+            long payloadPosition = position + HEADER_LENGTH;
+            long end = payloadPosition + payloadLength;
+            if (payloadLength < 0 || end > size) {
+                break;
+            }
+            if (tag >= TAG_BLOB && tag <= TAG_COMMIT) {
+                if (payloadLength < OBJECT_PREFIX_LENGTH) {
+                    break;
+                }
+                byte[] prefix = new byte[OBJECT_PREFIX_LENGTH];
+                in.readFully(prefix);
+                in.skipNBytes(payloadLength - OBJECT_PREFIX_LENGTH);
+                if (end == size && crcOf(payloadPosition, payloadLength) != crc) {
+                    // a torn last record
+                    break;
+                }
+                ObjectId id = ObjectId.fromRaw(prefix, 0);
+                long time = ByteBuffer.wrap(prefix, ObjectId.RAW_LENGTH, 8).getLong();
+                index.get(Kind.values()[tag - TAG_BLOB]).put(id,
+                        new Location(payloadPosition, payloadLength, crc, time));
+            } else {
+                byte[] payload = new byte[payloadLength];
+                in.readFully(payload);
+                CRC32 checksum = new CRC32();
+                checksum.update(payload);
+                if ((int) checksum.getValue() != crc) {
+                    if (end == size) {
+                        break;
+                    }
+                    throw new GitletException(file + " is corrupt at " + position + ".");
+                }
+                apply(tag, payload);
+            }
+            position = end;
+        }
+        return position;
+    }
+
+    private void apply(byte tag, byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        switch (tag) {
+            case TAG_DELETE_OBJECT:
+                index.get(Kind.values()[payload[0]]).remove(ObjectId.fromRaw(payload, 1));
+                break;
+            case TAG_REF:
+                refs.put(stringOf(payload, ObjectId.RAW_LENGTH), ObjectId.fromRaw(payload, 0));
+                break;
+            case TAG_DELETE_REF:
+                refs.remove(stringOf(payload, 0));
+                break;
+            case TAG_ACTIVE_BRANCH:
+                activeBranch = stringOf(payload, 0);
+                break;
+            case TAG_LOG_LINE:
+                int nameLength = buffer.getShort() & 0xffff;
+                String name = new String(payload, 2, nameLength, StandardCharsets.UTF_8);
+                logs.computeIfAbsent(name, k -> new ArrayList<>()).add(stringOf(payload, 2 + nameLength));
+                break;
+            case TAG_LOG_RESET:
+                logs.remove(stringOf(payload, 0));
+                break;
+            default:
+                throw new GitletException(file + " has a record of unknown type " + tag + ".");
+        }
+    }
+
+    private static String stringOf(byte[] payload, int offset) {
+        return new String(payload, offset, payload.length - offset, StandardCharsets.UTF_8);
+    }
+
+    private int crcOf(long position, int length) throws IOException {
+        CRC32 checksum = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(Math.min(length, COPY_BUFFER_SIZE));
+        long end = position + length;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            buffer.flip();
+            checksum.update(buffer);
+            position += n;
+        }
+        return (int) checksum.getValue();
+    }
+
+    /**
+     * append one record at the end of the file
+     *
+     * @return the position of its payload
+     */
+    private long append(byte tag, byte[]... payloadParts) {
+        int payloadLength = 0;
+        CRC32 checksum = new CRC32();
+        for (byte[] part : payloadParts) {
+            payloadLength += part.length;
+            checksum.update(part);
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.put(tag).putInt(payloadLength).putInt((int) checksum.getValue()).flip();
+        ByteBuffer[] buffers = new ByteBuffer[payloadParts.length + 1];
+        buffers[0] = header;
+        for (int i = 0; i < payloadParts.length; i += 1) {
+            buffers[i + 1] = ByteBuffer.wrap(payloadParts[i]);
+        }
+        try {
+            boolean locked = lockForAppend();
+            try {
+                long position = startAppend();
+                channel.position(position);
+                long remaining = HEADER_LENGTH + (long) payloadLength;
+                while (remaining > 0) {
+                    remaining -= channel.write(buffers);
+                }
+                end = position + HEADER_LENGTH + payloadLength;
+                if (durability == Durability.FULL) {
+                    channel.force(false);
+                }
+                return position + HEADER_LENGTH;
+            } finally {
+                unlockAfterAppend(locked);
+            }
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+    }
+
+    /**
+     * drop what a crashed append has left after the last complete record
+     *
+     * @return where the next record goes
+     */
+    private long startAppend() throws IOException {
+        if (channel.size() > end) {
+            channel.truncate(end);
+        }
+        return end;
+    }
+
+    private static byte[] objectPrefix(ObjectId id, long time) {
+        byte[] prefix = new byte[OBJECT_PREFIX_LENGTH];
+        id.copyRawTo(prefix, 0);
+        ByteBuffer.wrap(prefix, ObjectId.RAW_LENGTH, 8).putLong(time);
+        return prefix;
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public synchronized boolean contains(Kind kind, ObjectId id) {
+        return locate(kind, id) != null;
+    }
+
+    @Override
+    public synchronized byte[] read(Kind kind, ObjectId id) {
+        Location location = locate(kind, id);
+        if (location == null) {
+            return null;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(location.payloadLength);
+        try {
+            while (payload.hasRemaining()) {
+                if (channel.read(payload, location.position + payload.position()) < 0) {
+                    throw new EOFException();
+                }
+            }
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(payload.array());
+        if ((int) checksum.getValue() != location.crc) {
+            throw new GitletException("The " + kind.name().toLowerCase() + " " + id + " in "
+                    + file + " is corrupt.");
+        }
+        return Arrays.copyOfRange(payload.array(), OBJECT_PREFIX_LENGTH, location.payloadLength);
+    }
+
+    @Override
+    public synchronized ByteBuffer map(Kind kind, ObjectId id) {
+        Location location = locate(kind, id);
+        if (location == null || location.contentsLength() < MAP_THRESHOLD) {
+            return ObjectStore.super.map(kind, id);
+        }
+        try {
+            ByteBuffer payload = channel.map(FileChannel.MapMode.READ_ONLY,
+                    location.position, location.payloadLength);
+            CRC32 checksum = new CRC32();
+            checksum.update(payload.duplicate());
+            if ((int) checksum.getValue() != location.crc) {
+                throw new GitletException("The " + kind.name().toLowerCase() + " " + id + " in "
+                        + file + " is corrupt.");
+            }
+            return payload.position(OBJECT_PREFIX_LENGTH).slice();
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void write(Kind kind, ObjectId id, byte[] contents) {
+        if (index.get(kind).containsKey(id)) {
+            return;
+        }
+        long time = System.currentTimeMillis();
+        byte[] prefix = objectPrefix(id, time);
+        CRC32 checksum = new CRC32();
+        checksum.update(prefix);
+        checksum.update(contents);
+        long position = append((byte) (TAG_BLOB + kind.ordinal()), prefix, contents);
+        index.get(kind).put(id, new Location(position, prefix.length + contents.length,
+                (int) checksum.getValue(), time));
+    }
+
+    /**
+     * the file is copied into the log a buffer at a time, it is read twice:
+     * once for the CRC in the header, once to copy it
+     */
+    @Override
+    public synchronized void writeFrom(Kind kind, ObjectId id, File src) {
+        if (index.get(kind).containsKey(id)) {
+            src.delete();
+            return;
+        }
+        long time = System.currentTimeMillis();
+        byte[] prefix = objectPrefix(id, time);
+        try (FileChannel in = FileChannel.open(src.toPath(), StandardOpenOption.READ)) {
+            long length = in.size();
+            if (length > Integer.MAX_VALUE - OBJECT_PREFIX_LENGTH) {
+                throw new GitletException(src + " is too big for " + file + ".");
+            }
+            CRC32 checksum = new CRC32();
+            checksum.update(prefix);
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            try (InputStream stream = new FileInputStream(src)) {
+                int n;
+                while ((n = stream.read(buffer)) > 0) {
+                    checksum.update(buffer, 0, n);
+                }
+            }
+            int payloadLength = OBJECT_PREFIX_LENGTH + (int) length;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH + OBJECT_PREFIX_LENGTH);
+            header.put((byte) (TAG_BLOB + kind.ordinal())).putInt(payloadLength)
+                    .putInt((int) checksum.getValue()).put(prefix).flip();
+            boolean locked = lockForAppend();
+            try {
+                long position = startAppend();
+                long contentsPosition = position;
+                while (header.hasRemaining()) {
+                    contentsPosition += channel.write(header, contentsPosition);
+                }
+                long copied = 0;
+                while (copied < length) {
+                    copied += channel.transferFrom(in.position(copied), contentsPosition + copied,
+                            length - copied);
+                }
+                end = contentsPosition + length;
+                if (durability == Durability.FULL) {
+                    channel.force(false);
+                }
+                index.get(kind).put(id, new Location(position + HEADER_LENGTH, payloadLength,
+                        (int) checksum.getValue(), time));
+            } finally {
+                unlockAfterAppend(locked);
+            }
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+        src.delete();
+    }
+
+    @Override
+    public void forEach(Kind kind, Consumer<ObjectId> action) {
+        List<ObjectId> ids;
+        synchronized (this) {
+            // a copy, so action may delete
+            ids = new ArrayList<>(index.get(kind).keySet());
+        }
+        for (ObjectId id : ids) {
+            action.accept(id);
+        }
+    }
+
+    @Override
+    public synchronized int count(Kind kind) {
+        return index.get(kind).size();
+    }
+
+    @Override
+    public synchronized long lastModified(Kind kind, ObjectId id) {
+        Location location = index.get(kind).get(id);
+        return location == null ? 0 : location.time;
+    }
+
+    @Override
+    public synchronized boolean delete(Kind kind, ObjectId id) {
+        if (!index.get(kind).containsKey(id)) {
+            return false;
+        }
+        byte[] payload = new byte[1 + ObjectId.RAW_LENGTH];
+        payload[0] = (byte) kind.ordinal();
+        id.copyRawTo(payload, 1);
+        append(TAG_DELETE_OBJECT, payload);
+        index.get(kind).remove(id);
+        return true;
+    }
+
+    /**
+     * copy the live records into a new file, and put it in place of the old one
+     */
+    @Override
+    public synchronized void compact() {
+        File compactFile = join(file.getParentFile(), file.getName() + ".compact");
+        try (FileChannel out = FileChannel.open(compactFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (Kind kind : Kind.values()) {
+                for (Location location : index.get(kind).values()) {
+                    long recordPosition = location.position - HEADER_LENGTH;
+                    long length = HEADER_LENGTH + (long) location.payloadLength;
+                    long copied = 0;
+                    while (copied < length) {
+                        copied += channel.transferTo(recordPosition + copied, length - copied, out);
+                    }
+                }
+            }
+            channel.close();
+            channel = out;
+            end = out.size();
+            // the refs and the reflogs go at the end of the new file
+            List<String> names = new ArrayList<>(refs.keySet());
+            Map<String, List<String>> oldLogs = new HashMap<>(logs);
+            for (String name : names) {
+                writeRef(name, refs.get(name));
+            }
+            if (activeBranch != null) {
+                writeActiveBranch(activeBranch);
+            }
+            for (Map.Entry<String, List<String>> log : oldLogs.entrySet()) {
+                for (String line : log.getValue()) {
+                    append(TAG_LOG_LINE, logLinePayload(log.getKey(), line));
+                }
+            }
+            out.force(true);
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+        try {
+            Files.move(compactFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            channel.close();
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+        open();
+    }
+
+    @Override
+    public synchronized ObjectId read(String name) {
+        return refs.get(name);
+    }
+
+    /**
+     * the ref methods move a ref under the monitor and force the file after
+     * they have given it back, so that other threads can append meanwhile
+     * and are covered by the same force
+     */
+    @Override
+    public void write(String name, ObjectId id) {
+        long ticket;
+        synchronized (this) {
+            ticket = writeRef(name, id);
+        }
+        sync(ticket);
+    }
+
+    /**
+     * @return the ticket of the record, see GroupSync
+     */
+    private long writeRef(String name, ObjectId id) {
+        byte[] raw = new byte[ObjectId.RAW_LENGTH];
+        id.copyRawTo(raw, 0);
+        append(TAG_REF, raw, utf8(name));
+        refs.put(name, id);
+        return groupSync.appended();
+    }
+
+    private void sync(long ticket) {
+        if (durability == Durability.BATCH) {
+            groupSync.sync(ticket);
+        }
+    }
+
+    /**
+     * a force covers every record before it, whoever appended it
+     */
+    @Override
+    public void sync() {
+        sync(groupSync.appended());
+    }
+
+    @Override
+    public boolean compareAndSet(String name, ObjectId expected, ObjectId update, String logLine) {
+        long ticket;
+        synchronized (this) {
+            try {
+                boolean locked = lockForAppend();
+                try {
+                    if (!Objects.equals(refs.get(name), expected)) {
+                        return false;
+                    }
+                    ticket = writeRef(name, update);
+                    if (logLine != null) {
+                        appendLog(name, logLine);
+                    }
+                } finally {
+                    unlockAfterAppend(locked);
+                }
+            } catch (IOException excp) {
+                throw new GitletException(excp.getMessage());
+            }
+        }
+        sync(ticket);
+        return true;
+    }
+
+    @Override
+    public boolean delete(String name) {
+        long ticket;
+        synchronized (this) {
+            if (!refs.containsKey(name)) {
+                return false;
+            }
+            append(TAG_DELETE_REF, utf8(name));
+            refs.remove(name);
+            ticket = groupSync.appended();
+        }
+        sync(ticket);
+        return true;
+    }
+
+    @Override
+    public synchronized List<String> list() {
+        List<String> names = new ArrayList<>(refs.keySet());
+        names.remove(HEAD);
+        Collections.sort(names);
+        return names;
+    }
+
+    @Override
+    public synchronized String getActiveBranch() {
+        return activeBranch;
+    }
+
+    @Override
+    public void setActiveBranch(String name) {
+        long ticket;
+        synchronized (this) {
+            ticket = writeActiveBranch(name);
+        }
+        sync(ticket);
+    }
+
+    private long writeActiveBranch(String name) {
+        append(TAG_ACTIVE_BRANCH, utf8(name));
+        activeBranch = name;
+        return groupSync.appended();
+    }
+
+    @Override
+    public synchronized void checkpoint() {
+        try {
+            channel.force(false);
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+    }
+
+    private static byte[] logLinePayload(String name, String line) {
+        byte[] nameBytes = utf8(name);
+        byte[] lineBytes = utf8(line);
+        ByteBuffer payload = ByteBuffer.allocate(2 + nameBytes.length + lineBytes.length);
+        payload.putShort((short) nameBytes.length).put(nameBytes).put(lineBytes);
+        return payload.array();
+    }
+
+    @Override
+    public synchronized void appendLog(String name, String line) {
+        append(TAG_LOG_LINE, logLinePayload(name, line));
+        logs.computeIfAbsent(name, k -> new ArrayList<>()).add(line);
+    }
+
+    @Override
+    public synchronized List<String> readLog(String name) {
+        List<String> lines = logs.get(name);
+        return lines == null ? new ArrayList<>() : new ArrayList<>(lines);
+    }
+
+    @Override
+    public synchronized void writeLog(String name, List<String> lines) {
+        append(TAG_LOG_RESET, utf8(name));
+        logs.remove(name);
+        for (String line : lines) {
+            appendLog(name, line);
+        }
+    }
+
+    @Override
+    public synchronized List<String> listLogs() {
+        List<String> names = new ArrayList<>(logs.keySet());
+        Collections.sort(names);
+        return names;
+    }
+}
@@ -0,0 +1,758 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+
+import static gitlet.Utils.*;
+
+/**
+ * The layout gitlet has always had, one file per object and per ref:
+ * <pre>
+ *     .gitlet/blobs/[sha1]
+ *     .gitlet/trees/[sha1]
+ *     .gitlet/commits/[first 2 sha1 digits]/[sha1]
+ *     .gitlet/branches/[branch name]      the sha1 of its commit
+ *     .gitlet/branches/[branch name].lock held by the writer whose compareAndSet() moves it
+ *     .gitlet/branches/activeBranch       the name of the active branch
+ *     .gitlet/logs/[branch name]          the reflog of the branch
+ *     .gitlet/journal                     the write-ahead journal of the refs
+ * </pre>
+ * An object is written to a temporary file first and then renamed, so a
+ * reader never sees half an object, and two writers of the same object
+ * need no lock: whichever rename comes last, the file has the same contents.
+ * <p>
+ * compareAndSet() does about what git does: the lock file of the branch,
+ * which only one writer can create, holds a token of its writer, the branch
+ * is compared while we hold it, and a temporary file with the new sha1 is
+ * renamed over the branch. A lock file that is left by a writer that died
+ * is taken away after a while, so a writer that was only slow checks that
+ * the lock file is still its own before it journals and renames anything.
+ * <p>
+ * Every change of a ref is a transaction: before the ref file is touched, the
+ * change is appended to the journal, and with Durability.BATCH so are the
+ * small objects this thread has written since its last transaction, and the
+ * journal is forced once for all the transactions that end at the same time
+ * (see GroupSync). The objects themselves are not forced, if the machine
+ * crashes before they make it to the disk, recover() writes them again from
+ * the journal and finishes the ref changes of a writer that died. A
+ * checkpoint forces what the journal has kept safe and empties it. With
+ * Durability.FULL every file is forced instead, and with NONE nothing is.
+ *
+ * @author Linde
+ */
+public class LooseFileStore implements ObjectStore, RefStore {
+
+    /**
+     * the file in the branches directory that is not a branch
+     */
+    private static final String ACTIVE_BRANCH_NAME = "activeBranch";
+
+    private static final String LOCK_SUFFIX = ".lock";
+
+    /**
+     * a lock file of a branch is only held for a moment, one this old was
+     * left by a writer that died before it renamed it
+     */
+    private static final long STALE_LOCK_MILLIS = 10_000;
+
+    private static final String JOURNAL_FILENAME = "journal";
+
+    /**
+     * the entries of a transaction in the journal
+     * <pre>
+     *     [ENTRY_OBJECT] [kind ordinal: 1 byte] [sha1: 20 bytes] [length: int] [contents]
+     *     [ENTRY_REF] [name: UTF] [sha1: 20 bytes]
+     *     [ENTRY_DELETE_REF] [name: UTF]
+     *     [ENTRY_ACTIVE_BRANCH] [name: UTF]
+     * </pre>
+     */
+    private static final byte ENTRY_OBJECT = 1;
+    private static final byte ENTRY_REF = 2;
+    private static final byte ENTRY_DELETE_REF = 3;
+    private static final byte ENTRY_ACTIVE_BRANCH = 4;
+
+    /**
+     * a bigger object is forced on its own instead of going into the journal twice
+     */
+    private static final int MAX_JOURNALED_OBJECT = 1 << 16;
+
+    /**
+     * a bigger transaction goes into the journal a piece at a time
+     */
+    private static final int MAX_TRANSACTION = 1 << 22;
+
+    /**
+     * recover() makes a checkpoint once the journal is this big
+     */
+    private static final long CHECKPOINT_BYTES = 1 << 20;
+
+    private final File blobsDir;
+
+    private final File treesDir;
+
+    private final File commitsDir;
+
+    private final File branchesDir;
+
+    private final File logsDir;
+
+    private final File activeBranchFile;
+
+    private final Durability durability;
+
+    private final Journal journal;
+
+    /**
+     * whether recover() has read the journal before, see recover()
+     */
+    private boolean recovered;
+
+    /**
+     * the entries of the transaction every thread is in, see endTransaction()
+     */
+    private final ThreadLocal<ByteArrayOutputStream> transactions =
+            ThreadLocal.withInitial(ByteArrayOutputStream::new);
+
+    /**
+     * a store that forces nothing, what gitlet has always done
+     *
+     * @param gitletDir the .gitlet directory, the directories
+     *                  of the layout are created if they are not there
+     */
+    public LooseFileStore(File gitletDir) {
+        this(gitletDir, Durability.NONE);
+    }
+
+    public LooseFileStore(File gitletDir, Durability durability) {
+        this.durability = durability;
+        blobsDir = join(gitletDir, "blobs");
+        treesDir = join(gitletDir, "trees");
+        commitsDir = join(gitletDir, "commits");
+        branchesDir = join(gitletDir, "branches");
+        logsDir = join(gitletDir, "logs");
+        activeBranchFile = join(branchesDir, ACTIVE_BRANCH_NAME);
+        for (File dir : new File[]{blobsDir, treesDir, commitsDir, branchesDir, logsDir}) {
+            dir.mkdir();
+        }
+        journal = new Journal(join(gitletDir, JOURNAL_FILENAME));
+    }
+
+    private File dirOf(Kind kind) {
+        switch (kind) {
+            case BLOB:
+                return blobsDir;
+            case TREE:
+                return treesDir;
+            default:
+                return commitsDir;
+        }
+    }
+
+    private File fileOf(Kind kind, ObjectId id) {
+        if (kind == Kind.COMMIT) {
+            return join(commitsDir, id.fanOut(), id.toHex());
+        }
+        return join(dirOf(kind), id.toHex());
+    }
+
+    @Override
+    public boolean contains(Kind kind, ObjectId id) {
+        return fileOf(kind, id).exists();
+    }
+
+    @Override
+    public byte[] read(Kind kind, ObjectId id) {
+        File file = fileOf(kind, id);
+        if (!file.exists()) {
+            return null;
+        }
+        return readContents(file);
+    }
+
+    @Override
+    public void write(Kind kind, ObjectId id, byte[] contents) {
+        boolean journaled = durability == Durability.BATCH && contents.length <= MAX_JOURNALED_OBJECT;
+        if (journaled) {
+            // even if it is there already: it may be the object of another
+            // thread whose transaction is not in the journal yet
+            addToTransaction(objectEntry(kind, id, contents));
+        }
+        File file = fileOf(kind, id);
+        if (file.exists()) {
+            return;
+        }
+        boolean force = durability != Durability.NONE && !journaled;
+        try {
+            File tempFile = File.createTempFile("object", ".tmp", dirOf(kind));
+            writeTemp(tempFile, contents, force);
+            moveInto(tempFile, file);
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+        if (force) {
+            forceDirectoriesOf(kind, file);
+        }
+    }
+
+    @Override
+    public void writeFrom(Kind kind, ObjectId id, File file) {
+        File dest = fileOf(kind, id);
+        if (dest.exists()) {
+            file.delete();
+            return;
+        }
+        boolean force = durability != Durability.NONE;
+        try {
+            if (force) {
+                forceFile(file);
+            }
+            moveInto(file, dest);
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+        if (force) {
+            forceDirectoriesOf(kind, dest);
+        }
+    }
+
+    private static void writeTemp(File tempFile, byte[] contents, boolean force) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            out.write(contents);
+            if (force) {
+                out.getFD().sync();
+            }
+        }
+    }
+
+    private static void forceFile(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * make the renames into a directory durable. not every platform can
+     * open a directory (Windows can not), there they are up to the file system
+     */
+    private static void forceDirectory(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            // nothing more we can do
+        }
+    }
+
+    private void forceDirectoriesOf(Kind kind, File file) {
+        forceDirectory(file.getParentFile());
+        if (kind == Kind.COMMIT) {
+            // the fan-out directory may be new
+            forceDirectory(commitsDir);
+        }
+    }
+
+    private static void moveInto(File src, File dest) throws IOException {
+        // the fan-out directory of a commit
+        dest.getParentFile().mkdir();
+        try {
+            Files.move(src.toPath(), dest.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException excp) {
+            // another writer has just put the same object there
+            src.delete();
+        }
+    }
+
+    @Override
+    public InputStream open(Kind kind, ObjectId id) {
+        try {
+            return new FileInputStream(fileOf(kind, id));
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+    }
+
+    @Override
+    public ByteBuffer map(Kind kind, ObjectId id) {
+        try (FileChannel channel = FileChannel.open(fileOf(kind, id).toPath(), StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+    }
+
+    @Override
+    public void forEach(Kind kind, Consumer<ObjectId> action) {
+        if (kind != Kind.COMMIT) {
+            forEachIn(dirOf(kind), action);
+            return;
+        }
+        String[] fanOutDirs = commitsDir.list();
+        if (fanOutDirs == null) {
+            return;
+        }
+        Arrays.sort(fanOutDirs);
+        for (String fanOutDir : fanOutDirs) {
+            File dir = join(commitsDir, fanOutDir);
+            if (dir.isDirectory()) {
+                forEachIn(dir, action);
+            }
+        }
+    }
+
+    /**
+     * the files of a directory one at a time, a directory of a million blobs
+     * is never listed into an array. what is not a sha1 is skipped, e.g. the
+     * temporary file of an object that is being written.
+     */
+    private static void forEachIn(File dir, Consumer<ObjectId> action) {
+        try (DirectoryStream<Path> objects = Files.newDirectoryStream(dir.toPath())) {
+            for (Path object : objects) {
+                String objectName = object.getFileName().toString();
+                if (ObjectId.isHex(objectName)) {
+                    action.accept(ObjectId.fromHex(objectName));
+                }
+            }
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+    }
+
+    @Override
+    public List<ObjectId> findByPrefix(Kind kind, String hexPrefix) {
+        if (kind != Kind.COMMIT || hexPrefix.length() < 2) {
+            return ObjectStore.super.findByPrefix(kind, hexPrefix);
+        }
+        // only one fan-out directory can have them
+        List<ObjectId> found = new ArrayList<>();
+        List<String> filenames = plainFilenamesIn(join(commitsDir, hexPrefix.substring(0, 2)));
+        if (filenames != null) {
+            for (String filename : filenames) {
+                if (filename.startsWith(hexPrefix) && ObjectId.isHex(filename)) {
+                    found.add(ObjectId.fromHex(filename));
+                }
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public long lastModified(Kind kind, ObjectId id) {
+        return fileOf(kind, id).lastModified();
+    }
+
+    @Override
+    public boolean delete(Kind kind, ObjectId id) {
+        File file = fileOf(kind, id);
+        if (!file.delete()) {
+            return false;
+        }
+        if (kind == Kind.COMMIT) {
+            // only succeeds when the fan-out directory is empty
+            file.getParentFile().delete();
+        }
+        return true;
+    }
+
+    @Override
+    public ObjectId read(String name) {
+        File branchFile = join(branchesDir, name);
+        if (name.equals(ACTIVE_BRANCH_NAME) || !branchFile.isFile()) {
+            return null;
+        }
+        // a branch file is empty for a moment during init
+        String contents = readContentsAsString(branchFile).trim();
+        return ObjectId.isHex(contents) ? ObjectId.fromHex(contents) : null;
+    }
+
+    @Override
+    public boolean isBranchName(String name) {
+        return RefStore.super.isBranchName(name) && !name.equals(ACTIVE_BRANCH_NAME)
+                && !name.endsWith(LOCK_SUFFIX);
+    }
+
+    @Override
+    public void write(String name, ObjectId id) {
+        if (name.equals(ACTIVE_BRANCH_NAME)) {
+            throw new IllegalArgumentException(name + " is not a branch name");
+        }
+        endTransaction(refEntry(ENTRY_REF, name, id));
+        putRef(name, id.toHex());
+    }
+
+    /**
+     * write a file of the branches directory: a temporary file, which no
+     * branch can be called, renamed over it
+     */
+    private void putRef(String filename, String contents) {
+        boolean force = durability == Durability.FULL;
+        try {
+            File tempFile = File.createTempFile(filename + ".tmp", LOCK_SUFFIX, branchesDir);
+            writeTemp(tempFile, contents.getBytes(StandardCharsets.UTF_8), force);
+            Files.move(tempFile.toPath(), join(branchesDir, filename).toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+        if (force) {
+            forceDirectory(branchesDir);
+        }
+    }
+
+    @Override
+    public boolean compareAndSet(String name, ObjectId expected, ObjectId update, String logLine) {
+        if (!isBranchName(name)) {
+            throw new IllegalArgumentException(name + " is not a branch name");
+        }
+        File branchFile = join(branchesDir, name);
+        File lockFile = join(branchesDir, name + LOCK_SUFFIX);
+        byte[] token = UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8);
+        try {
+            Files.write(lockFile.toPath(), token, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        } catch (FileAlreadyExistsException excp) {
+            // another writer is moving the branch right now, or has died doing it
+            // (0 is a lock file that is gone already)
+            long lockedMillis = lockFile.lastModified();
+            if (lockedMillis != 0 && System.currentTimeMillis() - lockedMillis > STALE_LOCK_MILLIS) {
+                lockFile.delete();
+            }
+            return false;
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+        File tempFile = null;
+        try {
+            if (!Objects.equals(read(name), expected)) {
+                return false;
+            }
+            tempFile = File.createTempFile(name + ".tmp", LOCK_SUFFIX, branchesDir);
+            writeTemp(tempFile, update.toHex().getBytes(StandardCharsets.UTF_8), durability == Durability.FULL);
+            if (!holdsLock(lockFile, token)) {
+                // we took so long that another writer has taken our lock file as stale
+                return false;
+            }
+            endTransaction(refEntry(ENTRY_REF, name, update));
+            Files.move(tempFile.toPath(), branchFile.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            tempFile = null;
+            if (durability == Durability.FULL) {
+                forceDirectory(branchesDir);
+            }
+            // still under our lock file, the next writer logs after us
+            if (logLine != null) {
+                appendLog(name, logLine);
+            }
+            return true;
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        } finally {
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+            if (holdsLock(lockFile, token)) {
+                lockFile.delete();
+            }
+        }
+    }
+
+    /**
+     * whether a lock file is still the one compareAndSet() created with token
+     */
+    private static boolean holdsLock(File lockFile, byte[] token) {
+        try {
+            return Arrays.equals(Files.readAllBytes(lockFile.toPath()), token);
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean delete(String name) {
+        File branchFile = join(branchesDir, name);
+        if (name.equals(ACTIVE_BRANCH_NAME) || !branchFile.isFile()) {
+            return false;
+        }
+        endTransaction(refEntry(ENTRY_DELETE_REF, name, null));
+        if (!branchFile.delete()) {
+            return false;
+        }
+        if (durability == Durability.FULL) {
+            forceDirectory(branchesDir);
+        }
+        return true;
+    }
+
+    @Override
+    public List<String> list() {
+        List<String> names = new ArrayList<>();
+        for (String filename : Objects.requireNonNull(plainFilenamesIn(branchesDir))) {
+            if (isBranchName(filename)) {
+                names.add(filename);
+            }
+        }
+        return names;
+    }
+
+    @Override
+    public String getActiveBranch() {
+        return readContentsAsString(activeBranchFile);
+    }
+
+    @Override
+    public void setActiveBranch(String name) {
+        endTransaction(refEntry(ENTRY_ACTIVE_BRANCH, name, null));
+        putRef(ACTIVE_BRANCH_NAME, name);
+    }
+
+    @Override
+    public void appendLog(String name, String line) {
+        try {
+            Files.write(join(logsDir, name).toPath(),
+                    (line + "\n").getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+    }
+
+    @Override
+    public List<String> readLog(String name) {
+        File logFile = join(logsDir, name);
+        if (!logFile.isFile()) {
+            return new ArrayList<>();
+        }
+        List<String> lines = new ArrayList<>();
+        for (String line : readContentsAsString(logFile).split("\n")) {
+            if (!line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    @Override
+    public void writeLog(String name, List<String> lines) {
+        File logFile = join(logsDir, name);
+        if (lines.isEmpty()) {
+            logFile.delete();
+            return;
+        }
+        StringBuilder contents = new StringBuilder();
+        for (String line : lines) {
+            contents.append(line).append('\n');
+        }
+        writeContents(logFile, contents.toString());
+    }
+
+    @Override
+    public List<String> listLogs() {
+        List<String> names = plainFilenamesIn(logsDir);
+        return names == null ? new ArrayList<>() : names;
+    }
+
+    private static byte[] objectEntry(Kind kind, ObjectId id, byte[] contents) {
+        byte[] entry = new byte[2 + ObjectId.RAW_LENGTH + 4 + contents.length];
+        ByteBuffer buffer = ByteBuffer.wrap(entry);
+        buffer.put(ENTRY_OBJECT).put((byte) kind.ordinal());
+        id.copyRawTo(entry, 2);
+        buffer.position(2 + ObjectId.RAW_LENGTH);
+        buffer.putInt(contents.length).put(contents);
+        return entry;
+    }
+
+    /**
+     * @param id the commit of ENTRY_REF, null for the other types
+     */
+    private static byte[] refEntry(byte type, String name, ObjectId id) {
+        ByteArrayOutputStream entry = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(entry)) {
+            out.writeByte(type);
+            out.writeUTF(name);
+            if (id != null) {
+                byte[] raw = new byte[ObjectId.RAW_LENGTH];
+                id.copyRawTo(raw, 0);
+                out.write(raw);
+            }
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+        return entry.toByteArray();
+    }
+
+    private void addToTransaction(byte[] entry) {
+        ByteArrayOutputStream transaction = transactions.get();
+        transaction.writeBytes(entry);
+        if (transaction.size() > MAX_TRANSACTION) {
+            endTransaction(null);
+        }
+    }
+
+    /**
+     * append the transaction of this thread to the journal, ending with
+     * lastEntry (if it is not null), and wait until it is on the disk. the
+     * caller changes the ref files afterwards.
+     */
+    private void endTransaction(byte[] lastEntry) {
+        ByteArrayOutputStream transaction = transactions.get();
+        transactions.remove();
+        if (lastEntry != null) {
+            transaction.writeBytes(lastEntry);
+        }
+        if (transaction.size() == 0) {
+            return;
+        }
+        long ticket = journal.append(transaction.toByteArray());
+        if (durability != Durability.NONE) {
+            journal.sync(ticket);
+        }
+    }
+
+    /**
+     * end the transaction of this thread, which has no ref to move, so that
+     * the small objects it has written are in the journal
+     */
+    @Override
+    public void sync() {
+        endTransaction(null);
+    }
+
+    /**
+     * do the transactions of the journal we have not seen yet once more:
+     * write the objects that did not make it to the disk, move the refs
+     * to where the transactions moved them. they are done in the order
+     * they were appended, so the refs end up where the last one left them.
+     * <p>
+     * the first recover() of a process reads the whole journal. it makes a
+     * checkpoint afterwards, so that the next process does not read and
+     * compare all of it once more, only what has been appended since.
+     */
+    @Override
+    public void recover() {
+        boolean firstRecover = !recovered;
+        recovered = true;
+        List<byte[]> records = journal.readNew();
+        try {
+            for (byte[] record : records) {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+                while (in.available() > 0) {
+                    readEntry(in, true, null);
+                }
+            }
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+        if (journal.size() > CHECKPOINT_BYTES || firstRecover && !records.isEmpty()) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * force every file the journal has kept safe so far, then empty it
+     */
+    @Override
+    public void checkpoint() {
+        if (durability == Durability.BATCH) {
+            Set<File> files = new LinkedHashSet<>();
+            try {
+                for (byte[] record : journal.readAll()) {
+                    DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+                    while (in.available() > 0) {
+                        readEntry(in, false, files);
+                    }
+                }
+                Set<File> dirs = new LinkedHashSet<>(Arrays.asList(branchesDir, commitsDir));
+                for (File file : files) {
+                    if (file.isFile()) {
+                        forceFile(file);
+                        dirs.add(file.getParentFile());
+                    }
+                }
+                for (File dir : dirs) {
+                    forceDirectory(dir);
+                }
+            } catch (IOException excp) {
+                throw new GitletException(excp.getMessage());
+            }
+        }
+        journal.reset(durability != Durability.NONE);
+    }
+
+    /**
+     * read one entry of a transaction
+     *
+     * @param replay  whether to do it once more
+     * @param touched where the files it writes are added, if it is not null
+     */
+    private void readEntry(DataInputStream in, boolean replay, Set<File> touched) throws IOException {
+        byte type = in.readByte();
+        if (type == ENTRY_OBJECT) {
+            Kind kind = Kind.values()[in.readByte()];
+            byte[] raw = new byte[ObjectId.RAW_LENGTH];
+            in.readFully(raw);
+            byte[] contents = new byte[in.readInt()];
+            in.readFully(contents);
+            File file = fileOf(kind, ObjectId.fromRaw(raw, 0));
+            if (touched != null) {
+                touched.add(file);
+            }
+            if (replay && (!file.isFile() || file.length() != contents.length
+                    || !Arrays.equals(readContents(file), contents))) {
+                // the machine crashed before the object made it to the disk
+                File tempFile = File.createTempFile("object", ".tmp", dirOf(kind));
+                writeTemp(tempFile, contents, false);
+                file.getParentFile().mkdir();
+                Files.move(tempFile.toPath(), file.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return;
+        }
+        String name = in.readUTF();
+        File file = join(branchesDir, name);
+        if (touched != null) {
+            touched.add(file);
+        }
+        switch (type) {
+            case ENTRY_REF:
+                byte[] raw = new byte[ObjectId.RAW_LENGTH];
+                in.readFully(raw);
+                ObjectId id = ObjectId.fromRaw(raw, 0);
+                if (replay && !id.equals(read(name))) {
+                    putRef(name, id.toHex());
+                }
+                if (replay) {
+                    // the lock of a compareAndSet() that died, nobody holds one now
+                    join(branchesDir, name + LOCK_SUFFIX).delete();
+                }
+                break;
+            case ENTRY_DELETE_REF:
+                if (replay) {
+                    file.delete();
+                }
+                break;
+            case ENTRY_ACTIVE_BRANCH:
+                if (replay && (!activeBranchFile.isFile() || !getActiveBranch().equals(name))) {
+                    putRef(ACTIVE_BRANCH_NAME, name);
+                }
+                break;
+            default:
+                throw new GitletException("The journal has an entry of unknown type " + type + ".");
+        }
+    }
+}
@@ -1,11 +1,21 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-
-import static gitlet.Utils.join;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Driver class for Gitlet, a subset of the Git version-control system.
+ * <p>
+ * Main only parses the arguments, calls the command on the GitletRepository
+ * of the current directory and prints what it returns. When a command can
+ * not be done it throws a GitletException, whose message we print.
  *
  * @author Linde
  */
@@ -14,10 +24,12 @@ public class Main {
      * The current working directory.
      */
     public static final File CWD = new File(System.getProperty("user.dir"));
+
     /**
-     * The .gitlet directory.
+     * if a commit has two parent, in log we will print
+     * the first seven digit of parent sha1
      */
-    public static final File GITLET_DIR = join(CWD, ".gitlet");
+    private static final int PARENT_SHA1_LEN = 7;
 
     /**
      * If the args.length is less or more than function's need,
@@ -53,105 +65,339 @@ public class Main {
             System.exit(0);
         }
 
+        try {
+            run(args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+            System.exit(0);
+        }
+    }
+
+    private static void run(String[] args) {
         String firstArg = args[0];
+        if (firstArg.equals("init")) {
+            checkFuncArgumentLength(args, 1);
+            GitletRepository.init(CWD);
+            return;
+        }
+        if (!isCommand(firstArg)) {
+            System.out.println("No command with that name exists.");
+            return;
+        }
+
+        GitletRepository repository = GitletRepository.open(CWD);
         switch (firstArg) {
-            case "init":
-                checkFuncArgumentLength(args, 1);
-                Repository.init();
-                break;
             case "add":
-                checkInitialize();
-                checkFuncArgumentLength(args, 2);
-                String filenameForAdd = args[1];
-                Repository.add(filenameForAdd);
+                // add <pathspec>...
+                if (args.length < 2) {
+                    System.out.println("Incorrect operands.");
+                    System.exit(0);
+                }
+                repository.add(Arrays.asList(args).subList(1, args.length));
                 break;
             case "commit":
-                checkInitialize();
                 checkFuncArgumentLength(args, 2);
                 String message = args[1];
-                Repository.setUpCommit(message);
+                repository.commit(message);
                 break;
             case "rm":
-                checkInitialize();
                 checkFuncArgumentLength(args, 2);
                 String filenameForRemove = args[1];
-                Repository.remove(filenameForRemove);
+                repository.remove(filenameForRemove);
                 break;
             case "log":
-                checkInitialize();
+                if (args.length == 3 && args[1].equals("--")) {
+                    // log -- [file name]
+                    printLog(repository.log(args[2]));
+                    break;
+                }
                 checkFuncArgumentLength(args, 1);
-                Repository.log();
+                printLog(repository.log());
                 break;
             case "global-log":
-                checkInitialize();
                 checkFuncArgumentLength(args, 1);
-                Repository.globalLog();
+                printLog(repository.globalLog());
                 break;
             case "find":
-                checkInitialize();
                 checkFuncArgumentLength(args, 2);
                 String messageToBeSearch = args[1];
-                Repository.find(messageToBeSearch);
+                List<ObjectId> found = repository.find(messageToBeSearch);
+                if (found.isEmpty()) {
+                    System.out.println("Found no commit with that message.");
+                }
+                for (ObjectId commitSha1 : found) {
+                    System.out.println(commitSha1);
+                }
                 break;
             case "checkout":
-                checkInitialize();
                 if (args.length == 3 && args[1].equals("--")) {
                     String filename = args[2];
-                    Repository.checkoutFilename(filename);
+                    repository.checkoutFile(filename);
                 } else if (args.length == 4 && args[2].equals("--")) {
                     String commitId = args[1];
                     String filename = args[3];
-                    Repository.checkoutCommitAndFilename(commitId, filename);
+                    repository.checkoutFile(commitId, filename);
                 } else if (args.length == 2) {
                     String branchName = args[1];
-                    Repository.checkoutBranchName(branchName);
+                    repository.checkoutBranch(branchName);
                 } else {
                     System.out.println("Incorrect operands.");
                     System.exit(0);
                 }
                 break;
             case "branch":
-                checkInitialize();
                 checkFuncArgumentLength(args, 2);
                 String branchToBeCreatedName = args[1];
-                Repository.branch(branchToBeCreatedName);
+                repository.branch(branchToBeCreatedName);
                 break;
             case "rm-branch":
-                checkInitialize();
                 checkFuncArgumentLength(args, 2);
                 String branchToBeRemovedName = args[1];
-                Repository.removeBranch(branchToBeRemovedName);
+                repository.removeBranch(branchToBeRemovedName);
                 break;
             case "status":
-                checkInitialize();
-                checkFuncArgumentLength(args, 1);
-                Repository.status();
+                // status [-M]
+                checkFuncArgumentLength(args, 2);
+                if (args.length == 2 && !args[1].equals("-M")) {
+                    System.out.println("Incorrect operands.");
+                    System.exit(0);
+                }
+                printStatus(repository.status(args.length == 2));
                 break;
             case "reset":
-                checkInitialize();
                 checkFuncArgumentLength(args, 2);
                 String commitId = args[1];
-                Repository.resetWithUncompletedCommitId(commitId);
+                repository.reset(commitId);
                 break;
             case "merge":
-                checkInitialize();
                 checkFuncArgumentLength(args, 2);
                 String targetBranchName = args[1];
-                Repository.merge(targetBranchName);
+                printMerge(repository.merge(targetBranchName));
+                break;
+            case "diff":
+                // diff [--stat] [-M | -C] [commit [commit]] [-- file name]
+                boolean stat = false;
+                boolean findRenames = false;
+                boolean findCopies = false;
+                List<String> commits = new ArrayList<>();
+                String filenameForDiff = null;
+                for (int i = 1; i < args.length; i += 1) {
+                    if (args[i].equals("--stat") && commits.isEmpty()) {
+                        stat = true;
+                    } else if (args[i].equals("-M") && commits.isEmpty()) {
+                        findRenames = true;
+                    } else if (args[i].equals("-C") && commits.isEmpty()) {
+                        findCopies = true;
+                    } else if (args[i].equals("--") && i == args.length - 2) {
+                        filenameForDiff = args[i + 1];
+                        break;
+                    } else if (!args[i].startsWith("-") && commits.size() < 2) {
+                        commits.add(args[i]);
+                    } else {
+                        System.out.println("Incorrect operands.");
+                        System.exit(0);
+                    }
+                }
+                repository.diff(commits, filenameForDiff, stat, findRenames, findCopies,
+                        new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16));
+                break;
+            case "merge-check":
+                // merge-check [-M] [branch name]
+                checkFuncArgumentLength(args, 3);
+                boolean followRenames = args.length == 3;
+                if (args.length < 2 || followRenames && !args[1].equals("-M")) {
+                    System.out.println("Incorrect operands.");
+                    System.exit(0);
+                }
+                printMergeCheck(repository.mergeCheck(args[args.length - 1], followRenames));
+                break;
+            case "gc":
+                // gc [--prune=<days>|now] [--expire=<days>|now]
+                checkFuncArgumentLength(args, 3);
+                GarbageCollector.Options gcOptions =
+                        GarbageCollector.Options.parse(Arrays.asList(args).subList(1, args.length));
+                if (gcOptions == null) {
+                    System.out.println("Incorrect operands.");
+                    System.exit(0);
+                }
+                GarbageCollector.Result result = repository.gc(gcOptions);
+                System.out.println("Removed " + result.getRemovedCommits() + " commits, "
+                        + result.getRemovedTrees() + " trees and " + result.getRemovedBlobs() + " blobs.");
+                break;
+            case "sparse-checkout":
+                // sparse-checkout set <pattern>... | list | disable
+                if (args.length >= 3 && args[1].equals("set")) {
+                    repository.setSparseCheckout(Arrays.asList(args).subList(2, args.length));
+                } else if (args.length == 2 && args[1].equals("disable")) {
+                    repository.setSparseCheckout(new ArrayList<>());
+                } else if (args.length == 2 && args[1].equals("list")) {
+                    for (String pattern : repository.getSparseCheckoutPatterns()) {
+                        System.out.println(pattern);
+                    }
+                } else {
+                    System.out.println("Incorrect operands.");
+                    System.exit(0);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * a command that needs an initialized repository
+     */
+    private static boolean isCommand(String name) {
+        switch (name) {
+            case "add":
+            case "commit":
+            case "rm":
+            case "log":
+            case "global-log":
+            case "find":
+            case "checkout":
+            case "branch":
+            case "rm-branch":
+            case "status":
+            case "reset":
+            case "merge":
+            case "diff":
+            case "merge-check":
+            case "gc":
+            case "sparse-checkout":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static void printLog(List<GitletRepository.LogEntry> entries) {
+        for (GitletRepository.LogEntry entry : entries) {
+            Commit commit = entry.getCommit();
+            List<ObjectId> parentSha1List = commit.getParentSha1List();
+            System.out.println("===");
+            System.out.println("commit " + entry.getCommitSha1());
+            if (parentSha1List.size() == 2) {
+                System.out.println("Merge: " + parentSha1List.get(0).abbreviate(PARENT_SHA1_LEN)
+                        + " " + parentSha1List.get(1).abbreviate(PARENT_SHA1_LEN));
+            }
+            System.out.println("Date: " + formatDate(commit.getTimeStamp()));
+            System.out.println(commit.getMessage());
+            System.out.println();
+        }
+    }
+
+    private static void printStatus(GitletRepository.Status status) {
+        String theNameOfTheActiveBranch = status.getActiveBranch();
+        System.out.println("=== Branches ===");
+        System.out.println("*" + theNameOfTheActiveBranch);
+        for (String branchName : status.getBranches()) {
+            if (!branchName.equals(theNameOfTheActiveBranch)) {
+                System.out.println(branchName);
+            }
+        }
+        System.out.println();
+
+        // a renamed file is listed as "old -> new"
+        System.out.println("=== Staged Files ===");
+        for (String filename : status.getStagedFiles()) {
+            String renameSource = status.getRenameSource(filename);
+            if (renameSource != null) {
+                System.out.println(renameSource + " -> " + filename);
+            } else {
+                System.out.println(filename);
+            }
+        }
+        System.out.println();
+
+        System.out.println("=== Removed Files ===");
+        for (String filename : status.getRemovedFiles()) {
+            System.out.println(filename);
+        }
+        System.out.println();
+
+        System.out.println("=== Modifications Not Staged For Commit ===");
+        for (Map.Entry<String, String> file : status.getModifiedFiles().entrySet()) {
+            System.out.println(file.getKey() + "(" + file.getValue() + ")");
+        }
+        System.out.println();
+
+        System.out.println("=== Untracked Files ===");
+        for (String filename : status.getUntrackedFiles()) {
+            System.out.println(filename);
+        }
+        System.out.println();
+    }
+
+    private static void printMerge(Merger.Result result) {
+        switch (result.getKind()) {
+            case ALREADY_MERGED:
+                System.out.println("Given branch is an ancestor of the current branch.");
+                break;
+            case FAST_FORWARD:
+                System.out.println("Current branch fast-forwarded.");
                 break;
             default:
-                System.out.println("No command with that name exists.");
+                if (result.hasConflicts()) {
+                    System.out.println("Encountered a merge conflict.");
+                }
+                printClashCopies(result);
                 break;
         }
+    }
 
+    private static void printMergeCheck(Merger.Result result) {
+        switch (result.getKind()) {
+            case ALREADY_MERGED:
+                System.out.println("Given branch is an ancestor of the current branch.");
+                break;
+            case FAST_FORWARD:
+                System.out.println("Current branch can be fast-forwarded.");
+                break;
+            default:
+                if (!result.hasConflicts()) {
+                    System.out.println("No merge conflicts.");
+                    break;
+                }
+                System.out.println("Merge conflicts in:");
+                for (String filename : result.getConflicts()) {
+                    System.out.println(filename + (result.isBinaryConflict(filename) ? " (binary)" : ""));
+                }
+                printClashCopies(result);
+                break;
+        }
     }
 
-    private static void checkInitialize() {
-        if (!GITLET_DIR.exists()) {
-            System.out.println("Not in an initialized Gitlet directory.");
-            System.exit(0);
+    /**
+     * where the merge puts the files of the given branch that clash with a
+     * directory or a file of the current branch, see Merger.Result.getClashCopy()
+     */
+    private static void printClashCopies(Merger.Result result) {
+        for (Map.Entry<String, String> clash : result.getClashCopies().entrySet()) {
+            System.out.println(clash.getKey() + " of the given branch is in " + clash.getValue() + ".");
         }
     }
 
+    private static String formatDate(Date date) {
+        // FYI: https://docs.oracle.com/javase/7/docs/api/java/util/Formatter.html
+        return String.format("%1$ta %1$tb %1$te %1$tH:%1$tM:%1$tS %1$tY %1$tz", date);
+        /*
+            you can also use the following code to get the same output:
+            SimpleDateFormat formatter =
+                                 new SimpleDateFormat("E MMM dd hh:mm:ss yyyy Z");
+            String formattedDateString = formatter.format(date);
 
+            Since gitlet spec say I should use java.util.formatter,
+            I didn't use SimpleDateFormat.
+            if your Operating System's language is not English,
+            it might have problem to display weekday and month,
+            because weekday and month in String will be other language(e.g. Chinese),
+            and the terminal may have problem to display that.
+
+            If you are a Windows 10 user, you can right-click "Time" in the lower
+            right corner of the screen, then click "Adjust Date/Time", and then click
+            the second "Region" in the left column to modify the region format and
+            change it to English
+            */
+    }
 }
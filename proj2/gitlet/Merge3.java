@@ -0,0 +1,139 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * A line-level three-way merge of a file, what diff3 does.
+ * <p>
+ * We diff the split point version (base) against both sides, then walk the
+ * two edit lists together in base order. A region only one side has changed
+ * takes that side's lines, and a region both sides have changed the same way
+ * takes those lines too. Only where both sides changed the same lines
+ * differently do we write conflict markers, around just those lines:
+ * <pre>
+ *     &lt;&lt;&lt;&lt;&lt;&lt;&lt; HEAD
+ *     [the lines of the current branch]
+ *     =======
+ *     [the lines of the given branch]
+ *     &gt;&gt;&gt;&gt;&gt;&gt;&gt;
+ * </pre>
+ * Two edits overlap if they share a base line. An insertion has no base
+ * line, so it overlaps any edit it touches, since we could not tell which
+ * side's lines should come first.
+ * <p>
+ * The three versions are read whole, not streamed: Diff looks at lines from
+ * both ends of a region and splits it anywhere, and the merge walks base and
+ * both sides at once, so every line must be at hand. RawText keeps a file as
+ * its bytes plus two ints per line. Merger merges a file bigger than
+ * Merger.MAX_LINE_MERGE_BYTES like a binary file instead of loading it here.
+ *
+ * @author Linde
+ */
+public class Merge3 {
+
+    static final byte[] CONFLICT_START = "<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8);
+
+    static final byte[] CONFLICT_SEPARATOR = "=======\n".getBytes(StandardCharsets.UTF_8);
+
+    static final byte[] CONFLICT_END = ">>>>>>>\n".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * merge ours and theirs, both derived from base, and write the result to out
+     *
+     * @return true if there is a conflict
+     */
+    public static boolean merge(RawText base, RawText ours, RawText theirs,
+                                OutputStream out) throws IOException {
+        List<Diff.Edit> oursEdits = Diff.diff(base, ours);
+        List<Diff.Edit> theirsEdits = Diff.diff(base, theirs);
+        boolean hasConflict = false;
+        int i = 0;
+        int j = 0;
+        // the base lines before basePosition are written
+        int basePosition = 0;
+        // line x of base is line x + oursDelta of ours, outside the edits
+        int oursDelta = 0;
+        int theirsDelta = 0;
+        while (i < oursEdits.size() || j < theirsEdits.size()) {
+            // a chunk starts at the first edit left, and grows as long as an edit
+            // of either side overlaps it
+            Diff.Edit first;
+            if (j == theirsEdits.size()
+                    || (i < oursEdits.size() && oursEdits.get(i).beginA <= theirsEdits.get(j).beginA)) {
+                first = oursEdits.get(i);
+            } else {
+                first = theirsEdits.get(j);
+            }
+            int chunkBegin = first.beginA;
+            int chunkEnd = first.endA;
+            int oursFirst = i;
+            int theirsFirst = j;
+            int oursBegin = chunkBegin + oursDelta;
+            int theirsBegin = chunkBegin + theirsDelta;
+            boolean grown = true;
+            while (grown) {
+                grown = false;
+                if (i < oursEdits.size() && overlaps(oursEdits.get(i), chunkBegin, chunkEnd)) {
+                    Diff.Edit edit = oursEdits.get(i);
+                    chunkEnd = Math.max(chunkEnd, edit.endA);
+                    oursDelta += (edit.endB - edit.beginB) - (edit.endA - edit.beginA);
+                    i += 1;
+                    grown = true;
+                }
+                if (j < theirsEdits.size() && overlaps(theirsEdits.get(j), chunkBegin, chunkEnd)) {
+                    Diff.Edit edit = theirsEdits.get(j);
+                    chunkEnd = Math.max(chunkEnd, edit.endA);
+                    theirsDelta += (edit.endB - edit.beginB) - (edit.endA - edit.beginA);
+                    j += 1;
+                    grown = true;
+                }
+            }
+            int oursEnd = chunkEnd + oursDelta;
+            int theirsEnd = chunkEnd + theirsDelta;
+
+            base.writeLines(out, basePosition, chunkBegin);
+            if (j == theirsFirst) {
+                ours.writeLines(out, oursBegin, oursEnd);
+            } else if (i == oursFirst) {
+                theirs.writeLines(out, theirsBegin, theirsEnd);
+            } else if (sameLines(ours, oursBegin, oursEnd, theirs, theirsBegin, theirsEnd)) {
+                ours.writeLines(out, oursBegin, oursEnd);
+            } else {
+                hasConflict = true;
+                out.write(CONFLICT_START);
+                ours.writeLines(out, oursBegin, oursEnd);
+                out.write(CONFLICT_SEPARATOR);
+                theirs.writeLines(out, theirsBegin, theirsEnd);
+                out.write(CONFLICT_END);
+            }
+            basePosition = chunkEnd;
+        }
+        base.writeLines(out, basePosition, base.size());
+        return hasConflict;
+    }
+
+    /**
+     * does the edit overlap the base lines [chunkBegin, chunkEnd)?
+     */
+    private static boolean overlaps(Diff.Edit edit, int chunkBegin, int chunkEnd) {
+        if (edit.beginA == edit.endA || chunkBegin == chunkEnd) {
+            return edit.beginA <= chunkEnd && chunkBegin <= edit.endA;
+        }
+        return edit.beginA < chunkEnd && chunkBegin < edit.endA;
+    }
+
+    private static boolean sameLines(RawText a, int beginA, int endA, RawText b, int beginB, int endB) {
+        if (endA - beginA != endB - beginB) {
+            return false;
+        }
+        for (int k = 0; k < endA - beginA; k += 1) {
+            if (!a.lineEquals(beginA + k, b, beginB + k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,170 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static gitlet.Benchmark.*;
+import static gitlet.Utils.*;
+
+/**
+ * Benchmarks of merge and merge-check, and of the line merge of a file, see Benchmark.
+ *
+ * @author Linde
+ */
+class MergeBenchmarks {
+
+    private MergeBenchmarks() {
+    }
+
+    /**
+     * time merging other into master in the repository of buildMergeRepository().
+     * a merge can only be done once, so this is a single run.
+     */
+    static void benchmarkMerge(int n) {
+        buildMergeRepository(n);
+        long start = System.nanoTime();
+        repository().merge("other");
+        report("merge of " + n + " files", System.nanoTime() - start);
+    }
+
+    /**
+     * the repository of benchmarkMerge, but only check whether other merges
+     * into master, with one Merger, as a server would. nothing is written,
+     * and renames are not followed, like merge-check without -M.
+     */
+    static void benchmarkMergeCheck(int n) {
+        buildMergeRepository(n);
+        ObjectId masterSha1 = repository().getHeadCommitSha1();
+        ObjectId otherSha1 = repository().getRefStore().read("other");
+        Merger merger = new Merger(repository(), CommitGraph.load(repository()), false);
+        int checks = 100;
+        long nanos = best(() -> {
+            for (int i = 0; i < checks; i += 1) {
+                merger.merge(masterSha1, otherSha1, false);
+            }
+        }) / checks;
+        report("merge check of " + n + " files", nanos);
+        System.out.printf("%-40s %12d checks/minute%n", "", 60_000_000_000L / nanos);
+    }
+
+    /**
+     * n files, master changes every 10th file and branch other changes a different 10th
+     */
+    private static void buildMergeRepository(int n) {
+        if (join(CWD, ".gitlet").exists()) {
+            System.out.println("Please run the benchmark in an empty directory.");
+            System.exit(0);
+        }
+        GitletRepository.init(CWD);
+        stageFiles(n, 0, "base");
+        repository().commit("base");
+        repository().branch("other");
+        stageFiles(n, 1, "master");
+        repository().commit("master changes");
+        repository().checkoutBranch("other");
+        stageFiles(n, 2, "other");
+        repository().commit("other changes");
+        repository().checkoutBranch("master");
+    }
+
+    /**
+     * write file i (with i % 10 == remainder, or every file if remainder is 0)
+     * to CWD and stage it, without going through add(), which would read the
+     * HEAD commit for every file
+     */
+    private static void stageFiles(int n, int remainder, String version) {
+        StagingArea stagingArea = repository().readStagingArea();
+        for (int i = 0; i < n; i += 1) {
+            if (remainder == 0 || i % 10 == remainder) {
+                String filename = "file" + i + ".txt";
+                byte[] contents = (version + " " + i + "\n").getBytes(StandardCharsets.UTF_8);
+                writeContents(join(CWD, filename), (Object) contents);
+                ObjectId blobSha1 = ObjectId.sha1Of(contents);
+                repository().getObjectStore().write(ObjectStore.Kind.BLOB, blobSha1, contents);
+                stagingArea.add(filename, blobSha1);
+            }
+        }
+        stagingArea.write();
+    }
+
+    /**
+     * the conflict of a file of n MB one side has removed, written the old way
+     * (both versions read as Strings, concatenated, hashed, then written) and
+     * streamed through a BlobWriter. run it with a small -Xmx to see that
+     * only the streamed one does not need the file in memory.
+     */
+    static void benchmarkConflict(int n) {
+        buildLinearHistory(1);
+        byte[] line = "a line of the big file that is in conflict\n".getBytes(StandardCharsets.UTF_8);
+        byte[] contents = new byte[n << 20];
+        for (int i = 0; i < contents.length; i += 1) {
+            contents[i] = line[i % line.length];
+        }
+        ObjectId blobSha1 = ObjectId.sha1Of(contents);
+        ObjectStore objects = repository().getObjectStore();
+        objects.write(ObjectStore.Kind.BLOB, blobSha1, contents);
+        contents = null;
+
+        report("concatenate " + n + " MB", best(() -> {
+            String resultContent = "<<<<<<< HEAD\n"
+                    + new String(repository().readBlob(blobSha1), StandardCharsets.UTF_8)
+                    + "=======\n" + ">>>>>>>\n";
+            byte[] result = resultContent.getBytes(StandardCharsets.UTF_8);
+            ObjectId resultSha1 = ObjectId.sha1Of(result);
+            // the same blob every round, so write it again every round
+            objects.delete(ObjectStore.Kind.BLOB, resultSha1);
+            objects.write(ObjectStore.Kind.BLOB, resultSha1, result);
+        }));
+        report("stream " + n + " MB", best(() -> {
+            try (BlobWriter writer = new BlobWriter(repository())) {
+                writer.write(Merge3.CONFLICT_START);
+                writer.copy(repository().openBlob(blobSha1));
+                writer.write(Merge3.CONFLICT_SEPARATOR);
+                writer.write(Merge3.CONFLICT_END);
+                writer.finish();
+            } catch (IOException excp) {
+                throw new GitletException(excp.getMessage());
+            }
+        }));
+    }
+
+    /**
+     * a file of n lines, one side changes line 100 of every 1000 lines and
+     * the other side changes line 600 and inserts a line after line 900,
+     * then time the diffs and the three-way merge. nothing touches the disk.
+     */
+    static void benchmarkDiff3(int n) {
+        StringBuilder base = new StringBuilder();
+        StringBuilder ours = new StringBuilder();
+        StringBuilder theirs = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            String line = "line " + i + "\n";
+            base.append(line);
+            ours.append(i % 1000 == 100 ? "ours " + i + "\n" : line);
+            theirs.append(i % 1000 == 600 ? "theirs " + i + "\n" : line);
+            if (i % 1000 == 900) {
+                theirs.append("inserted ").append(i).append("\n");
+            }
+        }
+        byte[] baseBytes = base.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] oursBytes = ours.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] theirsBytes = theirs.toString().getBytes(StandardCharsets.UTF_8);
+
+        report("split " + n + " lines", best(() -> new RawText(baseBytes)));
+        RawText baseText = new RawText(baseBytes);
+        RawText oursText = new RawText(oursBytes);
+        RawText theirsText = new RawText(theirsBytes);
+        report("diff base ours", best(() -> Diff.diff(baseText, oursText)));
+        report("diff base theirs", best(() -> Diff.diff(baseText, theirsText)));
+        report("merge3", best(() -> {
+            try {
+                if (Merge3.merge(baseText, oursText, theirsText, OutputStream.nullOutputStream())) {
+                    throw new IllegalStateException("the edits should not conflict");
+                }
+            } catch (IOException excp) {
+                throw new GitletException(excp.getMessage());
+            }
+        }));
+    }
+}
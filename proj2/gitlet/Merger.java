@@ -0,0 +1,625 @@
+package gitlet;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.function.BiFunction;
+
+import static gitlet.Utils.*;
+
+/**
+ * Merges two commits using nothing but the objects in .gitlet: the commit
+ * graph finds the split point, the three trees are merged in memory, and
+ * the result is a merged tree plus the set of conflicted files.
+ * <p>
+ * Nothing outside .gitlet is read or written, so it can tell whether two
+ * branches merge cleanly without a working directory, e.g.
+ * <pre>
+ *     Merger merger = new Merger(repository, CommitGraph.load(repository));
+ *     Merger.Result result = merger.merge(oursSha1, theirsSha1, false);
+ *     result.getConflicts()   // empty if the branches merge cleanly
+ * </pre>
+ * A Merger only reads the commit graph, so one Merger can do any number of
+ * checks. GitletRepository.merge() uses it too, and then brings the working
+ * directory up to date with the result.
+ * <p>
+ * Following renames reads the blobs of the added and removed files, which
+ * is most of the work of a check, so a Merger can be told not to.
+ *
+ * @author Linde
+ */
+public class Merger {
+
+    public enum Kind {
+        /**
+         * the target commit is an ancestor of the current commit, there is nothing to merge
+         */
+        ALREADY_MERGED,
+        /**
+         * the current commit is an ancestor of the target commit
+         */
+        FAST_FORWARD,
+        /**
+         * a real three-way merge
+         */
+        MERGE
+    }
+
+    /**
+     * The result of merging a target commit into a current commit.
+     */
+    public static class Result {
+
+        private final Kind kind;
+
+        private final ObjectId currentSha1;
+
+        private final ObjectId targetSha1;
+
+        /**
+         * the split point, null unless kind is MERGE
+         */
+        private final ObjectId baseSha1;
+
+        /**
+         * filename -> its merged blob, or null if the merged commit does not have it.
+         * only the files that differ from the current commit are here, in sorted order.
+         * the files both sides have changed are only here if their blobs were written.
+         */
+        private final Map<String, ObjectId> changes;
+
+        /**
+         * the conflicted filenames, sorted
+         */
+        private final List<String> conflicts;
+
+        /**
+         * the conflicted filenames that are binary files (or bigger than
+         * MAX_LINE_MERGE_BYTES), which get no conflict markers: the merged commit
+         * has the current version, or the target version if the current commit
+         * has removed the file
+         */
+        private final Set<String> binaryConflicts;
+
+        /**
+         * the conflicted filenames of the target commit that clash with a
+         * directory or a file of the current commit -> where the merged tree
+         * has the version of the target commit instead, see resolvePathClashes()
+         */
+        private final Map<String, String> clashCopies;
+
+        /**
+         * the tree of the merge commit, null if the merged blobs were not written
+         */
+        private final FileTable mergedFiles;
+
+        private Result(Kind kind, ObjectId currentSha1, ObjectId targetSha1, ObjectId baseSha1,
+                       Map<String, ObjectId> changes, List<String> conflicts,
+                       Set<String> binaryConflicts, Map<String, String> clashCopies, FileTable mergedFiles) {
+            this.kind = kind;
+            this.currentSha1 = currentSha1;
+            this.targetSha1 = targetSha1;
+            this.baseSha1 = baseSha1;
+            this.changes = Collections.unmodifiableMap(changes);
+            this.conflicts = Collections.unmodifiableList(conflicts);
+            this.binaryConflicts = Collections.unmodifiableSet(binaryConflicts);
+            this.clashCopies = Collections.unmodifiableMap(clashCopies);
+            this.mergedFiles = mergedFiles;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public ObjectId getCurrentSha1() {
+            return currentSha1;
+        }
+
+        public ObjectId getTargetSha1() {
+            return targetSha1;
+        }
+
+        public ObjectId getBaseSha1() {
+            return baseSha1;
+        }
+
+        public Map<String, ObjectId> getChanges() {
+            return changes;
+        }
+
+        public List<String> getConflicts() {
+            return conflicts;
+        }
+
+        public boolean hasConflicts() {
+            return !conflicts.isEmpty();
+        }
+
+        public boolean isBinaryConflict(String filename) {
+            return binaryConflicts.contains(filename);
+        }
+
+        /**
+         * @return where the merged tree has the target version of a conflicted
+         * file that clashes with a directory or a file of the current commit,
+         * e.g. x~branch for x, or null if the file does not clash
+         */
+        public String getClashCopy(String filename) {
+            return clashCopies.get(filename);
+        }
+
+        /**
+         * every clashing file -> getClashCopy() of it
+         */
+        public Map<String, String> getClashCopies() {
+            return clashCopies;
+        }
+
+        /**
+         * @return the tree of the merge commit
+         * @throws IllegalStateException if merge() was asked not to write blobs
+         */
+        public FileTable getMergedFiles() {
+            if (mergedFiles == null) {
+                throw new IllegalStateException("the merged tree was not computed");
+            }
+            return mergedFiles;
+        }
+    }
+
+    /**
+     * how many digits of the target sha1 a clashing file is named after,
+     * when the target has no other name
+     */
+    private static final int ABBREVIATED_LENGTH = 7;
+
+    /**
+     * if either side leaves more than RENAME_LIMIT * RENAME_LIMIT pairs of added
+     * and removed files, only its exact renames are followed, like git's
+     * merge.renameLimit
+     */
+    static final int RENAME_LIMIT = 1000;
+
+    /**
+     * a file changed on both sides is merged line by line only if none of its
+     * three versions is bigger than this, since Merge3 holds all of them in
+     * memory. a bigger file is merged like a binary file, as git does with
+     * files bigger than core.bigFileThreshold
+     */
+    static final long MAX_LINE_MERGE_BYTES = 1 << 26;
+
+    private final GitletRepository repository;
+
+    private final CommitGraph graph;
+
+    private final boolean followRenames;
+
+    public Merger(GitletRepository repository, CommitGraph graph) {
+        this(repository, graph, true);
+    }
+
+    /**
+     * @param followRenames if false, a renamed file is a removed file and an
+     *                      added file, and no blob is read to find renames
+     */
+    public Merger(GitletRepository repository, CommitGraph graph, boolean followRenames) {
+        this.repository = repository;
+        this.graph = graph;
+        this.followRenames = followRenames;
+    }
+
+    /**
+     * merge targetSha1 into currentSha1, a file that clashes with a directory
+     * is named after the abbreviated target sha1, see merge() below
+     */
+    public Result merge(ObjectId currentSha1, ObjectId targetSha1, boolean writeBlobs) {
+        return merge(currentSha1, targetSha1, targetSha1.abbreviate(ABBREVIATED_LENGTH), writeBlobs);
+    }
+
+    /**
+     * merge targetSha1 into currentSha1.
+     *
+     * @param targetName what the target version of a file that clashes with a
+     *                   directory (or the other way around) is named after, e.g.
+     *                   the branch, see resolvePathClashes()
+     * @param writeBlobs if true, the files both sides have changed are merged line by
+     *                   line (see Merge3) and written as blobs, conflict markers and
+     *                   all, so that the result has a complete merged tree. if false,
+     *                   nothing at all is written, which is all a mergeability check
+     *                   needs. only the blobs of files both sides have changed are read.
+     */
+    public Result merge(ObjectId currentSha1, ObjectId targetSha1, String targetName, boolean writeBlobs) {
+        // the ancestor checks and the split point are bitmap operations
+        // on the commit graph, no Commit needs to be deserialized for them
+        if (graph.isAncestor(targetSha1, currentSha1)) {
+            return new Result(Kind.ALREADY_MERGED, currentSha1, targetSha1, null,
+                    Collections.emptyMap(), Collections.emptyList(), Collections.emptySet(),
+                    Collections.emptyMap(), null);
+        }
+        if (graph.isAncestor(currentSha1, targetSha1)) {
+            return new Result(Kind.FAST_FORWARD, currentSha1, targetSha1, null,
+                    Collections.emptyMap(), Collections.emptyList(), Collections.emptySet(),
+                    Collections.emptyMap(), null);
+        }
+        ObjectId baseSha1 = graph.mergeBase(currentSha1, targetSha1);
+        FileTable[] trees = {repository.readCommit(baseSha1).getFiles(),
+                repository.readCommit(currentSha1).getFiles(), repository.readCommit(targetSha1).getFiles()};
+        FileTable currentFiles = trees[1];
+        // the renamed files of current are moved in current only, we have to
+        // tell the working directory about them
+        Map<String, ObjectId> renameChanges = new TreeMap<>(FileTable.PATH_ORDER);
+        if (followRenames) {
+            followRenames(trees, renameChanges);
+        }
+
+        Map<String, ObjectId> changes = new LinkedHashMap<>();
+        List<String> conflicts = new ArrayList<>();
+        Set<String> binaryConflicts = new HashSet<>();
+        mergeTrees(trees[0], trees[1], trees[2], changes, conflicts, binaryConflicts, writeBlobs);
+        if (!renameChanges.isEmpty()) {
+            // a merged file wins over the renamed file of the same name,
+            // and keep the changes sorted
+            renameChanges.putAll(changes);
+            changes = new LinkedHashMap<>(renameChanges);
+        }
+        Map<String, String> clashCopies = resolvePathClashes(currentFiles, changes, conflicts, targetName);
+
+        FileTable mergedFiles = null;
+        if (writeBlobs) {
+            FileTable.Builder builder = currentFiles.toBuilder();
+            for (Map.Entry<String, ObjectId> change : changes.entrySet()) {
+                if (change.getValue() == null) {
+                    builder.remove(change.getKey());
+                } else {
+                    builder.put(change.getKey(), change.getValue());
+                }
+            }
+            mergedFiles = builder.build();
+        }
+        return new Result(Kind.MERGE, currentSha1, targetSha1, baseSha1,
+                changes, conflicts, binaryConflicts, clashCopies, mergedFiles);
+    }
+
+    /**
+     * write the merge commit of a result, whose parents are the current commit
+     * (the first parent) and the target commit, and add it to the commit graph,
+     * in memory and in the log of the graph on disk. no branch is moved.
+     *
+     * @return the sha1 of the merge commit
+     */
+    public ObjectId writeMergeCommit(Result result, String message) {
+        List<ObjectId> parentSha1List = new ArrayList<>();
+        parentSha1List.add(result.getCurrentSha1());
+        parentSha1List.add(result.getTargetSha1());
+        Commit commit = repository.readCommit(result.getCurrentSha1());
+        commit.modifyCommit(message, parentSha1List, result.getMergedFiles(), result.getChanges().keySet());
+        ObjectId commitSha1 = repository.writeCommit(commit);
+        graph.add(commitSha1, commit, result.getChanges().keySet());
+        CommitGraph.append(repository, commitSha1, commit, result.getChanges().keySet());
+        return commitSha1;
+    }
+
+    /**
+     * find the files renamed between the split point and either side, and give
+     * them their new name in the split point and the other side too, so that
+     * the three-way merge compares a renamed file with its old versions instead
+     * of seeing a removed file and a new file. e.g. if current renames a.txt to
+     * b.txt and target changes a.txt, target's change ends up in b.txt.
+     * <p>
+     * a rename is only followed if the other side still has the old file under
+     * the old name and does not have a file with the new name. if both sides
+     * rename a file to the same name, only the split point needs the new name;
+     * if they rename it to different names, both files are kept.
+     *
+     * @param trees         {split point, current, target}, they are replaced by renamed trees
+     * @param renameChanges where we put what following the renames of target
+     *                      changes in current: the old name is gone, and the file
+     *                      is under its new name
+     */
+    private void followRenames(FileTable[] trees, Map<String, ObjectId> renameChanges) {
+        BiFunction<String, ObjectId, byte[]> blobSource = (path, blobSha1) -> repository.readBlob(blobSha1);
+        List<RenameDetector.Rename> currentRenames =
+                RenameDetector.detect(trees[0], trees[1], blobSource, blobSource, false, RENAME_LIMIT);
+        List<RenameDetector.Rename> targetRenames =
+                RenameDetector.detect(trees[0], trees[2], blobSource, blobSource, false, RENAME_LIMIT);
+        if (currentRenames.isEmpty() && targetRenames.isEmpty()) {
+            return;
+        }
+        FileTable.Builder base = trees[0].toBuilder();
+        FileTable.Builder current = trees[1].toBuilder();
+        FileTable.Builder target = trees[2].toBuilder();
+        Map<String, String> targetRenamesByOldPath = new HashMap<>();
+        for (RenameDetector.Rename rename : targetRenames) {
+            targetRenamesByOldPath.put(rename.oldPath, rename.newPath);
+        }
+        for (RenameDetector.Rename rename : currentRenames) {
+            String targetNewPath = targetRenamesByOldPath.get(rename.oldPath);
+            if (rename.newPath.equals(targetNewPath)) {
+                move(base, trees[0], rename.oldPath, rename.newPath);
+            } else if (trees[2].contains(rename.oldPath) && !trees[2].contains(rename.newPath)
+                    && !trees[0].contains(rename.newPath)) {
+                move(base, trees[0], rename.oldPath, rename.newPath);
+                move(target, trees[2], rename.oldPath, rename.newPath);
+            }
+        }
+        for (RenameDetector.Rename rename : targetRenames) {
+            if (trees[1].contains(rename.oldPath) && !trees[1].contains(rename.newPath)
+                    && !trees[0].contains(rename.newPath)) {
+                renameChanges.put(rename.oldPath, null);
+                renameChanges.put(rename.newPath, trees[1].get(rename.oldPath));
+                move(base, trees[0], rename.oldPath, rename.newPath);
+                move(current, trees[1], rename.oldPath, rename.newPath);
+            }
+        }
+        trees[0] = base.build();
+        trees[1] = current.build();
+        trees[2] = target.build();
+    }
+
+    private static void move(FileTable.Builder builder, FileTable files, String oldPath, String newPath) {
+        builder.remove(oldPath);
+        builder.put(newPath, files.get(oldPath));
+    }
+
+    /**
+     * the three-way merge of split point, current and target commit, done in
+     * one ordered pass over their three trees, so it takes time linear in the
+     * size of the trees.
+     *
+     * @param changes   where we put every file whose merged version differs from
+     *                  the current commit: filename -> its new blob, or null if
+     *                  the file is removed. the filenames are put in sorted order.
+     * @param conflicts where we put the conflicted filenames
+     * @param binaryConflicts where we put the conflicted filenames of binary files too
+     * @param writeBlobs whether to write the files both sides have changed
+     *                   as blobs and put them into changes too
+     */
+    private void mergeTrees(FileTable spiltPointFiles, FileTable currentFiles,
+                            FileTable targetFiles, Map<String, ObjectId> changes,
+                            List<String> conflicts, Set<String> binaryConflicts,
+                            boolean writeBlobs) {
+        // every filename in any of the three commits, in one sorted pass,
+        // tables 0, 1 and 2 are the split point, current and target commit
+        FileTable.Join join = new FileTable.Join(spiltPointFiles, currentFiles, targetFiles);
+        while (join.next()) {
+            boolean targetFileIsSameAsCurrFile = join.sameId(2, 1);
+            if (targetFileIsSameAsCurrFile) {
+                // nothing to do, and most files are like this, so we do not
+                // even look at the path (an off-heap table would decode it)
+                continue;
+            }
+            boolean targetFileIsSameAsSpiltFile = join.sameId(2, 0);
+            boolean currFileIsSameAsSpiltFile = join.sameId(1, 0);
+
+            // if targetFileIsSameAsSpiltFile is false, then we know
+            // targetCommit contain the newest version of file.
+            // if it is currentCommit instead, the current version is already
+            // the merged version, there is nothing to do.
+            if (!targetFileIsSameAsSpiltFile && currFileIsSameAsSpiltFile) {
+                // join.id(2) is null if the file is removed in targetCommit
+                changes.put(join.path(), join.id(2));
+            } else if (!currFileIsSameAsSpiltFile && !targetFileIsSameAsSpiltFile) {
+                // if currCommit and targetCommit both contain the newest version of file,
+                // and their content are different from each other, that means we meet conflict.
+
+                // we do not need to check whether they have the same content again,
+                // e.g. when A.txt is removed in both of them, targetFileIsSameAsCurrFile
+                // is true and we have skipped it above
+                String filename = join.path();
+                // we look at the start of the files first, a binary file (or a
+                // huge one) is never split into lines or written with conflict markers
+                if (mergesAsBinary(join.id(0)) || mergesAsBinary(join.id(1)) || mergesAsBinary(join.id(2))) {
+                    conflicts.add(filename);
+                    binaryConflicts.add(filename);
+                    if (join.id(1) == null) {
+                        // keep the version we have rather than losing it
+                        changes.put(filename, join.id(2));
+                    }
+                    continue;
+                }
+                if (join.id(1) == null || join.id(2) == null) {
+                    // one side has removed the file, the whole version of the
+                    // other side is in conflict with it
+                    conflicts.add(filename);
+                    if (writeBlobs) {
+                        changes.put(filename, writeConflict(join.id(1), join.id(2)));
+                    }
+                    continue;
+                }
+                // both sides have changed the contents, merge them line by line,
+                // only the lines both of them changed can conflict, and the merged
+                // lines go straight into the new blob
+                try (BlobWriter writer = writeBlobs ? new BlobWriter(repository) : null) {
+                    boolean hasConflict = Merge3.merge(getRawText(join.id(0)), getRawText(join.id(1)),
+                            getRawText(join.id(2)),
+                            writeBlobs ? writer : OutputStream.nullOutputStream());
+                    if (hasConflict) {
+                        conflicts.add(filename);
+                    }
+                    if (writeBlobs) {
+                        changes.put(filename, writer.finish());
+                    }
+                } catch (IOException excp) {
+                    throw new GitletException(excp.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * a file of one side and a directory of the other side can not both be in
+     * the merged tree, e.g. when current changes x and target replaces it with
+     * x/y. the merged tree keeps what the current commit has there, and the
+     * version of the target commit is moved out of the way, as git does: the
+     * file or the directory of the target commit that clashes gets a "~" and
+     * targetName after its name (and "_1", "_2", ... if that is taken too),
+     * e.g. x~branch or x~branch/y. the path is a conflict all the same. this
+     * happens before merge() touches the working directory, and only the paths
+     * the merge adds to the current tree can clash, the current tree has no
+     * clashes of its own.
+     *
+     * @param changes   the changes of the merge, the paths that clash are moved
+     * @param conflicts the paths that clash are added, and it is sorted again
+     * @return every path that clashes -> where it is moved to
+     */
+    private static Map<String, String> resolvePathClashes(FileTable currentFiles, Map<String, ObjectId> changes,
+                                                          List<String> conflicts, String targetName) {
+        // a path that clashes -> the file or directory of it that clashes
+        Map<String, String> clashes = new LinkedHashMap<>();
+        for (Map.Entry<String, ObjectId> change : changes.entrySet()) {
+            String path = change.getKey();
+            if (change.getValue() == null || currentFiles.contains(path)) {
+                continue;
+            }
+            String mergedParent = mergedParentOf(path, currentFiles, changes);
+            if (mergedParent != null) {
+                // the file x of current is where target has the directory x
+                clashes.put(path, mergedParent);
+            } else if (hasMergedChild(path, currentFiles, changes)) {
+                clashes.put(path, path);
+            }
+        }
+        if (clashes.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        String suffix = "~" + targetName.replace('/', '_');
+        Map<String, String> movedNames = new HashMap<>();
+        Map<String, String> clashCopies = new TreeMap<>(FileTable.PATH_ORDER);
+        Map<String, ObjectId> copies = new HashMap<>();
+        for (Map.Entry<String, String> clash : clashes.entrySet()) {
+            String path = clash.getKey();
+            String clashing = clash.getValue();
+            String movedName = movedNames.computeIfAbsent(clashing, name -> {
+                String free = name + suffix;
+                for (int n = 1; isTaken(free, currentFiles, changes, copies); n += 1) {
+                    free = name + suffix + "_" + n;
+                }
+                return free;
+            });
+            String copy = movedName + path.substring(clashing.length());
+            copies.put(copy, changes.get(path));
+            clashCopies.put(path, copy);
+        }
+        Set<String> conflicted = new HashSet<>(conflicts);
+        for (String path : clashes.keySet()) {
+            changes.remove(path);
+            if (conflicted.add(path)) {
+                conflicts.add(path);
+            }
+        }
+        // keep the changes sorted
+        Map<String, ObjectId> sorted = new TreeMap<>(FileTable.PATH_ORDER);
+        sorted.putAll(changes);
+        sorted.putAll(copies);
+        changes.clear();
+        changes.putAll(sorted);
+        conflicts.sort(FileTable.PATH_ORDER);
+        return clashCopies;
+    }
+
+    /**
+     * whether the merged tree has a file or a directory by that name
+     */
+    private static boolean isTaken(String path, FileTable currentFiles, Map<String, ObjectId> changes,
+                                   Map<String, ObjectId> copies) {
+        if (changes.containsKey(path) ? changes.get(path) != null : currentFiles.contains(path)) {
+            return true;
+        }
+        String prefix = path + "/";
+        for (String copy : copies.keySet()) {
+            if (copy.equals(path) || copy.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return hasMergedChild(path, currentFiles, changes);
+    }
+
+    /**
+     * @return the directory the path is in that is a file of the merged tree, or null
+     */
+    private static String mergedParentOf(String path, FileTable currentFiles, Map<String, ObjectId> changes) {
+        for (int separator = path.indexOf('/'); separator >= 0; separator = path.indexOf('/', separator + 1)) {
+            String parent = path.substring(0, separator);
+            if (changes.containsKey(parent) ? changes.get(parent) != null : currentFiles.contains(parent)) {
+                return parent;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * whether the merged tree keeps a file of the current tree below the
+     * path, which are all right after where the path would be with a '/'.
+     * the files below it that the merge adds find the path with mergedParentOf().
+     */
+    private static boolean hasMergedChild(String path, FileTable currentFiles, Map<String, ObjectId> changes) {
+        String prefix = path + "/";
+        int position = currentFiles.indexOf(prefix);
+        position = position < 0 ? -(position + 1) : position;
+        for (int i = position; i < currentFiles.size(); i += 1) {
+            String child = currentFiles.pathAt(i);
+            if (!child.startsWith(prefix)) {
+                break;
+            }
+            if (!changes.containsKey(child) || changes.get(child) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * write the conflict of a file one side has removed: the whole version of
+     * the other side against nothing. both versions are copied a buffer at a time.
+     *
+     * @return the sha1 of the blob
+     */
+    private ObjectId writeConflict(ObjectId currentBlobSha1, ObjectId targetBlobSha1) {
+        try (BlobWriter writer = new BlobWriter(repository)) {
+            writer.write(Merge3.CONFLICT_START);
+            if (currentBlobSha1 != null) {
+                writer.copy(repository.openBlob(currentBlobSha1));
+            }
+            writer.write(Merge3.CONFLICT_SEPARATOR);
+            if (targetBlobSha1 != null) {
+                writer.copy(repository.openBlob(targetBlobSha1));
+            }
+            writer.write(Merge3.CONFLICT_END);
+            return writer.finish();
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+    }
+
+    private boolean mergesAsBinary(ObjectId blobSha1) {
+        return blobSha1 != null && (RawText.isBinary(repository.openBlob(blobSha1))
+                || isLongerThan(repository.openBlob(blobSha1), MAX_LINE_MERGE_BYTES));
+    }
+
+    /**
+     * whether a stream has more than length bytes, without reading them
+     * if it can skip them. the stream is closed.
+     */
+    private static boolean isLongerThan(InputStream contents, long length) {
+        try (InputStream in = contents) {
+            in.skipNBytes(length);
+            return in.read() >= 0;
+        } catch (EOFException excp) {
+            return false;
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+    }
+
+    /**
+     * the lines of a blob, or no lines if blobSha1 is null
+     */
+    private RawText getRawText(ObjectId blobSha1) {
+        if (blobSha1 == null) {
+            return RawText.EMPTY;
+        }
+        return new RawText(repository.readBlob(blobSha1));
+    }
+}
@@ -0,0 +1,17 @@
+package gitlet;
+
+/**
+ * A command was asked for something the repository does not have: a commit,
+ * a branch, a file, or the repository itself. The message is the one the
+ * command line prints, e.g. "No commit with that id exists."
+ *
+ * @author Linde
+ */
+public class NotFoundException extends GitletException {
+
+    private static final long serialVersionUID = 1L;
+
+    NotFoundException(String msg) {
+        super(msg);
+    }
+}
@@ -0,0 +1,235 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * The sha1 of a commit, tree or blob, kept as its 20 raw bytes
+ * instead of a 40-character hex String.
+ * <p>
+ * A hex String costs about 100 bytes on the heap (the String, its byte[]
+ * and headers), an ObjectId costs 32, and equals/hashCode/compareTo only
+ * compare two longs and an int instead of walking 40 chars.
+ * <p>
+ * The hex form is still what we show to the user, and what we use for
+ * file names and in the branch files, see toString() and fromHex().
+ *
+ * @author Linde
+ */
+public final class ObjectId implements Comparable<ObjectId>, Serializable {
+
+    /** Every commit and commit graph has ObjectIds, so this must never change. */
+    private static final long serialVersionUID = 3767069637775487772L;
+
+    /** The length of a sha1 in bytes. */
+    public static final int RAW_LENGTH = 20;
+
+    /** The length of a sha1 as a hexadecimal numeral. */
+    public static final int HEX_LENGTH = 40;
+
+    /** "0000000000000000000000000000000000000000", e.g. the old value of a new branch in the reflog */
+    public static final ObjectId ZERO = new ObjectId(0, 0, 0);
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** HEX_VALUES[c] is the value of the hex digit c, or -1 if c is not a hex digit */
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < HEX_DIGITS.length; i += 1) {
+            HEX_VALUES[HEX_DIGITS[i]] = (byte) i;
+        }
+    }
+
+    /**
+     * MessageDigest.getInstance() is not free, and a MessageDigest can not be
+     * shared between threads, so every thread keeps its own.
+     */
+    private static final ThreadLocal<MessageDigest> SHA1 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    });
+
+    /** bytes 0-7, 8-15 and 16-19 of the sha1, big-endian */
+    private final long w1;
+    private final long w2;
+    private final int w3;
+
+    private ObjectId(long w1, long w2, int w3) {
+        this.w1 = w1;
+        this.w2 = w2;
+        this.w3 = w3;
+    }
+
+    /** the sha1 of the concatenation of PARTS */
+    public static ObjectId sha1Of(byte[]... parts) {
+        MessageDigest md = SHA1.get();
+        for (byte[] part : parts) {
+            md.update(part);
+        }
+        return fromRaw(md.digest(), 0);
+    }
+
+    /** the ObjectId whose raw bytes are RAW[OFFSET .. OFFSET + 20) */
+    public static ObjectId fromRaw(byte[] raw, int offset) {
+        int w3 = 0;
+        for (int i = offset + 16; i < offset + RAW_LENGTH; i += 1) {
+            w3 = (w3 << 8) | (raw[i] & 0xff);
+        }
+        return new ObjectId(readLong(raw, offset), readLong(raw, offset + 8), w3);
+    }
+
+    /** the ObjectId whose raw bytes are BUFFER[OFFSET .. OFFSET + 20), e.g. in a mapped tree file */
+    public static ObjectId fromRaw(ByteBuffer buffer, int offset) {
+        return new ObjectId(buffer.getLong(offset), buffer.getLong(offset + 8),
+                buffer.getInt(offset + 16));
+    }
+
+    /**
+     * @throws IllegalArgumentException if HEX is not 40 hex digits
+     */
+    public static ObjectId fromHex(String hex) {
+        if (hex.length() != HEX_LENGTH) {
+            throw new IllegalArgumentException("not a sha1: " + hex);
+        }
+        return new ObjectId(parseHex(hex, 0, 16), parseHex(hex, 16, 16),
+                (int) parseHex(hex, 32, 8));
+    }
+
+    /** @return true if S is a complete sha1, i.e. 40 lowercase hex digits */
+    public static boolean isHex(String s) {
+        if (s.length() != HEX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < HEX_LENGTH; i += 1) {
+            char c = s.charAt(i);
+            if (c >= 128 || HEX_VALUES[c] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** write the 20 raw bytes into DEST, starting at OFFSET */
+    public void copyRawTo(byte[] dest, int offset) {
+        writeLong(dest, offset, w1);
+        writeLong(dest, offset + 8, w2);
+        for (int i = 0; i < 4; i += 1) {
+            dest[offset + 16 + i] = (byte) (w3 >>> (24 - 8 * i));
+        }
+    }
+
+    public byte[] toRaw() {
+        byte[] raw = new byte[RAW_LENGTH];
+        copyRawTo(raw, 0);
+        return raw;
+    }
+
+    /** the 40 hex digits */
+    public String toHex() {
+        char[] hex = new char[HEX_LENGTH];
+        formatHex(hex, 0, w1, 16);
+        formatHex(hex, 16, w2, 16);
+        formatHex(hex, 32, w3 & 0xffffffffL, 8);
+        return new String(hex);
+    }
+
+    /** the first LEN hex digits, e.g. the 7 digits log prints for the parents of a merge */
+    public String abbreviate(int len) {
+        return toHex().substring(0, len);
+    }
+
+    /**
+     * the first 2 hex digits, the name of the directory a commit is stored in,
+     * i.e. .gitlet/commits/[fanOut()]/[toHex()]
+     */
+    public String fanOut() {
+        char[] hex = new char[2];
+        formatHex(hex, 0, w1 >>> 56, 2);
+        return new String(hex);
+    }
+
+    /** a well-mixed 64-bit hash, e.g. for a BloomFilter */
+    long longHash() {
+        // the words of a sha1 are already uniformly distributed
+        return w1 ^ Long.rotateLeft(w2, 17) ^ w3;
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId that = (ObjectId) other;
+        return w1 == that.w1 && w2 == that.w2 && w3 == that.w3;
+    }
+
+    @Override
+    public int hashCode() {
+        // the first 4 bytes of a sha1 are as good a hash as any
+        return (int) (w1 >>> 32);
+    }
+
+    /** the same order as comparing the hex Strings */
+    @Override
+    public int compareTo(ObjectId other) {
+        int result = Long.compareUnsigned(w1, other.w1);
+        if (result == 0) {
+            result = Long.compareUnsigned(w2, other.w2);
+        }
+        if (result == 0) {
+            result = Integer.compareUnsigned(w3, other.w3);
+        }
+        return result;
+    }
+
+    private static long readLong(byte[] raw, int offset) {
+        long result = 0;
+        for (int i = 0; i < 8; i += 1) {
+            result = (result << 8) | (raw[offset + i] & 0xff);
+        }
+        return result;
+    }
+
+    private static void writeLong(byte[] dest, int offset, long value) {
+        for (int i = 0; i < 8; i += 1) {
+            dest[offset + i] = (byte) (value >>> (56 - 8 * i));
+        }
+    }
+
+    private static long parseHex(String hex, int offset, int numDigits) {
+        long result = 0;
+        for (int i = offset; i < offset + numDigits; i += 1) {
+            char c = hex.charAt(i);
+            int value = c < 128 ? HEX_VALUES[c] : -1;
+            if (value < 0) {
+                throw new IllegalArgumentException("not a sha1: " + hex);
+            }
+            result = (result << 4) | value;
+        }
+        return result;
+    }
+
+    /** write the lowest NUMDIGITS hex digits of VALUE into HEX, starting at OFFSET */
+    private static void formatHex(char[] hex, int offset, long value, int numDigits) {
+        for (int i = offset + numDigits - 1; i >= offset; i -= 1) {
+            hex[i] = HEX_DIGITS[(int) (value & 0xf)];
+            value >>>= 4;
+        }
+    }
+}
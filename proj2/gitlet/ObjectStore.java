@@ -0,0 +1,161 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static gitlet.Utils.*;
+
+/**
+ * Where the objects of a repository are kept: the blobs, the trees and the
+ * commits, every one of them under the sha1 of its contents. An object is
+ * never changed once it is written, only gc deletes objects.
+ * <p>
+ * The commands only talk to GitletRepository.getObjectStore(), so they do not
+ * know whether the objects are files (LooseFileStore, the layout gitlet
+ * has always had), records of one big file (LogStructuredStore) or
+ * nothing but memory (InMemoryStore).
+ *
+ * @author Linde
+ */
+public interface ObjectStore {
+
+    enum Kind {
+        BLOB,
+        TREE,
+        COMMIT
+    }
+
+    boolean contains(Kind kind, ObjectId id);
+
+    /**
+     * @return the contents of the object, or null if there is no such object
+     */
+    byte[] read(Kind kind, ObjectId id);
+
+    /**
+     * store an object, nothing happens if it is there already.
+     * the contents must be the contents whose sha1 is id.
+     */
+    void write(Kind kind, ObjectId id, byte[] contents);
+
+    /**
+     * the ids of all the objects of a kind, in no particular order.
+     * action may delete the object it is given.
+     */
+    void forEach(Kind kind, Consumer<ObjectId> action);
+
+    /**
+     * the time the object was written, what gc's grace period is measured
+     * against, or 0 if there is no such object
+     */
+    long lastModified(Kind kind, ObjectId id);
+
+    /**
+     * @return true if the object was there
+     */
+    boolean delete(Kind kind, ObjectId id);
+
+    /**
+     * the contents of an object as a stream, for objects too big to read at once.
+     *
+     * @throws GitletException if there is no such object
+     */
+    default InputStream open(Kind kind, ObjectId id) {
+        return new ByteArrayInputStream(readExisting(kind, id));
+    }
+
+    /**
+     * the contents of an object as a read-only buffer. a store that keeps its
+     * objects in files maps them, so that an off-heap tree costs no heap.
+     *
+     * @throws GitletException if there is no such object
+     */
+    default ByteBuffer map(Kind kind, ObjectId id) {
+        return ByteBuffer.wrap(readExisting(kind, id)).asReadOnlyBuffer();
+    }
+
+    /**
+     * store the contents of a file as an object, e.g. a blob a BlobWriter has
+     * just written. the file is gone afterwards: a store of files just renames it.
+     */
+    default void writeFrom(Kind kind, ObjectId id, File file) {
+        if (!contains(kind, id)) {
+            write(kind, id, readContents(file));
+        }
+        file.delete();
+    }
+
+    /**
+     * the ids of the objects of a kind that start with a hex prefix,
+     * e.g. to complete an abbreviated commit id
+     */
+    default List<ObjectId> findByPrefix(Kind kind, String hexPrefix) {
+        List<ObjectId> found = new ArrayList<>();
+        forEach(kind, id -> {
+            if (id.toHex().startsWith(hexPrefix)) {
+                found.add(id);
+            }
+        });
+        return found;
+    }
+
+    default int count(Kind kind) {
+        int[] count = new int[1];
+        forEach(kind, id -> count[0] += 1);
+        return count[0];
+    }
+
+    /**
+     * give back the space of deleted objects, gc calls it at its end
+     */
+    default void compact() {
+    }
+
+    /**
+     * catch up with what other processes have written since the store was
+     * opened. the repository calls it right after it has taken its lock, a
+     * store that keeps the refs as well refreshes them too. a store that
+     * reads the disk every time has nothing to do
+     */
+    default void refresh() {
+    }
+
+    /**
+     * finish what a writer that died has left half done, e.g. the
+     * transactions in the journal of a LooseFileStore. the repository calls
+     * it when it has its exclusive lock, i.e. when nobody else is writing
+     */
+    default void recover() {
+    }
+
+    /**
+     * put the objects this thread has written so far on the disk, as far as
+     * the Durability of the store asks, like moving a ref does. it is for
+     * objects that something outside the store refers to before a ref does,
+     * e.g. the blobs the index has staged: if they were lost in a crash, the
+     * next commit would refer to them.
+     */
+    default void sync() {
+    }
+
+    /**
+     * put everything written so far on the disk, whatever the Durability of
+     * the store. gc calls it before it deletes anything
+     */
+    default void checkpoint() {
+    }
+
+    private byte[] readExisting(Kind kind, ObjectId id) {
+        byte[] contents = read(kind, id);
+        if (contents == null) {
+            throw new GitletException("No " + kind.name().toLowerCase() + " " + id + " in the object store.");
+        }
+        return contents;
+    }
+}
@@ -0,0 +1,241 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A FileTable that reads a tree file mapped into memory (or any read-only
+ * buffer with a tree in it), see FileTable for the layout of the file.
+ * <p>
+ * Nothing of the table lives on the Java heap: the ids and paths are read
+ * right out of the mapping, paths are compared byte by byte and ids by their
+ * raw bytes, so walking a tree of millions of paths creates no garbage. A
+ * String or an ObjectId is only created when pathAt() or idAt() is called.
+ * <p>
+ * The mapping is read-only and tree files are never modified (they are
+ * named by their sha1), so sharing it between threads is safe.
+ *
+ * @author Linde
+ */
+final class OffHeapFileTable extends FileTable {
+
+    /**
+     * the whole tree file, read-only
+     */
+    private final ByteBuffer buffer;
+
+    private final int size;
+
+    private final int idsStart;
+
+    private final int offsetsStart;
+
+    private final int pathsStart;
+
+    OffHeapFileTable(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.size = buffer.getInt(0);
+        this.idsStart = 4;
+        this.offsetsStart = idsStart + size * ObjectId.RAW_LENGTH;
+        this.pathsStart = offsetsStart + (size + 1) * 4;
+    }
+
+    static OffHeapFileTable map(File treeFile) {
+        try (FileChannel channel = FileChannel.open(treeFile.toPath(), StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            return new OffHeapFileTable(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String pathAt(int index) {
+        int start = pathStart(index);
+        byte[] bytes = new byte[pathEnd(index) - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public ObjectId idAt(int index) {
+        return ObjectId.fromRaw(buffer, idsStart + index * ObjectId.RAW_LENGTH);
+    }
+
+    @Override
+    public int indexOf(String path) {
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int cmp = comparePathTo(middle, key);
+            if (cmp < 0) {
+                low = middle + 1;
+            } else if (cmp > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    @Override
+    int comparePathAt(int index, FileTable other, int otherIndex) {
+        if (!(other instanceof OffHeapFileTable)) {
+            return super.comparePathAt(index, other, otherIndex);
+        }
+        OffHeapFileTable that = (OffHeapFileTable) other;
+        int i = pathStart(index);
+        int end = pathEnd(index);
+        int j = that.pathStart(otherIndex);
+        int otherEnd = that.pathEnd(otherIndex);
+        while (i < end && j < otherEnd) {
+            int cmp = Integer.compare(buffer.get(i) & 0xff, that.buffer.get(j) & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+            i += 1;
+            j += 1;
+        }
+        return Integer.compare(end - i, otherEnd - j);
+    }
+
+    @Override
+    boolean isDirectoryAt(int index) {
+        int end = pathEnd(index);
+        return end > pathStart(index) && buffer.get(end - 1) == '/';
+    }
+
+    @Override
+    boolean idEquals(int index, FileTable other, int otherIndex) {
+        if (!(other instanceof OffHeapFileTable)) {
+            return super.idEquals(index, other, otherIndex);
+        }
+        OffHeapFileTable that = (OffHeapFileTable) other;
+        int i = idsStart + index * ObjectId.RAW_LENGTH;
+        int j = that.idsStart + otherIndex * ObjectId.RAW_LENGTH;
+        return buffer.getLong(i) == that.buffer.getLong(j)
+                && buffer.getLong(i + 8) == that.buffer.getLong(j + 8)
+                && buffer.getInt(i + 16) == that.buffer.getInt(j + 16);
+    }
+
+    @Override
+    public byte[] toBytes() {
+        byte[] bytes = new byte[buffer.limit()];
+        buffer.get(0, bytes);
+        return bytes;
+    }
+
+    @Override
+    int pathLengthAt(int index) {
+        return pathEnd(index) - pathStart(index);
+    }
+
+    @Override
+    void putPathAt(int index, ByteBuffer dest) {
+        for (int i = pathStart(index), end = pathEnd(index); i < end; i += 1) {
+            dest.put(buffer.get(i));
+        }
+    }
+
+    @Override
+    void putIdAt(int index, ByteBuffer dest) {
+        int start = idsStart + index * ObjectId.RAW_LENGTH;
+        for (int i = start; i < start + ObjectId.RAW_LENGTH; i += 1) {
+            dest.put(buffer.get(i));
+        }
+    }
+
+    private int pathStart(int index) {
+        return pathsStart + buffer.getInt(offsetsStart + index * 4);
+    }
+
+    private int pathEnd(int index) {
+        return pathsStart + buffer.getInt(offsetsStart + (index + 1) * 4);
+    }
+
+    private int comparePathTo(int index, byte[] key) {
+        int i = pathStart(index);
+        int end = pathEnd(index);
+        int j = 0;
+        while (i < end && j < key.length) {
+            int cmp = Integer.compare(buffer.get(i) & 0xff, key[j] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+            i += 1;
+            j += 1;
+        }
+        return Integer.compare(end - i, key.length - j);
+    }
+
+    /**
+     * Makes an off-heap table out of the entries of other tables, e.g. the
+     * files of several directory trees, by copying the bytes of their paths
+     * and ids into one direct buffer in the layout of a tree file. An entry
+     * of an off-heap table is copied without becoming a String or an
+     * ObjectId. How many entries and path bytes there are must be known
+     * before the first one is added, and they must be added in path order.
+     */
+    static final class Writer {
+
+        private final ByteBuffer buffer;
+
+        /**
+         * where the next id, path offset and path bytes go, all in buffer
+         */
+        private final ByteBuffer ids;
+        private final ByteBuffer offsets;
+        private final ByteBuffer paths;
+
+        private final int size;
+
+        private final int pathsStart;
+
+        private int added;
+
+        Writer(int size, int pathBytes) {
+            this.size = size;
+            int offsetsStart = 4 + size * ObjectId.RAW_LENGTH;
+            pathsStart = offsetsStart + (size + 1) * 4;
+            buffer = ByteBuffer.allocateDirect(pathsStart + pathBytes);
+            buffer.putInt(0, size);
+            ids = buffer.duplicate();
+            ids.position(4);
+            offsets = buffer.duplicate();
+            offsets.position(offsetsStart);
+            offsets.putInt(0);
+            paths = buffer.duplicate();
+            paths.position(pathsStart);
+        }
+
+        /**
+         * add the index-th entry of table, with prefix (UTF-8) before its path
+         */
+        void add(byte[] prefix, FileTable table, int index) {
+            table.putIdAt(index, ids);
+            paths.put(prefix);
+            table.putPathAt(index, paths);
+            offsets.putInt(paths.position() - pathsStart);
+            added += 1;
+        }
+
+        OffHeapFileTable build() {
+            if (added != size || paths.hasRemaining()) {
+                throw new IllegalStateException("added " + added + " of " + size + " entries");
+            }
+            return new OffHeapFileTable(buffer.asReadOnlyBuffer());
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static gitlet.Utils.*;
+
+/**
+ * What add is given to name the files it stages, one of
+ * <ul>
+ *     <li>a file,</li>
+ *     <li>a directory: every file in it and below, "." is the whole work tree,</li>
+ *     <li>a glob, see FileSystem.getPathMatcher(): "*.txt" is every .txt file
+ *     in the work tree itself, "src/**.java" every .java file below src.</li>
+ * </ul>
+ * A pathspec is relative to the work tree, and it is matched against the
+ * paths of the files in it, which are separated by '/'. A glob only walks
+ * the directory its first segment with a wildcard is in. A directory or a
+ * glob leaves out what .gitletignore ignores, a file named by its path is
+ * staged even if it is ignored.
+ *
+ * @author Linde
+ */
+class Pathspec {
+
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    /**
+     * the path of the file or the directory, or the directory a glob is in
+     */
+    private final String path;
+
+    /**
+     * null unless it is a glob
+     */
+    private final PathMatcher glob;
+
+    private Pathspec(String path, PathMatcher glob) {
+        this.path = path;
+        this.glob = glob;
+    }
+
+    /**
+     * @throws InvalidOperationException if a pathspec is outside the work tree
+     */
+    static Pathspec parse(String pathspec) {
+        List<String> segments = new ArrayList<>();
+        for (String segment : pathspec.replace(File.separatorChar, '/').split("/")) {
+            if (segment.equals("..")) {
+                throw new InvalidOperationException(pathspec + " is outside the repository.");
+            }
+            if (!segment.isEmpty() && !segment.equals(".")) {
+                segments.add(segment);
+            }
+        }
+        if (!segments.isEmpty() && segments.get(0).equals(GitletRepository.GITLET_DIRNAME)) {
+            throw new InvalidOperationException(pathspec + " is inside the repository.");
+        }
+        int firstGlob = 0;
+        while (firstGlob < segments.size() && !isGlob(segments.get(firstGlob))) {
+            firstGlob += 1;
+        }
+        String path = String.join("/", segments.subList(0, firstGlob));
+        if (firstGlob == segments.size()) {
+            return new Pathspec(path, null);
+        }
+        return new Pathspec(path, FileSystems.getDefault().getPathMatcher("glob:" + String.join("/", segments)));
+    }
+
+    private static boolean isGlob(String segment) {
+        for (int i = 0; i < segment.length(); i += 1) {
+            if (GLOB_CHARACTERS.indexOf(segment.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * the files of the work tree that any of the pathspecs names
+     *
+     * @return the paths, sorted by FileTable.PATH_ORDER, each one once
+     * @throws NotFoundException if a pathspec names no file at all
+     */
+    static List<String> match(File workTree, List<Pathspec> pathspecs, IgnoreRules ignoreRules) {
+        Set<String> paths = new TreeSet<>(FileTable.PATH_ORDER);
+        for (Pathspec pathspec : pathspecs) {
+            List<String> matched = pathspec.match(workTree, ignoreRules);
+            if (matched.isEmpty()) {
+                throw new NotFoundException("File does not exist.");
+            }
+            paths.addAll(matched);
+        }
+        return new ArrayList<>(paths);
+    }
+
+    /**
+     * the files of the work tree this pathspec names
+     */
+    List<String> match(File workTree, IgnoreRules ignoreRules) {
+        File file = path.isEmpty() ? workTree : join(workTree, path);
+        if (glob == null && file.isFile()) {
+            return Collections.singletonList(path);
+        }
+        if (!file.isDirectory()) {
+            return Collections.emptyList();
+        }
+        List<String> paths = WorkTreeWalker.walk(workTree, path, ignoreRules);
+        if (glob == null) {
+            return paths;
+        }
+        List<String> matched = new ArrayList<>();
+        for (String candidate : paths) {
+            if (glob.matches(Paths.get(candidate))) {
+                matched.add(candidate);
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * whether the file at a path is one this pathspec names if it exists
+     */
+    boolean covers(String candidate) {
+        if (glob != null) {
+            return glob.matches(Paths.get(candidate));
+        }
+        return path.isEmpty() || candidate.equals(path) || candidate.startsWith(path + "/");
+    }
+}
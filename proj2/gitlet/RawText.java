@@ -0,0 +1,144 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * The contents of a file, seen as a sequence of lines.
+ * <p>
+ * The lines are not split into Strings: we keep the bytes as they are and
+ * only remember where every line starts, plus a hash of every line, so a
+ * file of a million lines costs its bytes and two int arrays. Lines are
+ * compared by hash first and by bytes only if the hashes are equal.
+ * <p>
+ * A line includes its '\n'. The last line of a file without a trailing
+ * newline is the bytes after the last '\n'.
+ *
+ * @author Linde
+ */
+public class RawText {
+
+    public static final RawText EMPTY = new RawText(new byte[0]);
+
+    /**
+     * how many bytes at the start of a file we look at to tell whether it is binary
+     */
+    private static final int BINARY_CHECK_LENGTH = 8000;
+
+    private final byte[] content;
+
+    /**
+     * line i is content[lineStarts[i] .. lineStarts[i + 1])
+     */
+    private final int[] lineStarts;
+
+    private final int[] hashes;
+
+    public RawText(byte[] content) {
+        this.content = content;
+        int numLines = 0;
+        for (int i = 0; i < content.length; i += 1) {
+            if (content[i] == '\n') {
+                numLines += 1;
+            }
+        }
+        if (content.length > 0 && content[content.length - 1] != '\n') {
+            numLines += 1;
+        }
+        lineStarts = new int[numLines + 1];
+        hashes = new int[numLines];
+        int line = 0;
+        int hash = 0x811c9dc5;
+        for (int i = 0; i < content.length; i += 1) {
+            // FNV-1a
+            hash = (hash ^ (content[i] & 0xff)) * 0x01000193;
+            if (content[i] == '\n' || i == content.length - 1) {
+                hashes[line] = hash;
+                line += 1;
+                lineStarts[line] = i + 1;
+                hash = 0x811c9dc5;
+            }
+        }
+    }
+
+    /**
+     * the number of lines
+     */
+    public int size() {
+        return hashes.length;
+    }
+
+    int hashAt(int line) {
+        return hashes[line];
+    }
+
+    /**
+     * @return true if line i of this text is line j of other
+     */
+    public boolean lineEquals(int i, RawText other, int j) {
+        if (hashes[i] != other.hashes[j]) {
+            return false;
+        }
+        int start = lineStarts[i];
+        int length = lineStarts[i + 1] - start;
+        int otherStart = other.lineStarts[j];
+        if (length != other.lineStarts[j + 1] - otherStart) {
+            return false;
+        }
+        for (int k = 0; k < length; k += 1) {
+            if (content[start + k] != other.content[otherStart + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return false if the line is the last line of a file without a trailing newline
+     */
+    public boolean endsWithNewline(int line) {
+        return content[lineStarts[line + 1] - 1] == '\n';
+    }
+
+    /**
+     * a file is binary if there is a zero byte near its start, the same guess git makes
+     */
+    public static boolean isBinary(byte[] contents) {
+        int length = Math.min(contents.length, BINARY_CHECK_LENGTH);
+        for (int i = 0; i < length; i += 1) {
+            if (contents[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * isBinary() of a stream, e.g. of a blob, only its first
+     * BINARY_CHECK_LENGTH bytes are read. the stream is closed.
+     */
+    public static boolean isBinary(InputStream contents) {
+        byte[] head = new byte[BINARY_CHECK_LENGTH];
+        int length = 0;
+        try (InputStream in = contents) {
+            int n;
+            while (length < head.length && (n = in.read(head, length, head.length - length)) > 0) {
+                length += n;
+            }
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+        return isBinary(Arrays.copyOf(head, length));
+    }
+
+    /**
+     * write the lines [begin, end)
+     */
+    public void writeLines(OutputStream out, int begin, int end) throws IOException {
+        if (begin < end) {
+            out.write(content, lineStarts[begin], lineStarts[end] - lineStarts[begin]);
+        }
+    }
+}
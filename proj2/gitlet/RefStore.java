@@ -0,0 +1,98 @@
+package gitlet;
+
+import java.util.List;
+
+/**
+ * Where the refs of a repository are kept: every branch points to a commit,
+ * and one of the branches is the active one, the commit it points to is the
+ * current commit. Every branch also has a reflog, the lines appendReflog()
+ * writes.
+ * <p>
+ * A ref is moved by one write, or by compareAndSet() when others may move
+ * it at the same time. Repositories made by an older gitlet kept a copy of
+ * the current commit in a ref called HEAD, which is not read anymore.
+ * <p>
+ * Like ObjectStore, the commands only talk to GitletRepository.getRefStore().
+ *
+ * @author Linde
+ */
+public interface RefStore {
+
+    /**
+     * the name of the ref older repositories kept the current commit in,
+     * no branch can have it
+     */
+    String HEAD = "HEAD";
+
+    /**
+     * @return the commit of a branch, or null if there is no such ref
+     */
+    ObjectId read(String name);
+
+    /**
+     * whether a branch can have this name. HEAD is not a branch, and a store
+     * may keep more than branches under the names it rejects
+     */
+    default boolean isBranchName(String name) {
+        return !name.equals(HEAD);
+    }
+
+    void write(String name, ObjectId id);
+
+    /**
+     * move a ref to update if it still points to expected, atomically: when
+     * another writer has moved it since we read expected, nothing is written.
+     * the object store needs no such thing, an object is written under the
+     * sha1 of its contents, so writing it twice is writing it once.
+     *
+     * @param expected the commit we read from the ref, null if it must not exist yet
+     * @return whether the ref was moved
+     */
+    default boolean compareAndSet(String name, ObjectId expected, ObjectId update) {
+        return compareAndSet(name, expected, update, null);
+    }
+
+    /**
+     * compareAndSet() that also adds logLine to the reflog of the ref if it
+     * moves it, before another writer can move it again, so that the reflog
+     * has the moves in the order they were made
+     *
+     * @param logLine the line for appendLog(), null for none
+     */
+    boolean compareAndSet(String name, ObjectId expected, ObjectId update, String logLine);
+
+    /**
+     * @return true if the ref was there
+     */
+    boolean delete(String name);
+
+    /**
+     * the names of the branches, sorted, HEAD is not one of them
+     */
+    List<String> list();
+
+    String getActiveBranch();
+
+    void setActiveBranch(String name);
+
+    /**
+     * add one line to the reflog of a branch, which is created if needed
+     */
+    void appendLog(String name, String line);
+
+    /**
+     * @return the lines of the reflog of a branch, empty if it has none
+     */
+    List<String> readLog(String name);
+
+    /**
+     * replace the reflog of a branch, no lines removes the reflog
+     */
+    void writeLog(String name, List<String> lines);
+
+    /**
+     * the names of the branches that have a reflog, sorted. a removed
+     * branch keeps its reflog until gc expires it
+     */
+    List<String> listLogs();
+}
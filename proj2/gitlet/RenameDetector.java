@@ -0,0 +1,420 @@
+package gitlet;
+
+import java.util.*;
+import java.util.function.BiFunction;
+
+import static gitlet.Utils.*;
+
+/**
+ * Finds the renames (and, if asked, the copies) between two trees: pairs of
+ * a file that is gone and a file that is new whose contents are similar.
+ * <p>
+ * Comparing every removed file with every added file is N * M full
+ * comparisons, so we never do that:
+ * <ol>
+ *     <li>a file whose blob is the same as a removed file's is an exact
+ *     rename, found with one HashMap lookup, nothing is read.</li>
+ *     <li>every other file becomes the set of the hashes of its lines, and the
+ *     set gets a MinHash sketch of NUM_HASHES ints: the chance that two sketches
+ *     agree on one int is the Jaccard similarity of the two sets.</li>
+ *     <li>the sketches are cut into BANDS bands, and the removed files are put
+ *     into a hash table by band (locality sensitive hashing). an added file is
+ *     only compared with the removed files that share a whole band with it,
+ *     which two similar files almost always do and two different files almost
+ *     never do.</li>
+ * </ol>
+ * So the cost is the size of the files plus the candidate pairs, near linear.
+ * A candidate pair is scored with the exact Jaccard similarity of the two line
+ * sets, in percent. At the threshold (50%) a pair is found 93% of the time,
+ * at 60% 99% of the time, and the best pairs go first, every file is in at
+ * most one rename.
+ *
+ * @author Linde
+ */
+public class RenameDetector {
+
+    /**
+     * A file of the old tree that is a file of the new tree under another name.
+     */
+    public static class Rename {
+
+        public final String oldPath;
+
+        public final String newPath;
+
+        public final ObjectId oldSha1;
+
+        public final ObjectId newSha1;
+
+        /**
+         * how similar the contents are, 100 if they are the same
+         */
+        public final int score;
+
+        /**
+         * true if oldPath is still there, i.e. newPath is a copy of it
+         */
+        public final boolean copy;
+
+        Rename(Entry source, Entry destination, int score, boolean copy) {
+            this.oldPath = source.path;
+            this.newPath = destination.path;
+            this.oldSha1 = source.sha1;
+            this.newSha1 = destination.sha1;
+            this.score = score;
+            this.copy = copy;
+        }
+    }
+
+    /**
+     * files less similar than this (percent) are not renames, what git uses too
+     */
+    public static final int DEFAULT_THRESHOLD = 50;
+
+    /**
+     * no limit on the number of files compared by their contents
+     */
+    public static final int NO_RENAME_LIMIT = Integer.MAX_VALUE;
+
+    private static final int NUM_HASHES = 60;
+
+    private static final int BANDS = 20;
+
+    private static final int ROWS = NUM_HASHES / BANDS;
+
+    private static final int[] SEEDS = new int[NUM_HASHES];
+
+    static {
+        Random random = new Random(0x6a09e667);
+        for (int i = 0; i < NUM_HASHES; i += 1) {
+            SEEDS[i] = random.nextInt();
+        }
+    }
+
+    private static class Entry {
+
+        final String path;
+
+        final ObjectId sha1;
+
+        /**
+         * false for a file that is still in the new tree, it can only be copied
+         */
+        final boolean removed;
+
+        /**
+         * the sorted distinct hashes of the lines, null until we need them
+         */
+        int[] features;
+
+        Entry(String path, ObjectId sha1, boolean removed) {
+            this.path = path;
+            this.sha1 = sha1;
+            this.removed = removed;
+        }
+    }
+
+    private final BiFunction<String, ObjectId, byte[]> oldSource;
+
+    private final BiFunction<String, ObjectId, byte[]> newSource;
+
+    private final int threshold;
+
+    /**
+     * if more than renameLimit * renameLimit pairs of files are left after the
+     * exact renames, no blob is read and only the exact renames are found
+     */
+    private final int renameLimit;
+
+    private final List<Entry> sources = new ArrayList<>();
+
+    private final List<Entry> destinations = new ArrayList<>();
+
+    /**
+     * @param oldSource the contents of a file of the old tree
+     * @param newSource the contents of a file of the new tree
+     */
+    public RenameDetector(BiFunction<String, ObjectId, byte[]> oldSource,
+                          BiFunction<String, ObjectId, byte[]> newSource, int threshold) {
+        this(oldSource, newSource, threshold, NO_RENAME_LIMIT);
+    }
+
+    public RenameDetector(BiFunction<String, ObjectId, byte[]> oldSource,
+                          BiFunction<String, ObjectId, byte[]> newSource, int threshold, int renameLimit) {
+        this.oldSource = oldSource;
+        this.newSource = newSource;
+        this.threshold = threshold;
+        this.renameLimit = renameLimit;
+    }
+
+    /**
+     * a file of the old tree that is not in the new tree
+     */
+    public void addRemoved(String path, ObjectId sha1) {
+        sources.add(new Entry(path, sha1, true));
+    }
+
+    /**
+     * a file of the new tree that is not in the old tree
+     */
+    public void addAdded(String path, ObjectId sha1) {
+        destinations.add(new Entry(path, sha1, false));
+    }
+
+    /**
+     * a file (its old version) that is in both trees, an added file can be a copy of it
+     */
+    public void addCopySource(String path, ObjectId sha1) {
+        sources.add(new Entry(path, sha1, false));
+    }
+
+    /**
+     * the renames of the files of oldFiles that are not in newFiles to the files
+     * of newFiles that are not in oldFiles, in one pass over the two trees.
+     *
+     * @param findCopies if true, an added file can also be a copy of a file that
+     *                   is changed between the trees, or of an already renamed file
+     */
+    public static List<Rename> detect(FileTable oldFiles, FileTable newFiles,
+                                      BiFunction<String, ObjectId, byte[]> oldSource,
+                                      BiFunction<String, ObjectId, byte[]> newSource,
+                                      boolean findCopies) {
+        return detect(oldFiles, newFiles, oldSource, newSource, findCopies, NO_RENAME_LIMIT);
+    }
+
+    /**
+     * like detect() above, but files are only compared by their contents if
+     * there are at most renameLimit * renameLimit pairs of them
+     */
+    public static List<Rename> detect(FileTable oldFiles, FileTable newFiles,
+                                      BiFunction<String, ObjectId, byte[]> oldSource,
+                                      BiFunction<String, ObjectId, byte[]> newSource,
+                                      boolean findCopies, int renameLimit) {
+        RenameDetector detector = new RenameDetector(oldSource, newSource, DEFAULT_THRESHOLD, renameLimit);
+        FileTable.Join join = new FileTable.Join(oldFiles, newFiles);
+        while (join.next()) {
+            if (join.sameId(0, 1)) {
+                continue;
+            }
+            if (join.id(1) == null) {
+                detector.addRemoved(join.path(), join.id(0));
+            } else if (join.id(0) == null) {
+                detector.addAdded(join.path(), join.id(1));
+            } else if (findCopies) {
+                detector.addCopySource(join.path(), join.id(0));
+            }
+        }
+        return detector.compute(findCopies);
+    }
+
+    /**
+     * @return the renames (and copies), sorted by their new path
+     */
+    public List<Rename> compute(boolean findCopies) {
+        List<Rename> renames = new ArrayList<>();
+        if (sources.isEmpty() || destinations.isEmpty()) {
+            return renames;
+        }
+        Set<Entry> usedSources = new HashSet<>();
+
+        // the exact renames first, they only need the ids
+        Map<ObjectId, List<Entry>> sourcesBySha1 = new HashMap<>();
+        for (Entry source : sources) {
+            sourcesBySha1.computeIfAbsent(source.sha1, k -> new ArrayList<>()).add(source);
+        }
+        List<Entry> leftDestinations = new ArrayList<>();
+        for (Entry destination : destinations) {
+            Entry source = pickSource(sourcesBySha1.get(destination.sha1), usedSources, findCopies);
+            if (source == null) {
+                leftDestinations.add(destination);
+                continue;
+            }
+            renames.add(new Rename(source, destination, 100,
+                    !source.removed || usedSources.contains(source)));
+            usedSources.add(source);
+        }
+
+        List<Entry> leftSources = new ArrayList<>();
+        for (Entry source : sources) {
+            if (findCopies || !usedSources.contains(source)) {
+                leftSources.add(source);
+            }
+        }
+        if (!leftSources.isEmpty() && !leftDestinations.isEmpty()
+                && (long) leftSources.size() * leftDestinations.size() <= (long) renameLimit * renameLimit) {
+            findSimilar(leftSources, leftDestinations, usedSources, findCopies, renames);
+        }
+        renames.sort(Comparator.comparing(rename -> rename.newPath, FileTable.PATH_ORDER));
+        return renames;
+    }
+
+    /**
+     * a source with the same blob: an unused removed file if there is one,
+     * otherwise a copy source if we look for copies
+     */
+    private static Entry pickSource(List<Entry> candidates, Set<Entry> usedSources, boolean findCopies) {
+        if (candidates == null) {
+            return null;
+        }
+        for (Entry candidate : candidates) {
+            if (candidate.removed && !usedSources.contains(candidate)) {
+                return candidate;
+            }
+        }
+        return findCopies ? candidates.get(0) : null;
+    }
+
+    private void findSimilar(List<Entry> leftSources, List<Entry> leftDestinations,
+                             Set<Entry> usedSources, boolean findCopies, List<Rename> renames) {
+        // band -> the sources with that band, the key is the band number
+        // and the hash of its rows
+        Map<Long, List<Integer>> index = new HashMap<>();
+        for (int i = 0; i < leftSources.size(); i += 1) {
+            Entry source = leftSources.get(i);
+            source.features = features(oldSource.apply(source.path, source.sha1));
+            if (source.features.length == 0) {
+                continue;
+            }
+            int[] sketch = sketch(source.features);
+            for (int band = 0; band < BANDS; band += 1) {
+                index.computeIfAbsent(bandKey(sketch, band), k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        // every candidate pair that is similar enough, as
+        // {score, index of the source, index of the destination}
+        List<int[]> pairs = new ArrayList<>();
+        int[] seenBy = new int[leftSources.size()];
+        Arrays.fill(seenBy, -1);
+        for (int j = 0; j < leftDestinations.size(); j += 1) {
+            Entry destination = leftDestinations.get(j);
+            destination.features = features(newSource.apply(destination.path, destination.sha1));
+            if (destination.features.length == 0) {
+                continue;
+            }
+            int[] sketch = sketch(destination.features);
+            for (int band = 0; band < BANDS; band += 1) {
+                List<Integer> bucket = index.get(bandKey(sketch, band));
+                if (bucket == null) {
+                    continue;
+                }
+                for (int i : bucket) {
+                    if (seenBy[i] == j) {
+                        continue;
+                    }
+                    seenBy[i] = j;
+                    int score = similarity(leftSources.get(i).features, destination.features);
+                    if (score >= threshold) {
+                        pairs.add(new int[]{score, i, j});
+                    }
+                }
+            }
+        }
+
+        // the most similar pairs first, ties by path so the result does not
+        // depend on the order of the buckets
+        pairs.sort((p, q) -> {
+            if (p[0] != q[0]) {
+                return Integer.compare(q[0], p[0]);
+            }
+            int c = FileTable.comparePaths(leftDestinations.get(p[2]).path, leftDestinations.get(q[2]).path);
+            if (c != 0) {
+                return c;
+            }
+            return FileTable.comparePaths(leftSources.get(p[1]).path, leftSources.get(q[1]).path);
+        });
+        boolean[] destinationDone = new boolean[leftDestinations.size()];
+        for (int[] pair : pairs) {
+            Entry source = leftSources.get(pair[1]);
+            if (destinationDone[pair[2]]) {
+                continue;
+            }
+            boolean copy = !source.removed || usedSources.contains(source);
+            if (copy && !findCopies) {
+                continue;
+            }
+            destinationDone[pair[2]] = true;
+            usedSources.add(source);
+            renames.add(new Rename(source, leftDestinations.get(pair[2]), pair[0], copy));
+        }
+    }
+
+    /**
+     * the sorted distinct hashes of the lines of a file
+     */
+    static int[] features(byte[] contents) {
+        RawText text = new RawText(contents);
+        int[] hashes = new int[text.size()];
+        for (int i = 0; i < hashes.length; i += 1) {
+            hashes[i] = text.hashAt(i);
+        }
+        Arrays.sort(hashes);
+        int size = 0;
+        for (int i = 0; i < hashes.length; i += 1) {
+            if (size == 0 || hashes[size - 1] != hashes[i]) {
+                hashes[size] = hashes[i];
+                size += 1;
+            }
+        }
+        return Arrays.copyOf(hashes, size);
+    }
+
+    /**
+     * the MinHash sketch: for every seed, the smallest mixed feature
+     */
+    private static int[] sketch(int[] features) {
+        int[] sketch = new int[NUM_HASHES];
+        Arrays.fill(sketch, Integer.MAX_VALUE);
+        for (int feature : features) {
+            for (int k = 0; k < NUM_HASHES; k += 1) {
+                int h = mix(feature ^ SEEDS[k]);
+                if (h < sketch[k]) {
+                    sketch[k] = h;
+                }
+            }
+        }
+        return sketch;
+    }
+
+    /**
+     * the finalizer of MurmurHash3, every input bit changes every output bit
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static long bandKey(int[] sketch, int band) {
+        int h = band;
+        for (int k = band * ROWS; k < (band + 1) * ROWS; k += 1) {
+            h = h * 31 + sketch[k];
+        }
+        return ((long) band << 32) | (h & 0xffffffffL);
+    }
+
+    /**
+     * the Jaccard similarity of two sorted sets in percent, rounded down
+     */
+    static int similarity(int[] a, int[] b) {
+        int common = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                common += 1;
+                i += 1;
+                j += 1;
+            } else if (a[i] < b[j]) {
+                i += 1;
+            } else {
+                j += 1;
+            }
+        }
+        int union = a.length + b.length - common;
+        return (int) ((long) common * 100 / union);
+    }
+}
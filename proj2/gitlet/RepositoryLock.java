@@ -0,0 +1,484 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static gitlet.Utils.*;
+
+/**
+ * The lock of one repository: many readers or one writer, whether they are
+ * threads of this JVM or other gitlet processes.
+ * <p>
+ * In a JVM the threads share one ReentrantReadWriteLock. Between processes
+ * we lock .gitlet/lock with a FileChannel lock, shared while the threads of
+ * this JVM read and exclusive while one of them writes. The first reader of
+ * this JVM takes the shared file lock for all of them and the last one gives
+ * it back, since a JVM can only hold one lock on a file. The operating system
+ * gives back the file lock of a process that dies, so it is never stale.
+ * <p>
+ * A file system without FileChannel locks (e.g. NFS without a lock daemon)
+ * falls back to a lock file, .gitlet/lock.pid, created with a hard link so
+ * that only one process gets it, readers included. It holds the pid, the start
+ * time and the host of its owner. A process that dies keeps its lock file,
+ * so when the owner is on our host and is not running anymore, the lock file
+ * is stale and we remove it. -Dgitlet.lock=file (or GITLET_LOCK=file) uses
+ * the lock file on any file system.
+ * <p>
+ * Nobody waits forever: after -Dgitlet.lockTimeout milliseconds (or
+ * GITLET_LOCK_TIMEOUT, 10 seconds if neither is set) a command gives up with
+ * a ConflictException that tells who holds the lock, if we know.
+ *
+ * @author Linde
+ */
+class RepositoryLock {
+
+    /**
+     * the file in .gitlet the FileChannel locks are taken on
+     */
+    static final String FILENAME = "lock";
+
+    /**
+     * the lock file of the fallback, see the class comment
+     */
+    static final String PID_FILENAME = "lock.pid";
+
+    static final long DEFAULT_TIMEOUT_MILLIS = 10_000;
+
+    private static final boolean USE_PID_FILE =
+            "file".equals(System.getProperty("gitlet.lock", System.getenv("GITLET_LOCK")));
+
+    /**
+     * how long a command waits for the lock, read every time it takes the
+     * lock, so that a malformed option is a message and not a crash of every
+     * command
+     */
+    static long timeoutMillis() {
+        String option = System.getProperty("gitlet.lockTimeout", System.getenv("GITLET_LOCK_TIMEOUT"));
+        if (option == null) {
+            return DEFAULT_TIMEOUT_MILLIS;
+        }
+        try {
+            long millis = Long.parseLong(option);
+            if (millis >= 0) {
+                // so that the deadline does not overflow
+                return Math.min(millis, Long.MAX_VALUE / 2);
+            }
+        } catch (NumberFormatException excp) {
+            // the message below
+        }
+        throw new GitletException("Unknown lock timeout " + option + ", it is a number of milliseconds.");
+    }
+
+    /**
+     * how long we sleep between two tries at first, it doubles up to MAX_RETRY_MILLIS
+     */
+    private static final long MIN_RETRY_MILLIS = 1;
+
+    private static final long MAX_RETRY_MILLIS = 50;
+
+    /**
+     * a held lock, given back by try-with-resources
+     */
+    interface Held extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final File lockFile;
+
+    private final File pidFile;
+
+    /**
+     * called whenever this JVM gets the lock from another process,
+     * i.e. what is on disk may have changed since we last looked
+     */
+    private final Runnable onAcquire;
+
+    private final ReentrantReadWriteLock threads = new ReentrantReadWriteLock();
+
+    /**
+     * the remaining fields are guarded by this
+     */
+    private FileChannel channel;
+
+    private FileLock fileLock;
+
+    /**
+     * whether we hold .gitlet/lock.pid
+     */
+    private boolean holdsPidFile;
+
+    /**
+     * whether the file lock (or the lock file) is held for readers
+     */
+    private boolean heldShared;
+
+    /**
+     * the reader threads of this JVM that hold the read lock
+     */
+    private int readers;
+
+    /**
+     * set once a file system has refused a FileChannel lock
+     */
+    private boolean usePidFile = USE_PID_FILE;
+
+    /**
+     * @param gitletDir the .gitlet directory
+     * @param onAcquire what to do when the lock comes from another process
+     */
+    RepositoryLock(File gitletDir, Runnable onAcquire) {
+        lockFile = join(gitletDir, FILENAME);
+        pidFile = join(gitletDir, PID_FILENAME);
+        this.onAcquire = onAcquire;
+    }
+
+    /**
+     * the lock of the commands that only read
+     */
+    Held lockShared() {
+        long deadline = System.currentTimeMillis() + timeoutMillis();
+        Lock readLock = threads.readLock();
+        lockThreads(readLock, deadline);
+        // a writer of this JVM that reads already holds the exclusive lock
+        boolean counted = !threads.isWriteLockedByCurrentThread();
+        if (counted) {
+            synchronized (this) {
+                try {
+                    if (readers == 0) {
+                        lockProcesses(true, deadline);
+                    }
+                } catch (RuntimeException excp) {
+                    readLock.unlock();
+                    throw excp;
+                }
+                readers += 1;
+            }
+        }
+        return () -> {
+            if (counted) {
+                synchronized (this) {
+                    readers -= 1;
+                    if (readers == 0) {
+                        unlockProcesses();
+                    }
+                }
+            }
+            readLock.unlock();
+        };
+    }
+
+    /**
+     * the lock of the commands that write, reentrant: a command may call another one
+     */
+    Held lockExclusive() {
+        long deadline = System.currentTimeMillis() + timeoutMillis();
+        Lock writeLock = threads.writeLock();
+        lockThreads(writeLock, deadline);
+        boolean outermost = threads.getWriteHoldCount() == 1;
+        if (outermost) {
+            synchronized (this) {
+                try {
+                    lockProcesses(false, deadline);
+                } catch (RuntimeException excp) {
+                    writeLock.unlock();
+                    throw excp;
+                }
+            }
+        }
+        return heldExclusive(writeLock, outermost);
+    }
+
+    /**
+     * like lockExclusive(), but it does not wait: a reader that would like
+     * to write back what it has cached takes it if nobody else holds the lock
+     *
+     * @return null if another thread or process holds the lock, or this
+     * thread holds the read lock
+     */
+    Held tryLockExclusive() {
+        Lock writeLock = threads.writeLock();
+        if (!writeLock.tryLock()) {
+            return null;
+        }
+        boolean outermost = threads.getWriteHoldCount() == 1;
+        if (outermost) {
+            synchronized (this) {
+                boolean locked;
+                try {
+                    locked = tryLockProcesses(false);
+                } catch (RuntimeException excp) {
+                    writeLock.unlock();
+                    throw excp;
+                }
+                if (!locked) {
+                    writeLock.unlock();
+                    return null;
+                }
+                acquired(false);
+            }
+        }
+        return heldExclusive(writeLock, outermost);
+    }
+
+    private Held heldExclusive(Lock writeLock, boolean outermost) {
+        return () -> {
+            if (outermost) {
+                synchronized (this) {
+                    unlockProcesses();
+                }
+            }
+            writeLock.unlock();
+        };
+    }
+
+    private void lockThreads(Lock lock, long deadline) {
+        try {
+            if (!lock.tryLock(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                throw new ConflictException(
+                        "Unable to lock the repository, another command in this process is using it.");
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new GitletException(excp.getMessage());
+        }
+    }
+
+    /**
+     * take the lock between processes, waiting until the deadline
+     */
+    private void lockProcesses(boolean shared, long deadline) {
+        long retryMillis = MIN_RETRY_MILLIS;
+        while (!tryLockProcesses(shared)) {
+            if (System.currentTimeMillis() >= deadline) {
+                String owner = readOwner();
+                throw new ConflictException("Unable to lock the repository, another gitlet command"
+                        + (owner == null ? "" : " (" + owner + ")") + " is using it.");
+            }
+            try {
+                Thread.sleep(retryMillis);
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw new GitletException(excp.getMessage());
+            }
+            retryMillis = Math.min(retryMillis * 2, MAX_RETRY_MILLIS);
+        }
+        acquired(shared);
+    }
+
+    private void acquired(boolean shared) {
+        heldShared = shared;
+        onAcquire.run();
+    }
+
+    private boolean tryLockProcesses(boolean shared) {
+        if (usePidFile) {
+            return tryCreatePidFile();
+        }
+        try {
+            if (channel == null) {
+                channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            fileLock = channel.tryLock(0, Long.MAX_VALUE, shared);
+        } catch (IOException excp) {
+            // e.g. "No locks available", the file system can not lock files
+            usePidFile = true;
+            return tryCreatePidFile();
+        }
+        if (fileLock != null && !shared) {
+            // tell the processes that wait for us who we are
+            writeOwner();
+        }
+        return fileLock != null;
+    }
+
+    private void unlockProcesses() {
+        try {
+            if (fileLock != null) {
+                if (!heldShared) {
+                    channel.truncate(0);
+                }
+                fileLock.release();
+                fileLock = null;
+            }
+            if (holdsPidFile) {
+                holdsPidFile = false;
+                Files.deleteIfExists(pidFile.toPath());
+            }
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+    }
+
+    private void writeOwner() {
+        try {
+            channel.truncate(0);
+            ByteBuffer owner = ByteBuffer.wrap(ownerLine().getBytes(StandardCharsets.UTF_8));
+            while (owner.hasRemaining()) {
+                channel.write(owner, owner.position());
+            }
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+    }
+
+    /**
+     * @return who holds the lock, as "process [pid] on [host]", or null if we do not know
+     */
+    private String readOwner() {
+        Owner owner = Owner.parse(readQuietly(usePidFile ? pidFile : lockFile));
+        return owner == null ? null : "process " + owner.pid + " on " + owner.host;
+    }
+
+    /**
+     * the fallback: write our lock file under a name of our own, then link
+     * it to lock.pid, which fails if lock.pid is there. Nobody ever sees a
+     * lock file that is not written completely.
+     */
+    private boolean tryCreatePidFile() {
+        File ourFile = join(pidFile.getParentFile(), PID_FILENAME + "." + Owner.CURRENT_PID);
+        try {
+            writeContents(ourFile, ownerLine());
+            try {
+                Files.createLink(pidFile.toPath(), ourFile.toPath());
+                holdsPidFile = true;
+                return true;
+            } catch (FileAlreadyExistsException excp) {
+                removeIfStale();
+                return false;
+            } finally {
+                Files.deleteIfExists(ourFile.toPath());
+            }
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+    }
+
+    /**
+     * remove lock.pid if its owner is a process of our host that is not
+     * running anymore. lock.pid is first renamed to a name of our own, so
+     * that two processes that find it stale do not both remove it: the
+     * second one would remove the lock file of whoever came after the first.
+     */
+    private void removeIfStale() throws IOException {
+        String contents = readQuietly(pidFile);
+        Owner owner = Owner.parse(contents);
+        if (owner == null || !owner.isDead()) {
+            return;
+        }
+        File staleFile = join(pidFile.getParentFile(), PID_FILENAME + ".stale." + Owner.CURRENT_PID);
+        try {
+            Files.move(pidFile.toPath(), staleFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException excp) {
+            // someone else has removed it
+            return;
+        }
+        if (!contents.equals(readQuietly(staleFile))) {
+            // not the stale lock file anymore, but one taken since: put it back
+            try {
+                Files.createLink(pidFile.toPath(), staleFile.toPath());
+            } catch (FileAlreadyExistsException ignored) {
+                // its owner has already given it back and someone else took the lock
+            }
+        }
+        Files.deleteIfExists(staleFile.toPath());
+    }
+
+    private static String readQuietly(File file) {
+        try {
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    private static String ownerLine() {
+        return Owner.CURRENT_PID + " " + Owner.CURRENT_START + " " + Owner.CURRENT_HOST + "\n";
+    }
+
+    /**
+     * who holds a lock: [pid] [start time in millis, 0 if unknown] [host]
+     */
+    private static class Owner {
+
+        static final long CURRENT_PID = ProcessHandle.current().pid();
+
+        static final long CURRENT_START = startOf(ProcessHandle.current());
+
+        static final String CURRENT_HOST = hostName();
+
+        final long pid;
+
+        final long start;
+
+        final String host;
+
+        private Owner(long pid, long start, String host) {
+            this.pid = pid;
+            this.start = start;
+            this.host = host;
+        }
+
+        static Owner parse(String line) {
+            if (line == null) {
+                return null;
+            }
+            String[] fields = line.trim().split(" ", 3);
+            if (fields.length < 3) {
+                return null;
+            }
+            try {
+                return new Owner(Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[2]);
+            } catch (NumberFormatException excp) {
+                return null;
+            }
+        }
+
+        /**
+         * whether the owner is a process of our host that has exited. a pid
+         * that is used again by a new process has another start time
+         */
+        boolean isDead() {
+            if (!host.equals(CURRENT_HOST)) {
+                return false;
+            }
+            Optional<ProcessHandle> process = ProcessHandle.of(pid);
+            if (process.isEmpty() || !process.get().isAlive()) {
+                return true;
+            }
+            long processStart = startOf(process.get());
+            return start != 0 && processStart != 0 && processStart != start;
+        }
+
+        private static long startOf(ProcessHandle process) {
+            return process.info().startInstant().map(Instant::toEpochMilli).orElse(0L);
+        }
+
+        private static String hostName() {
+            try {
+                return InetAddress.getLocalHost().getHostName();
+            } catch (IOException excp) {
+                // the name the JVM gives itself is pid@host
+                String name = ManagementFactory.getRuntimeMXBean().getName();
+                return name.substring(name.indexOf('@') + 1);
+            }
+        }
+    }
+}
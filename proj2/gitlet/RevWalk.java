@@ -0,0 +1,138 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+
+/**
+ * Walks the history in the CommitGraph, one commit at a time.
+ * <p>
+ * There is no recursion at all: the commits waiting to be visited are kept
+ * in an explicit frontier, and the commits we have already seen are kept in
+ * a BitSet indexed by commit graph position, so a walk over a history of a
+ * million commits needs a constant amount of stack, a 125KB BitSet and a
+ * frontier as wide as the history.
+ * <p>
+ * e.g. print every commit reachable from HEAD, newest first:
+ * <pre>
+ *     RevWalk walk = new RevWalk(graph, RevWalk.Order.DATE);
+ *     walk.markStart(graph.ensure(getHeadCommitSha1()));
+ *     for (int p = walk.next(); p >= 0; p = walk.next()) {
+ *         ...graph.sha1At(p)...
+ *     }
+ * </pre>
+ *
+ * @author Linde
+ */
+public class RevWalk {
+
+    public enum Order {
+        /**
+         * newest commit first, what "git log" does
+         */
+        DATE,
+        /**
+         * a commit is always visited before its parents
+         */
+        TOPO,
+        /**
+         * only follow the first parent of every commit, what gitlet's log does
+         */
+        FIRST_PARENT
+    }
+
+    private final CommitGraph graph;
+
+    private final Order order;
+
+    /**
+     * the commits that have been put into the frontier, so that every commit
+     * is visited only once even if it can be reached along several paths
+     */
+    private final BitSet seen;
+
+    /**
+     * commits reachable from an uninteresting commit, they are never visited
+     */
+    private final BitSet uninteresting;
+
+    private final Queue<Integer> frontier;
+
+    public RevWalk(CommitGraph graph, Order order) {
+        this.graph = graph;
+        this.order = order;
+        this.seen = new BitSet(graph.size());
+        this.uninteresting = new BitSet(graph.size());
+        switch (order) {
+            case DATE:
+                // newer first, the position breaks ties so that a child
+                // created in the same millisecond comes before its parent
+                this.frontier = new PriorityQueue<>(
+                        Comparator.comparingLong((Integer p) -> graph.timestampAt(p))
+                                .thenComparingInt(p -> p).reversed());
+                break;
+            case TOPO:
+                // parents always have a smaller position than their children,
+                // so visiting the highest position first is a topological order
+                this.frontier = new PriorityQueue<>(Comparator.reverseOrder());
+                break;
+            default:
+                this.frontier = new ArrayDeque<>();
+                break;
+        }
+    }
+
+    /**
+     * start walking from the commit at the given position
+     */
+    public void markStart(int position) {
+        if (position >= 0 && !seen.get(position) && !uninteresting.get(position)) {
+            seen.set(position);
+            frontier.add(position);
+        }
+    }
+
+    /**
+     * never visit the commit at the given position and its ancestors,
+     * e.g. for the range A..B call markUninteresting(A) and markStart(B).
+     * call it before next() is called for the first time.
+     */
+    public void markUninteresting(int position) {
+        if (position >= 0) {
+            uninteresting.or(graph.reachableFrom(position));
+        }
+    }
+
+    /**
+     * @return the position of the next commit, or -1 if the walk is over
+     */
+    public int next() {
+        while (!frontier.isEmpty()) {
+            int position = frontier.remove();
+            if (uninteresting.get(position)) {
+                continue;
+            }
+            int[] parents = graph.parentsAt(position);
+            int numParentsToFollow = order == Order.FIRST_PARENT
+                    ? Math.min(1, parents.length) : parents.length;
+            for (int i = 0; i < numParentsToFollow; i += 1) {
+                markStart(parents[i]);
+            }
+            return position;
+        }
+        return -1;
+    }
+
+    /**
+     * walk everything that is left, and return the positions we have visited
+     */
+    public BitSet visitAll() {
+        BitSet visited = new BitSet(graph.size());
+        for (int position = next(); position >= 0; position = next()) {
+            visited.set(position);
+        }
+        return visited;
+    }
+}
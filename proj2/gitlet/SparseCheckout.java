@@ -0,0 +1,188 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/**
+ * The paths a sparse checkout has in the work tree, .gitlet/sparse-checkout.
+ * <p>
+ * The file is a list of patterns, the same as those of .gitletignore (see
+ * IgnoreRules), except that a path a pattern matches is in the work tree
+ * instead of ignored: "src/api/" is every file below src/api, "*.md" every
+ * .md file, "/README" the README at the top. A repository without the file
+ * has every path in the work tree, see FULL.
+ * <p>
+ * Checkout, reset and merge only write the files of a commit that are in
+ * the checkout, and status only looks at those, so what they cost grows with
+ * the sparse checkout and not with the commit: a commit is read through the
+ * trees of the directories the patterns can reach, the other trees are not
+ * even read, see DirectoryTrees.read(). The commits themselves always have
+ * every file, a commit changes the files of its parent that were staged and
+ * keeps the others, wherever they are.
+ *
+ * @author Linde
+ */
+class SparseCheckout {
+
+    static final String FILENAME = "sparse-checkout";
+
+    /**
+     * every path, no sparse checkout at all
+     */
+    static final SparseCheckout FULL = new SparseCheckout(Collections.emptyList(), null);
+
+    /**
+     * a directory whose every file is in the checkout
+     */
+    private static final Directory ALL = new Directory(null);
+
+    private final List<String> patterns;
+
+    /**
+     * the patterns compiled, a path they "ignore" is in the checkout. null for FULL.
+     */
+    private final IgnoreRules rules;
+
+    private SparseCheckout(List<String> patterns, IgnoreRules rules) {
+        this.patterns = patterns;
+        this.rules = rules;
+    }
+
+    /**
+     * @param patterns at least one
+     */
+    static SparseCheckout of(List<String> patterns) {
+        List<String> copy = new ArrayList<>(patterns);
+        return new SparseCheckout(Collections.unmodifiableList(copy), new IgnoreRules(copy));
+    }
+
+    /**
+     * the sparse checkout of a repository, FULL if it has none
+     */
+    static SparseCheckout read(File gitletDir) {
+        File file = join(gitletDir, FILENAME);
+        if (!file.isFile()) {
+            return FULL;
+        }
+        return of(Arrays.asList(readContentsAsString(file).split("\r?\n")));
+    }
+
+    /**
+     * make this the sparse checkout of a repository, FULL deletes the file
+     */
+    void write(File gitletDir) {
+        File file = join(gitletDir, FILENAME);
+        if (isFull()) {
+            file.delete();
+        } else {
+            writeContents(file, String.join("\n", patterns) + "\n");
+        }
+    }
+
+    boolean isFull() {
+        return rules == null;
+    }
+
+    List<String> getPatterns() {
+        return patterns;
+    }
+
+    /**
+     * whether a file of the work tree is in the checkout
+     */
+    boolean includes(String path) {
+        return isFull() || rules.isIgnored(path);
+    }
+
+    /**
+     * the files of a table that are in the checkout
+     */
+    FileTable filter(FileTable files) {
+        if (isFull()) {
+            return files;
+        }
+        if (FileTable.offHeapTrees()) {
+            return filterOffHeap(files);
+        }
+        List<String> paths = new ArrayList<>();
+        List<ObjectId> ids = new ArrayList<>();
+        for (int i = 0; i < files.size(); i += 1) {
+            if (includes(files.pathAt(i))) {
+                paths.add(files.pathAt(i));
+                ids.add(files.idAt(i));
+            }
+        }
+        return FileTable.ofSorted(paths.toArray(new String[0]), ids.toArray(new ObjectId[0]));
+    }
+
+    /**
+     * filter() off the heap: the files in the checkout are copied byte by
+     * byte into a new off-heap table, their paths are only decoded to be matched
+     */
+    private FileTable filterOffHeap(FileTable files) {
+        BitSet included = new BitSet(files.size());
+        int pathBytes = 0;
+        for (int i = 0; i < files.size(); i += 1) {
+            if (includes(files.pathAt(i))) {
+                included.set(i);
+                pathBytes += files.pathLengthAt(i);
+            }
+        }
+        OffHeapFileTable.Writer writer = new OffHeapFileTable.Writer(included.cardinality(), pathBytes);
+        byte[] noPrefix = new byte[0];
+        for (int i = included.nextSetBit(0); i >= 0; i = included.nextSetBit(i + 1)) {
+            writer.add(noPrefix, files, i);
+        }
+        return writer.build();
+    }
+
+    /**
+     * the work tree itself
+     */
+    Directory root() {
+        return isFull() ? ALL : new Directory(rules.start());
+    }
+
+    /**
+     * @param directory a directory, e.g. root()
+     * @return a subdirectory of it, or null if no file below it is in the checkout
+     */
+    Directory enter(Directory directory, String name) {
+        if (directory.position == null) {
+            return ALL;
+        }
+        IgnoreRules.Position position = rules.enter(directory.position, name);
+        if (position == null) {
+            return ALL;
+        }
+        return rules.matchesNothingBelow(position) ? null : new Directory(position);
+    }
+
+    /**
+     * whether a file in a directory is in the checkout
+     */
+    boolean includes(Directory directory, String name) {
+        return directory.position == null || rules.isIgnored(directory.position, name);
+    }
+
+    /**
+     * where a directory is in the patterns, see IgnoreRules.Position
+     */
+    static final class Directory {
+
+        /**
+         * null if every file below the directory is in the checkout
+         */
+        private final IgnoreRules.Position position;
+
+        private Directory(IgnoreRules.Position position) {
+            this.position = position;
+        }
+    }
+}
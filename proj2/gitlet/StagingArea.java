@@ -0,0 +1,448 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static gitlet.StudentUtils.*;
+import static gitlet.Utils.*;
+
+/**
+ * The staging area, .gitlet/index: what the next commit changes, by path.
+ * A file staged for addition is the id of its blob, which add() has written
+ * to the object store (unless a blob with the same contents was there
+ * already), a file staged for removal is a tombstone, ObjectId.ZERO. So
+ * staging a file costs one blob at most, and staging a removal nothing but
+ * its entry.
+ * <p>
+ * The index also caches what add() has hashed: the size and the
+ * modification time of a file, and its blob. As long as both are the same,
+ * so is the file, and add() does not read it again. A file that was
+ * modified just before it was hashed is not cached, it may be modified
+ * again in the same tick of the file system clock without its modification
+ * time changing (which is what git calls racy).
+ * <p>
+ * The index is
+ * <pre>
+ *     [VERSION: int]
+ *     [number of entries: int] ([path: UTF] [sha1: 20 bytes])...
+ *     [number of stats: int] ([path: UTF] [size: long] [modified: long] [sha1: 20 bytes])...
+ * </pre>
+ * with the entries sorted by path, and it is replaced as a whole, by a
+ * temporary file that is renamed over it, so a command that dies never
+ * leaves half an index. The first index had neither the version nor the
+ * stats, it began with the number of entries, which is never negative.
+ * <p>
+ * Older repositories staged a copy of the file in .gitlet/stageForAdd and
+ * one in .gitlet/stageForRemove. Such a repository is read as if it had an
+ * index, and the directories are gone the first time the index is written.
+ *
+ * @author Linde
+ */
+class StagingArea {
+
+    static final String FILENAME = "index";
+
+    private static final ObjectId TOMBSTONE = ObjectId.ZERO;
+
+    private static final int VERSION = -2;
+
+    /**
+     * how long a file must not have been modified before it was hashed for
+     * its stat to be cached, longer than the tick of any file system clock
+     */
+    static final long RACY_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private static final String OLD_ADD_DIRNAME = "stageForAdd";
+
+    private static final String OLD_REMOVE_DIRNAME = "stageForRemove";
+
+    private final File gitletDir;
+
+    private final ObjectStore objects;
+
+    /**
+     * the sha1 of the index as it was read, null if there was none
+     */
+    private ObjectId readSha1;
+
+    /**
+     * the blobs of the files an older repository has staged: blob -> its
+     * copy in stageForAdd. write() puts them in the object store, so reading
+     * the staging area never writes anything.
+     */
+    private final Map<ObjectId, File> oldStagedBlobs = new HashMap<>();
+
+    /**
+     * path -> the blob staged for addition, or TOMBSTONE
+     */
+    private final TreeMap<String, ObjectId> entries = new TreeMap<>();
+
+    /**
+     * path -> what the file was when add() hashed it
+     */
+    private final Map<String, Stat> stats = new HashMap<>();
+
+    /**
+     * whether entries or stats differ from the index on disk
+     */
+    private boolean changed;
+
+    private StagingArea(File gitletDir, ObjectStore objects) {
+        this.gitletDir = gitletDir;
+        this.objects = objects;
+    }
+
+    /**
+     * read the index of a repository, an empty one if there is none
+     *
+     * @param objects where write() puts the files an older repository has
+     *                staged, see the class comment
+     */
+    static StagingArea read(File gitletDir, ObjectStore objects) {
+        StagingArea stagingArea = new StagingArea(gitletDir, objects);
+        File indexFile = join(gitletDir, FILENAME);
+        if (!indexFile.exists()) {
+            stagingArea.readOldLayout();
+            return stagingArea;
+        }
+        byte[] contents = readContents(indexFile);
+        stagingArea.readSha1 = ObjectId.sha1Of(contents);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(contents))) {
+            int version = in.readInt();
+            int size = version == VERSION ? in.readInt() : version;
+            byte[] raw = new byte[ObjectId.RAW_LENGTH];
+            for (int i = 0; i < size; i += 1) {
+                String path = in.readUTF();
+                in.readFully(raw);
+                stagingArea.entries.put(path, ObjectId.fromRaw(raw, 0));
+            }
+            int statCount = version == VERSION ? in.readInt() : 0;
+            for (int i = 0; i < statCount; i += 1) {
+                String path = in.readUTF();
+                long fileSize = in.readLong();
+                long modified = in.readLong();
+                in.readFully(raw);
+                stagingArea.stats.put(path, new Stat(fileSize, modified, ObjectId.fromRaw(raw, 0)));
+            }
+        } catch (IOException excp) {
+            throw new GitletException(indexFile + " is corrupt.");
+        }
+        return stagingArea;
+    }
+
+    private void readOldLayout() {
+        List<String> added = plainFilenamesIn(join(gitletDir, OLD_ADD_DIRNAME));
+        if (added != null) {
+            for (String filename : added) {
+                File stagedFile = join(gitletDir, OLD_ADD_DIRNAME, filename);
+                ObjectId blobSha1 = ObjectId.sha1Of(readContents(stagedFile));
+                oldStagedBlobs.put(blobSha1, stagedFile);
+                entries.put(filename, blobSha1);
+            }
+        }
+        List<String> removed = plainFilenamesIn(join(gitletDir, OLD_REMOVE_DIRNAME));
+        if (removed != null) {
+            for (String filename : removed) {
+                entries.put(filename, TOMBSTONE);
+            }
+        }
+        changed = !entries.isEmpty();
+    }
+
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * @return the blob of a file staged for addition, or null
+     */
+    ObjectId getAdded(String path) {
+        ObjectId blobSha1 = entries.get(path);
+        return TOMBSTONE.equals(blobSha1) ? null : blobSha1;
+    }
+
+    boolean isAdded(String path) {
+        return getAdded(path) != null;
+    }
+
+    boolean isRemoved(String path) {
+        return TOMBSTONE.equals(entries.get(path));
+    }
+
+    /**
+     * the files staged for addition, sorted
+     */
+    List<String> getAddedFiles() {
+        List<String> paths = new ArrayList<>();
+        for (Map.Entry<String, ObjectId> entry : entries.entrySet()) {
+            if (!entry.getValue().equals(TOMBSTONE)) {
+                paths.add(entry.getKey());
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * the files staged for removal, sorted
+     */
+    List<String> getRemovedFiles() {
+        List<String> paths = new ArrayList<>();
+        for (Map.Entry<String, ObjectId> entry : entries.entrySet()) {
+            if (entry.getValue().equals(TOMBSTONE)) {
+                paths.add(entry.getKey());
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * every staged path, added or removed, sorted
+     */
+    Set<String> paths() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    /**
+     * the blobs staged for addition, gc must not delete them
+     */
+    Collection<ObjectId> blobs() {
+        Set<ObjectId> blobs = new HashSet<>(entries.values());
+        blobs.remove(TOMBSTONE);
+        return blobs;
+    }
+
+    /**
+     * stage a file for addition, the blob must be in the object store
+     */
+    void add(String path, ObjectId blobSha1) {
+        changed |= !blobSha1.equals(entries.put(path, blobSha1));
+    }
+
+    void remove(String path) {
+        changed |= !TOMBSTONE.equals(entries.put(path, TOMBSTONE));
+    }
+
+    /**
+     * the file is neither staged for addition nor for removal anymore
+     *
+     * @return whether it was staged
+     */
+    boolean unstage(String path) {
+        boolean staged = entries.remove(path) != null;
+        changed |= staged;
+        return staged;
+    }
+
+    void clear() {
+        changed |= !entries.isEmpty();
+        entries.clear();
+    }
+
+    /**
+     * @return the cached stat of a file, see the class comment, or null
+     */
+    Stat getStat(String path) {
+        return stats.get(path);
+    }
+
+    /**
+     * cache the stat of a file unless it is racy, see the class comment
+     *
+     * @param hashedAt System.currentTimeMillis() in nanoseconds when we
+     *                 began to hash the file
+     */
+    void putStat(String path, Stat stat, long hashedAt) {
+        if (stat.modified + RACY_NANOS > hashedAt) {
+            forgetStat(path);
+        } else if (!stat.equals(stats.put(path, stat))) {
+            changed = true;
+        }
+    }
+
+    void forgetStat(String path) {
+        changed |= stats.remove(path) != null;
+    }
+
+    /**
+     * the paths of the files whose stat is cached
+     */
+    Set<String> statPaths() {
+        return Collections.unmodifiableSet(stats.keySet());
+    }
+
+    /**
+     * what the next commit changes: path -> the staged blob, or null for a
+     * file staged for removal
+     */
+    SortedMap<String, ObjectId> changes() {
+        SortedMap<String, ObjectId> changes = new TreeMap<>(FileTable.PATH_ORDER);
+        for (Map.Entry<String, ObjectId> entry : entries.entrySet()) {
+            changes.put(entry.getKey(), entry.getValue().equals(TOMBSTONE) ? null : entry.getValue());
+        }
+        return changes;
+    }
+
+    /**
+     * files as the staging area changes them, i.e. what the next commit has
+     */
+    FileTable applyTo(FileTable files) {
+        FileTable.Builder builder = files.toBuilder();
+        for (Map.Entry<String, ObjectId> entry : entries.entrySet()) {
+            if (entry.getValue().equals(TOMBSTONE)) {
+                builder.remove(entry.getKey());
+            } else {
+                builder.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * replace the index on disk, if anything has changed since it was read
+     */
+    void write() {
+        if (!changed) {
+            return;
+        }
+        if (!oldStagedBlobs.isEmpty()) {
+            // the copies in stageForAdd are gone once the index is written
+            for (Map.Entry<ObjectId, File> blob : oldStagedBlobs.entrySet()) {
+                objects.write(ObjectStore.Kind.BLOB, blob.getKey(), readContents(blob.getValue()));
+            }
+            objects.sync();
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            byte[] raw = new byte[ObjectId.RAW_LENGTH];
+            for (Map.Entry<String, ObjectId> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().copyRawTo(raw, 0);
+                out.write(raw);
+            }
+            out.writeInt(stats.size());
+            for (Map.Entry<String, Stat> entry : stats.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().size);
+                out.writeLong(entry.getValue().modified);
+                entry.getValue().blobSha1.copyRawTo(raw, 0);
+                out.write(raw);
+            }
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+        byte[] contents = bytes.toByteArray();
+        try {
+            File tempFile = File.createTempFile(FILENAME, ".tmp", gitletDir);
+            writeContents(tempFile, (Object) contents);
+            Files.move(tempFile.toPath(), join(gitletDir, FILENAME).toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+        changed = false;
+        readSha1 = ObjectId.sha1Of(contents);
+        oldStagedBlobs.clear();
+        for (String dirname : new String[]{OLD_ADD_DIRNAME, OLD_REMOVE_DIRNAME}) {
+            File oldDir = join(gitletDir, dirname);
+            if (oldDir.isDirectory()) {
+                deleteAllFilesInDir(oldDir);
+                oldDir.delete();
+            }
+        }
+    }
+
+    /**
+     * write() unless another command has replaced the index since it was
+     * read, then what we have is out of date and is dropped. it is for a
+     * command that read the index under the shared lock and writes back
+     * the stats it cached, the caller holds the exclusive lock now.
+     */
+    void writeIfUnchanged() {
+        if (changed && Objects.equals(sha1OfFile(join(gitletDir, FILENAME)), readSha1)) {
+            write();
+        }
+    }
+
+    /**
+     * @return the sha1 of the contents of a file, or null if there is no such file
+     */
+    static ObjectId sha1OfFile(File file) {
+        try {
+            return ObjectId.sha1Of(Files.readAllBytes(file.toPath()));
+        } catch (NoSuchFileException excp) {
+            return null;
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+    }
+
+    /**
+     * the size and the modification time of a file of the work tree, and
+     * its blob once it is hashed
+     */
+    static class Stat {
+
+        final long size;
+
+        /**
+         * in nanoseconds since the epoch
+         */
+        final long modified;
+
+        final ObjectId blobSha1;
+
+        Stat(long size, long modified, ObjectId blobSha1) {
+            this.size = size;
+            this.modified = modified;
+            this.blobSha1 = blobSha1;
+        }
+
+        /**
+         * @return the stat of a file, without a blob, or null if there is no such file
+         */
+        static Stat of(File file) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                return new Stat(attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS), null);
+            } catch (NoSuchFileException excp) {
+                return null;
+            } catch (IOException excp) {
+                throw new GitletException(excp.getMessage());
+            }
+        }
+
+        Stat withBlob(ObjectId hashed) {
+            return new Stat(size, modified, hashed);
+        }
+
+        /**
+         * whether the file is what it was when this stat was cached
+         */
+        boolean isSameFile(Stat other) {
+            return other != null && size == other.size && modified == other.modified;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Stat && isSameFile((Stat) other)
+                    && Objects.equals(blobSha1, ((Stat) other).blobSha1);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, modified, blobSha1);
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Formatter;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+
+import static gitlet.Benchmark.*;
+import static gitlet.Utils.*;
+
+/**
+ * Benchmarks of the object ids, the stores and the file tables, and of
+ * how fast commits go in at every Durability, see Benchmark.
+ *
+ * @author Linde
+ */
+class StoreBenchmarks {
+
+    private StoreBenchmarks() {
+    }
+
+    /**
+     * compare 40-char hex Strings with ObjectIds: the heap used by n ids in a
+     * HashSet, hashing small files, and formatting / parsing the hex form.
+     */
+    static void benchmarkObjectId(int n) {
+        byte[][] smallFiles = new byte[n][];
+        for (int i = 0; i < n; i += 1) {
+            smallFiles[i] = ("line " + i + "\n").getBytes(StandardCharsets.UTF_8);
+        }
+
+        report("sha1 + Formatter hex (old Utils.sha1)", best(() -> {
+            for (byte[] contents : smallFiles) {
+                formatterHex(contents);
+            }
+        }));
+        report("ObjectId.sha1Of", best(() -> {
+            for (byte[] contents : smallFiles) {
+                ObjectId.sha1Of(contents);
+            }
+        }));
+        ObjectId[] ids = new ObjectId[n];
+        for (int i = 0; i < n; i += 1) {
+            ids[i] = ObjectId.sha1Of(smallFiles[i]);
+        }
+        report("ObjectId.toHex", best(() -> {
+            for (ObjectId id : ids) {
+                id.toHex();
+            }
+        }));
+        String[] hexes = new String[n];
+        for (int i = 0; i < n; i += 1) {
+            hexes[i] = ids[i].toHex();
+        }
+        report("ObjectId.fromHex", best(() -> {
+            for (String hex : hexes) {
+                ObjectId.fromHex(hex);
+            }
+        }));
+
+        long before = usedHeap();
+        Set<String> stringSet = new HashSet<>();
+        for (int i = 0; i < n; i += 1) {
+            stringSet.add(ids[i].toHex());
+        }
+        long stringBytes = usedHeap() - before;
+        report("HashSet<String> lookups", best(() -> {
+            for (String hex : hexes) {
+                stringSet.contains(hex);
+            }
+        }));
+        stringSet.clear();
+
+        before = usedHeap();
+        Set<ObjectId> idSet = new HashSet<>();
+        for (int i = 0; i < n; i += 1) {
+            idSet.add(ObjectId.fromHex(hexes[i]));
+        }
+        long idBytes = usedHeap() - before;
+        report("HashSet<ObjectId> lookups", best(() -> {
+            for (ObjectId id : ids) {
+                idSet.contains(id);
+            }
+        }));
+        System.out.printf("%-40s %12d bytes/id%n", "heap of HashSet<String>", stringBytes / n);
+        System.out.printf("%-40s %12d bytes/id%n", "heap of HashSet<ObjectId>", idBytes / n);
+    }
+
+    /** what Utils.sha1 used to do before ObjectId existed */
+    private static String formatterHex(byte[] contents) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update(contents);
+            Formatter result = new Formatter();
+            for (byte b : md.digest()) {
+                result.format("%02x", b);
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /**
+     * write n small blobs into every ObjectStore, then read them all back,
+     * look every one of them up and list them. the loose layout pays a file
+     * (and a rename) per object, the log-structured store one append.
+     */
+    static void benchmarkStore(int n) {
+        List<byte[]> contents = new ArrayList<>();
+        List<ObjectId> ids = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            byte[] blob = ("the contents of blob " + i + "\n").getBytes(StandardCharsets.UTF_8);
+            contents.add(blob);
+            ids.add(ObjectId.sha1Of(blob));
+        }
+        File looseDir = join(CWD, "loose");
+        looseDir.mkdir();
+        Map<String, ObjectStore> stores = new TreeMap<>();
+        stores.put("loose", new LooseFileStore(looseDir));
+        stores.put("log", new LogStructuredStore(join(CWD, "store.log")));
+        stores.put("memory", new InMemoryStore());
+        for (Map.Entry<String, ObjectStore> entry : stores.entrySet()) {
+            ObjectStore store = entry.getValue();
+            // every object is only written once, so there is only one round
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i += 1) {
+                store.write(ObjectStore.Kind.BLOB, ids.get(i), contents.get(i));
+            }
+            report(entry.getKey() + " write " + n, System.nanoTime() - start);
+            report(entry.getKey() + " read " + n, best(() -> {
+                for (ObjectId id : ids) {
+                    store.read(ObjectStore.Kind.BLOB, id);
+                }
+            }));
+            report(entry.getKey() + " contains " + n, best(() -> {
+                for (ObjectId id : ids) {
+                    store.contains(ObjectStore.Kind.BLOB, id);
+                }
+            }));
+            report(entry.getKey() + " count " + n, best(() -> {
+                if (store.count(ObjectStore.Kind.BLOB) != n) {
+                    throw new IllegalStateException("wrong number of blobs");
+                }
+            }));
+        }
+    }
+
+    /**
+     * the three file maps a merge looks at (split point, current, target),
+     * n files each, a tenth of them changed on either side: once as
+     * TreeMaps with their own path Strings (as three deserialized commits
+     * used to be), once as FileTables. Measures the heap and a three-way
+     * comparison, the old way with a HashSet union and lookups, and with a
+     * FileTable.Join. Then the same for the three tables written as tree
+     * files in CWD and read back on the heap and off the heap.
+     */
+    static void benchmarkFileTable(int n) {
+        long before = usedHeap();
+        List<TreeMap<String, ObjectId>> maps = new ArrayList<>();
+        for (int k = 0; k < 3; k += 1) {
+            TreeMap<String, ObjectId> map = new TreeMap<>();
+            for (int i = 0; i < n; i += 1) {
+                // new String every time, like readObject() gave us
+                map.put(new String("dir/file" + i + ".txt"), fakeSha1(i % 10 == k ? i + n : i));
+            }
+            maps.add(map);
+        }
+        long mapBytes = usedHeap() - before;
+
+        before = usedHeap();
+        List<FileTable> tables = new ArrayList<>();
+        for (int k = 0; k < 3; k += 1) {
+            FileTable.Builder builder = FileTable.EMPTY.toBuilder();
+            for (int i = 0; i < n; i += 1) {
+                builder.put(new String("dir/file" + i + ".txt"), fakeSha1(i % 10 == k ? i + n : i));
+            }
+            tables.add(builder.build());
+        }
+        long tableBytes = usedHeap() - before;
+
+        report("TreeMaps: union + lookups", best(() -> {
+            Set<String> union = new HashSet<>();
+            for (TreeMap<String, ObjectId> map : maps) {
+                union.addAll(map.keySet());
+            }
+            int changed = 0;
+            for (String path : union) {
+                if (!Objects.equals(maps.get(1).get(path), maps.get(2).get(path))) {
+                    changed += 1;
+                }
+            }
+        }));
+        report("FileTables: Join", best(() -> {
+            FileTable.Join join = new FileTable.Join(tables.get(0), tables.get(1), tables.get(2));
+            int changed = 0;
+            while (join.next()) {
+                if (!Objects.equals(join.id(1), join.id(2))) {
+                    changed += 1;
+                }
+            }
+        }));
+        report("TreeMap lookups", best(() -> {
+            for (Map.Entry<String, ObjectId> entry : maps.get(0).entrySet()) {
+                maps.get(1).get(entry.getKey());
+            }
+        }));
+        report("FileTable binary search", best(() -> {
+            for (String path : tables.get(0).paths()) {
+                tables.get(1).get(path);
+            }
+        }));
+        System.out.printf("%-40s %12d bytes/file%n", "heap of 3 TreeMaps", mapBytes / n);
+        System.out.printf("%-40s %12d bytes/file%n", "heap of 3 FileTables", tableBytes / n);
+        maps.clear();
+
+        List<File> treeFiles = new ArrayList<>();
+        for (int k = 0; k < 3; k += 1) {
+            File treeFile = join(CWD, "tree" + k);
+            writeContents(treeFile, (Object) tables.get(k).toBytes());
+            treeFiles.add(treeFile);
+        }
+        tables.clear();
+        for (boolean offHeap : new boolean[]{false, true}) {
+            String kind = offHeap ? "off-heap" : "heap";
+            report("read 3 trees, " + kind, best(() -> {
+                for (File treeFile : treeFiles) {
+                    FileTable.read(treeFile, offHeap);
+                }
+            }));
+            before = usedHeap();
+            FileTable[] read = new FileTable[3];
+            for (int k = 0; k < 3; k += 1) {
+                read[k] = FileTable.read(treeFiles.get(k), offHeap);
+            }
+            long readBytes = usedHeap() - before;
+            report("Join over 3 trees, " + kind, best(() -> {
+                FileTable.Join join = new FileTable.Join(read[0], read[1], read[2]);
+                int changed = 0;
+                while (join.next()) {
+                    if (!join.sameId(1, 2)) {
+                        changed += 1;
+                    }
+                }
+            }));
+            System.out.printf("%-40s %12d bytes/file%n", "heap of 3 trees, " + kind, readBytes / n);
+        }
+        for (File treeFile : treeFiles) {
+            treeFile.delete();
+        }
+    }
+
+    /** How many commits every thread of benchmarkIngest makes in every run. */
+    private static final int INGEST_COMMITS = 100;
+
+    /**
+     * n threads commit INGEST_COMMITS commits each with commit(branch, ...),
+     * as pipelines that feed a server would: every thread on its own branch,
+     * then all of them on master, then all of them on master again but one
+     * at a time, as if they were serialized by a lock. afterwards every
+     * commit has to be in the history of its branch. with fewer cores than
+     * threads there is no gain, only what the retries cost.
+     */
+    static void benchmarkIngest(int n) {
+        buildLinearHistory(1);
+        GitletRepository repository = repository();
+        for (int i = 0; i < n; i += 1) {
+            repository.branch("pipeline" + i);
+        }
+        repository.branch("warm-up");
+        // the first run is slow, the JIT has not compiled anything yet
+        ingest(repository, n, "warm-up", i -> "warm-up", false);
+        report(n + " threads, own branches",
+                ingest(repository, n, "own branches", i -> "pipeline" + i, false));
+        report(n + " threads, one branch", ingest(repository, n, "one branch", i -> "master", false));
+        report(n + " threads, one branch, serialized",
+                ingest(repository, n, "one branch, serialized", i -> "master", true));
+
+        for (int i = 0; i < n; i += 1) {
+            checkHistoryLength(repository, "pipeline" + i, INGEST_COMMITS);
+        }
+        checkHistoryLength(repository, "master", 2 * n * INGEST_COMMITS);
+        checkReflogChain(repository, "master");
+    }
+
+    /**
+     * commits per second at every Durability, each in a repository of its
+     * own under the current directory: INGEST_COMMITS times add and commit,
+     * as the command line does, then INGEST_COMMITS commits of one thread
+     * with commit(branch, ...), then n threads on their own branches, whose
+     * commits share the fsyncs of the journal. run it on a real disk, on a
+     * tmpfs an fsync costs nothing.
+     */
+    static void benchmarkDurability(int n) {
+        for (Durability durability : Durability.values()) {
+            String level = durability.name().toLowerCase();
+            File workTree = join(CWD, level);
+            workTree.mkdir();
+            System.setProperty("gitlet.durability", level);
+            GitletRepository repository = GitletRepository.init(workTree);
+            for (int i = 0; i < n; i += 1) {
+                repository.branch("pipeline" + i);
+            }
+            repository.branch("warm-up");
+            ingest(repository, 1, "warm-up", i -> "warm-up", false);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < INGEST_COMMITS; i += 1) {
+                writeContents(join(workTree, "bench.txt"), "version " + i + "\n");
+                repository.add("bench.txt");
+                repository.commit("commit " + i);
+            }
+            reportCommits(level + ", add and commit", INGEST_COMMITS, System.nanoTime() - start);
+            reportCommits(level + ", 1 thread", INGEST_COMMITS,
+                    ingest(repository, 1, level, i -> "master", false));
+            reportCommits(level + ", " + n + " threads, own branches", n * INGEST_COMMITS,
+                    ingest(repository, n, level, i -> "pipeline" + i, false));
+
+            checkHistoryLength(repository, "master", 2 * INGEST_COMMITS);
+            for (int i = 0; i < n; i += 1) {
+                checkHistoryLength(repository, "pipeline" + i, INGEST_COMMITS);
+            }
+        }
+        System.clearProperty("gitlet.durability");
+    }
+
+    private static void reportCommits(String name, int commits, long nanos) {
+        report(name, nanos);
+        System.out.printf("%-40s %12.1f commits/second%n", "", commits / (nanos / 1e9));
+    }
+
+    /**
+     * @return how long the n threads took, in nanoseconds
+     */
+    private static long ingest(GitletRepository repository, int n, String name,
+                               IntFunction<String> branchOf, boolean serialized) {
+        Object serializer = new Object();
+        List<Thread> threads = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i += 1) {
+            int thread = i;
+            threads.add(new Thread(() -> {
+                for (int k = 0; k < INGEST_COMMITS; k += 1) {
+                    String filename = "pipeline" + thread + "-" + k + ".txt";
+                    Map<String, byte[]> files = Collections.singletonMap(filename,
+                            (name + " " + filename + "\n").getBytes(StandardCharsets.UTF_8));
+                    String message = name + ": " + filename;
+                    if (serialized) {
+                        synchronized (serializer) {
+                            repository.commit(branchOf.apply(thread), files, Collections.emptyList(), message);
+                        }
+                    } else {
+                        repository.commit(branchOf.apply(thread), files, Collections.emptyList(), message);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new GitletException(excp.getMessage());
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * the first parents from the head of a branch down to the initial commit
+     * have to be the initial commit and length more
+     */
+    private static void checkHistoryLength(GitletRepository repository, String branchName, int length) {
+        int commits = 0;
+        ObjectId commitSha1 = repository.getRefStore().read(branchName);
+        while (true) {
+            List<ObjectId> parents = repository.readCommit(commitSha1).getParentSha1List();
+            if (parents.isEmpty()) {
+                break;
+            }
+            commits += 1;
+            commitSha1 = parents.get(0);
+        }
+        if (commits != length) {
+            throw new IllegalStateException(branchName + " has " + commits
+                    + " commits instead of " + length);
+        }
+    }
+
+    /**
+     * every line of the reflog of a branch has to start where the line before
+     * it ended, however many threads have moved the branch at the same time
+     */
+    private static void checkReflogChain(GitletRepository repository, String branchName) {
+        String previousSha1 = null;
+        for (String line : repository.getRefStore().readLog(branchName)) {
+            String[] fields = line.split(" ", 3);
+            if (previousSha1 != null && !fields[0].equals(previousSha1)) {
+                throw new IllegalStateException("the reflog of " + branchName + " moves from "
+                        + fields[0] + " after moving to " + previousSha1);
+            }
+            previousSha1 = fields[1];
+        }
+        if (!repository.getRefStore().read(branchName).toHex().equals(previousSha1)) {
+            throw new IllegalStateException("the reflog of " + branchName + " does not end at its head");
+        }
+    }
+}
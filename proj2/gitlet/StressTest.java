@@ -0,0 +1,311 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static gitlet.Utils.*;
+
+/** The checks the integration tests in testing/ can not do, since they run
+ *  several processes at once, or take files away behind the back of a store
+ *  or make them older.
+ *  Its main program may be invoked as follows:
+ *      java gitlet.StressTest [NAME]...
+ *  from any directory, every check makes a scratch directory of its own.
+ *  NAME is one of the checks below, every check runs if none is given.
+ *  It prints PASS or FAIL for every check and exits with 1 if one failed,
+ *  so that make check fails too.
+ *
+ *  @author Linde
+ */
+public class StressTest {
+
+    /** How many worker processes checkLocking() starts. */
+    private static final int LOCKING_PROCESSES = 8;
+
+    /** How many times every worker process of checkLocking() adds and commits. */
+    private static final int LOCKING_ROUNDS = 20;
+
+    /** How long a worker process of checkLocking() waits for the lock, if nobody says otherwise. */
+    private static final long LOCKING_TIMEOUT_MILLIS = 120000;
+
+    /** name -> the check, which throws if gitlet is wrong */
+    private static final Map<String, Consumer<File>> CHECKS = new LinkedHashMap<>();
+
+    static {
+        CHECKS.put("locking", StressTest::checkLocking);
+        CHECKS.put("recovery", StressTest::checkRecovery);
+        CHECKS.put("gc", StressTest::checkGcGracePeriod);
+    }
+
+    public static void main(String... args) {
+        if (args.length == 3 && args[0].equals("locking-worker")) {
+            lockingWorker(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            return;
+        }
+        List<String> names = args.length == 0 ? new ArrayList<>(CHECKS.keySet()) : Arrays.asList(args);
+        int failures = 0;
+        for (String name : names) {
+            Consumer<File> check = CHECKS.get(name);
+            if (check == null) {
+                System.out.println("No check with that name exists.");
+                System.exit(1);
+            }
+            if (!run(name, check)) {
+                failures += 1;
+            }
+        }
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * run a check in a scratch directory of its own, which is deleted afterwards
+     *
+     * @return whether it passed
+     */
+    private static boolean run(String name, Consumer<File> check) {
+        File scratch;
+        try {
+            scratch = Files.createTempDirectory("gitlet-" + name).toFile();
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+        try {
+            check.accept(scratch);
+            System.out.println("PASS " + name);
+            return true;
+        } catch (RuntimeException | AssertionError excp) {
+            System.out.println("FAIL " + name + ": " + excp);
+            return false;
+        } finally {
+            deleteRecursively(scratch);
+        }
+    }
+
+    private static void deleteRecursively(File dir) {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+    }
+
+    /**
+     * LOCKING_PROCESSES worker processes (see lockingWorker()) add, commit,
+     * log and look at the status of one repository at the same time. every
+     * commit has to end up in the history of master, i.e. no process has
+     * moved master from a commit it read before another process moved it,
+     * and every file has to be committed.
+     * run it with GITLET_STORE=log and GITLET_LOCK=file too.
+     */
+    private static void checkLocking(File workTree) {
+        GitletRepository repository = GitletRepository.init(workTree);
+        List<String> command = new ArrayList<>();
+        command.add(join(new File(System.getProperty("java.home")), "bin", "java").getPath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        // the workers use the same options as we do
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("gitlet.")) {
+                command.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        // on one core a worker may wait longer than the 10 seconds of the
+        // default, which is not what we check
+        if (System.getProperty("gitlet.lockTimeout") == null && System.getenv("GITLET_LOCK_TIMEOUT") == null) {
+            command.add("-Dgitlet.lockTimeout=" + LOCKING_TIMEOUT_MILLIS);
+        }
+        command.add(StressTest.class.getName());
+        command.add("locking-worker");
+
+        long start = System.nanoTime();
+        List<Process> workers = new ArrayList<>();
+        try {
+            for (int i = 0; i < LOCKING_PROCESSES; i += 1) {
+                List<String> workerCommand = new ArrayList<>(command);
+                workerCommand.add(String.valueOf(i));
+                workerCommand.add(String.valueOf(LOCKING_ROUNDS));
+                workers.add(new ProcessBuilder(workerCommand).directory(workTree)
+                        .redirectError(ProcessBuilder.Redirect.INHERIT).start());
+            }
+            int commits = 0;
+            for (Process worker : workers) {
+                String output = new String(worker.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+                if (worker.waitFor() != 0) {
+                    throw new IllegalStateException("a worker failed");
+                }
+                commits += Integer.parseInt(output.trim());
+            }
+            long nanos = System.nanoTime() - start;
+            System.out.printf("%d processes, %d commands in %.3f ms%n", LOCKING_PROCESSES,
+                    LOCKING_PROCESSES * LOCKING_ROUNDS * 4, nanos / 1e6);
+
+            int logSize = repository.log().size();
+            if (logSize != commits + 1 || repository.globalLog().size() != logSize) {
+                throw new IllegalStateException(commits + " commits were made, but the log has "
+                        + (logSize - 1) + " and the global log " + (repository.globalLog().size() - 1));
+            }
+            GitletRepository.Status status = repository.status(false);
+            if (!status.getStagedFiles().isEmpty() || !status.getUntrackedFiles().isEmpty()
+                    || !status.getModifiedFiles().isEmpty()) {
+                throw new IllegalStateException("not every file was committed");
+            }
+            System.out.println(commits + " commits, all on master");
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new GitletException(excp.getMessage());
+        } finally {
+            for (Process worker : workers) {
+                worker.destroy();
+            }
+        }
+    }
+
+    /**
+     * a worker process of checkLocking(), in the work tree of the repository:
+     * write a file of its own, add it and commit it, then read the log and the
+     * status, rounds times. a commit may find nothing staged, when another
+     * worker has committed our file with its own. prints the number of commits
+     * it made.
+     */
+    private static void lockingWorker(int id, int rounds) {
+        File workTree = new File(System.getProperty("user.dir"));
+        GitletRepository repository = GitletRepository.open(workTree);
+        int commits = 0;
+        for (int i = 0; i < rounds; i += 1) {
+            String filename = "worker" + id + "-" + i + ".txt";
+            writeContents(join(workTree, filename), "worker " + id + " round " + i + "\n");
+            repository.add(filename);
+            try {
+                repository.commit("worker " + id + " round " + i);
+                commits += 1;
+            } catch (InvalidOperationException excp) {
+                // nothing staged
+            }
+            repository.log();
+            repository.status(false);
+        }
+        System.out.println(commits);
+    }
+
+    /**
+     * a crash: write objects with Durability.BATCH and move a ref, so that
+     * they are in the journal, then delete the files of the objects, as if
+     * they had not made it to the disk, one of them empty, and check that
+     * recover() writes them again from the journal, and leaves nothing to
+     * replay for the next process. then the same for the blob add() stages,
+     * which no ref refers to yet, only the index.
+     */
+    private static void checkRecovery(File scratch) {
+        File gitletDir = join(scratch, "store");
+        gitletDir.mkdir();
+        LooseFileStore store = new LooseFileStore(gitletDir, Durability.BATCH);
+        Map<ObjectId, byte[]> written = new LinkedHashMap<>();
+        for (String contents : new String[]{"some contents\n", ""}) {
+            byte[] bytes = contents.getBytes(StandardCharsets.UTF_8);
+            written.put(ObjectId.sha1Of(bytes), bytes);
+            store.write(ObjectStore.Kind.BLOB, ObjectId.sha1Of(bytes), bytes);
+        }
+        store.write("master", written.keySet().iterator().next());
+        for (ObjectId id : written.keySet()) {
+            join(gitletDir, "blobs", id.toHex()).delete();
+        }
+        new LooseFileStore(gitletDir, Durability.BATCH).recover();
+        for (Map.Entry<ObjectId, byte[]> object : written.entrySet()) {
+            File file = join(gitletDir, "blobs", object.getKey().toHex());
+            if (!file.isFile() || !Arrays.equals(readContents(file), object.getValue())) {
+                throw new AssertionError("recover() did not write blob " + object.getKey() + " again");
+            }
+        }
+        System.out.println("recover() writes missing objects again, an empty one too");
+        // the first recover() of a process has made a checkpoint, the next
+        // process has nothing to replay
+        ObjectId checkpointed = written.keySet().iterator().next();
+        join(gitletDir, "blobs", checkpointed.toHex()).delete();
+        new LooseFileStore(gitletDir, Durability.BATCH).recover();
+        if (join(gitletDir, "blobs", checkpointed.toHex()).exists()) {
+            throw new AssertionError("recover() has replayed a journal that was checkpointed");
+        }
+        System.out.println("recover() makes a checkpoint, the next process does not replay the journal");
+
+        File workTree = join(scratch, "work");
+        workTree.mkdir();
+        System.setProperty("gitlet.durability", "batch");
+        GitletRepository repository = GitletRepository.init(workTree);
+        System.clearProperty("gitlet.durability");
+        File repositoryGitletDir = join(workTree, ".gitlet");
+        if (!join(repositoryGitletDir, "branches").isDirectory()) {
+            System.out.println("the repository does not have a LooseFileStore, add() is not checked");
+            return;
+        }
+        byte[] staged = "staged contents\n".getBytes(StandardCharsets.UTF_8);
+        writeContents(join(workTree, "staged.txt"), (Object) staged);
+        repository.add("staged.txt");
+        File stagedBlob = join(repositoryGitletDir, "blobs", ObjectId.sha1Of(staged).toHex());
+        stagedBlob.delete();
+        new LooseFileStore(repositoryGitletDir, Durability.BATCH).recover();
+        if (!stagedBlob.isFile()) {
+            throw new AssertionError("the blob add() staged is not in the journal");
+        }
+        System.out.println("the blob add() stages is in the journal before the index refers to it");
+    }
+
+    /**
+     * an unreachable commit that is younger than the grace period of gc is
+     * kept, and so are its files, however old they are: commit C on a branch
+     * that is removed, make the trees and blobs a month old, gc with a grace
+     * period of a week, then reset to C has to find all of its files.
+     */
+    private static void checkGcGracePeriod(File workTree) {
+        GitletRepository repository = GitletRepository.init(workTree);
+        File gitletDir = join(workTree, ".gitlet");
+        if (!join(gitletDir, "blobs").isDirectory()) {
+            System.out.println("the repository does not have a LooseFileStore, gc is not checked");
+            return;
+        }
+        writeContents(join(workTree, "a.txt"), "a\n");
+        repository.add("a.txt");
+        repository.commit("A");
+        repository.branch("tmp");
+        repository.checkoutBranch("tmp");
+        writeContents(join(workTree, "b.txt"), "b\n");
+        repository.add("b.txt");
+        ObjectId commitC = repository.commit("C");
+        repository.checkoutBranch("master");
+        repository.remove("a.txt");
+        repository.commit("B");
+        repository.removeBranch("tmp");
+
+        long monthAgo = System.currentTimeMillis() - 30L * 24 * 60 * 60 * 1000;
+        for (String kind : new String[]{"blobs", "trees"}) {
+            try (Stream<Path> paths = Files.walk(join(gitletDir, kind).toPath())) {
+                paths.forEach(path -> path.toFile().setLastModified(monthAgo));
+            } catch (IOException excp) {
+                throw new GitletException(excp.getMessage());
+            }
+        }
+        GarbageCollector.Result result = repository.gc(
+                GarbageCollector.Options.parse(Arrays.asList("--expire=now", "--prune=7")));
+        System.out.println("gc removed " + result.getRemovedCommits() + " commits, "
+                + result.getRemovedTrees() + " trees and " + result.getRemovedBlobs() + " blobs");
+        repository.reset(commitC.toHex());
+        if (!Arrays.equals(readContents(join(workTree, "b.txt")), "b\n".getBytes(StandardCharsets.UTF_8))) {
+            throw new AssertionError("reset to the commit gc has kept did not write b.txt");
+        }
+        System.out.println("the files of a commit the grace period keeps are kept too");
+    }
+}
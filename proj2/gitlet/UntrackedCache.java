@@ -0,0 +1,242 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static gitlet.Utils.*;
+
+/**
+ * What status found in every directory of the work tree, .gitlet/untracked:
+ * the modification time of the directory, and the names of the files and
+ * the subdirectories in it that .gitletignore does not ignore. A directory
+ * gets a new modification time whenever a file or a directory is created in
+ * it, deleted or renamed, so as long as it has the same one, so do its
+ * names, and WorkTreeWalker takes them from here instead of listing the
+ * directory and looking at every file in it. Editing a file does not change
+ * its directory, but it does not change the names either. A directory that
+ * was modified just before it was listed is not cached, see StagingArea.
+ * <p>
+ * git only caches the untracked files of a directory, and has to forget
+ * them whenever the index changes. We cache every name, and status tells
+ * the tracked ones apart each time, so add, rm and commit do not touch the
+ * cache at all.
+ * <p>
+ * The cache is
+ * <pre>
+ *     [VERSION: int] [sha1 of .gitletignore, ZERO if there is none: 20 bytes]
+ *     [number of directories: int]
+ *     ([path: UTF] [modified: long]
+ *      [number of files: int] ([name: UTF])... [number of subdirectories: int] ([name: UTF])...)...
+ * </pre>
+ * and it is only good for the .gitletignore it was made with, a cache made
+ * with other rules is not read at all. It is replaced as a whole, like the
+ * index, and since it is only a cache, one that can not be read is empty.
+ *
+ * @author Linde
+ */
+class UntrackedCache {
+
+    static final String FILENAME = "untracked";
+
+    private static final int VERSION = 1;
+
+    private final File gitletDir;
+
+    private final ObjectId ignoreSha1;
+
+    /**
+     * directory -> what it had, as read from disk
+     */
+    private final Map<String, Listing> cached;
+
+    /**
+     * directory -> what it has, for every directory walked since, the next cache
+     */
+    private final Map<String, Listing> walked = new ConcurrentHashMap<>();
+
+    private volatile boolean changed;
+
+    /**
+     * the sha1 of the cache as it was read, null if there was none
+     */
+    private ObjectId readSha1;
+
+    private UntrackedCache(File gitletDir, ObjectId ignoreSha1, Map<String, Listing> cached) {
+        this.gitletDir = gitletDir;
+        this.ignoreSha1 = ignoreSha1;
+        this.cached = cached;
+    }
+
+    /**
+     * read the cache of a repository, an empty one if there is none or if
+     * it was made with another .gitletignore
+     */
+    static UntrackedCache read(File gitletDir, File workTree) {
+        File ignoreFile = join(workTree, IgnoreRules.FILENAME);
+        ObjectId ignoreSha1 = ignoreFile.isFile() ? ObjectId.sha1Of(readContents(ignoreFile)) : ObjectId.ZERO;
+        Map<String, Listing> cached = new HashMap<>();
+        UntrackedCache cache = new UntrackedCache(gitletDir, ignoreSha1, cached);
+        File cacheFile = join(gitletDir, FILENAME);
+        if (!cacheFile.isFile()) {
+            return cache;
+        }
+        byte[] contents = readContents(cacheFile);
+        cache.readSha1 = ObjectId.sha1Of(contents);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(contents))) {
+            byte[] raw = new byte[ObjectId.RAW_LENGTH];
+            if (in.readInt() != VERSION) {
+                return cache;
+            }
+            in.readFully(raw);
+            if (!ObjectId.fromRaw(raw, 0).equals(ignoreSha1)) {
+                return cache;
+            }
+            int size = in.readInt();
+            for (int i = 0; i < size; i += 1) {
+                String directory = in.readUTF();
+                long modified = in.readLong();
+                String[] files = readNames(in);
+                cached.put(directory, new Listing(modified, files, readNames(in)));
+            }
+        } catch (IOException excp) {
+            cached.clear();
+        }
+        return cache;
+    }
+
+    private static String[] readNames(DataInputStream in) throws IOException {
+        String[] names = new String[in.readInt()];
+        for (int i = 0; i < names.length; i += 1) {
+            names[i] = in.readUTF();
+        }
+        return names;
+    }
+
+    /**
+     * the modification time of a directory in nanoseconds, -1 if it is gone
+     */
+    static long modifiedOf(File directory) {
+        try {
+            return Files.getLastModifiedTime(directory.toPath()).to(TimeUnit.NANOSECONDS);
+        } catch (IOException excp) {
+            return -1;
+        }
+    }
+
+    /**
+     * @param directory the path of a directory, "" for the work tree itself
+     * @param modified  its modification time now, see modifiedOf()
+     * @return what the directory had the last time it was walked, or null if
+     * it is not cached or has been modified since
+     */
+    Listing get(String directory, long modified) {
+        Listing listing = cached.get(directory);
+        if (listing == null || listing.modified != modified) {
+            return null;
+        }
+        walked.put(directory, listing);
+        return listing;
+    }
+
+    /**
+     * cache what a directory has unless it is racy
+     *
+     * @param listedAt System.currentTimeMillis() in nanoseconds when we
+     *                 began to list the directory
+     */
+    void put(String directory, Listing listing, long listedAt) {
+        changed = true;
+        if (listing.modified >= 0 && listing.modified + StagingArea.RACY_NANOS <= listedAt) {
+            walked.put(directory, listing);
+        }
+    }
+
+    /**
+     * replace the cache on disk with what the walks since it was read have
+     * found, if that is something else. a directory that was not walked is
+     * gone from the cache, a walk of the whole work tree walks every
+     * directory that still exists.
+     */
+    void write() {
+        if (!changed && walked.size() == cached.size()) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(VERSION);
+            byte[] raw = new byte[ObjectId.RAW_LENGTH];
+            ignoreSha1.copyRawTo(raw, 0);
+            out.write(raw);
+            out.writeInt(walked.size());
+            for (Map.Entry<String, Listing> entry : walked.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().modified);
+                writeNames(out, entry.getValue().files);
+                writeNames(out, entry.getValue().directories);
+            }
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+        byte[] contents = bytes.toByteArray();
+        try {
+            File tempFile = File.createTempFile(FILENAME, ".tmp", gitletDir);
+            writeContents(tempFile, (Object) contents);
+            Files.move(tempFile.toPath(), join(gitletDir, FILENAME).toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new GitletException(excp.getMessage());
+        }
+        changed = false;
+        readSha1 = ObjectId.sha1Of(contents);
+    }
+
+    /**
+     * write() unless another status has replaced the cache since it was
+     * read, see StagingArea.writeIfUnchanged()
+     */
+    void writeIfUnchanged() {
+        if (Objects.equals(StagingArea.sha1OfFile(join(gitletDir, FILENAME)), readSha1)) {
+            write();
+        }
+    }
+
+    private static void writeNames(DataOutputStream out, String[] names) throws IOException {
+        out.writeInt(names.length);
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+    }
+
+    /**
+     * the names of the files and of the subdirectories of a directory that
+     * are not ignored
+     */
+    static final class Listing {
+
+        /**
+         * of the directory, in nanoseconds, -1 if it is gone
+         */
+        final long modified;
+
+        final String[] files;
+
+        final String[] directories;
+
+        Listing(long modified, String[] files, String[] directories) {
+            this.modified = modified;
+            this.files = files;
+            this.directories = directories;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static gitlet.Benchmark.*;
+import static gitlet.Utils.*;
+
+/**
+ * Benchmarks of the commands that look at the working tree: add, status
+ * with its untracked cache, .gitletignore and the sparse checkout, see Benchmark.
+ *
+ * @author Linde
+ */
+class WorkTreeBenchmarks {
+
+    private WorkTreeBenchmarks() {
+    }
+
+    /** How many directories benchmarkAdd spreads its files over. */
+    private static final int ADD_DIRECTORIES = 100;
+
+    /**
+     * n files in ADD_DIRECTORIES directories, staged by add(filename) one at
+     * a time (only n / 10 of them, every call reads HEAD and writes the
+     * whole index), then all of them by one add("."): the first time, when
+     * every file is hashed and its blob written, then with the stat cache,
+     * and then without it, i.e. hashing every file but writing no blob.
+     */
+    static void benchmarkAdd(int n) {
+        buildLinearHistory(1);
+        GitletRepository repository = repository();
+        // older than any racy file, so that their stats are cached
+        long modified = System.currentTimeMillis() - 60_000;
+        for (int i = 0; i < n; i += 1) {
+            File file = join(CWD, "dir" + i % ADD_DIRECTORIES, "file" + i + ".txt");
+            file.getParentFile().mkdirs();
+            writeContents(file, "contents of file " + i + "\n");
+            file.setLastModified(modified);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < n / 10; i += 1) {
+            repository.add("dir" + i % ADD_DIRECTORIES + "/file" + i + ".txt");
+        }
+        report((n / 10) + " files, one add each", System.nanoTime() - start);
+        join(CWD, ".gitlet", StagingArea.FILENAME).delete();
+
+        start = System.nanoTime();
+        repository.add(Collections.singletonList("."));
+        report(n + " files, add ., first time", System.nanoTime() - start);
+        report(n + " files, add ., stat cache", best(() -> repository.add(Collections.singletonList("."))));
+        report(n + " files, add ., no stat cache", best(() -> {
+            join(CWD, ".gitlet", StagingArea.FILENAME).delete();
+            repository.add(Collections.singletonList("."));
+        }));
+
+        if (repository.readStagingArea().getAddedFiles().size() != n) {
+            throw new AssertionError("add . staged " + repository.readStagingArea().getAddedFiles().size()
+                    + " files instead of " + n);
+        }
+    }
+
+    /**
+     * a commit of n files in ADD_DIRECTORIES directories of 10 subdirectories
+     * each (dir7/sub3/file307.txt), then commits that change one file: how long one takes and how
+     * many trees it writes (the root, its directory and its subdirectory).
+     * then status, with the stats of the files cached in the index and
+     * without, when it has to hash every file.
+     */
+    static void benchmarkTrees(int n) {
+        buildLinearHistory(1);
+        GitletRepository repository = repository();
+        ObjectStore objects = repository.getObjectStore();
+        long modified = System.currentTimeMillis() - 60_000;
+        for (int i = 0; i < n; i += 1) {
+            File file = join(CWD, treesBenchmarkPath(i));
+            file.getParentFile().mkdirs();
+            writeContents(file, "contents of file " + i + "\n");
+            file.setLastModified(modified);
+        }
+        repository.add(Collections.singletonList("."));
+        repository.commit("all files");
+
+        int treesBefore = objects.count(ObjectStore.Kind.TREE);
+        int[] version = new int[1];
+        report("commit of one changed file", best(() -> {
+            version[0] += 1;
+            String path = treesBenchmarkPath(version[0] * 7919 % n);
+            writeContents(join(CWD, path), "version " + version[0] + "\n");
+            repository.add(path);
+            repository.commit("version " + version[0]);
+        }));
+        System.out.println((objects.count(ObjectStore.Kind.TREE) - treesBefore) / ROUNDS
+                + " trees written per commit");
+        FileTable files = repository.readCommit(repository.getHeadCommitSha1()).getFiles();
+        if (files.size() != n) {
+            throw new AssertionError("the last commit has " + files.size() + " files instead of " + n);
+        }
+
+        // the changed files are racy, make them old too
+        for (int i = 0; i < n; i += 1) {
+            join(CWD, treesBenchmarkPath(i)).setLastModified(modified);
+        }
+        repository.status(false);
+        report(n + " files, status, stat cache", best(() -> repository.status(false)));
+        report(n + " files, status, no stat cache", best(() -> {
+            join(CWD, ".gitlet", StagingArea.FILENAME).delete();
+            repository.status(false);
+        }));
+    }
+
+    /**
+     * commit n files in 1000 directories, put n / 10 untracked files next to
+     * them and make everything old, then compare status with the untracked
+     * cache to status without it, which lists every directory again.
+     */
+    static void benchmarkUntracked(int n) {
+        buildLinearHistory(1);
+        GitletRepository repository = repository();
+        for (int i = 0; i < n; i += 1) {
+            File file = join(CWD, treesBenchmarkPath(i));
+            file.getParentFile().mkdirs();
+            writeContents(file, "contents of file " + i + "\n");
+        }
+        repository.add(Collections.singletonList("."));
+        repository.commit("all files");
+        for (int i = 0; i < n / 10; i += 1) {
+            writeContents(join(CWD, treesBenchmarkPath(i) + ".untracked"), "untracked " + i + "\n");
+        }
+        long modified = System.currentTimeMillis() - 60_000;
+        for (int i = 0; i < n; i += 1) {
+            File file = join(CWD, treesBenchmarkPath(i));
+            file.setLastModified(modified);
+            join(CWD, treesBenchmarkPath(i) + ".untracked").setLastModified(modified);
+            file.getParentFile().setLastModified(modified);
+            file.getParentFile().getParentFile().setLastModified(modified);
+        }
+        CWD.setLastModified(modified);
+
+        GitletRepository.Status status = repository.status(false);
+        if (status.getUntrackedFiles().size() != n / 10) {
+            throw new AssertionError(status.getUntrackedFiles().size() + " untracked files instead of " + n / 10);
+        }
+        report(n + " files, status, untracked cache", best(() -> repository.status(false)));
+        report(n + " files, status, no untracked cache", best(() -> {
+            join(CWD, ".gitlet", UntrackedCache.FILENAME).delete();
+            repository.status(false);
+        }));
+        report(n + " files, walk with the cache", best(() -> WorkTreeWalker.walk(CWD, "", IgnoreRules.NONE,
+                UntrackedCache.read(join(CWD, ".gitlet"), CWD))));
+        report(n + " files, walk without it", best(() -> WorkTreeWalker.walk(CWD, "", IgnoreRules.NONE)));
+    }
+
+    /**
+     * commit n files in 100 directories, then reset to the commit, which
+     * writes every file again: with the whole work tree, and with a sparse
+     * checkout of one directory, which should cost a hundredth of it.
+     */
+    static void benchmarkSparse(int n) {
+        buildLinearHistory(1);
+        GitletRepository repository = repository();
+        for (int i = 0; i < n; i += 1) {
+            File file = join(CWD, treesBenchmarkPath(i));
+            file.getParentFile().mkdirs();
+            writeContents(file, "contents of file " + i + "\n");
+        }
+        repository.add(Collections.singletonList("."));
+        repository.commit("all files");
+        String head = repository.getHeadCommitSha1().toString();
+
+        report(n + " files, reset", best(() -> repository.reset(head)));
+        report(n + " files, status", best(() -> repository.status(false)));
+        repository.setSparseCheckout(Collections.singletonList("/dir7/"));
+        int files = WorkTreeWalker.walk(CWD, "", IgnoreRules.NONE).size();
+        if (files != n / ADD_DIRECTORIES) {
+            throw new AssertionError("the sparse checkout has " + files + " files instead of "
+                    + n / ADD_DIRECTORIES);
+        }
+        report(n + " files, reset, sparse /dir7/", best(() -> repository.reset(head)));
+        report(n + " files, status, sparse /dir7/", best(() -> repository.status(false)));
+    }
+
+    private static String treesBenchmarkPath(int i) {
+        return "dir" + i % ADD_DIRECTORIES + "/sub" + i / ADD_DIRECTORIES % 10 + "/file" + i + ".txt";
+    }
+
+    private static final int IGNORE_MODULES = 100;
+
+    private static final int IGNORE_PACKAGES = 50;
+
+    private static final int IGNORE_FILES = 100;
+
+    /**
+     * compile n patterns (and a few real ones: "build/", "*.class") and walk
+     * a work tree of a million files with them, 100 modules of src/ and
+     * build/ with 50 packages of 100 files each. the tree is only made up,
+     * so what is measured is the matching and not the disk. then the same
+     * patterns as globs of the FileSystem, every pattern tried on every
+     * path, on the first 100 paths only.
+     */
+    static void benchmarkIgnore(int n) {
+        List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            switch (i % 5) {
+                case 0:
+                    patterns.add("generated" + i);
+                    break;
+                case 1:
+                    patterns.add("*.ext" + i);
+                    break;
+                case 2:
+                    patterns.add("cache" + i + "*");
+                    break;
+                case 3:
+                    patterns.add("module" + i + "/secret" + i + ".txt");
+                    break;
+                default:
+                    patterns.add("f?o" + i + "[0-9].c");
+                    break;
+            }
+        }
+        patterns.add("build/");
+        patterns.add("*.class");
+        patterns.add("!Keep.class");
+        long start = System.nanoTime();
+        IgnoreRules rules = new IgnoreRules(patterns);
+        report("compile " + patterns.size() + " patterns", System.nanoTime() - start);
+
+        int[] counts = new int[2];
+        report("walk, ignored directories pruned", best(() -> {
+            counts[0] = 0;
+            counts[1] = 0;
+            IgnoreRules.Position root = rules.start();
+            for (int m = 0; m < IGNORE_MODULES; m += 1) {
+                IgnoreRules.Position module = rules.enter(root, "module" + m);
+                for (String part : new String[]{"src", "build"}) {
+                    IgnoreRules.Position directory = rules.enter(module, part);
+                    if (directory == null) {
+                        continue;
+                    }
+                    for (int p = 0; p < IGNORE_PACKAGES; p += 1) {
+                        IgnoreRules.Position pkg = rules.enter(directory, "pkg" + p);
+                        for (int f = 0; f < IGNORE_FILES; f += 1) {
+                            counts[0] += 1;
+                            if (!rules.isIgnored(pkg, ignoreBenchmarkName(f))) {
+                                counts[1] += 1;
+                            }
+                        }
+                    }
+                }
+            }
+        }));
+        System.out.println(counts[0] + " files looked at, " + counts[1] + " not ignored");
+
+        List<String> paths = new ArrayList<>();
+        for (int m = 0; m < IGNORE_MODULES; m += 1) {
+            for (String part : new String[]{"src", "build"}) {
+                for (int p = 0; p < IGNORE_PACKAGES; p += 1) {
+                    for (int f = 0; f < IGNORE_FILES; f += 1) {
+                        paths.add("module" + m + "/" + part + "/pkg" + p + "/" + ignoreBenchmarkName(f));
+                    }
+                }
+            }
+        }
+        report(paths.size() + " paths, one by one", best(() -> {
+            counts[1] = 0;
+            for (String path : paths) {
+                if (!rules.isIgnored(path)) {
+                    counts[1] += 1;
+                }
+            }
+        }));
+        System.out.println(counts[1] + " not ignored");
+
+        List<PathMatcher> globs = new ArrayList<>();
+        for (String pattern : patterns) {
+            String glob = pattern.startsWith("!") ? pattern.substring(1) : pattern;
+            glob = glob.endsWith("/") ? glob + "**" : glob;
+            globs.add(FileSystems.getDefault().getPathMatcher(
+                    "glob:" + (glob.indexOf('/') >= 0 ? glob : "{**/,}" + glob)));
+        }
+        int sample = Math.min(100, paths.size());
+        long naive = best(() -> {
+            for (int i = 0; i < sample; i += 1) {
+                Path path = Paths.get(paths.get(i));
+                for (PathMatcher glob : globs) {
+                    glob.matches(path);
+                }
+            }
+        });
+        report(sample + " paths, every glob", naive);
+        report("  so " + paths.size() + " paths would take", naive / sample * paths.size());
+    }
+
+    private static String ignoreBenchmarkName(int f) {
+        return f % 10 == 9 ? "File" + f + ".class" : f == 0 ? "Keep.class" : "File" + f + ".java";
+    }
+}
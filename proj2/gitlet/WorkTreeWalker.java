@@ -0,0 +1,152 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lists the files of a directory of the work tree and of all its
+ * subdirectories. Every subdirectory is a task of the common ForkJoinPool,
+ * so a big tree is listed by all the cores at once.
+ * <p>
+ * Paths are relative to the work tree and separated by '/', like the paths
+ * of a FileTable. .gitlet is never walked, and neither is a symbolic link to
+ * a directory, which could lead back to where it is. Files that .gitletignore
+ * ignores are left out, and an ignored directory is not listed at all. With
+ * an UntrackedCache, a directory that has not been modified since the last
+ * walk is not listed either, its names come from the cache.
+ *
+ * @author Linde
+ */
+class WorkTreeWalker {
+
+    private WorkTreeWalker() {
+    }
+
+    /**
+     * @param directory the path of the directory, "" for the work tree itself
+     * @return the files in directory and below that are not ignored, sorted
+     * by FileTable.PATH_ORDER
+     */
+    static List<String> walk(File workTree, String directory, IgnoreRules ignoreRules) {
+        return walk(workTree, directory, ignoreRules, null);
+    }
+
+    /**
+     * walk() with a cache of the directories, see UntrackedCache
+     *
+     * @param cache made with ignoreRules, or null
+     */
+    static List<String> walk(File workTree, String directory, IgnoreRules ignoreRules, UntrackedCache cache) {
+        IgnoreRules.Position position = ignoreRules.positionOf(directory);
+        if (position == null) {
+            return new ArrayList<>();
+        }
+        List<String> paths = ForkJoinPool.commonPool().invoke(
+                new DirectoryTask(workTree, directory, ignoreRules, position, cache));
+        paths.sort(FileTable.PATH_ORDER);
+        return paths;
+    }
+
+    /**
+     * the path of a file in directory, see walk()
+     */
+    static String child(String directory, String name) {
+        return directory.isEmpty() ? name : directory + "/" + name;
+    }
+
+    private static class DirectoryTask extends RecursiveTask<List<String>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final File workTree;
+
+        private final String directory;
+
+        private final IgnoreRules ignoreRules;
+
+        /**
+         * where directory is in ignoreRules
+         */
+        private final IgnoreRules.Position position;
+
+        private final UntrackedCache cache;
+
+        DirectoryTask(File workTree, String directory, IgnoreRules ignoreRules, IgnoreRules.Position position,
+                      UntrackedCache cache) {
+            this.workTree = workTree;
+            this.directory = directory;
+            this.ignoreRules = ignoreRules;
+            this.position = position;
+            this.cache = cache;
+        }
+
+        @Override
+        protected List<String> compute() {
+            File file = directory.isEmpty() ? workTree : Utils.join(workTree, directory);
+            UntrackedCache.Listing listing;
+            if (cache == null) {
+                listing = list(file, -1);
+            } else {
+                long listedAt = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+                long modified = UntrackedCache.modifiedOf(file);
+                listing = cache.get(directory, modified);
+                if (listing == null) {
+                    listing = list(file, modified);
+                    cache.put(directory, listing, listedAt);
+                }
+            }
+            List<String> paths = new ArrayList<>();
+            for (String name : listing.files) {
+                paths.add(child(directory, name));
+            }
+            List<DirectoryTask> subdirectories = new ArrayList<>();
+            for (String name : listing.directories) {
+                IgnoreRules.Position subdirectoryPosition = ignoreRules.enter(position, name);
+                if (subdirectoryPosition == null) {
+                    continue;
+                }
+                DirectoryTask subdirectory = new DirectoryTask(workTree, child(directory, name), ignoreRules,
+                        subdirectoryPosition, cache);
+                subdirectory.fork();
+                subdirectories.add(subdirectory);
+            }
+            for (DirectoryTask subdirectory : subdirectories) {
+                paths.addAll(subdirectory.join());
+            }
+            return paths;
+        }
+
+        /**
+         * the files and the subdirectories of the directory that are not ignored
+         *
+         * @param modified the modification time of the directory, see UntrackedCache
+         */
+        private UntrackedCache.Listing list(File file, long modified) {
+            File[] children = file.listFiles();
+            if (children == null) {
+                return new UntrackedCache.Listing(-1, new String[0], new String[0]);
+            }
+            List<String> files = new ArrayList<>();
+            List<String> directories = new ArrayList<>();
+            for (File child : children) {
+                String name = child.getName();
+                if (child.isFile()) {
+                    if (!ignoreRules.isIgnored(position, name)) {
+                        files.add(name);
+                    }
+                } else if (child.isDirectory() && !Files.isSymbolicLink(child.toPath())
+                        && !child(directory, name).equals(GitletRepository.GITLET_DIRNAME)
+                        && ignoreRules.enter(position, name) != null) {
+                    directories.add(name);
+                }
+            }
+            return new UntrackedCache.Listing(modified, files.toArray(new String[0]),
+                    directories.toArray(new String[0]));
+        }
+    }
+}